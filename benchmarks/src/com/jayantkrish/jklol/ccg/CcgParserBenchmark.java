@@ -0,0 +1,103 @@
+package com.jayantkrish.jklol.ccg;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.jayantkrish.jklol.ccg.chart.CcgBeamSearchChart;
+import com.jayantkrish.jklol.models.parametric.SufficientStatistics;
+import com.jayantkrish.jklol.nlpannotation.AnnotatedSentence;
+import com.jayantkrish.jklol.training.NullLogFunction;
+
+/**
+ * JMH benchmarks for CCG beam search on sentences with many
+ * ambiguous prepositional phrase attachments and noun compounds. Uses
+ * the same grammar as {@code CcgParserPerformanceTest}.
+ *
+ * @author jayantk
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class CcgParserBenchmark {
+
+  private static final String[] lexicon = {
+    "big,N{0},,0 big",
+    "big,(N{1}/N{1}){0},,0 big,big 1 1",
+    "dog,N{0},,0 dog",
+    "dog,(N{1}/N{1}){0},,0 dog,dog 1 1",
+    "park,N{0},,0 park",
+    "with,((N{1}\\N{1}){0}/N{2}){0},,0 with,with 1 1,with 2 2",
+    "in,((N{1}\\N{1}){0}/N{2}){0},,0 in,in 1 1,in 2 2",
+    "and,((N{1}\\N{1}){0}/N{2}){0},,0 and,and 1 1,and 2 2",
+  };
+
+  private static final String[] unknownLexicon = {
+    "NN,N{0},,0 unk-nn",
+  };
+
+  // The parser requires at least one unary rule.
+  private static final String[] ruleArray = {"FOO{0} FOO{0}"};
+
+  private static final String[] words = {"big", "dog", "with", "big", "park", "in", "dog",
+    "park", "and", "big", "dog"};
+
+  @Param({"10", "30"})
+  public int sentenceLength;
+
+  @Param({"50"})
+  public int beamSize;
+
+  private CcgParser parser;
+  private AnnotatedSentence sentence;
+  private CcgBeamSearchChart chart;
+
+  @Setup
+  public void setUp() {
+    Set<String> posTags = Sets.newHashSet(ParametricCcgParser.DEFAULT_POS_TAG, "NN");
+    ParametricCcgParser family = ParametricCcgParser.parseFromLexicon(Arrays.asList(lexicon),
+        Arrays.asList(unknownLexicon), Arrays.asList(ruleArray),
+        new DefaultCcgFeatureFactory(false, false), posTags, false, null, false);
+    SufficientStatistics parameters = family.getNewSufficientStatistics();
+    parameters.perturb(0.1);
+    parser = family.getModelFromParameters(parameters);
+
+    List<String> sentenceWords = Lists.newArrayList();
+    for (int i = 0; i < sentenceLength; i++) {
+      sentenceWords.add(words[i % words.length]);
+    }
+    sentence = new AnnotatedSentence(sentenceWords,
+        Collections.nCopies(sentenceLength, ParametricCcgParser.DEFAULT_POS_TAG));
+    chart = new CcgBeamSearchChart(sentence, Integer.MAX_VALUE, beamSize);
+  }
+
+  @Benchmark
+  public List<CcgParse> beamSearch() {
+    return parser.beamSearch(sentence, beamSize, null, new NullLogFunction(), -1,
+        Integer.MAX_VALUE, 1);
+  }
+
+  @Benchmark
+  public List<CcgParse> beamSearchReusedChart() {
+    return parser.beamSearch(chart, sentence, null, new NullLogFunction(), -1, 1);
+  }
+}
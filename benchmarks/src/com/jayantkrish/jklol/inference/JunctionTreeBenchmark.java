@@ -0,0 +1,109 @@
+package com.jayantkrish.jklol.inference;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.jayantkrish.jklol.models.DiscreteVariable;
+import com.jayantkrish.jklol.models.FactorGraph;
+import com.jayantkrish.jklol.models.TableFactorBuilder;
+import com.jayantkrish.jklol.models.VariableNumMap;
+import com.jayantkrish.jklol.tensor.DenseTensorBuilder;
+import com.jayantkrish.jklol.tensor.SparseTensorBuilder;
+import com.jayantkrish.jklol.tensor.TensorFactory;
+import com.jayantkrish.jklol.util.Assignment;
+
+/**
+ * JMH benchmarks for exact inference with {@link JunctionTree} on a
+ * chain-structured factor graph, similar to a sequence model. The
+ * factor graph is constructed during setup, so the benchmarks measure
+ * clique tree construction and message passing.
+ *
+ * @author jayantk
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class JunctionTreeBenchmark {
+
+  @Param({"dense", "sparse"})
+  public String tensorType;
+
+  @Param({"20"})
+  public int chainLength;
+
+  @Param({"50"})
+  public int numValues;
+
+  private FactorGraph factorGraph;
+  private FactorGraph conditionedFactorGraph;
+  private JunctionTree junctionTree;
+
+  @Setup
+  public void setUp() {
+    TensorFactory factory = tensorType.equals("dense") ? DenseTensorBuilder.getFactory()
+        : SparseTensorBuilder.getFactory();
+    DiscreteVariable varType = DiscreteVariable.sequence("values", numValues);
+
+    FactorGraph f = new FactorGraph();
+    for (int i = 0; i < chainLength; i++) {
+      f = f.addVariable("Var" + i, varType);
+    }
+
+    for (int i = 0; i < chainLength; i++) {
+      VariableNumMap vars = f.getVariables().getVariablesByName(Arrays.asList("Var" + i));
+      TableFactorBuilder builder = new TableFactorBuilder(vars, factory);
+      for (int j = 0; j < numValues; j++) {
+        builder.setWeight(vars.outcomeArrayToAssignment(j), 1.0 + ((i * j) % 5));
+      }
+      f = f.addFactor("unary" + i, builder.build());
+    }
+
+    for (int i = 0; i < chainLength - 1; i++) {
+      VariableNumMap vars = f.getVariables().getVariablesByName(
+          Arrays.asList("Var" + i, "Var" + (i + 1)));
+      TableFactorBuilder builder = new TableFactorBuilder(vars, factory);
+      for (int j = 0; j < numValues; j++) {
+        for (int k = 0; k < numValues; k++) {
+          builder.setWeight(vars.outcomeArrayToAssignment(j, k), 1.0 + ((j + k) % 3));
+        }
+      }
+      f = f.addFactor("transition" + i, builder.build());
+    }
+
+    factorGraph = f;
+    conditionedFactorGraph = f.conditional(Assignment.fromSortedArrays(
+        new int[] {f.getVariables().getVariablesByName("Var0").getOnlyVariableNum()},
+        new Object[] {0}));
+    junctionTree = new JunctionTree();
+  }
+
+  @Benchmark
+  public MarginalSet marginals() {
+    return junctionTree.computeMarginals(factorGraph);
+  }
+
+  @Benchmark
+  public MaxMarginalSet maxMarginals() {
+    return junctionTree.computeMaxMarginals(factorGraph);
+  }
+
+  @Benchmark
+  public MarginalSet conditionalMarginals() {
+    return junctionTree.computeMarginals(conditionedFactorGraph);
+  }
+}
@@ -0,0 +1,78 @@
+package com.jayantkrish.jklol.lisp;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.jayantkrish.jklol.ccg.lambda.ExpressionParser;
+import com.jayantkrish.jklol.util.IndexedList;
+
+/**
+ * JMH benchmarks for evaluating programs with {@link AmbEval}. The
+ * programs are parsed during setup, so the benchmarks measure
+ * evaluation only: deterministic recursion, and a nondeterministic
+ * sequence tagger whose best labeling is found by inference.
+ *
+ * @author jayantk
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class AmbEvalBenchmark {
+
+  private static final String FIBONACCI_PROGRAM =
+      "(define fib (lambda (n) (if (< n 2) n (+ (fib (- n 1)) (fib (- n 2)))))) (fib 15)";
+
+  private static final String SEQUENCE_TAG_PROGRAM =
+      "(define word-factor (lambda (label word) (begin "
+      + "(add-weight (and (= word \"car\") (= label \"N\")) 2) "
+      + "(add-weight (and (= word \"goes\") (= label \"V\")) 3))))"
+      + "(define transition-factor (lambda (cur-label next-label)"
+      + "(add-weight (and (= next-label \"N\") (= cur-label \"N\")) 2))) "
+      + "(define sequence-tag (lambda (input-seq) (if (nil? input-seq) (lifted-list) (begin "
+      + "(define cur-label (amb (list \"N\" \"V\") (list 1 1)))"
+      + "(define next-labels (sequence-tag (lifted-cdr input-seq))) "
+      + "(word-factor cur-label (car input-seq))"
+      + "(if (not (nil? (cdr input-seq)))"
+      + " (begin "
+      + "        (define next-label (lifted-car next-labels))"
+      + "        (transition-factor cur-label next-label)"
+      + "        (lifted-cons cur-label next-labels))"
+      + " (lifted-cons cur-label next-labels))))))"
+      + "(get-best-value (sequence-tag (list \"the\" \"car\" \"goes\" \"the\" \"car\" \"goes\")))";
+
+  private AmbEval eval;
+  private SExpression fibonacciProgram;
+  private SExpression sequenceTagProgram;
+
+  @Setup
+  public void setUp() {
+    IndexedList<String> symbolTable = AmbEval.getInitialSymbolTable();
+    eval = new AmbEval(symbolTable);
+    ExpressionParser<SExpression> parser = ExpressionParser.sExpression(symbolTable);
+    fibonacciProgram = parser.parse("(begin " + FIBONACCI_PROGRAM + ")");
+    sequenceTagProgram = parser.parse("(begin " + SEQUENCE_TAG_PROGRAM + ")");
+  }
+
+  @Benchmark
+  public Object fibonacci() {
+    return eval.eval(fibonacciProgram).getValue();
+  }
+
+  @Benchmark
+  public Object sequenceTag() {
+    return eval.eval(sequenceTagProgram).getValue();
+  }
+}
@@ -0,0 +1,110 @@
+package com.jayantkrish.jklol.tensor;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks comparing the scalar and vectorized
+ * {@link DenseVectorKernels}. The {@code vector} kernels are only used
+ * if the vectorized kernels were compiled (see {@code ant compile-vector});
+ * otherwise both parameter settings measure the scalar kernels.
+ *
+ * @author jayantk
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules=jdk.incubator.vector"})
+public class DenseKernelBenchmark {
+
+  @Param({"scalar", "vector"})
+  public String kernelType;
+
+  @Param({"10000", "1000000"})
+  public int length;
+
+  private DenseVectorKernels kernels;
+  private double[] x;
+  private double[] y;
+  private double[] result;
+
+  private DenseTensor tensor;
+  private DenseTensor otherTensor;
+
+  @Setup
+  public void setUp() {
+    kernels = kernelType.equals("vector") ? DenseVectorKernels.getInstance()
+        : DenseVectorKernels.getScalarKernels();
+
+    Random random = new Random(0);
+    x = new double[length];
+    y = new double[length];
+    result = new double[length];
+    for (int i = 0; i < length; i++) {
+      x[i] = random.nextGaussian();
+      y[i] = random.nextGaussian();
+    }
+
+    tensor = new DenseTensor(new int[] {0, 1}, new int[] {100, length / 100}, x);
+    otherTensor = new DenseTensor(new int[] {0, 1}, new int[] {100, length / 100}, y);
+  }
+
+  @Benchmark
+  public double[] exp() {
+    kernels.exp(x, result, length);
+    return result;
+  }
+
+  @Benchmark
+  public double[] tanh() {
+    kernels.tanh(x, result, length);
+    return result;
+  }
+
+  @Benchmark
+  public double[] laplaceSigmoid() {
+    kernels.laplaceSigmoid(x, result, 0.5, length);
+    return result;
+  }
+
+  @Benchmark
+  public double dot() {
+    return kernels.dot(x, y, length);
+  }
+
+  @Benchmark
+  public double[] axpy() {
+    kernels.axpy(x, 1e-9, result, length);
+    return result;
+  }
+
+  @Benchmark
+  public double[] addSquares() {
+    kernels.addSquares(x, 1e-9, result, length);
+    return result;
+  }
+
+  /**
+   * Inner product of two dense tensors, which uses
+   * {@link DenseVectorKernels#getInstance()} regardless of
+   * {@code kernelType}.
+   */
+  @Benchmark
+  public Tensor tensorInnerProduct() {
+    return tensor.innerProduct(otherTensor);
+  }
+}
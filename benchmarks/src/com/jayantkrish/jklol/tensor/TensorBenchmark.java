@@ -0,0 +1,110 @@
+package com.jayantkrish.jklol.tensor;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks for elementwise products, inner products and
+ * marginalization of dense and sparse tensors. The tensors have the same shapes as the
+ * tensors in {@code TensorPerformanceTest}, scaled down by a factor
+ * of 10.
+ *
+ * @author jayantk
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class TensorBenchmark {
+
+  @Param({"dense", "sparse"})
+  public String tensorType;
+
+  private Tensor table012;
+  private Tensor table012Copy;
+  private Tensor table01;
+  private Tensor table12;
+
+  @Setup
+  public void setUp() {
+    TensorFactory factory = tensorType.equals("dense") ? DenseTensorBuilder.getFactory()
+        : SparseTensorBuilder.getFactory();
+
+    TensorBuilder builder = factory.getBuilder(new int[] {0, 1, 2}, new int[] {100, 100, 100});
+    for (int i = 0; i < 1000000; i++) {
+      builder.put(new int[] {i / 10000, (i / 100) % 100, i % 100}, 1.0 + (i % 7));
+    }
+    table012 = builder.build();
+    table012Copy = builder.build();
+
+    builder = factory.getBuilder(new int[] {0, 1}, new int[] {100, 100});
+    for (int i = 0; i < 10000; i++) {
+      builder.put(new int[] {i / 100, i % 100}, 1.0 + (i % 3));
+    }
+    table01 = builder.build();
+
+    builder = factory.getBuilder(new int[] {1, 2}, new int[] {100, 100});
+    for (int i = 0; i < 10000; i++) {
+      builder.put(new int[] {i / 100, i % 100}, 1.0 + (i % 5));
+    }
+    table12 = builder.build();
+  }
+
+  @Benchmark
+  public Tensor productSelf() {
+    return table012.elementwiseProduct(table012Copy);
+  }
+
+  @Benchmark
+  public Tensor productLeftAligned() {
+    return table012.elementwiseProduct(table01);
+  }
+
+  @Benchmark
+  public Tensor productRightAligned() {
+    return table012.elementwiseProduct(table12);
+  }
+
+  @Benchmark
+  public Tensor innerProductRightAligned() {
+    return table012.innerProduct(table12);
+  }
+
+  @Benchmark
+  public Tensor matrixInnerProduct() {
+    return table01.matrixInnerProduct(table12);
+  }
+
+  @Benchmark
+  public Tensor sumOutFirstDimension() {
+    return table012.sumOutDimensions(0);
+  }
+
+  @Benchmark
+  public Tensor sumOutLastDimension() {
+    return table012.sumOutDimensions(2);
+  }
+
+  @Benchmark
+  public Tensor maxOutLastDimension() {
+    return table012.maxOutDimensions(new int[] {2});
+  }
+
+  @Benchmark
+  public Tensor logSumOutLastDimension() {
+    return table012.logSumOutDimensions(new int[] {2});
+  }
+}
@@ -0,0 +1,75 @@
+package com.jayantkrish.jklol.tensor;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks for random lookups in {@link TensorHash}
+ * implementations of a sparse tensor. Half of the looked up keys are
+ * in the tensor. Scores are reported per lookup.
+ *
+ * @author jayantk
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class TensorHashBenchmark {
+
+  private static final int NUM_LOOKUPS = 100000;
+
+  @Param({"binned", "robinHood"})
+  public String hashType;
+
+  @Param({"200000"})
+  public int numKeys;
+
+  private TensorHash hash;
+  private long[] lookupKeys;
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(0);
+    SparseTensorBuilder builder = new SparseTensorBuilder(new int[] {0, 1, 2},
+        new int[] {100000, 10000, 1000});
+    for (int i = 0; i < numKeys; i++) {
+      builder.put(new int[] {random.nextInt(100000), random.nextInt(10000), random.nextInt(1000)},
+          random.nextDouble());
+    }
+    SparseTensor tensor = builder.build();
+    hash = hashType.equals("binned") ? SparseTensorHash.fromTensor(tensor)
+        : RobinHoodTensorHash.fromTensor(tensor);
+
+    lookupKeys = new long[NUM_LOOKUPS];
+    long[] keyNums = tensor.getKeyNums();
+    for (int i = 0; i < NUM_LOOKUPS; i++) {
+      long key = keyNums[random.nextInt(keyNums.length)];
+      lookupKeys[i] = (i % 2 == 0) ? key : key + 1;
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_LOOKUPS)
+  public double get() {
+    double total = 0.0;
+    for (int i = 0; i < lookupKeys.length; i++) {
+      total += hash.get(lookupKeys[i]);
+    }
+    return total;
+  }
+}
@@ -0,0 +1,129 @@
+package com.jayantkrish.jklol.testing;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SortedMap;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Maps;
+
+/**
+ * Compares two JMH result files written with {@code -rf json} (e.g.,
+ * by {@code ant jmh}), and reports benchmarks whose scores regressed.
+ * A benchmark regresses if its score is worse than the baseline score
+ * by more than a relative threshold, and the difference exceeds the
+ * scores' combined error. Exits with a nonzero status if any benchmark
+ * regressed, so the comparison can be used in scripts.
+ * <p>
+ * Usage: {@code BenchmarkComparison <baseline.json> <current.json> [threshold]}
+ *
+ * @author jayantk
+ */
+public class BenchmarkComparison {
+
+  private static final double DEFAULT_THRESHOLD = 0.1;
+
+  /**
+   * Reads the results in a JMH JSON file, keyed by benchmark name
+   * and parameter values.
+   *
+   * @param file
+   * @return
+   * @throws IOException
+   */
+  public static SortedMap<String, JsonNode> readResults(File file) throws IOException {
+    SortedMap<String, JsonNode> results = Maps.newTreeMap();
+    for (JsonNode result : new ObjectMapper().readTree(file)) {
+      StringBuilder key = new StringBuilder(result.get("benchmark").asText());
+      JsonNode params = result.get("params");
+      if (params != null) {
+        Iterator<Map.Entry<String, JsonNode>> iter = params.fields();
+        while (iter.hasNext()) {
+          Map.Entry<String, JsonNode> param = iter.next();
+          key.append(" " + param.getKey() + "=" + param.getValue().asText());
+        }
+      }
+      results.put(key.toString(), result);
+    }
+    return results;
+  }
+
+  /**
+   * Gets the relative change in score from {@code baseline} to
+   * {@code current}, where positive values are regressions. Returns
+   * 0 if the change is within the scores' error.
+   *
+   * @param baseline
+   * @param current
+   * @return
+   */
+  public static double getRegression(JsonNode baseline, JsonNode current) {
+    JsonNode baselineMetric = baseline.get("primaryMetric");
+    JsonNode currentMetric = current.get("primaryMetric");
+    double baselineScore = baselineMetric.get("score").asDouble();
+    double currentScore = currentMetric.get("score").asDouble();
+    double error = getScoreError(baselineMetric) + getScoreError(currentMetric);
+
+    if (Math.abs(currentScore - baselineScore) <= error || baselineScore == 0.0) {
+      return 0.0;
+    }
+
+    double change = (currentScore - baselineScore) / baselineScore;
+    // Higher scores are better in throughput mode, and worse in
+    // all time-based modes.
+    return current.get("mode").asText().equals("thrpt") ? -change : change;
+  }
+
+  private static double getScoreError(JsonNode metric) {
+    JsonNode error = metric.get("scoreError");
+    // JMH reports NaN errors for benchmarks with a single measurement.
+    return (error == null || !error.isNumber()) ? 0.0 : error.asDouble();
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2) {
+      System.err.println("Usage: BenchmarkComparison <baseline.json> <current.json> [threshold]");
+      System.exit(2);
+    }
+    SortedMap<String, JsonNode> baseline = readResults(new File(args[0]));
+    SortedMap<String, JsonNode> current = readResults(new File(args[1]));
+    double threshold = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD;
+
+    int numRegressions = 0;
+    for (Map.Entry<String, JsonNode> entry : current.entrySet()) {
+      String name = entry.getKey();
+      JsonNode currentMetric = entry.getValue().get("primaryMetric");
+      String unit = currentMetric.get("scoreUnit").asText();
+      if (!baseline.containsKey(name)) {
+        System.out.println(String.format("NEW        %s: %.3f %s", name,
+            currentMetric.get("score").asDouble(), unit));
+        continue;
+      }
+
+      JsonNode baselineMetric = baseline.get(name).get("primaryMetric");
+      double regression = getRegression(baseline.get(name), entry.getValue());
+      String status = "OK        ";
+      if (regression > threshold) {
+        status = "REGRESSION";
+        numRegressions++;
+      } else if (regression < -threshold) {
+        status = "IMPROVED  ";
+      }
+      System.out.println(String.format("%s %s: %.3f -> %.3f %s (%+.1f%%)", status, name,
+          baselineMetric.get("score").asDouble(), currentMetric.get("score").asDouble(), unit,
+          100 * regression));
+    }
+
+    for (String name : baseline.keySet()) {
+      if (!current.containsKey(name)) {
+        System.out.println("MISSING    " + name);
+      }
+    }
+
+    System.out.println(numRegressions + " regressions (threshold " + (100 * threshold) + "%)");
+    System.exit(numRegressions > 0 ? 1 : 0);
+  }
+}
@@ -0,0 +1,118 @@
+package com.jayantkrish.jklol.training;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.Lists;
+import com.jayantkrish.jklol.models.DiscreteVariable;
+import com.jayantkrish.jklol.models.VariableNumMap;
+import com.jayantkrish.jklol.models.parametric.SufficientStatistics;
+import com.jayantkrish.jklol.models.parametric.TensorSufficientStatistics;
+
+/**
+ * JMH benchmarks for the per-step cost of
+ * {@link StochasticGradientTrainer} with different regularizers.
+ * Each example's gradient touches a single parameter, so the running
+ * time is dominated by the parameter updates. Scores are reported per
+ * gradient step.
+ *
+ * @author jayantk
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class StochasticGradientBenchmark {
+
+  private static final int NUM_ITERATIONS = 1000;
+  private static final int BATCH_SIZE = 8;
+
+  @Param({"none", "l2", "lazyL2", "lazyAdagrad"})
+  public String regularization;
+
+  @Param({"10000"})
+  public int numFeatures;
+
+  private List<int[]> trainingData;
+  private SquaredLossOracle oracle;
+
+  @Setup
+  public void setUp() {
+    VariableNumMap featureVar = VariableNumMap.singleton(0, "features",
+        DiscreteVariable.sequence("features", numFeatures));
+    trainingData = Lists.newArrayList();
+    for (int i = 0; i < 1000; i++) {
+      // Each example is a (feature index, target value) pair.
+      trainingData.add(new int[] {(i * 7) % numFeatures, i % 3});
+    }
+    oracle = new SquaredLossOracle(featureVar);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_ITERATIONS)
+  public SufficientStatistics train() {
+    StochasticGradientTrainer trainer;
+    if (regularization.equals("l2")) {
+      trainer = StochasticGradientTrainer.createWithL2Regularization(NUM_ITERATIONS, BATCH_SIZE,
+          0.1, true, false, Double.MAX_VALUE, 0.01, new NullLogFunction());
+    } else if (regularization.equals("lazyL2")) {
+      trainer = StochasticGradientTrainer.createWithLazyL2Regularization(NUM_ITERATIONS,
+          BATCH_SIZE, 0.1, true, false, Double.MAX_VALUE, 0.01, new NullLogFunction());
+    } else if (regularization.equals("lazyAdagrad")) {
+      trainer = StochasticGradientTrainer.createLazyAdagrad(NUM_ITERATIONS, BATCH_SIZE, 0.1,
+          true, false, Double.MAX_VALUE, 0.01, new NullLogFunction());
+    } else {
+      trainer = new StochasticGradientTrainer(NUM_ITERATIONS, BATCH_SIZE, 0.1, true, false,
+          Double.MAX_VALUE, new NullLogFunction());
+    }
+    return trainer.train(oracle, oracle.initializeGradient(), trainingData);
+  }
+
+  /**
+   * Squared loss for a linear model with a single active feature
+   * per example.
+   */
+  private static class SquaredLossOracle implements GradientOracle<SufficientStatistics, int[]> {
+    private final VariableNumMap featureVar;
+
+    public SquaredLossOracle(VariableNumMap featureVar) {
+      this.featureVar = featureVar;
+    }
+
+    @Override
+    public SufficientStatistics initializeGradient() {
+      return TensorSufficientStatistics.createDense(featureVar);
+    }
+
+    @Override
+    public SufficientStatistics instantiateModel(SufficientStatistics parameters) {
+      return parameters;
+    }
+
+    @Override
+    public double accumulateGradient(SufficientStatistics gradient,
+        SufficientStatistics currentParameters, SufficientStatistics instantiatedModel,
+        int[] example, LogFunction log) {
+      double prediction = ((TensorSufficientStatistics) currentParameters).get()
+          .getByDimKey(example[0]);
+      double error = example[1] - prediction;
+      ((TensorSufficientStatistics) gradient).incrementFeatureByIndex(error, example[0]);
+      return -0.5 * error * error;
+    }
+  }
+}
@@ -0,0 +1,142 @@
+package com.jayantkrish.jklol.ccg;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.jayantkrish.jklol.ccg.chart.CcgAStarChart;
+import com.jayantkrish.jklol.ccg.chart.CcgExactHashTableChart;
+import com.jayantkrish.jklol.models.parametric.SufficientStatistics;
+import com.jayantkrish.jklol.nlpannotation.AnnotatedSentence;
+import com.jayantkrish.jklol.testing.PerformanceTest;
+import com.jayantkrish.jklol.testing.PerformanceTestCase;
+import com.jayantkrish.jklol.testing.PerformanceTestRunner;
+import com.jayantkrish.jklol.training.NullLogFunction;
+
+/**
+ * Compares exact CKY parsing against A* parsing
+ * ({@link CcgAStarInference}) on sentences of 15 to 40 words,
+ * similar to sentences from CCGbank. Each test reports the average
+ * number of chart entries created per sentence. The parser's weights
+ * are all at most 1, as in a probabilistic model, except in the
+ * {@code Unnormalized} tests, where some weights are greater than 1
+ * and the A* bound is loose.
+ *
+ * @author jayantk
+ */
+public class CcgAStarPerformanceTest extends PerformanceTestCase {
+
+  private static final String[] lexicon = {
+    "big,N{0},,0 big",
+    "big,(N{1}/N{1}){0},,0 big,big 1 1",
+    "dog,N{0},,0 dog",
+    "dog,(N{1}/N{1}){0},,0 dog,dog 1 1",
+    "park,N{0},,0 park",
+    "with,((N{1}\\N{1}){0}/N{2}){0},,0 with,with 1 1,with 2 2",
+    "in,((N{1}\\N{1}){0}/N{2}){0},,0 in,in 1 1,in 2 2",
+    "and,((N{1}\\N{1}){0}/N{2}){0},,0 and,and 1 1,and 2 2",
+  };
+
+  private static final String[] unknownLexicon = {
+    "NN,N{0},,0 unk-nn",
+  };
+
+  // The parser requires at least one unary rule.
+  private static final String[] ruleArray = {"FOO{0} FOO{0}"};
+
+  private static final String[] words = {"big", "dog", "with", "big", "park", "in", "dog",
+    "park", "and", "big", "dog"};
+
+  // Sentence lengths for which the sentence does not end with a
+  // preposition, and therefore has a parse.
+  private static final int[] SENTENCE_LENGTHS = {15, 18, 21, 24, 27, 30, 33, 35, 38, 40};
+  private static final int NUM_SENTENCES = SENTENCE_LENGTHS.length;
+
+  private CcgParser parser;
+  private CcgParser unnormalizedParser;
+  private List<AnnotatedSentence> sentences;
+
+  @Override
+  public void setUp() {
+    Set<String> posTags = Sets.newHashSet(ParametricCcgParser.DEFAULT_POS_TAG, "NN");
+    ParametricCcgParser family = ParametricCcgParser.parseFromLexicon(Arrays.asList(lexicon),
+        Arrays.asList(unknownLexicon), Arrays.asList(ruleArray),
+        new DefaultCcgFeatureFactory(false, false), posTags, false, null, false);
+    SufficientStatistics parameters = family.getNewSufficientStatistics();
+    // Make all feature weights negative, so that every weight in
+    // the parser is at most 1.
+    parameters.perturb(0.1);
+    parameters.increment(-0.5);
+    parser = family.getModelFromParameters(parameters);
+
+    SufficientStatistics unnormalizedParameters = family.getNewSufficientStatistics();
+    unnormalizedParameters.perturb(0.1);
+    unnormalizedParser = family.getModelFromParameters(unnormalizedParameters);
+
+    sentences = Lists.newArrayList();
+    for (int length : SENTENCE_LENGTHS) {
+      List<String> sentenceWords = Lists.newArrayList();
+      for (int j = 0; j < length; j++) {
+        sentenceWords.add(words[j % words.length]);
+      }
+      sentences.add(new AnnotatedSentence(sentenceWords,
+          Collections.nCopies(length, ParametricCcgParser.DEFAULT_POS_TAG)));
+    }
+  }
+
+  @PerformanceTest(3)
+  public void testCkyExact() {
+    runCkyExact(parser);
+  }
+
+  @PerformanceTest(3)
+  public void testAStar() {
+    runAStar(parser);
+  }
+
+  @PerformanceTest(3)
+  public void testCkyExactUnnormalized() {
+    runCkyExact(unnormalizedParser);
+  }
+
+  @PerformanceTest(3)
+  public void testAStarUnnormalized() {
+    runAStar(unnormalizedParser);
+  }
+
+  private void runCkyExact(CcgParser parser) {
+    long numEntries = 0;
+    for (AnnotatedSentence sentence : sentences) {
+      CcgExactHashTableChart chart = new CcgExactHashTableChart(sentence, Integer.MAX_VALUE);
+      parser.parseCommon(chart, sentence, null, new NullLogFunction(), -1, 1);
+      chart.decodeBestParse(parser);
+      numEntries += chart.getTotalNumChartEntries();
+    }
+    System.out.println("Chart entries per sentence: " + (numEntries / NUM_SENTENCES));
+  }
+
+  private void runAStar(CcgParser parser) {
+    CcgAStarInference inference = CcgAStarInference.getDefault();
+    long numEntries = 0;
+    long numAgendaItems = 0;
+    long numAgendaItemsRemoved = 0;
+    for (AnnotatedSentence sentence : sentences) {
+      CcgAStarChart chart = new CcgAStarChart(sentence, Integer.MAX_VALUE);
+      inference.search(parser, chart, sentence, null, new NullLogFunction());
+      chart.decodeBestParse(parser);
+      numEntries += chart.getTotalNumChartEntries();
+      numAgendaItems += chart.getNumAgendaItemsCreated();
+      numAgendaItemsRemoved += chart.getNumAgendaItemsRemoved();
+    }
+    System.out.println("Chart entries per sentence: " + (numEntries / NUM_SENTENCES)
+        + " (created: " + (numAgendaItems / NUM_SENTENCES)
+        + ", removed: " + (numAgendaItemsRemoved / NUM_SENTENCES) + ")");
+  }
+
+  public static void main(String[] args) {
+    PerformanceTestRunner.run(new CcgAStarPerformanceTest());
+  }
+}
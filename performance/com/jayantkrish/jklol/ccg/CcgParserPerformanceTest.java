@@ -0,0 +1,231 @@
+package com.jayantkrish.jklol.ccg;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.jayantkrish.jklol.ccg.CcgBatchParser.BatchParseResult;
+import com.jayantkrish.jklol.ccg.CcgBatchParser.ParseCallback;
+import com.jayantkrish.jklol.ccg.CcgBatchParser.ParseLatencies;
+import com.jayantkrish.jklol.ccg.chart.CcgSpanCache;
+import com.jayantkrish.jklol.models.parametric.SufficientStatistics;
+import com.jayantkrish.jklol.nlpannotation.AnnotatedSentence;
+import com.jayantkrish.jklol.testing.PerformanceTest;
+import com.jayantkrish.jklol.testing.PerformanceTestCase;
+import com.jayantkrish.jklol.testing.PerformanceTestRunner;
+import com.jayantkrish.jklol.training.NullLogFunction;
+
+/**
+ * Measures the speed of CCG beam search with varying numbers of
+ * threads, on sentences of 10 to 60 words with many ambiguous
+ * prepositional phrase attachments and noun compounds. Also compares
+ * parsing sentences one at a time against {@link CcgBatchParser}, and
+ * {@link com.jayantkrish.jklol.ccg.chart.CcgBeamSearchChart} against
+ * the default {@link com.jayantkrish.jklol.ccg.chart.CcgPackedBeamSearchChart},
+ * reporting the garbage collection time and the number of bytes
+ * allocated per sentence.
+ * 
+ * @author jayantk
+ */
+public class CcgParserPerformanceTest extends PerformanceTestCase {
+
+  private static final String[] lexicon = {
+    "big,N{0},,0 big",
+    "big,(N{1}/N{1}){0},,0 big,big 1 1",
+    "dog,N{0},,0 dog",
+    "dog,(N{1}/N{1}){0},,0 dog,dog 1 1",
+    "park,N{0},,0 park",
+    "with,((N{1}\\N{1}){0}/N{2}){0},,0 with,with 1 1,with 2 2",
+    "in,((N{1}\\N{1}){0}/N{2}){0},,0 in,in 1 1,in 2 2",
+    "and,((N{1}\\N{1}){0}/N{2}){0},,0 and,and 1 1,and 2 2",
+  };
+
+  private static final String[] unknownLexicon = {
+    "NN,N{0},,0 unk-nn",
+  };
+
+  // The parser requires at least one unary rule.
+  private static final String[] ruleArray = {"FOO{0} FOO{0}"};
+
+  private static final String[] words = {"big", "dog", "with", "big", "park", "in", "dog",
+    "park", "and", "big", "dog"};
+
+  private static final int BEAM_SIZE = 50;
+  private static final int NUM_BATCH_SENTENCES = 200;
+
+  private CcgParser parser;
+
+  @Override
+  public void setUp() {
+    Set<String> posTags = Sets.newHashSet(ParametricCcgParser.DEFAULT_POS_TAG, "NN");
+    ParametricCcgParser family = ParametricCcgParser.parseFromLexicon(Arrays.asList(lexicon),
+        Arrays.asList(unknownLexicon), Arrays.asList(ruleArray),
+        new DefaultCcgFeatureFactory(false, false), posTags, false, null, false);
+    SufficientStatistics parameters = family.getNewSufficientStatistics();
+    parameters.perturb(1.0);
+    parser = family.getModelFromParameters(parameters);
+  }
+
+  @PerformanceTest(3)
+  public void testParse10To20WordsSingleThreaded() {
+    parseSentences(10, 20, 1);
+  }
+
+  @PerformanceTest(3)
+  public void testParse10To20Words4Threads() {
+    parseSentences(10, 20, 4);
+  }
+
+  @PerformanceTest(3)
+  public void testParse30To40WordsSingleThreaded() {
+    parseSentences(30, 40, 1);
+  }
+
+  @PerformanceTest(3)
+  public void testParse30To40Words4Threads() {
+    parseSentences(30, 40, 4);
+  }
+
+  @PerformanceTest(3)
+  public void testParse50To60WordsSingleThreaded() {
+    parseSentences(50, 60, 1);
+  }
+
+  @PerformanceTest(3)
+  public void testParse50To60Words4Threads() {
+    parseSentences(50, 60, 4);
+  }
+
+  @PerformanceTest(3)
+  public void testParse30To40WordsSpanCache() {
+    // The sentences are prefixes of each other, so most of their
+    // spans are cached.
+    CcgSpanCache cache = new CcgSpanCache(100000);
+    parser.setSpanCache(cache);
+    parseSentences(30, 40, 1);
+    parser.setSpanCache(null);
+    System.out.println(cache);
+  }
+
+  @PerformanceTest(3)
+  public void testParseManySentences() {
+    parseManySentences(new CcgCkyInference(null, BEAM_SIZE, -1, Integer.MAX_VALUE, 1, false));
+  }
+
+  @PerformanceTest(3)
+  public void testParseManySentencesPackedChart() {
+    parseManySentences(new CcgCkyInference(null, BEAM_SIZE, -1, Integer.MAX_VALUE, 1, true));
+  }
+
+  @PerformanceTest(3)
+  public void testBatchParseSingleThreaded() {
+    BatchParseResult result = CcgBatchParser.create(parser, BEAM_SIZE, 1).beamSearch(
+        getSentences(NUM_BATCH_SENTENCES, 10, 30));
+    System.out.println(result.getLatencySummary());
+  }
+
+  @PerformanceTest(3)
+  public void testBatchParseCallbackSingleThreaded() {
+    parseBatchWithCallback(new CcgBatchParser(parser, null, BEAM_SIZE, -1,
+        Integer.MAX_VALUE, 1, true));
+  }
+
+  @PerformanceTest(3)
+  public void testBatchParseCallbackUnpackedChartSingleThreaded() {
+    parseBatchWithCallback(new CcgBatchParser(parser, null, BEAM_SIZE, -1,
+        Integer.MAX_VALUE, 1, false));
+  }
+
+  @PerformanceTest(3)
+  public void testBatchParse4Threads() {
+    BatchParseResult result = CcgBatchParser.create(parser, BEAM_SIZE, 4).beamSearch(
+        getSentences(NUM_BATCH_SENTENCES, 10, 30));
+    System.out.println(result.getLatencySummary());
+  }
+
+  private List<AnnotatedSentence> getSentences(int numSentences, int minLength, int maxLength) {
+    List<AnnotatedSentence> sentences = Lists.newArrayList();
+    for (int i = 0; i < numSentences; i++) {
+      int length = minLength + (i * 7) % (maxLength - minLength + 1);
+      List<String> sentenceWords = Lists.newArrayList();
+      for (int j = 0; j < length; j++) {
+        sentenceWords.add(words[(i + j) % words.length]);
+      }
+      sentences.add(new AnnotatedSentence(sentenceWords,
+          Collections.nCopies(length, ParametricCcgParser.DEFAULT_POS_TAG)));
+    }
+    return sentences;
+  }
+
+  private void parseManySentences(CcgInference inference) {
+    List<AnnotatedSentence> sentences = getSentences(NUM_BATCH_SENTENCES, 10, 30);
+    long startGcMillis = getTotalGcMillis();
+    long startBytes = getAllocatedBytes();
+    for (AnnotatedSentence sentence : sentences) {
+      inference.beamSearch(parser, sentence, null, new NullLogFunction());
+    }
+    printAllocationStats(startGcMillis, startBytes, sentences.size());
+  }
+
+  private void parseBatchWithCallback(CcgBatchParser batchParser) {
+    List<AnnotatedSentence> sentences = getSentences(NUM_BATCH_SENTENCES, 10, 30);
+    // Parse once to allocate the worker's chart.
+    ParseCallback callback = new ParseCallback() {
+      @Override
+      public void parsed(int index, AnnotatedSentence sentence, List<CcgParse> parses) {}
+    };
+    batchParser.beamSearch(sentences, callback);
+
+    long startGcMillis = getTotalGcMillis();
+    long startBytes = getAllocatedBytes();
+    ParseLatencies latencies = batchParser.beamSearch(sentences, callback);
+    printAllocationStats(startGcMillis, startBytes, sentences.size());
+    System.out.println(latencies.getLatencySummary());
+  }
+
+  private static void printAllocationStats(long startGcMillis, long startBytes,
+      int numSentences) {
+    System.out.println("GC time: " + (getTotalGcMillis() - startGcMillis) + " ms, allocated: "
+        + ((getAllocatedBytes() - startBytes) / (numSentences * 1024)) + " KB per sentence");
+  }
+
+  /**
+   * Gets the number of bytes allocated by the current thread, which
+   * performs all of the parsing in the single-threaded tests.
+   */
+  private static long getAllocatedBytes() {
+    return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+        .getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  private static long getTotalGcMillis() {
+    long total = 0;
+    for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+      total += Math.max(bean.getCollectionTime(), 0);
+    }
+    return total;
+  }
+
+  private void parseSentences(int minLength, int maxLength, int numThreads) {
+    for (int length = minLength; length <= maxLength; length += 2) {
+      List<String> sentenceWords = Lists.newArrayList();
+      for (int i = 0; i < length; i++) {
+        sentenceWords.add(words[i % words.length]);
+      }
+      AnnotatedSentence sentence = new AnnotatedSentence(sentenceWords,
+          Collections.nCopies(length, ParametricCcgParser.DEFAULT_POS_TAG));
+      parser.beamSearch(sentence, BEAM_SIZE, null, new NullLogFunction(), -1,
+          Integer.MAX_VALUE, numThreads);
+    }
+  }
+
+  public static void main(String[] args) {
+    System.out.println("Available processors: " + Runtime.getRuntime().availableProcessors());
+    PerformanceTestRunner.run(new CcgParserPerformanceTest());
+  }
+}
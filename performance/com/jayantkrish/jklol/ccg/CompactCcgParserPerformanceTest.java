@@ -0,0 +1,169 @@
+package com.jayantkrish.jklol.ccg;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.jayantkrish.jklol.models.parametric.SufficientStatistics;
+import com.jayantkrish.jklol.nlpannotation.AnnotatedSentence;
+import com.jayantkrish.jklol.tensor.CompactTensor;
+import com.jayantkrish.jklol.tensor.CompactTensor.CompactionStatistics;
+import com.jayantkrish.jklol.tensor.CompactValues.Encoding;
+import com.jayantkrish.jklol.testing.PerformanceTest;
+import com.jayantkrish.jklol.testing.PerformanceTestCase;
+import com.jayantkrish.jklol.testing.PerformanceTestRunner;
+
+/**
+ * Compares the speed and accuracy of a CCG parser whose parameters
+ * are stored as doubles with compact copies of the parser (see
+ * {@link CompactTensor#compactObject}). Each compact parser's best
+ * parse is compared against the best parses of the original parser.
+ * Several parses may tie for the highest probability, so the compact
+ * parser is considered correct if its best parse has the same
+ * dependencies as any of them.
+ *
+ * @author jayantk
+ */
+public class CompactCcgParserPerformanceTest extends PerformanceTestCase {
+
+  private static final String[] lexicon = {
+    "big,N{0},,0 big",
+    "big,(N{1}/N{1}){0},,0 big,big 1 1",
+    "dog,N{0},,0 dog",
+    "dog,(N{1}/N{1}){0},,0 dog,dog 1 1",
+    "park,N{0},,0 park",
+    "with,((N{1}\\N{1}){0}/N{2}){0},,0 with,with 1 1,with 2 2",
+    "in,((N{1}\\N{1}){0}/N{2}){0},,0 in,in 1 1,in 2 2",
+    "and,((N{1}\\N{1}){0}/N{2}){0},,0 and,and 1 1,and 2 2",
+  };
+
+  private static final String[] unknownLexicon = {
+    "NN,N{0},,0 unk-nn",
+  };
+
+  // The parser requires at least one unary rule.
+  private static final String[] ruleArray = {"FOO{0} FOO{0}"};
+
+  private static final String[] words = {"big", "dog", "with", "big", "park", "in", "dog",
+    "park", "and", "big", "dog"};
+
+  private static final int BEAM_SIZE = 50;
+  private static final int NUM_SENTENCES = 100;
+  // Parses whose probabilities are within this relative distance of
+  // the best parse's probability are considered tied.
+  private static final double TIE_TOLERANCE = 1e-3;
+
+  private CcgParser parser;
+  private List<AnnotatedSentence> sentences;
+  private List<List<CcgParse>> bestParses;
+
+  @Override
+  public void setUp() {
+    Set<String> posTags = Sets.newHashSet(ParametricCcgParser.DEFAULT_POS_TAG, "NN");
+    ParametricCcgParser family = ParametricCcgParser.parseFromLexicon(Arrays.asList(lexicon),
+        Arrays.asList(unknownLexicon), Arrays.asList(ruleArray),
+        new DefaultCcgFeatureFactory(false, false), posTags, false, null, false);
+    SufficientStatistics parameters = family.getNewSufficientStatistics();
+    parameters.perturb(1.0);
+    parser = family.getModelFromParameters(parameters);
+
+    sentences = Lists.newArrayList();
+    for (int i = 0; i < NUM_SENTENCES; i++) {
+      int length = 10 + (i * 7) % 11;
+      List<String> sentenceWords = Lists.newArrayList();
+      for (int j = 0; j < length; j++) {
+        sentenceWords.add(words[(i + j) % words.length]);
+      }
+      sentences.add(new AnnotatedSentence(sentenceWords,
+          Collections.nCopies(length, ParametricCcgParser.DEFAULT_POS_TAG)));
+    }
+    bestParses = parseSentences(parser);
+  }
+
+  @PerformanceTest(3)
+  public void testParseDouble() {
+    parseSentences(parser);
+  }
+
+  @PerformanceTest(3)
+  public void testParseFloat32() {
+    runCompactTest(Encoding.FLOAT32);
+  }
+
+  @PerformanceTest(3)
+  public void testParseQuantized16() {
+    runCompactTest(Encoding.QUANTIZED16);
+  }
+
+  @PerformanceTest(3)
+  public void testParseQuantized8() {
+    runCompactTest(Encoding.QUANTIZED8);
+  }
+
+  private void runCompactTest(Encoding encoding) {
+    CompactionStatistics stats = new CompactionStatistics();
+    CcgParser compactParser = CompactTensor.compactObject(parser, encoding, stats);
+    System.out.println(encoding + ": " + stats);
+
+    long start = System.currentTimeMillis();
+    List<List<CcgParse>> compactParses = parseSentences(compactParser);
+    System.out.println("Parse time: " + (System.currentTimeMillis() - start) + " ms");
+
+    int numSameDependencies = 0;
+    double maxRelativeProbabilityError = 0.0;
+    for (int i = 0; i < bestParses.size(); i++) {
+      List<CcgParse> expected = bestParses.get(i);
+      List<CcgParse> actual = compactParses.get(i);
+      if (expected.size() == 0 || actual.size() == 0) {
+        if (expected.size() == actual.size()) {
+          numSameDependencies++;
+        }
+        continue;
+      }
+
+      Set<DependencyStructure> actualDependencies = Sets.newHashSet(
+          actual.get(0).getAllDependencies());
+      for (CcgParse parse : expected) {
+        if (Sets.newHashSet(parse.getAllDependencies()).equals(actualDependencies)) {
+          numSameDependencies++;
+          break;
+        }
+      }
+      double expectedProbability = expected.get(0).getSubtreeProbability();
+      double error = Math.abs(actual.get(0).getSubtreeProbability() - expectedProbability)
+          / expectedProbability;
+      maxRelativeProbabilityError = Math.max(maxRelativeProbabilityError, error);
+    }
+    System.out.println("Best parse has the same dependencies: " + numSameDependencies + " / "
+        + bestParses.size() + ", max relative error of best parse probability: "
+        + maxRelativeProbabilityError);
+  }
+
+  /**
+   * Parses each sentence, returning all of the parses tied for the
+   * highest probability.
+   */
+  private List<List<CcgParse>> parseSentences(CcgParser parser) {
+    List<List<CcgParse>> parses = Lists.newArrayList();
+    for (AnnotatedSentence sentence : sentences) {
+      List<CcgParse> sentenceParses = parser.beamSearch(sentence, BEAM_SIZE);
+      List<CcgParse> best = Lists.newArrayList();
+      for (CcgParse parse : sentenceParses) {
+        if (parse.getSubtreeProbability() < sentenceParses.get(0).getSubtreeProbability()
+            * (1 - TIE_TOLERANCE)) {
+          break;
+        }
+        best.add(parse);
+      }
+      parses.add(best);
+    }
+    return parses;
+  }
+
+  public static void main(String[] args) {
+    PerformanceTestRunner.run(new CompactCcgParserPerformanceTest());
+  }
+}
@@ -0,0 +1,113 @@
+package com.jayantkrish.jklol.inference;
+
+import java.util.Arrays;
+
+import com.jayantkrish.jklol.models.DiscreteFactor;
+import com.jayantkrish.jklol.models.DiscreteVariable;
+import com.jayantkrish.jklol.models.Factor;
+import com.jayantkrish.jklol.models.FactorGraph;
+import com.jayantkrish.jklol.models.TableFactor;
+import com.jayantkrish.jklol.models.VariableNumMap;
+import com.jayantkrish.jklol.tensor.DenseTensor;
+import com.jayantkrish.jklol.tensor.FactoredTensor;
+import com.jayantkrish.jklol.tensor.Tensor;
+import com.jayantkrish.jklol.testing.PerformanceTest;
+import com.jayantkrish.jklol.testing.PerformanceTestCase;
+import com.jayantkrish.jklol.testing.PerformanceTestRunner;
+import com.jayantkrish.jklol.util.Assignment;
+
+/**
+ * Compares inference in a factor graph whose word x category x
+ * feature factor is the outer product of a word x category and a
+ * category x feature tensor, stored either as a {@link FactoredTensor}
+ * or as the materialized tensor.
+ *
+ * @author jayantk
+ */
+public class FactoredTensorPerformanceTest extends PerformanceTestCase {
+
+  private static final int NUM_WORDS = 2000;
+  private static final int NUM_CATEGORIES = 50;
+  private static final int NUM_FEATURES = 200;
+
+  FactorGraph factoredGraph, materializedGraph;
+  Assignment word;
+  JunctionTree junctionTree;
+
+  public FactoredTensorPerformanceTest() {
+    VariableNumMap wordVar = VariableNumMap.singleton(0, "word",
+        DiscreteVariable.sequence("words", NUM_WORDS));
+    VariableNumMap categoryVar = VariableNumMap.singleton(1, "category",
+        DiscreteVariable.sequence("categories", NUM_CATEGORIES));
+    VariableNumMap featureVar = VariableNumMap.singleton(2, "feature",
+        DiscreteVariable.sequence("features", NUM_FEATURES));
+    VariableNumMap allVars = VariableNumMap.unionAll(wordVar, categoryVar, featureVar);
+
+    Tensor wordCategory = DenseTensor.random(new int[] {0, 1},
+        new int[] {NUM_WORDS, NUM_CATEGORIES}, 1.0, 0.1).elementwiseAbs();
+    Tensor categoryFeature = DenseTensor.random(new int[] {1, 2},
+        new int[] {NUM_CATEGORIES, NUM_FEATURES}, 1.0, 0.1).elementwiseAbs();
+    FactoredTensor factored = new FactoredTensor(allVars.getVariableNumsArray(),
+        allVars.getVariableSizes(), new Tensor[] {wordCategory, categoryFeature});
+    DiscreteFactor featurePrior = new TableFactor(featureVar, DenseTensor.random(
+        new int[] {2}, new int[] {NUM_FEATURES}, 1.0, 0.1).elementwiseAbs());
+
+    factoredGraph = FactorGraph.createFromFactors(Arrays.<Factor>asList(
+        new TableFactor(allVars, factored), featurePrior));
+    materializedGraph = FactorGraph.createFromFactors(Arrays.<Factor>asList(
+        new TableFactor(allVars, factored.materialize()), featurePrior));
+
+    word = wordVar.outcomeArrayToAssignment(17);
+    junctionTree = new JunctionTree();
+  }
+
+  @PerformanceTest(3)
+  public void testMarginalsFactored() {
+    junctionTree.computeMarginals(factoredGraph);
+  }
+
+  @PerformanceTest(3)
+  public void testMarginalsMaterialized() {
+    junctionTree.computeMarginals(materializedGraph);
+  }
+
+  @PerformanceTest(3)
+  public void testMaxMarginalsFactored() {
+    junctionTree.computeMaxMarginals(factoredGraph);
+  }
+
+  @PerformanceTest(3)
+  public void testMaxMarginalsMaterialized() {
+    junctionTree.computeMaxMarginals(materializedGraph);
+  }
+
+  @PerformanceTest(3)
+  public void testConditionalMarginalsFactored() {
+    junctionTree.computeMarginals(factoredGraph.conditional(word));
+  }
+
+  @PerformanceTest(3)
+  public void testConditionalMarginalsMaterialized() {
+    junctionTree.computeMarginals(materializedGraph.conditional(word));
+  }
+
+  public static void main(String[] args) {
+    FactoredTensorPerformanceTest test = new FactoredTensorPerformanceTest();
+    // Both graphs store the feature prior, so only the sizes of the
+    // word x category x feature factors are compared.
+    FactoredTensor factored = (FactoredTensor) ((DiscreteFactor) test.factoredGraph
+        .getFactor(0)).getWeights();
+    long factoredValues = 0;
+    for (Tensor tensor : factored.getTensors()) {
+      factoredValues += tensor.size();
+    }
+    long materializedValues = ((DiscreteFactor) test.materializedGraph.getFactor(0))
+        .getWeights().size();
+    System.out.println("Factored tensor: " + factoredValues + " values ("
+        + (factoredValues * 8 / 1024) + " KB)");
+    System.out.println("Materialized tensor: " + materializedValues + " values ("
+        + (materializedValues * 8 / 1024) + " KB)");
+
+    PerformanceTestRunner.run(new FactoredTensorPerformanceTest());
+  }
+}
@@ -0,0 +1,73 @@
+package com.jayantkrish.jklol.inference;
+
+import com.jayantkrish.jklol.models.DiscreteVariable;
+import com.jayantkrish.jklol.models.FactorGraph;
+import com.jayantkrish.jklol.models.TableFactor;
+import com.jayantkrish.jklol.models.VariableNumMap;
+import com.jayantkrish.jklol.tensor.DenseTensor;
+import com.jayantkrish.jklol.testing.PerformanceTest;
+import com.jayantkrish.jklol.testing.PerformanceTestCase;
+import com.jayantkrish.jklol.testing.PerformanceTestRunner;
+
+/**
+ * Compares {@link GibbsSampler} against {@link ChromaticGibbsSampler}
+ * on a 30x30 grid of variables with 5 values each.
+ *
+ * @author jayantk
+ */
+public class GibbsSamplerPerformanceTest extends PerformanceTestCase {
+
+  private static final int GRID_SIZE = 30;
+
+  FactorGraph grid;
+
+  public void setUp() {
+    DiscreteVariable var = DiscreteVariable.sequence("values", 5);
+    grid = new FactorGraph();
+    for (int i = 0; i < GRID_SIZE; i++) {
+      for (int j = 0; j < GRID_SIZE; j++) {
+        grid = grid.addVariable(varName(i, j), var);
+        if (i > 0) {
+          addRandomFactor(varName(i - 1, j), varName(i, j));
+        }
+        if (j > 0) {
+          addRandomFactor(varName(i, j - 1), varName(i, j));
+        }
+      }
+    }
+  }
+
+  private void addRandomFactor(String first, String second) {
+    VariableNumMap vars = grid.getVariables().getVariablesByName(first, second);
+    grid = grid.addFactor(first + "," + second, new TableFactor(vars, DenseTensor.random(
+        vars.getVariableNumsArray(), vars.getVariableSizes(), 1.0, 0.2)));
+  }
+
+  private static String varName(int i, int j) {
+    return "var" + i + "_" + j;
+  }
+
+  @PerformanceTest(3)
+  public void testGibbsSampler() {
+    new GibbsSampler(10, 100, 0).computeMarginals(grid);
+  }
+
+  @PerformanceTest(3)
+  public void testChromaticGibbsSampler() {
+    new ChromaticGibbsSampler(10, 100, 0).computeMarginals(grid);
+  }
+
+  @PerformanceTest(3)
+  public void testChromaticGibbsSamplerParallel() {
+    new ChromaticGibbsSampler(10, 100, 0, 1, 4).computeMarginals(grid);
+  }
+
+  @PerformanceTest(3)
+  public void testChromaticGibbsSamplerChains() {
+    new ChromaticGibbsSampler(10, 25, 0, 4, 4).computeMarginals(grid);
+  }
+
+  public static void main(String[] args) {
+    PerformanceTestRunner.run(new GibbsSamplerPerformanceTest());
+  }
+}
@@ -1,7 +1,10 @@
 package com.jayantkrish.jklol.inference;
 
+import java.lang.management.ManagementFactory;
 import java.util.Arrays;
 
+import com.sun.management.ThreadMXBean;
+
 import com.jayantkrish.jklol.inference.MarginalCalculator.ZeroProbabilityError;
 import com.jayantkrish.jklol.models.DiscreteVariable;
 import com.jayantkrish.jklol.models.Factor;
@@ -20,6 +23,22 @@ public class JunctionTreePerformanceTest extends PerformanceTestCase {
   FactorGraph f;
   JunctionTree t;
 
+  // A chain of small variables, for measuring the cost of building
+  // the clique tree.
+  FactorGraph chain;
+  JunctionTree uncachedTree;
+
+  // Many disconnected chains with large variables, for measuring
+  // parallel message passing.
+  FactorGraph forest;
+  JunctionTree parallelTree;
+
+  JunctionTree logSpaceTree;
+
+  // A chain of sparse factors over three large variables, whose
+  // separators have many more possible keys than nonzero entries.
+  FactorGraph sparseChain;
+
   TableFactor factor1, factor2, factor3, factor4, factor5, factor6;
 
   int numValues = 10000;
@@ -80,6 +99,55 @@ public class JunctionTreePerformanceTest extends PerformanceTestCase {
     factor5 = tfBuilder.build();
 
     t = new JunctionTree();
+
+    DiscreteVariable chainVar = DiscreteVariable.sequence("chain var", 3);
+    chain = new FactorGraph();
+    for (int i = 0; i < 50; i++) {
+      chain = chain.addVariable("Chain" + i, chainVar);
+      if (i > 0) {
+        vars = chain.getVariables().getVariablesByName(Arrays.asList("Chain" + (i - 1), "Chain" + i));
+        chain = chain.addFactor("chain" + i, TableFactor.unity(vars));
+      }
+    }
+    uncachedTree = new JunctionTree(false, null, false);
+
+    DiscreteVariable forestVar = DiscreteVariable.sequence("forest var", 200);
+    forest = new FactorGraph();
+    for (int i = 0; i < 32; i++) {
+      for (int j = 0; j < 5; j++) {
+        forest = forest.addVariable("Forest" + i + "_" + j, forestVar);
+        if (j > 0) {
+          vars = forest.getVariables().getVariablesByName(Arrays.asList(
+              "Forest" + i + "_" + (j - 1), "Forest" + i + "_" + j));
+          forest = forest.addFactor("forest" + i + "_" + j, TableFactor.unity(vars));
+        }
+      }
+    }
+    parallelTree = new JunctionTree(false, null, true, Runtime.getRuntime().availableProcessors());
+    // Record the message schedule of the forest.
+    parallelTree.computeMarginals(forest);
+
+    logSpaceTree = new JunctionTree(false, null, true, 1, true);
+
+    DiscreteVariable sparseVar = DiscreteVariable.sequence("sparse var", 500);
+    sparseChain = new FactorGraph();
+    for (int i = 0; i < 12; i++) {
+      sparseChain = sparseChain.addVariable("Sparse" + i, sparseVar);
+      if (i > 1) {
+        vars = sparseChain.getVariables().getVariablesByName(Arrays.asList(
+            "Sparse" + (i - 2), "Sparse" + (i - 1), "Sparse" + i));
+        tfBuilder = new TableFactorBuilder(vars, SparseTensorBuilder.getFactory());
+        for (int j = 0; j < 500; j++) {
+          for (int k = 0; k < 16; k++) {
+            int second = (j + (k / 4)) % 500;
+            Assignment a = Assignment.fromSortedArrays(vars.getVariableNumsArray(),
+                new Integer[] {j, second, (second + (k % 4)) % 500});
+            tfBuilder.setWeight(a, 1.0 + ((j + k) % 3));
+          }
+        }
+        sparseChain = sparseChain.addFactor("sparse" + i, tfBuilder.build());
+      }
+    }
   }
 
   @PerformanceTest
@@ -155,6 +223,11 @@ public class JunctionTreePerformanceTest extends PerformanceTestCase {
     t.computeMarginals(f);
   }
 
+  @PerformanceTest
+  public void testMarginalsLogSpace() {
+    logSpaceTree.computeMarginals(f);
+  }
+
   @PerformanceTest
   public void testConditionalMarginals() {
     try {
@@ -176,6 +249,45 @@ public class JunctionTreePerformanceTest extends PerformanceTestCase {
     t.computeMaxMarginals(FactorGraph.createFromFactors(Arrays.<Factor>asList(factor1)));
   }
   
+  @PerformanceTest(3)
+  public void testChainMarginalsUncached() {
+    for (int i = 0; i < 100; i++) {
+      uncachedTree.computeMarginals(chain);
+    }
+  }
+
+  @PerformanceTest(3)
+  public void testChainMarginals() {
+    for (int i = 0; i < 100; i++) {
+      t.computeMarginals(chain);
+    }
+  }
+
+  @PerformanceTest(3)
+  public void testForestMarginals() {
+    t.computeMarginals(forest);
+  }
+
+  @PerformanceTest(3)
+  public void testForestMarginalsLogSpace() {
+    logSpaceTree.computeMarginals(forest);
+  }
+
+  @PerformanceTest(3)
+  public void testSparseChainMarginals() {
+    computeMarginalsAndPrintAllocation(t, sparseChain);
+  }
+
+  @PerformanceTest(3)
+  public void testSparseChainMarginalsLogSpace() {
+    computeMarginalsAndPrintAllocation(logSpaceTree, sparseChain);
+  }
+
+  @PerformanceTest(3)
+  public void testForestMarginalsParallel() {
+    parallelTree.computeMarginals(forest);
+  }
+
   @PerformanceTest(1)
   public void testSingleFactorCliqueTree() {
     JunctionTree.CliqueTree.fromHeuristicVariableElimination(FactorGraph.createFromFactors(
@@ -187,6 +299,15 @@ public class JunctionTreePerformanceTest extends PerformanceTestCase {
     factor2.conditional(new Assignment(0, 0));
   }	
 
+  private static void computeMarginalsAndPrintAllocation(JunctionTree tree, FactorGraph graph) {
+    ThreadMXBean threadBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+    long startBytes = threadBean.getThreadAllocatedBytes(threadId);
+    tree.computeMarginals(graph);
+    System.out.println("Allocated: " + ((threadBean.getThreadAllocatedBytes(threadId) - startBytes)
+        / (1024 * 1024)) + " MB");
+  }
+
   public static void main(String[] args) {
     PerformanceTestRunner.run(new JunctionTreePerformanceTest());
   }
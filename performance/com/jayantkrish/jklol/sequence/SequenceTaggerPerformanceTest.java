@@ -0,0 +1,114 @@
+package com.jayantkrish.jklol.sequence;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import com.google.common.base.Functions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.jayantkrish.jklol.inference.JunctionTree;
+import com.jayantkrish.jklol.models.parametric.ParametricFactorGraph;
+import com.jayantkrish.jklol.models.parametric.SufficientStatistics;
+import com.jayantkrish.jklol.preprocessing.DictionaryFeatureVectorGenerator;
+import com.jayantkrish.jklol.preprocessing.FeatureGenerator;
+import com.jayantkrish.jklol.preprocessing.FeatureVectorGenerator;
+import com.jayantkrish.jklol.testing.PerformanceTest;
+import com.jayantkrish.jklol.testing.PerformanceTestCase;
+import com.jayantkrish.jklol.testing.PerformanceTestRunner;
+
+/**
+ * Compares tagging with {@link LinearChainScores} against tagging by
+ * instantiating a factor graph, for a randomly-initialized CRF with
+ * 45 labels (the size of a POS tag set) on 100 25-word sentences.
+ *
+ * @author jayantk
+ */
+public class SequenceTaggerPerformanceTest extends PerformanceTestCase {
+
+  private static final int NUM_LABELS = 45;
+  private static final int NUM_WORDS = 2000;
+  private static final int NUM_SENTENCES = 100;
+  private static final int SENTENCE_LENGTH = 25;
+
+  FactorGraphSequenceTagger<String, String> tagger;
+  List<List<String>> sentences;
+
+  public SequenceTaggerPerformanceTest() {
+    Random random = new Random(0);
+    sentences = Lists.newArrayList();
+    List<LocalContext<String>> contexts = Lists.newArrayList();
+    for (int i = 0; i < NUM_SENTENCES; i++) {
+      List<String> sentence = Lists.newArrayList();
+      for (int j = 0; j < SENTENCE_LENGTH; j++) {
+        sentence.add("word" + random.nextInt(NUM_WORDS));
+      }
+      sentences.add(sentence);
+      contexts.addAll(new ListTaggedSequence<String, String>(sentence, null).getLocalContexts());
+    }
+
+    Set<String> labels = Sets.newHashSet();
+    for (int i = 0; i < NUM_LABELS; i++) {
+      labels.add("label" + i);
+    }
+
+    FeatureVectorGenerator<LocalContext<String>> featureGen = DictionaryFeatureVectorGenerator
+        .createFromData(contexts, new WordFeatureGenerator(), true);
+    ParametricFactorGraph family = TaggerUtils.buildFeaturizedSequenceModel(labels,
+        featureGen.getFeatureDictionary(), false, false);
+    SufficientStatistics parameters = family.getNewSufficientStatistics();
+    parameters.perturb(1.0);
+
+    tagger = new FactorGraphSequenceTagger<String, String>(family, parameters,
+        family.getModelFromParameters(parameters), featureGen,
+        TaggerUtils.getDefaultInputGenerator(), String.class, new JunctionTree(),
+        new JunctionTree(true), null, null);
+  }
+
+  @PerformanceTest(3)
+  public void testTagLinearChain() {
+    for (List<String> sentence : sentences) {
+      tagger.tag(sentence);
+    }
+  }
+
+  @PerformanceTest(3)
+  public void testTagFactorGraph() {
+    for (List<String> sentence : sentences) {
+      tagger.tagWithFactorGraph(sentence);
+    }
+  }
+
+  @PerformanceTest(3)
+  public void testMultitagLinearChain() {
+    for (List<String> sentence : sentences) {
+      tagger.multitag(sentence, 0.01);
+    }
+  }
+
+  @PerformanceTest(3)
+  public void testMultitagFactorGraph() {
+    for (List<String> sentence : sentences) {
+      tagger.multitagWithFactorGraph(sentence, 0.01);
+    }
+  }
+
+  private static class WordFeatureGenerator implements FeatureGenerator<LocalContext<String>, String> {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public Map<String, Double> generateFeatures(LocalContext<String> item) {
+      Map<String, Double> features = Maps.newHashMap();
+      features.put("word=" + item.getItem(), 1.0);
+      features.put("prev=" + item.getItem(-1, Functions.constant("<S>")), 1.0);
+      features.put("next=" + item.getItem(1, Functions.constant("</S>")), 1.0);
+      return features;
+    }
+  }
+
+  public static void main(String[] args) {
+    PerformanceTestRunner.run(new SequenceTaggerPerformanceTest());
+  }
+}
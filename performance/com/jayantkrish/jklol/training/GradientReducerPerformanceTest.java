@@ -0,0 +1,132 @@
+package com.jayantkrish.jklol.training;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import com.google.common.collect.Lists;
+import com.jayantkrish.jklol.models.DiscreteVariable;
+import com.jayantkrish.jklol.models.VariableNumMap;
+import com.jayantkrish.jklol.models.parametric.SufficientStatistics;
+import com.jayantkrish.jklol.parallel.LocalMapReduceExecutor;
+import com.jayantkrish.jklol.parallel.MapReduceExecutor;
+import com.jayantkrish.jklol.parallel.Mappers;
+import com.jayantkrish.jklol.testing.PerformanceTest;
+import com.jayantkrish.jklol.testing.PerformanceTestCase;
+import com.jayantkrish.jklol.testing.PerformanceTestRunner;
+
+/**
+ * Measures the cost of accumulating sparse gradients of a model with
+ * many parameters using {@link GradientReducer}, which is dominated by
+ * combining the gradients of different batches. The pooled tests
+ * reuse the gradients of previous calls, as
+ * {@link StochasticGradientTrainer} does.
+ *
+ * @author jayantk
+ */
+public class GradientReducerPerformanceTest extends PerformanceTestCase {
+
+  private static final int NUM_FEATURES = 2000000;
+  private static final int NUM_EXAMPLES = 256;
+  private static final int NUM_THREADS = 4;
+
+  VariableNumMap featureVar;
+  SquaredLossOracle oracle;
+  SufficientStatistics parameters;
+  List<int[]> examples;
+
+  MapReduceExecutor batchedExecutor;
+  MapReduceExecutor shardedExecutor;
+
+  Queue<SufficientStatistics> gradientPool;
+  GradientEvaluation batchedAccumulator, shardedAccumulator;
+
+  @Override
+  public void setUp() {
+    featureVar = VariableNumMap.singleton(0, "features",
+        DiscreteVariable.sequence("features", NUM_FEATURES));
+    oracle = new SquaredLossOracle(featureVar);
+    parameters = oracle.initializeGradient();
+    examples = Lists.newArrayList();
+    for (int i = 0; i < NUM_EXAMPLES; i++) {
+      examples.add(new int[] {(i * 7919) % NUM_FEATURES, 1});
+    }
+
+    batchedExecutor = LocalMapReduceExecutor.createPersistent(NUM_THREADS, 20);
+    shardedExecutor = LocalMapReduceExecutor.createSharded(NUM_THREADS);
+
+    gradientPool = new ConcurrentLinkedQueue<SufficientStatistics>();
+    batchedAccumulator = null;
+    shardedAccumulator = null;
+  }
+
+  @Override
+  public void tearDown() {
+    batchedExecutor.shutdown();
+    shardedExecutor.shutdown();
+  }
+
+  @PerformanceTest(20)
+  public void testBatchedUntracked() {
+    batchedExecutor.mapReduce(examples, Mappers.<int[]>identity(), new UntrackedGradientReducer(
+        parameters, oracle));
+  }
+
+  @PerformanceTest(20)
+  public void testBatchedTracked() {
+    batchedExecutor.mapReduce(examples, Mappers.<int[]>identity(), 
+        new GradientReducer<SufficientStatistics, int[]>(parameters, parameters, oracle,
+            new NullLogFunction()));
+  }
+
+  @PerformanceTest(20)
+  public void testShardedUntracked() {
+    shardedExecutor.mapReduce(examples, Mappers.<int[]>identity(), new UntrackedGradientReducer(
+        parameters, oracle));
+  }
+
+  @PerformanceTest(20)
+  public void testShardedTracked() {
+    shardedExecutor.mapReduce(examples, Mappers.<int[]>identity(), 
+        new GradientReducer<SufficientStatistics, int[]>(parameters, parameters, oracle,
+            new NullLogFunction()));
+  }
+
+  @PerformanceTest(20)
+  public void testBatchedPooled() {
+    batchedAccumulator = batchedExecutor.mapReduce(examples, Mappers.<int[]>identity(),
+        new GradientReducer<SufficientStatistics, int[]>(parameters, parameters, oracle,
+            new NullLogFunction(), gradientPool), batchedAccumulator);
+    batchedAccumulator.zeroOut();
+  }
+
+  @PerformanceTest(20)
+  public void testShardedPooled() {
+    shardedAccumulator = shardedExecutor.mapReduce(examples, Mappers.<int[]>identity(),
+        new GradientReducer<SufficientStatistics, int[]>(parameters, parameters, oracle,
+            new NullLogFunction(), gradientPool), shardedAccumulator);
+    shardedAccumulator.zeroOut();
+  }
+
+  /**
+   * A {@code GradientReducer} whose gradients do not track their
+   * modified entries, for comparison.
+   */
+  private static class UntrackedGradientReducer extends GradientReducer<SufficientStatistics, int[]> {
+    private final SquaredLossOracle oracle;
+
+    public UntrackedGradientReducer(SufficientStatistics parameters, SquaredLossOracle oracle) {
+      super(parameters, parameters, oracle, new NullLogFunction());
+      this.oracle = oracle;
+    }
+
+    @Override
+    public GradientEvaluation getInitialValue() {
+      return new GradientEvaluation(oracle.initializeGradient(), 0.0, 0);
+    }
+  }
+
+  public static void main(String[] args) {
+    PerformanceTestRunner.run(new GradientReducerPerformanceTest());
+  }
+}
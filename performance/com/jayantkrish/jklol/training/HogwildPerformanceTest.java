@@ -0,0 +1,73 @@
+package com.jayantkrish.jklol.training;
+
+import java.util.List;
+
+import com.google.common.collect.Lists;
+import com.jayantkrish.jklol.models.DiscreteVariable;
+import com.jayantkrish.jklol.models.VariableNumMap;
+import com.jayantkrish.jklol.parallel.MapReduceConfiguration;
+import com.jayantkrish.jklol.testing.PerformanceTest;
+import com.jayantkrish.jklol.testing.PerformanceTestCase;
+import com.jayantkrish.jklol.testing.PerformanceTestRunner;
+
+/**
+ * Compares the throughput of {@link HogwildStochasticGradientTrainer}
+ * against the synchronous {@link StochasticGradientTrainer} on a sparse
+ * objective. Both trainers process the same number of examples.
+ *
+ * @author jayantk
+ */
+public class HogwildPerformanceTest extends PerformanceTestCase {
+
+  private static final int NUM_FEATURES = 100000;
+  private static final int NUM_EXAMPLES = 10000;
+  private static final int NUM_THREADS = 4;
+  private static final int BATCH_SIZE = 4;
+  private static final int NUM_ITERATIONS = 20000;
+
+  VariableNumMap featureVar;
+  List<int[]> trainingData;
+
+  @Override
+  public void setUp() {
+    featureVar = VariableNumMap.singleton(0, "features",
+        DiscreteVariable.sequence("features", NUM_FEATURES));
+    trainingData = Lists.newArrayList();
+    for (int i = 0; i < NUM_EXAMPLES; i++) {
+      trainingData.add(new int[] {(i * 7919) % NUM_FEATURES, i % 3});
+    }
+  }
+
+  @Override
+  public void tearDown() {
+    MapReduceConfiguration.replaceMapReduceExecutor(null);
+  }
+
+  @PerformanceTest(3)
+  public void testSynchronousMinibatch() {
+    // Each synchronous iteration processes one batch per thread.
+    MapReduceConfiguration.useShardedExecutor(NUM_THREADS);
+    StochasticGradientTrainer trainer = new StochasticGradientTrainer(
+        NUM_ITERATIONS / NUM_THREADS, BATCH_SIZE * NUM_THREADS, 0.1, true, false,
+        Double.MAX_VALUE, new NullLogFunction());
+    runTraining(trainer);
+  }
+
+  @PerformanceTest(3)
+  public void testHogwild() {
+    HogwildStochasticGradientTrainer trainer = HogwildStochasticGradientTrainer
+        .createWithStochasticL2Regularization(NUM_ITERATIONS, BATCH_SIZE, NUM_THREADS, 0.1, true,
+            Double.MAX_VALUE, 0.0, 0.0, new NullLogFunction());
+    runTraining(trainer);
+  }
+
+  private void runTraining(GradientOptimizer trainer) {
+    SquaredLossOracle oracle = new SquaredLossOracle(featureVar);
+    trainer.train(oracle, oracle.initializeGradient(), trainingData);
+  }
+
+  public static void main(String[] args) {
+    System.out.println("Examples per test: " + (NUM_ITERATIONS * BATCH_SIZE));
+    PerformanceTestRunner.run(new HogwildPerformanceTest());
+  }
+}
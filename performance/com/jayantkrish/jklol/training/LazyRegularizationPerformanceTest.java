@@ -0,0 +1,81 @@
+package com.jayantkrish.jklol.training;
+
+import java.util.List;
+
+import com.google.common.collect.Lists;
+import com.jayantkrish.jklol.models.DiscreteVariable;
+import com.jayantkrish.jklol.models.VariableNumMap;
+import com.jayantkrish.jklol.parallel.MapReduceConfiguration;
+import com.jayantkrish.jklol.testing.PerformanceTest;
+import com.jayantkrish.jklol.testing.PerformanceTestCase;
+import com.jayantkrish.jklol.testing.PerformanceTestRunner;
+
+/**
+ * Compares eager and lazy regularization in
+ * {@link StochasticGradientTrainer} on an objective with many parameters
+ * and very sparse gradients, where eager regularization dominates the
+ * running time. The averaged tests also exercise sparse parameter
+ * averaging, which lazy regularization should not slow down.
+ *
+ * @author jayantk
+ */
+public class LazyRegularizationPerformanceTest extends PerformanceTestCase {
+
+  private static final int NUM_FEATURES = 100000;
+  private static final int NUM_EXAMPLES = 10000;
+  private static final int BATCH_SIZE = 4;
+  private static final int NUM_ITERATIONS = 2000;
+
+  VariableNumMap featureVar;
+  List<int[]> trainingData;
+
+  @Override
+  public void setUp() {
+    featureVar = VariableNumMap.singleton(0, "features",
+        DiscreteVariable.sequence("features", NUM_FEATURES));
+    trainingData = Lists.newArrayList();
+    for (int i = 0; i < NUM_EXAMPLES; i++) {
+      trainingData.add(new int[] {(i * 7919) % NUM_FEATURES, i % 3});
+    }
+    MapReduceConfiguration.usePersistentExecutor(1, 1);
+  }
+
+  @Override
+  public void tearDown() {
+    MapReduceConfiguration.replaceMapReduceExecutor(null);
+  }
+
+  @PerformanceTest(3)
+  public void testEagerL2() {
+    runTraining(StochasticGradientTrainer.createWithL2Regularization(NUM_ITERATIONS, BATCH_SIZE,
+        0.1, true, false, Double.MAX_VALUE, 0.01, new NullLogFunction()));
+  }
+
+  @PerformanceTest(3)
+  public void testLazyL2() {
+    runTraining(StochasticGradientTrainer.createWithLazyL2Regularization(NUM_ITERATIONS,
+        BATCH_SIZE, 0.1, true, false, Double.MAX_VALUE, 0.01, new NullLogFunction()));
+  }
+
+  @PerformanceTest(3)
+  public void testEagerL2Averaged() {
+    runTraining(StochasticGradientTrainer.createWithL2Regularization(NUM_ITERATIONS, BATCH_SIZE,
+        0.1, true, true, Double.MAX_VALUE, 0.01, new NullLogFunction()));
+  }
+
+  @PerformanceTest(3)
+  public void testLazyL2Averaged() {
+    runTraining(StochasticGradientTrainer.createWithLazyL2Regularization(NUM_ITERATIONS,
+        BATCH_SIZE, 0.1, true, true, Double.MAX_VALUE, 0.01, new NullLogFunction()));
+  }
+
+  private void runTraining(GradientOptimizer trainer) {
+    SquaredLossOracle oracle = new SquaredLossOracle(featureVar);
+    trainer.train(oracle, oracle.initializeGradient(), trainingData);
+  }
+
+  public static void main(String[] args) {
+    System.out.println("Iterations per test: " + NUM_ITERATIONS);
+    PerformanceTestRunner.run(new LazyRegularizationPerformanceTest());
+  }
+}
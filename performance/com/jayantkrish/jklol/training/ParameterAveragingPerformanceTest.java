@@ -0,0 +1,97 @@
+package com.jayantkrish.jklol.training;
+
+import java.util.List;
+
+import com.google.common.collect.Lists;
+import com.jayantkrish.jklol.models.DiscreteVariable;
+import com.jayantkrish.jklol.models.VariableNumMap;
+import com.jayantkrish.jklol.models.parametric.SufficientStatistics;
+import com.jayantkrish.jklol.parallel.MapReduceConfiguration;
+import com.jayantkrish.jklol.testing.PerformanceTest;
+import com.jayantkrish.jklol.testing.PerformanceTestCase;
+import com.jayantkrish.jklol.testing.PerformanceTestRunner;
+import com.jayantkrish.jklol.training.StochasticGradientTrainer.Regularizer;
+import com.jayantkrish.jklol.training.StochasticGradientTrainer.StochasticL2Regularizer;
+
+/**
+ * Measures the cost of parameter averaging in
+ * {@link StochasticGradientTrainer} on an objective with many parameters
+ * and very sparse gradients. Compares sparse averaging, which is used
+ * for unregularized updates, against averaging every parameter on each
+ * iteration.
+ *
+ * @author jayantk
+ */
+public class ParameterAveragingPerformanceTest extends PerformanceTestCase {
+
+  private static final int NUM_FEATURES = 100000;
+  private static final int NUM_EXAMPLES = 10000;
+  private static final int BATCH_SIZE = 4;
+  private static final int NUM_ITERATIONS = 2000;
+
+  VariableNumMap featureVar;
+  List<int[]> trainingData;
+
+  @Override
+  public void setUp() {
+    featureVar = VariableNumMap.singleton(0, "features",
+        DiscreteVariable.sequence("features", NUM_FEATURES));
+    trainingData = Lists.newArrayList();
+    for (int i = 0; i < NUM_EXAMPLES; i++) {
+      trainingData.add(new int[] {(i * 7919) % NUM_FEATURES, i % 3});
+    }
+    MapReduceConfiguration.usePersistentExecutor(1, 1);
+  }
+
+  @Override
+  public void tearDown() {
+    MapReduceConfiguration.replaceMapReduceExecutor(null);
+  }
+
+  @PerformanceTest(3)
+  public void testNoAveraging() {
+    runTraining(new StochasticGradientTrainer(NUM_ITERATIONS, BATCH_SIZE, 0.1, true, false,
+        Double.MAX_VALUE, new NullLogFunction()));
+  }
+
+  @PerformanceTest(3)
+  public void testDenseAveraging() {
+    runTraining(new StochasticGradientTrainer(NUM_ITERATIONS, BATCH_SIZE, 0.1, true, true, false,
+        Double.MAX_VALUE, new DenseAveragingRegularizer(), new NullLogFunction()));
+  }
+
+  @PerformanceTest(3)
+  public void testSparseAveraging() {
+    runTraining(new StochasticGradientTrainer(NUM_ITERATIONS, BATCH_SIZE, 0.1, true, true,
+        Double.MAX_VALUE, new NullLogFunction()));
+  }
+
+  private void runTraining(GradientOptimizer trainer) {
+    SquaredLossOracle oracle = new SquaredLossOracle(featureVar);
+    trainer.train(oracle, oracle.initializeGradient(), trainingData);
+  }
+
+  public static void main(String[] args) {
+    System.out.println("Iterations per test: " + NUM_ITERATIONS);
+    PerformanceTestRunner.run(new ParameterAveragingPerformanceTest());
+  }
+
+  /**
+   * An unregularized gradient step, which forces the trainer to average
+   * every parameter on each iteration.
+   */
+  private static class DenseAveragingRegularizer implements Regularizer {
+    private final Regularizer regularizer = new StochasticL2Regularizer(0.0, 0.0);
+
+    @Override
+    public double apply(SufficientStatistics gradient, SufficientStatistics currentParameters,
+        SufficientStatistics gradientSumSquares, double currentStepSize) {
+      return regularizer.apply(gradient, currentParameters, gradientSumSquares, currentStepSize);
+    }
+
+    @Override
+    public boolean isScaledGradientStep() {
+      return false;
+    }
+  }
+}
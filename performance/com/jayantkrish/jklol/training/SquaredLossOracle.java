@@ -0,0 +1,43 @@
+package com.jayantkrish.jklol.training;
+
+import com.jayantkrish.jklol.models.VariableNumMap;
+import com.jayantkrish.jklol.models.parametric.SufficientStatistics;
+import com.jayantkrish.jklol.models.parametric.TensorSufficientStatistics;
+
+/**
+ * Squared loss for a linear model with a single active (indicator)
+ * feature per example. Each example is a {@code (feature index, target
+ * value)} pair. The gradient of each example touches exactly one
+ * parameter, which makes this oracle useful for measuring the overhead
+ * of the training loop itself.
+ *
+ * @author jayantk
+ */
+public class SquaredLossOracle implements GradientOracle<SufficientStatistics, int[]> {
+  private final VariableNumMap featureVar;
+
+  public SquaredLossOracle(VariableNumMap featureVar) {
+    this.featureVar = featureVar;
+  }
+
+  @Override
+  public SufficientStatistics initializeGradient() {
+    return TensorSufficientStatistics.createDense(featureVar);
+  }
+
+  @Override
+  public SufficientStatistics instantiateModel(SufficientStatistics parameters) {
+    return parameters;
+  }
+
+  @Override
+  public double accumulateGradient(SufficientStatistics gradient,
+      SufficientStatistics currentParameters, SufficientStatistics instantiatedModel,
+      int[] example, LogFunction log) {
+    double prediction = ((TensorSufficientStatistics) currentParameters).get()
+        .getByDimKey(example[0]);
+    double error = example[1] - prediction;
+    ((TensorSufficientStatistics) gradient).incrementFeatureByIndex(error, example[0]);
+    return -0.5 * error * error;
+  }
+}
@@ -0,0 +1,73 @@
+package com.jayantkrish.jklol.training;
+
+import java.util.List;
+
+import com.google.common.collect.Lists;
+import com.jayantkrish.jklol.models.DiscreteVariable;
+import com.jayantkrish.jklol.models.VariableNumMap;
+import com.jayantkrish.jklol.parallel.LocalMapReduceExecutor;
+import com.jayantkrish.jklol.parallel.MapReduceConfiguration;
+import com.jayantkrish.jklol.testing.PerformanceTest;
+import com.jayantkrish.jklol.testing.PerformanceTestCase;
+import com.jayantkrish.jklol.testing.PerformanceTestRunner;
+
+/**
+ * Measures the per-iteration overhead of {@link StochasticGradientTrainer} on
+ * a small-batch workload, where the cost of each gradient computation is
+ * negligible and the running time is dominated by the training loop itself.
+ *
+ * @author jayantk
+ */
+public class StochasticGradientPerformanceTest extends PerformanceTestCase {
+
+  private static final int NUM_FEATURES = 1000;
+  private static final int NUM_EXAMPLES = 1000;
+  private static final int NUM_ITERATIONS = 2000;
+  private static final int BATCH_SIZE = 8;
+  private static final int NUM_THREADS = 4;
+
+  VariableNumMap featureVar;
+  List<int[]> trainingData;
+  StochasticGradientTrainer trainer;
+
+  @Override
+  public void setUp() {
+    featureVar = VariableNumMap.singleton(0, "features",
+        DiscreteVariable.sequence("features", NUM_FEATURES));
+    trainingData = Lists.newArrayList();
+    for (int i = 0; i < NUM_EXAMPLES; i++) {
+      // Each example is a (feature index, target value) pair.
+      trainingData.add(new int[] {(i * 7) % NUM_FEATURES, i % 3});
+    }
+    trainer = new StochasticGradientTrainer(NUM_ITERATIONS, BATCH_SIZE, 0.1, true, false,
+        Double.MAX_VALUE, new NullLogFunction());
+  }
+
+  @Override
+  public void tearDown() {
+    MapReduceConfiguration.replaceMapReduceExecutor(null);
+  }
+
+  @PerformanceTest(5)
+  public void testSgdNewPoolPerIteration() {
+    MapReduceConfiguration.replaceMapReduceExecutor(
+        new LocalMapReduceExecutor(NUM_THREADS, 1));
+    runTraining();
+  }
+
+  @PerformanceTest(5)
+  public void testSgdPersistentPool() {
+    MapReduceConfiguration.usePersistentExecutor(NUM_THREADS, 1);
+    runTraining();
+  }
+
+  private void runTraining() {
+    SquaredLossOracle oracle = new SquaredLossOracle(featureVar);
+    trainer.train(oracle, oracle.initializeGradient(), trainingData);
+  }
+
+  public static void main(String[] args) {
+    System.out.println("Iterations per test: " + NUM_ITERATIONS);
+    PerformanceTestRunner.run(new StochasticGradientPerformanceTest());
+  }
+}
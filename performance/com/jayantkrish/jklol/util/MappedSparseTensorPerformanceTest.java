@@ -0,0 +1,92 @@
+package com.jayantkrish.jklol.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import com.jayantkrish.jklol.tensor.MappedSparseTensor;
+import com.jayantkrish.jklol.tensor.SparseTensor;
+import com.jayantkrish.jklol.testing.PerformanceTest;
+import com.jayantkrish.jklol.testing.PerformanceTestCase;
+import com.jayantkrish.jklol.testing.PerformanceTestRunner;
+
+/**
+ * Compares loading a large sparse tensor by Java deserialization
+ * with memory-mapping it using {@link MappedSparseTensor}, and
+ * compares the time of random lookups in each representation.
+ *
+ * @author jayantk
+ */
+public class MappedSparseTensorPerformanceTest extends PerformanceTestCase {
+
+  private static final int NUM_KEYS = 10000000;
+  private static final int NUM_LOOKUPS = 1000000;
+
+  File serializedFile, mappedFile;
+  SparseTensor tensor;
+  MappedSparseTensor mappedTensor;
+  long[] lookupKeys;
+
+  public MappedSparseTensorPerformanceTest() throws IOException {
+    long[] keyNums = new long[NUM_KEYS];
+    double[] values = new double[NUM_KEYS];
+    for (int i = 0; i < NUM_KEYS; i++) {
+      keyNums[i] = 3L * i;
+      values[i] = i;
+    }
+    tensor = new SparseTensor(new int[] {0, 1}, new int[] {100000, 1000}, keyNums, values);
+
+    serializedFile = File.createTempFile("tensor", ".ser");
+    serializedFile.deleteOnExit();
+    IoUtils.serializeObjectToFile(tensor, serializedFile.getPath());
+    mappedFile = File.createTempFile("tensor", ".bin");
+    mappedFile.deleteOnExit();
+    MappedSparseTensor.writeToFile(tensor, mappedFile.getPath());
+    mappedTensor = MappedSparseTensor.fromFile(mappedFile.getPath());
+
+    Random random = new Random(0);
+    lookupKeys = new long[NUM_LOOKUPS];
+    for (int i = 0; i < NUM_LOOKUPS; i++) {
+      lookupKeys[i] = random.nextInt(3 * NUM_KEYS);
+    }
+  }
+
+  @PerformanceTest(3)
+  public void testDeserialize() {
+    IoUtils.readSerializedObject(serializedFile.getPath(), SparseTensor.class);
+  }
+
+  @PerformanceTest(3)
+  public void testMap() {
+    MappedSparseTensor.fromFile(mappedFile.getPath());
+  }
+
+  @PerformanceTest(10)
+  public void testSparseTensorGet() {
+    double total = 0.0;
+    for (int i = 0; i < lookupKeys.length; i++) {
+      total += tensor.get(lookupKeys[i]);
+    }
+    checkTotal(total);
+  }
+
+  @PerformanceTest(10)
+  public void testMappedSparseTensorGet() {
+    double total = 0.0;
+    for (int i = 0; i < lookupKeys.length; i++) {
+      total += mappedTensor.get(lookupKeys[i]);
+    }
+    checkTotal(total);
+  }
+
+  private static void checkTotal(double total) {
+    // Prevents the lookups from being optimized away.
+    if (Double.isNaN(total)) {
+      throw new IllegalStateException();
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    PerformanceTestRunner.run(new MappedSparseTensorPerformanceTest());
+  }
+}
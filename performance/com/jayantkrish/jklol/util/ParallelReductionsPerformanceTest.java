@@ -0,0 +1,104 @@
+package com.jayantkrish.jklol.util;
+
+import com.google.common.primitives.Ints;
+import com.jayantkrish.jklol.tensor.Backpointers;
+import com.jayantkrish.jklol.tensor.DenseTensor;
+import com.jayantkrish.jklol.tensor.ParallelReductions;
+import com.jayantkrish.jklol.tensor.SparseTensorBuilder;
+import com.jayantkrish.jklol.tensor.Tensor;
+import com.jayantkrish.jklol.tensor.TensorBuilder;
+import com.jayantkrish.jklol.testing.PerformanceTest;
+import com.jayantkrish.jklol.testing.PerformanceTestCase;
+import com.jayantkrish.jklol.testing.PerformanceTestRunner;
+
+/**
+ * Compares sequential and parallel reductions (see
+ * {@link ParallelReductions}) of 10M-entry sparse and dense tensors.
+ *
+ * @author jayantk
+ */
+public class ParallelReductionsPerformanceTest extends PerformanceTestCase {
+
+  Tensor sparse, dense;
+
+  public ParallelReductionsPerformanceTest() {
+    int[] dims = new int[] {0, 1, 2};
+    int[] sizes = new int[] {1000, 100, 100};
+    TensorBuilder builder = new SparseTensorBuilder(dims, sizes);
+    for (int i = 0; i < 10000000; i++) {
+      builder.put(new int[] {(i / 10000), (i / 100) % 100, i % 100}, 1.0 + (i % 7));
+    }
+    sparse = builder.build();
+    dense = DenseTensor.random(dims, sizes, 0.0, 1.0);
+  }
+
+  private void sumOut(Tensor tensor, boolean parallel) {
+    ParallelReductions.setParallelThreshold(parallel ? 0 : Long.MAX_VALUE);
+    tensor.sumOutDimensions(Ints.asList(2));
+  }
+
+  private void maxOut(Tensor tensor, boolean parallel) {
+    ParallelReductions.setParallelThreshold(parallel ? 0 : Long.MAX_VALUE);
+    tensor.maxOutDimensions(Ints.asList(1, 2), new Backpointers());
+  }
+
+  private void sumOutAll(Tensor tensor, boolean parallel) {
+    ParallelReductions.setParallelThreshold(parallel ? 0 : Long.MAX_VALUE);
+    tensor.sumOutDimensions(Ints.asList(0, 1, 2));
+  }
+
+  @PerformanceTest(5)
+  public void testSparseSumOutSequential() {
+    sumOut(sparse, false);
+  }
+
+  @PerformanceTest(5)
+  public void testSparseSumOutParallel() {
+    sumOut(sparse, true);
+  }
+
+  @PerformanceTest(5)
+  public void testSparseMaxOutSequential() {
+    maxOut(sparse, false);
+  }
+
+  @PerformanceTest(5)
+  public void testSparseMaxOutParallel() {
+    maxOut(sparse, true);
+  }
+
+  @PerformanceTest(5)
+  public void testSparseSumOutAllSequential() {
+    sumOutAll(sparse, false);
+  }
+
+  @PerformanceTest(5)
+  public void testSparseSumOutAllParallel() {
+    sumOutAll(sparse, true);
+  }
+
+  @PerformanceTest(3)
+  public void testDenseSumOutSequential() {
+    sumOut(dense, false);
+  }
+
+  @PerformanceTest(3)
+  public void testDenseSumOutParallel() {
+    sumOut(dense, true);
+  }
+
+  @PerformanceTest(3)
+  public void testDenseMaxOutSequential() {
+    maxOut(dense, false);
+  }
+
+  @PerformanceTest(3)
+  public void testDenseMaxOutParallel() {
+    maxOut(dense, true);
+  }
+
+  public static void main(String[] args) {
+    System.out.println("Available processors: " + Runtime.getRuntime().availableProcessors());
+    PerformanceTestRunner.run(new ParallelReductionsPerformanceTest());
+  }
+}
@@ -0,0 +1,115 @@
+package com.jayantkrish.jklol.util;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import com.jayantkrish.jklol.tensor.CachedSparseTensor;
+import com.jayantkrish.jklol.tensor.SparseTensor;
+import com.jayantkrish.jklol.tensor.SparseTensorBuilder;
+import com.jayantkrish.jklol.tensor.Tensor;
+import com.jayantkrish.jklol.testing.PerformanceTest;
+import com.jayantkrish.jklol.testing.PerformanceTestCase;
+import com.jayantkrish.jklol.testing.PerformanceTestRunner;
+
+/**
+ * Measures elementwise products of sparse tensors whose dimensions
+ * are not left aligned, which are common when multiplying messages
+ * into clique marginals during junction tree inference, and the
+ * cost of caching permutations of a tensor's dimensions.
+ *
+ * @author jayantk
+ */
+public class PermutedSparseTensorPerformanceTest extends PerformanceTestCase {
+
+  private static final int NUM_KEYS = 1000000;
+
+  SparseTensor table012, table12, table02, table2;
+  CachedSparseTensor cached012;
+
+  public PermutedSparseTensorPerformanceTest() {
+    Random random = new Random(0);
+    SparseTensorBuilder builder = new SparseTensorBuilder(new int[] {0, 1, 2},
+        new int[] {200, 200, 200});
+    for (int i = 0; i < NUM_KEYS; i++) {
+      builder.put(new int[] {random.nextInt(200), random.nextInt(200), random.nextInt(200)},
+          random.nextDouble());
+    }
+    table012 = builder.build();
+    cached012 = CachedSparseTensor.cacheAllPermutations(table012);
+
+    table12 = randomTable(new int[] {1, 2}, random);
+    table02 = randomTable(new int[] {0, 2}, random);
+    table2 = randomTable(new int[] {2}, random);
+  }
+
+  private static SparseTensor randomTable(int[] dims, Random random) {
+    int[] sizes = new int[dims.length];
+    Arrays.fill(sizes, 200);
+    SparseTensorBuilder builder = new SparseTensorBuilder(dims, sizes);
+    int[] key = new int[dims.length];
+    for (int i = 0; i < 20000; i++) {
+      for (int j = 0; j < key.length; j++) {
+        key[j] = random.nextInt(200);
+      }
+      builder.put(key, random.nextDouble());
+    }
+    return builder.build();
+  }
+
+  @PerformanceTest(10)
+  public void testProductRightAligned() {
+    checkSize(table012.elementwiseProduct(table12));
+  }
+
+  @PerformanceTest(10)
+  public void testProductMiddleMissing() {
+    checkSize(table012.elementwiseProduct(table02));
+  }
+
+  @PerformanceTest(10)
+  public void testProductLastDimension() {
+    checkSize(table012.elementwiseProduct(table2));
+  }
+
+  @PerformanceTest(10)
+  public void testCachedProductRightAligned() {
+    checkSize(cached012.elementwiseProduct(table12));
+  }
+
+  @PerformanceTest(10)
+  public void testCachedProductMiddleMissing() {
+    checkSize(cached012.elementwiseProduct(table02));
+  }
+
+  @PerformanceTest(10)
+  public void testCachedInnerProduct() {
+    checkSize(cached012.innerProduct(table12));
+  }
+
+  @PerformanceTest(10)
+  public void testRelabelDimensions() {
+    checkSize(table012.relabelDimensions(new int[] {2, 0, 1}));
+  }
+
+  @PerformanceTest(3)
+  public void testCacheAllPermutations() {
+    checkSize(CachedSparseTensor.cacheAllPermutations(table012));
+  }
+
+  private static void checkSize(Tensor tensor) {
+    if (tensor.size() < 0) {
+      throw new IllegalStateException();
+    }
+  }
+
+  public static void main(String[] args) {
+    Runtime runtime = Runtime.getRuntime();
+    runtime.gc();
+    long before = runtime.totalMemory() - runtime.freeMemory();
+    PermutedSparseTensorPerformanceTest test = new PermutedSparseTensorPerformanceTest();
+    runtime.gc();
+    long after = runtime.totalMemory() - runtime.freeMemory();
+    System.out.println("Memory used by test tensors: " + ((after - before) / (1 << 20)) + " MB");
+    PerformanceTestRunner.run(test);
+  }
+}
@@ -0,0 +1,57 @@
+package com.jayantkrish.jklol.util;
+
+import com.jayantkrish.jklol.tensor.AppendOnlySparseTensorBuilder;
+import com.jayantkrish.jklol.tensor.SparseTensorBuilder;
+import com.jayantkrish.jklol.tensor.TensorBuilderPool;
+import com.jayantkrish.jklol.testing.PerformanceTest;
+import com.jayantkrish.jklol.testing.PerformanceTestCase;
+import com.jayantkrish.jklol.testing.PerformanceTestRunner;
+
+/**
+ * Compares building many small feature vectors with a new
+ * {@code SparseTensorBuilder} per vector against reusing builders from
+ * a {@link TensorBuilderPool}.
+ *
+ * @author jayantk
+ */
+public class TensorBuilderPoolPerformanceTest extends PerformanceTestCase {
+
+  private static final int NUM_VECTORS = 100000;
+  private static final int NUM_FEATURES = 50;
+  private static final int[] DIMS = {0};
+  private static final int[] SIZES = {1 << 20};
+
+  @PerformanceTest(5)
+  public void testSparseTensorBuilder() {
+    for (int i = 0; i < NUM_VECTORS; i++) {
+      SparseTensorBuilder builder = new SparseTensorBuilder(DIMS, SIZES);
+      for (int j = 0; j < NUM_FEATURES; j++) {
+        builder.incrementEntry(1.0, featureIndex(i, j));
+      }
+      builder.build();
+    }
+  }
+
+  @PerformanceTest(5)
+  public void testPooledBuilder() {
+    for (int i = 0; i < NUM_VECTORS; i++) {
+      AppendOnlySparseTensorBuilder builder = TensorBuilderPool.getSparseBuilder(DIMS, SIZES);
+      try {
+        for (int j = 0; j < NUM_FEATURES; j++) {
+          builder.incrementEntryByKeyNum(1.0, featureIndex(i, j));
+        }
+        builder.build();
+      } finally {
+        TensorBuilderPool.release(builder);
+      }
+    }
+  }
+
+  private static int featureIndex(int vector, int feature) {
+    return ((vector * 31 + feature) * 0x9E3779B1 >>> 12) % SIZES[0];
+  }
+
+  public static void main(String[] args) {
+    PerformanceTestRunner.run(new TensorBuilderPoolPerformanceTest());
+  }
+}
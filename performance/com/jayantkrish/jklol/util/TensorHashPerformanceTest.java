@@ -0,0 +1,99 @@
+package com.jayantkrish.jklol.util;
+
+import java.util.Random;
+
+import com.jayantkrish.jklol.tensor.RobinHoodTensorHash;
+import com.jayantkrish.jklol.tensor.SparseTensor;
+import com.jayantkrish.jklol.tensor.SparseTensorBuilder;
+import com.jayantkrish.jklol.tensor.SparseTensorHash;
+import com.jayantkrish.jklol.testing.PerformanceTest;
+import com.jayantkrish.jklol.testing.PerformanceTestCase;
+import com.jayantkrish.jklol.testing.PerformanceTestRunner;
+
+/**
+ * Compares the memory usage and lookup time of
+ * {@link SparseTensorHash} and {@link RobinHoodTensorHash} for a
+ * sparse tensor with 200,000 entries. (A {@code SparseTensorHash}
+ * for a tensor 10 times larger does not fit in a 6 GB heap.)
+ *
+ * @author jayantk
+ */
+public class TensorHashPerformanceTest extends PerformanceTestCase {
+
+  private static final int NUM_KEYS = 200000;
+  private static final int NUM_LOOKUPS = 1000000;
+
+  SparseTensor tensor;
+  SparseTensorHash binnedHash;
+  RobinHoodTensorHash robinHoodHash;
+
+  // Half of the looked up keys are in the tensor.
+  long[] lookupKeys;
+
+  public TensorHashPerformanceTest() {
+    Random random = new Random(0);
+    SparseTensorBuilder builder = new SparseTensorBuilder(new int[] {0, 1, 2},
+        new int[] {100000, 10000, 1000});
+    for (int i = 0; i < NUM_KEYS; i++) {
+      builder.put(new int[] {random.nextInt(100000), random.nextInt(10000), random.nextInt(1000)},
+          random.nextDouble());
+    }
+    tensor = builder.build();
+    binnedHash = SparseTensorHash.fromTensor(tensor);
+    robinHoodHash = RobinHoodTensorHash.fromTensor(tensor);
+
+    lookupKeys = new long[NUM_LOOKUPS];
+    long[] keyNums = tensor.getKeyNums();
+    for (int i = 0; i < NUM_LOOKUPS; i++) {
+      long key = keyNums[random.nextInt(keyNums.length)];
+      lookupKeys[i] = (i % 2 == 0) ? key : key + 1;
+    }
+  }
+
+  @PerformanceTest(10)
+  public void testSparseTensorHashGet() {
+    double total = 0.0;
+    for (int i = 0; i < lookupKeys.length; i++) {
+      total += binnedHash.get(lookupKeys[i]);
+    }
+    checkTotal(total);
+  }
+
+  @PerformanceTest(10)
+  public void testRobinHoodTensorHashGet() {
+    double total = 0.0;
+    for (int i = 0; i < lookupKeys.length; i++) {
+      total += robinHoodHash.get(lookupKeys[i]);
+    }
+    checkTotal(total);
+  }
+
+  @PerformanceTest(10)
+  public void testSparseTensorGet() {
+    double total = 0.0;
+    for (int i = 0; i < lookupKeys.length; i++) {
+      total += tensor.get(lookupKeys[i]);
+    }
+    checkTotal(total);
+  }
+
+  private static void checkTotal(double total) {
+    // Prevents the lookups from being optimized away.
+    if (Double.isNaN(total)) {
+      throw new IllegalStateException();
+    }
+  }
+
+  private static String megabytes(long numSlots) {
+    return String.format("%.1f MB", (numSlots * 16) / (1024.0 * 1024.0));
+  }
+
+  public static void main(String[] args) {
+    TensorHashPerformanceTest test = new TensorHashPerformanceTest();
+    System.out.println("SparseTensor: " + megabytes(test.tensor.size()));
+    System.out.println("SparseTensorHash: " + megabytes(test.binnedHash.getNumSlots()));
+    System.out.println("RobinHoodTensorHash: " + megabytes(test.robinHoodHash.getNumSlots())
+        + ", max probe distance " + test.robinHoodHash.getMaxProbeDistance());
+    PerformanceTestRunner.run(test);
+  }
+}
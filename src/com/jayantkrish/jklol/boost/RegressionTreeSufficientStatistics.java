@@ -85,6 +85,9 @@ public class RegressionTreeSufficientStatistics implements SufficientStatistics
   @Override
   public void makeDense() {}
   
+  @Override
+  public void trackModifiedEntries() {}
+
   @Override
   public void zeroOut() {}
 
@@ -111,6 +114,11 @@ public class RegressionTreeSufficientStatistics implements SufficientStatistics
     throw new UnsupportedOperationException();
   }
 
+  @Override
+  public void rescale(double amount) {
+    throw new UnsupportedOperationException();
+  }
+
   @Override
   public String getDescription() {
     StringBuilder sb = new StringBuilder();
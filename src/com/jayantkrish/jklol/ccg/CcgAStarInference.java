@@ -0,0 +1,209 @@
+package com.jayantkrish.jklol.ccg;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+import com.jayantkrish.jklol.ccg.chart.CcgAStarChart;
+import com.jayantkrish.jklol.ccg.chart.CcgAStarChart.AgendaItem;
+import com.jayantkrish.jklol.ccg.chart.ChartCost;
+import com.jayantkrish.jklol.ccg.chart.ChartEntry;
+import com.jayantkrish.jklol.nlpannotation.AnnotatedSentence;
+import com.jayantkrish.jklol.training.LogFunction;
+import com.jayantkrish.jklol.training.NullLogFunction;
+import com.jayantkrish.jklol.util.IntMultimap;
+
+/**
+ * Agenda-based A* search for the best CCG parse of a sentence.
+ * Chart entries are explored in order of their inside probability
+ * times an admissible upper bound on their outside probability, which
+ * is computed from the best lexicon entry for each word. The search
+ * stops as soon as a parse of the complete sentence is found, which
+ * is the best parse. Unlike {@link CcgCkyInference} with beam search,
+ * this search is exact; unlike exact CKY inference, it typically
+ * explores only a fraction of the chart. See:
+ * <p>
+ * A* CCG Parsing with a Supertag-factored Model. Mike Lewis and Mark
+ * Steedman. EMNLP 2014.
+ * <p>
+ * The heuristic is most effective when the weights of the parser's
+ * non-lexical features (e.g., binary rules and dependencies) are at
+ * most 1. Chart costs must be nonpositive.
+ *
+ * @author jayantk
+ */
+public class CcgAStarInference implements CcgInference {
+
+  // Maximum number of milliseconds to spend parsing a single sentence.
+  private final long maxParseTimeMillis;
+
+  // Maximum number of chart entries for a single sentence.
+  private final int maxChartSize;
+
+  public CcgAStarInference(long maxParseTimeMillis, int maxChartSize) {
+    this.maxParseTimeMillis = maxParseTimeMillis;
+    this.maxChartSize = maxChartSize;
+  }
+
+  /**
+   * Gets an A* inference algorithm with no time or chart size limits.
+   *
+   * @return
+   */
+  public static CcgAStarInference getDefault() {
+    return new CcgAStarInference(-1, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public CcgParse getBestParse(CcgParser parser, AnnotatedSentence sentence,
+      ChartCost chartFilter, LogFunction log) {
+    CcgAStarChart chart = new CcgAStarChart(sentence, maxChartSize);
+    if (search(parser, chart, sentence, chartFilter, log)) {
+      return chart.decodeBestParse(parser);
+    } else {
+      return null;
+    }
+  }
+
+  /**
+   * Returns a list containing the best parse of {@code sentence}, or
+   * an empty list if the sentence has no parse.
+   */
+  @Override
+  public List<CcgParse> beamSearch(CcgParser parser, AnnotatedSentence sentence,
+      ChartCost chartFilter, LogFunction log) {
+    CcgParse parse = getBestParse(parser, sentence, chartFilter, log);
+    if (parse != null) {
+      return Lists.newArrayList(parse);
+    } else {
+      return Collections.emptyList();
+    }
+  }
+
+  /**
+   * Runs A* search to find the best parse of {@code sentence} using
+   * {@code chart}. Returns {@code true} if a parse was found.
+   *
+   * @param parser
+   * @param chart
+   * @param sentence
+   * @param chartFilter
+   * @param log
+   * @return
+   */
+  public boolean search(CcgParser parser, CcgAStarChart chart, AnnotatedSentence sentence,
+      ChartCost chartFilter, LogFunction log) {
+    if (log == null) {
+      log = new NullLogFunction();
+    }
+
+    log.startTimer("ccg_parse/initialize_chart");
+    parser.initializeChart(chart, sentence, chartFilter);
+    parser.initializeChartTerminals(chart, sentence, parser.canSkipWords());
+    boolean started = chart.startSearch(parser);
+    log.stopTimer("ccg_parse/initialize_chart");
+    if (!started) {
+      chart.setFinishedParsing(true);
+      return false;
+    }
+
+    log.startTimer("ccg_parse/astar_search");
+    int numTerminals = chart.size();
+    long endTime = System.currentTimeMillis() + maxParseTimeMillis;
+    AgendaItem item;
+    boolean foundParse = false;
+    boolean finishedParsing = true;
+    while ((item = chart.pollAgenda()) != null) {
+      if (item.isRoot()) {
+        chart.setBestParse(item);
+        foundParse = true;
+        break;
+      }
+
+      int index = chart.addAgendaItemToChart(item);
+      if (index == -1) {
+        // An equivalent entry with a higher probability is already
+        // in the chart.
+        continue;
+      }
+
+      int spanStart = item.getSpanStart();
+      int spanEnd = item.getSpanEnd();
+      if (spanStart == 0 && spanEnd == numTerminals - 1) {
+        offerRootEntries(parser, chart, item.getEntry(), item.getProbability());
+      } else {
+        combineWithNeighbors(parser, chart, spanStart, spanEnd, index, log);
+      }
+
+      if ((maxParseTimeMillis >= 0 && System.currentTimeMillis() > endTime)
+          || chart.getTotalNumChartEntries() > chart.getMaxChartEntries()) {
+        finishedParsing = false;
+        break;
+      }
+    }
+    log.stopTimer("ccg_parse/astar_search");
+
+    chart.setFinishedParsing(finishedParsing);
+    if (!finishedParsing) {
+      System.out.println("CCG Parser Timeout");
+    }
+    return foundParse;
+  }
+
+  /**
+   * Places root entries for {@code entry}, which spans the entire
+   * sentence, on the agenda. As in CKY parsing, unary rules may be
+   * applied to {@code entry} before scoring its root.
+   */
+  private void offerRootEntries(CcgParser parser, CcgAStarChart chart, ChartEntry entry,
+      double prob) {
+    int spanEnd = chart.size() - 1;
+    chart.setCollectingRootEntries(true);
+    chart.addChartEntryForSpan(entry, prob, 0, spanEnd, parser.getSyntaxVarType());
+    parser.applyUnaryRules(chart, entry, prob, 0, spanEnd);
+    List<ChartEntry> rootEntries = Lists.newArrayList(chart.getRootEntries());
+    List<Double> rootEntryProbs = Lists.newArrayList(chart.getRootEntryProbs());
+    chart.setCollectingRootEntries(false);
+
+    for (int i = 0; i < rootEntries.size(); i++) {
+      ChartEntry rootEntry = rootEntries.get(i);
+      chart.offerRootEntry(rootEntry, rootEntryProbs.get(i)
+          * parser.scoreRootEntry(rootEntry, chart));
+    }
+  }
+
+  /**
+   * Combines the chart entry at {@code index} of the given span with
+   * every chart entry for an adjacent span.
+   */
+  private void combineWithNeighbors(CcgParser parser, CcgAStarChart chart, int spanStart,
+      int spanEnd, int index, LogFunction log) {
+    ChartEntry[] entries = chart.getChartEntriesForSpan(spanStart, spanEnd);
+    double[] probs = chart.getChartEntryProbsForSpan(spanStart, spanEnd);
+    IntMultimap entryTypes = IntMultimap.createFromUnsortedArrays(
+        new int[] {entries[index].getHeadedSyntax()}, new int[] {index}, 0);
+
+    for (int leftSpanStart = 0; leftSpanStart < spanStart; leftSpanStart++) {
+      int leftSpanEnd = spanStart - 1;
+      if (chart.getNumChartEntriesForSpan(leftSpanStart, leftSpanEnd) > 0) {
+        parser.applySearchMoves(chart, leftSpanStart, leftSpanEnd, spanStart, spanEnd,
+            chart.getChartEntriesForSpan(leftSpanStart, leftSpanEnd),
+            chart.getChartEntryProbsForSpan(leftSpanStart, leftSpanEnd),
+            chart.getChartEntriesBySyntacticCategoryForSpan(leftSpanStart, leftSpanEnd),
+            entries, probs, entryTypes, log);
+      }
+    }
+
+    int numTerminals = chart.size();
+    for (int rightSpanEnd = spanEnd + 1; rightSpanEnd < numTerminals; rightSpanEnd++) {
+      int rightSpanStart = spanEnd + 1;
+      if (chart.getNumChartEntriesForSpan(rightSpanStart, rightSpanEnd) > 0) {
+        parser.applySearchMoves(chart, spanStart, spanEnd, rightSpanStart, rightSpanEnd,
+            entries, probs, entryTypes,
+            chart.getChartEntriesForSpan(rightSpanStart, rightSpanEnd),
+            chart.getChartEntryProbsForSpan(rightSpanStart, rightSpanEnd),
+            chart.getChartEntriesBySyntacticCategoryForSpan(rightSpanStart, rightSpanEnd), log);
+      }
+    }
+  }
+}
@@ -0,0 +1,378 @@
+package com.jayantkrish.jklol.ccg;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.jayantkrish.jklol.ccg.chart.CcgBeamSearchChart;
+import com.jayantkrish.jklol.ccg.chart.CcgPackedBeamSearchChart;
+import com.jayantkrish.jklol.ccg.chart.ChartCost;
+import com.jayantkrish.jklol.nlpannotation.AnnotatedSentence;
+import com.jayantkrish.jklol.parallel.ForkJoinPools;
+import com.jayantkrish.jklol.training.LogFunction;
+import com.jayantkrish.jklol.training.NullLogFunction;
+
+/**
+ * Parses large numbers of sentences with a {@code CcgParser} by
+ * parsing several sentences in parallel. Each worker thread reuses a
+ * single beam search chart for all of the sentences it parses, which
+ * grows to the length of the longest sentence seen so far. Charts are
+ * also reused across calls to {@link #beamSearch}, so parsing
+ * many batches with the same {@code CcgBatchParser} allocates few
+ * charts. By default, workers use {@link CcgPackedBeamSearchChart},
+ * which only allocates objects for the entries that remain in the
+ * beam. Workers run on the shared pool (see {@link ForkJoinPools}).
+ * <p>
+ * Parses can either be collected into a {@link BatchParseResult}, or
+ * passed to a {@link ParseCallback} as soon as each sentence is
+ * parsed, so that long streams of sentences can be parsed without
+ * retaining their parses. This class records the time taken to parse
+ * each sentence, and reports percentiles of these latencies for each
+ * batch.
+ * 
+ * @author jayantk
+ */
+public class CcgBatchParser {
+
+  private final CcgParser parser;
+
+  // Optional constraint to use during inference. Null if
+  // no constraints are imposed on the search.
+  private final ChartCost searchFilter;
+  private final int beamSize;
+  private final long maxParseTimeMillis;
+  private final int maxChartSize;
+
+  // Number of sentences to parse in parallel.
+  private final int numThreads;
+  // If true, parse using CcgPackedBeamSearchChart instead of
+  // CcgBeamSearchChart.
+  private final boolean usePackedChart;
+
+  // One chart per worker, reused across sentences and batches.
+  private final CcgBeamSearchChart[] charts;
+
+  /**
+   * Creates a batch parser that performs a beam search with
+   * {@code parser} on {@code numThreads} sentences in parallel, using
+   * {@link CcgPackedBeamSearchChart}.
+   * 
+   * @param parser
+   * @param searchFilter May be {@code null}, in which case all beam
+   * entries are retained.
+   * @param beamSize
+   * @param maxParseTimeMillis Maximum amount of time to spend parsing
+   * each sentence, or -1 for no limit.
+   * @param maxChartSize Maximum number of chart entries for each sentence.
+   * @param numThreads
+   */
+  public CcgBatchParser(CcgParser parser, ChartCost searchFilter, int beamSize,
+      long maxParseTimeMillis, int maxChartSize, int numThreads) {
+    this(parser, searchFilter, beamSize, maxParseTimeMillis, maxChartSize, numThreads, true);
+  }
+
+  /**
+   * Same as above, except sentences are parsed using
+   * {@link CcgBeamSearchChart} if {@code usePackedChart} is
+   * {@code false}. Both charts produce identical parses.
+   * 
+   * @param parser
+   * @param searchFilter
+   * @param beamSize
+   * @param maxParseTimeMillis
+   * @param maxChartSize
+   * @param numThreads
+   * @param usePackedChart
+   */
+  public CcgBatchParser(CcgParser parser, ChartCost searchFilter, int beamSize,
+      long maxParseTimeMillis, int maxChartSize, int numThreads, boolean usePackedChart) {
+    Preconditions.checkArgument(numThreads > 0);
+    this.parser = Preconditions.checkNotNull(parser);
+    this.searchFilter = searchFilter;
+    this.beamSize = beamSize;
+    this.maxParseTimeMillis = maxParseTimeMillis;
+    this.maxChartSize = maxChartSize;
+    this.numThreads = numThreads;
+    this.usePackedChart = usePackedChart;
+
+    this.charts = new CcgBeamSearchChart[numThreads];
+  }
+
+  /**
+   * Creates a batch parser with no time or chart size limits.
+   * 
+   * @param parser
+   * @param beamSize
+   * @param numThreads
+   * @return
+   */
+  public static CcgBatchParser create(CcgParser parser, int beamSize, int numThreads) {
+    return new CcgBatchParser(parser, null, beamSize, -1, Integer.MAX_VALUE, numThreads);
+  }
+
+  /**
+   * Performs a beam search for each sentence in {@code sentences}.
+   * Sentences are read from {@code sentences} on demand by the worker
+   * threads. The returned parses are in the same order as
+   * {@code sentences}, and are identical to those returned by
+   * {@link CcgParser#beamSearch}.
+   * 
+   * @param sentences
+   * @return
+   */
+  public BatchParseResult beamSearch(Iterable<AnnotatedSentence> sentences) {
+    final List<List<CcgParse>> parses = Lists.newArrayList();
+    ParseLatencies latencies = beamSearch(sentences, new ParseCallback() {
+      @Override
+      public void parsed(int index, AnnotatedSentence sentence, List<CcgParse> sentenceParses) {
+        synchronized (parses) {
+          while (parses.size() <= index) {
+            parses.add(null);
+          }
+          parses.set(index, sentenceParses);
+        }
+      }
+    });
+    return new BatchParseResult(parses, latencies);
+  }
+
+  /**
+   * Performs a beam search for each sentence in {@code sentences},
+   * passing the parses of each sentence to {@code callback} as soon
+   * as they are found. Sentences are read from {@code sentences} on
+   * demand by the worker threads, and neither the sentences nor their
+   * parses are retained by this method. {@code callback} is invoked
+   * by the worker threads, possibly concurrently, and sentences may
+   * finish out of order.
+   * 
+   * @param sentences
+   * @param callback
+   * @return the time taken to parse each sentence.
+   */
+  public synchronized ParseLatencies beamSearch(Iterable<AnnotatedSentence> sentences,
+      ParseCallback callback) {
+    SentenceSource source = new SentenceSource(sentences.iterator());
+    List<ParseWorker> workers = Lists.newArrayListWithCapacity(numThreads);
+    for (int i = 0; i < numThreads; i++) {
+      workers.add(new ParseWorker(i, source, callback));
+    }
+
+    if (numThreads == 1) {
+      workers.get(0).call();
+    } else {
+      try {
+        List<Future<Void>> results = ForkJoinPools.getSharedPool().invokeAll(workers);
+        for (Future<Void> result : results) {
+          result.get();
+        }
+      } catch (InterruptedException e) {
+        e.printStackTrace();
+        throw new RuntimeException(e);
+      } catch (ExecutionException e) {
+        e.printStackTrace();
+        e.getCause().printStackTrace();
+        throw new RuntimeException(e);
+      }
+    }
+
+    return source.getLatencies();
+  }
+
+  /**
+   * Receives the parses of each sentence of a batch.
+   * 
+   * @author jayantk
+   */
+  public static interface ParseCallback {
+
+    /**
+     * Called with the beam search parses of the {@code index}th
+     * sentence of a batch, {@code sentence}. {@code parses} is empty
+     * if parsing timed out.
+     * 
+     * @param index
+     * @param sentence
+     * @param parses
+     */
+    public void parsed(int index, AnnotatedSentence sentence, List<CcgParse> parses);
+  }
+
+  /**
+   * The time taken to parse each sentence of a batch.
+   * 
+   * @author jayantk
+   */
+  public static class ParseLatencies {
+    private final long[] latencyNanos;
+    private final long[] sortedLatencyNanos;
+
+    public ParseLatencies(long[] latencyNanos) {
+      this.latencyNanos = latencyNanos;
+      this.sortedLatencyNanos = Arrays.copyOf(latencyNanos, latencyNanos.length);
+      Arrays.sort(sortedLatencyNanos);
+    }
+
+    public int getNumSentences() {
+      return latencyNanos.length;
+    }
+
+    /**
+     * Gets the time taken to parse the {@code index}th sentence, in
+     * milliseconds.
+     * 
+     * @param index
+     * @return
+     */
+    public double getLatencyMillis(int index) {
+      return latencyNanos[index] / 1e6;
+    }
+
+    /**
+     * Gets the {@code percentile}th percentile of the per-sentence
+     * parsing times, in milliseconds, using the nearest-rank method.
+     * {@code percentile} must be between 0 and 100.
+     * 
+     * @param percentile
+     * @return
+     */
+    public double getLatencyPercentileMillis(double percentile) {
+      Preconditions.checkArgument(percentile >= 0 && percentile <= 100);
+      if (sortedLatencyNanos.length == 0) {
+        return 0.0;
+      }
+      int rank = (int) Math.ceil((percentile / 100.0) * sortedLatencyNanos.length);
+      return sortedLatencyNanos[Math.max(rank - 1, 0)] / 1e6;
+    }
+
+    /**
+     * Gets a human-readable summary of the per-sentence parsing times.
+     * 
+     * @return
+     */
+    public String getLatencySummary() {
+      return String.format("%d sentences, latency (ms) p50: %.2f p90: %.2f p99: %.2f max: %.2f",
+          getNumSentences(), getLatencyPercentileMillis(50), getLatencyPercentileMillis(90),
+          getLatencyPercentileMillis(99), getLatencyPercentileMillis(100));
+    }
+
+    @Override
+    public String toString() {
+      return getLatencySummary();
+    }
+  }
+
+  /**
+   * The parses of a batch of sentences, along with the time taken to
+   * parse each sentence.
+   * 
+   * @author jayantk
+   */
+  public static class BatchParseResult extends ParseLatencies {
+    private final List<List<CcgParse>> parses;
+
+    public BatchParseResult(List<List<CcgParse>> parses, ParseLatencies latencies) {
+      super(latencies.latencyNanos);
+      Preconditions.checkArgument(parses.size() == latencies.getNumSentences());
+      this.parses = Collections.unmodifiableList(parses);
+    }
+
+    /**
+     * Gets the beam search parses of each sentence, in the order
+     * the sentences were provided. The list of parses for a sentence
+     * is empty if parsing timed out.
+     * 
+     * @return
+     */
+    public List<List<CcgParse>> getParses() {
+      return parses;
+    }
+  }
+
+  /**
+   * Provides sentences to worker threads, along with their index
+   * in the batch, and records the time taken to parse each sentence.
+   */
+  private static class SentenceSource {
+    private final Iterator<AnnotatedSentence> sentences;
+    private int nextIndex;
+
+    private long[] latencies;
+
+    public SentenceSource(Iterator<AnnotatedSentence> sentences) {
+      this.sentences = sentences;
+      this.nextIndex = 0;
+
+      this.latencies = new long[16];
+    }
+
+    /**
+     * Gets the next sentence to parse and stores its index in
+     * {@code index}, or returns {@code null} if no sentences remain.
+     */
+    public synchronized AnnotatedSentence next(int[] index) {
+      if (sentences.hasNext()) {
+        index[0] = nextIndex;
+        nextIndex++;
+        if (nextIndex > latencies.length) {
+          latencies = Arrays.copyOf(latencies, latencies.length * 2);
+        }
+        return sentences.next();
+      }
+      return null;
+    }
+
+    /**
+     * Records the time taken to parse the {@code index}th sentence.
+     */
+    public synchronized void setLatency(int index, long latencyNanos) {
+      latencies[index] = latencyNanos;
+    }
+
+    public synchronized ParseLatencies getLatencies() {
+      return new ParseLatencies(Arrays.copyOf(latencies, nextIndex));
+    }
+  }
+
+  private class ParseWorker implements Callable<Void> {
+    private final int workerNum;
+    private final SentenceSource source;
+    private final ParseCallback callback;
+    private final LogFunction log;
+
+    public ParseWorker(int workerNum, SentenceSource source, ParseCallback callback) {
+      this.workerNum = workerNum;
+      this.source = source;
+      this.callback = callback;
+      this.log = new NullLogFunction();
+    }
+
+    @Override
+    public Void call() {
+      int[] index = new int[1];
+      AnnotatedSentence sentence;
+      while ((sentence = source.next(index)) != null) {
+        long startTime = System.nanoTime();
+        if (charts[workerNum] == null) {
+          charts[workerNum] = usePackedChart
+              ? new CcgPackedBeamSearchChart(sentence, maxChartSize, beamSize)
+              : new CcgBeamSearchChart(sentence, maxChartSize, beamSize);
+        }
+        // Each sentence is parsed by a single thread. Parallelism
+        // comes from parsing multiple sentences at once.
+        List<CcgParse> parses = parser.beamSearch(charts[workerNum], sentence, searchFilter,
+            log, maxParseTimeMillis, 1);
+        long latency = System.nanoTime() - startTime;
+
+        source.setLatency(index[0], latency);
+        callback.parsed(index[0], sentence, parses);
+      }
+      return null;
+    }
+  }
+}
@@ -2,6 +2,8 @@ package com.jayantkrish.jklol.ccg;
 
 import java.util.List;
 
+import com.jayantkrish.jklol.ccg.chart.CcgBeamSearchChart;
+import com.jayantkrish.jklol.ccg.chart.CcgPackedBeamSearchChart;
 import com.jayantkrish.jklol.ccg.chart.ChartCost;
 import com.jayantkrish.jklol.ccg.chart.SumChartCost;
 import com.jayantkrish.jklol.nlpannotation.AnnotatedSentence;
@@ -32,13 +34,36 @@ public class CcgCkyInference implements CcgInference {
   // Number of threads to use while parsing.
   private final int numThreads;
 
+  // If true, beam search uses a CcgPackedBeamSearchChart, which
+  // allocates fewer objects than CcgBeamSearchChart.
+  private final boolean usePackedChart;
+
   public CcgCkyInference(ChartCost searchFilter, int beamSize, long maxParseTimeMillis,
       int maxChartSize, int numThreads) {
+    this(searchFilter, beamSize, maxParseTimeMillis, maxChartSize, numThreads, true);
+  }
+
+  /**
+   * If {@code usePackedChart} is {@code true} (the default), beam
+   * search stores chart entries using
+   * {@link CcgPackedBeamSearchChart}, which produces the same parses
+   * as {@link CcgBeamSearchChart} with less garbage collection.
+   * 
+   * @param searchFilter
+   * @param beamSize
+   * @param maxParseTimeMillis
+   * @param maxChartSize
+   * @param numThreads
+   * @param usePackedChart
+   */
+  public CcgCkyInference(ChartCost searchFilter, int beamSize, long maxParseTimeMillis,
+      int maxChartSize, int numThreads, boolean usePackedChart) {
     this.searchFilter = searchFilter;
     this.beamSize = beamSize;
     this.maxParseTimeMillis = maxParseTimeMillis;
     this.maxChartSize = maxChartSize;
     this.numThreads = numThreads;
+    this.usePackedChart = usePackedChart;
   }
 
   /**
@@ -51,6 +76,21 @@ public class CcgCkyInference implements CcgInference {
     return new CcgCkyInference(null, beamSize, -1, Integer.MAX_VALUE, 1);
   }
 
+  /**
+   * Gets a parser that performs beam search on batches of sentences
+   * using this inference algorithm's configuration, parsing
+   * {@code numThreads} sentences in parallel. Each sentence is parsed
+   * using a single thread.
+   * 
+   * @param parser
+   * @param numThreads
+   * @return
+   */
+  public CcgBatchParser getBatchParser(CcgParser parser, int numThreads) {
+    return new CcgBatchParser(parser, searchFilter, beamSize, maxParseTimeMillis,
+        maxChartSize, numThreads, usePackedChart);
+  }
+
   @Override
   public CcgParse getBestParse(CcgParser parser, AnnotatedSentence sentence,
       ChartCost chartFilter, LogFunction log) {
@@ -65,7 +105,12 @@ public class CcgCkyInference implements CcgInference {
       ChartCost chartFilter, LogFunction log) {
     ChartCost filter = SumChartCost.create(searchFilter, chartFilter);
 
-    return parser.beamSearch(sentence, beamSize, filter, log,
-        maxParseTimeMillis, maxChartSize, numThreads);
+    if (usePackedChart) {
+      CcgBeamSearchChart chart = new CcgPackedBeamSearchChart(sentence, maxChartSize, beamSize);
+      return parser.beamSearch(chart, sentence, filter, log, maxParseTimeMillis, numThreads);
+    } else {
+      return parser.beamSearch(sentence, beamSize, filter, log,
+          maxParseTimeMillis, maxChartSize, numThreads);
+    }
   }
 }
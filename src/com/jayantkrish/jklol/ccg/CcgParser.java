@@ -1,14 +1,18 @@
 package com.jayantkrish.jklol.ccg;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.HashMultimap;
@@ -22,6 +26,10 @@ import com.google.common.primitives.Longs;
 import com.jayantkrish.jklol.ccg.chart.CcgBeamSearchChart;
 import com.jayantkrish.jklol.ccg.chart.CcgChart;
 import com.jayantkrish.jklol.ccg.chart.CcgExactHashTableChart;
+import com.jayantkrish.jklol.ccg.chart.CcgPackedBeamSearchChart;
+import com.jayantkrish.jklol.ccg.chart.CcgSpanCache;
+import com.jayantkrish.jklol.ccg.chart.CcgSpanCache.CachedSpan;
+import com.jayantkrish.jklol.ccg.chart.CcgSpanCache.SpanKey;
 import com.jayantkrish.jklol.ccg.chart.ChartCost;
 import com.jayantkrish.jklol.ccg.chart.ChartEntry;
 import com.jayantkrish.jklol.ccg.lexicon.CcgLexicon;
@@ -30,9 +38,10 @@ import com.jayantkrish.jklol.models.DiscreteFactor;
 import com.jayantkrish.jklol.models.DiscreteVariable;
 import com.jayantkrish.jklol.models.VariableNumMap;
 import com.jayantkrish.jklol.nlpannotation.AnnotatedSentence;
-import com.jayantkrish.jklol.tensor.SparseTensor;
+import com.jayantkrish.jklol.parallel.ForkJoinPools;
 import com.jayantkrish.jklol.tensor.Tensor;
 import com.jayantkrish.jklol.tensor.TensorHash;
+import com.jayantkrish.jklol.tensor.Tensors;
 import com.jayantkrish.jklol.training.LogFunction;
 import com.jayantkrish.jklol.training.NullLogFunction;
 import com.jayantkrish.jklol.util.ArrayUtils;
@@ -48,6 +57,12 @@ public class CcgParser implements Serializable {
 
   private static final long serialVersionUID = 1L;
 
+  // Shared worker pools for parallel parsing, keyed by number of threads.
+
+  // Source of unique parser versions, which identify the parser that
+  // created each span in a span cache.
+  private static final AtomicLong nextVersion = new AtomicLong();
+
   // Parameters for encoding (filled and unfilled) dependency
   // structures in longs. These are the size of each field, in bits.
   private static final int PREDICATE_BITS = 16;
@@ -219,6 +234,12 @@ public class CcgParser implements Serializable {
 
   private final boolean normalFormOnly;
 
+  // Optional cache of completed chart spans. Parsers created from
+  // this one share its cache; their different versions invalidate
+  // the cached spans.
+  private transient long version;
+  private transient volatile CcgSpanCache spanCache;
+
   public CcgParser(List<CcgLexicon> lexicons, List<LexiconScorer> lexiconScorers,
       VariableNumMap wordSkipWordVar, DiscreteFactor wordSkipFactor,
       VariableNumMap dependencyHeadVar, VariableNumMap dependencySyntaxVar,
@@ -386,6 +407,14 @@ public class CcgParser implements Serializable {
     }
 
     this.normalFormOnly = normalFormOnly;
+    this.version = nextVersion.getAndIncrement();
+    this.spanCache = null;
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    // Versions are only unique within a single JVM.
+    this.version = nextVersion.getAndIncrement();
   }
 
   public List<CcgLexicon> getLexicons() {
@@ -404,7 +433,7 @@ public class CcgParser implements Serializable {
     List<CcgLexicon> newLexicons = Lists.newArrayList(lexicons);
     newLexicons.set(index, newLexicon);
 
-    return new CcgParser(newLexicons, lexiconScorers, wordSkipWordVar, wordSkipFactor,
+    CcgParser newParser = new CcgParser(newLexicons, lexiconScorers, wordSkipWordVar, wordSkipFactor,
         dependencyHeadVar, dependencySyntaxVar, dependencyArgNumVar, dependencyArgVar,
         dependencyHeadPosVar, dependencyArgPosVar, dependencyDistribution, wordDistanceVar,
         wordDistanceFactor, puncDistanceVar, puncDistanceFactor, puncTagSet, verbDistanceVar,
@@ -413,8 +442,37 @@ public class CcgParser implements Serializable {
         headedBinaryPredicateVar, headedBinaryPosVar, headedBinaryRuleDistribution,
         searchMoveVar, compiledSyntaxDistribution, rootSyntaxVar, rootPredicateVar,
         rootPosVar, rootSyntaxDistribution, headedRootSyntaxDistribution, normalFormOnly);
+    newParser.spanCache = spanCache;
+    return newParser;
   }
-  
+
+  /**
+   * Gets the cache of completed chart spans used by this parser,
+   * or {@code null} if spans are not cached.
+   * 
+   * @return
+   */
+  public CcgSpanCache getSpanCache() {
+    return spanCache;
+  }
+
+  /**
+   * Sets the cache of completed chart spans used by this parser.
+   * During CKY parsing, each span of the chart whose words, POS tags
+   * and position match a cached span is copied from the cache
+   * instead of being computed. Spans are not cached when parsing
+   * with a {@code ChartCost}. Parsers created by
+   * {@link #replaceLexicon} and {@link #replaceSyntaxDistribution}
+   * share this cache, and using them invalidates the spans cached by
+   * this parser. {@code spanCache} may be {@code null}, in which
+   * case no spans are cached.
+   * 
+   * @param spanCache
+   */
+  public void setSpanCache(CcgSpanCache spanCache) {
+    this.spanCache = spanCache;
+  }
+
   public DiscreteFactor getWordSkipFactor() {
     return wordSkipFactor;
   }
@@ -486,7 +544,7 @@ public class CcgParser implements Serializable {
   }
 
   public CcgParser replaceSyntaxDistribution(DiscreteFactor newCompiledSyntaxDistribution) {
-    return new CcgParser(lexicons, lexiconScorers, wordSkipWordVar, wordSkipFactor,
+    CcgParser newParser = new CcgParser(lexicons, lexiconScorers, wordSkipWordVar, wordSkipFactor,
         dependencyHeadVar, dependencySyntaxVar, dependencyArgNumVar, dependencyArgVar,
         dependencyHeadPosVar, dependencyArgPosVar, dependencyDistribution,
         wordDistanceVar, wordDistanceFactor, puncDistanceVar, puncDistanceFactor, puncTagSet,
@@ -495,6 +553,8 @@ public class CcgParser implements Serializable {
         headedBinaryPredicateVar, headedBinaryPosVar, headedBinaryRuleDistribution,
         searchMoveVar, newCompiledSyntaxDistribution, rootSyntaxVar, rootPredicateVar, rootPosVar, 
         rootSyntaxDistribution, headedRootSyntaxDistribution, normalFormOnly);
+    newParser.spanCache = spanCache;
+    return newParser;
   }
 
   public DiscreteFactor getBinaryRuleDistribution() {
@@ -542,6 +602,29 @@ public class CcgParser implements Serializable {
   public List<CcgParse> beamSearch(AnnotatedSentence input, int beamSize, ChartCost beamFilter,
       LogFunction log, long maxParseTimeMillis, int maxChartSize, int numThreads) {
     CcgBeamSearchChart chart = new CcgBeamSearchChart(input, maxChartSize, beamSize);
+    return beamSearch(chart, input, beamFilter, log, maxParseTimeMillis, numThreads);
+  }
+
+  /**
+   * Performs a beam search to find the best CCG parses of
+   * {@code input} using {@code chart}, which is first reset to parse
+   * {@code input}. The beam size and maximum chart size are determined
+   * by {@code chart}. Reusing a chart to parse many sentences reduces
+   * the cost of allocating charts.
+   * 
+   * @param chart
+   * @param input
+   * @param beamFilter May be {@code null}, in which case all beam
+   * entries are retained.
+   * @param log
+   * @param maxParseTimeMillis
+   * @param numThreads
+   * @return
+   */
+  public List<CcgParse> beamSearch(CcgBeamSearchChart chart, AnnotatedSentence input,
+      ChartCost beamFilter, LogFunction log, long maxParseTimeMillis, int numThreads) {
+    chart.reset(input, chart.getMaxChartEntries());
+    int beamSize = chart.getBeamSize();
     parseCommon(chart, input, beamFilter, log, maxParseTimeMillis, numThreads);
     
     if (chart.isFinishedParsing()) {
@@ -604,7 +687,10 @@ public class CcgParser implements Serializable {
 
     log.startTimer("ccg_parse/calculate_inside_beam");
     boolean finishedParsing = false;
-    if (numThreads <= 1) {
+    if (numThreads <= 1 || ForkJoinPools.inSharedPool()) {
+      // Parses nested within tasks of the shared pool (e.g., batch
+      // parsing) are single threaded, as waiting for the chart's spans
+      // could deadlock the pool.
       finishedParsing = calculateInsideBeamSingleThreaded(chart, log, maxParseTimeMillis);
     } else {
       finishedParsing = calculateInsideBeamParallel(chart, log, maxParseTimeMillis, numThreads);
@@ -640,14 +726,24 @@ public class CcgParser implements Serializable {
     chart.setChartCost(chartFilter);
 
     // Create one accumulator per token in the sentence. This permits
-    // parsing in parallel while reusing the accumulators.
-    chart.setAssignmentVarIndexAccumulator(new int[input.size()][MAX_CHART_VAR_INDEX]);
-    chart.setAssignmentAccumulator(new long[input.size()][MAX_CHART_ASSIGNMENTS]);
-    chart.setFilledDepAccumulator(new long[input.size()][MAX_CHART_DEPS]);
-    chart.setUnfilledDepVarIndexAccumulator(new int[input.size()][MAX_CHART_VAR_INDEX]);
-    chart.setUnfilledDepAccumulator(new long[input.size()][MAX_CHART_DEPS]);
-    chart.setDepLongCache(new long[input.size()]);
-    chart.setDepProbCache(new double[input.size()]);
+    // parsing in parallel while reusing the accumulators. Charts that
+    // are reused across sentences keep their accumulators if they are
+    // large enough.
+    if (chart.getAssignmentAccumulator() == null
+        || chart.getAssignmentAccumulator().length < numWords) {
+      chart.setAssignmentVarIndexAccumulator(new int[numWords][MAX_CHART_VAR_INDEX]);
+      chart.setAssignmentAccumulator(new long[numWords][MAX_CHART_ASSIGNMENTS]);
+      chart.setFilledDepAccumulator(new long[numWords][MAX_CHART_DEPS]);
+      chart.setUnfilledDepVarIndexAccumulator(new int[numWords][MAX_CHART_VAR_INDEX]);
+      chart.setUnfilledDepAccumulator(new long[numWords][MAX_CHART_DEPS]);
+      chart.setDepLongCache(new long[numWords]);
+      chart.setDepProbCache(new double[numWords]);
+    } else {
+      // Dependency probabilities depend on the sentence, so cached
+      // values from previous sentences must be cleared.
+      Arrays.fill(chart.getDepLongCache(), 0L);
+      Arrays.fill(chart.getDepProbCache(), 0.0);
+    }
   }
 
   public void initializeChartTerminals(CcgChart chart, AnnotatedSentence sentence, boolean wordSkip) {
@@ -840,6 +936,102 @@ public class CcgParser implements Serializable {
     return rootProb * headedRootProb;
   }
 
+  /**
+   * Gets the logarithm of an upper bound on the weight that a
+   * single application of a binary rule contributes to a parse,
+   * excluding the weights of the combined chart entries and of the
+   * filled dependencies. This weight includes the weights of the
+   * binary rule, any unary rules applied to its arguments, and the
+   * head of the result. Used to compute admissible heuristics for A*
+   * search.
+   * <p>
+   * The result's head is weighted once per head assignment, so the
+   * bound depends on {@code maxAssignments}, an upper bound on the
+   * number of assignments of a chart entry's variable. The number of
+   * assignments only matters if some weight is greater than 1.
+   *
+   * @param maxAssignments
+   * @return
+   */
+  public double getLogBinaryRuleWeightUpperBound(int maxAssignments) {
+    double maxUnaryWeight = Math.max(1.0, Tensors.getMaxValueUpperBound(unaryRuleTensor));
+    double maxHeadedWeight = Math.max(1.0,
+        Tensors.getMaxValueUpperBound(headedBinaryRuleTensor));
+
+    return Math.log(Tensors.getMaxValueUpperBound(binaryRuleDistribution.getWeights()))
+        + (2 * Math.log(maxUnaryWeight))
+        + (Math.min(maxAssignments, MAX_CHART_ASSIGNMENTS) * Math.log(maxHeadedWeight));
+  }
+
+  /**
+   * Gets the logarithm of an upper bound on the weight of a single
+   * filled dependency, including its distance features. The bound is
+   * at least 0, as a dependency may not be filled. Used to compute
+   * admissible heuristics for A* search.
+   *
+   * @return
+   */
+  public double getLogDependencyWeightUpperBound() {
+    return Math.log(Math.max(1.0, Tensors.getMaxValueUpperBound(dependencyTensor)
+        * Tensors.getMaxValueUpperBound(wordDistanceTensor)
+        * Tensors.getMaxValueUpperBound(puncDistanceTensor)
+        * Tensors.getMaxValueUpperBound(verbDistanceTensor)));
+  }
+
+  /**
+   * Gets the maximum number of unfilled dependencies created by a
+   * single application of a binary rule.
+   *
+   * @return
+   */
+  public int getMaxCombinatorDependencies() {
+    int maxCombinatorDeps = 0;
+    for (Object value : searchMoveType.getValues()) {
+      Combinator combinator = ((CcgSearchMove) value).getBinaryCombinator();
+      maxCombinatorDeps = Math.max(maxCombinatorDeps, combinator.getObjects().length);
+    }
+    return maxCombinatorDeps;
+  }
+
+  /**
+   * Gets an upper bound on the number of dependencies filled by
+   * {@code numBinaryRules} binary rule applications. Each unfilled
+   * dependency, whether it belongs to a terminal or is created by a
+   * binary rule, is filled at most once, by the assignments of a
+   * single variable.
+   *
+   * @param maxTerminalDeps upper bound on the total number of
+   * unfilled dependencies of the terminals
+   * @param maxAssignments upper bound on the number of assignments
+   * of a chart entry's variable
+   * @param maxCombinatorDeps see {@link #getMaxCombinatorDependencies()}
+   * @param numBinaryRules
+   * @return
+   */
+  public long getMaxFilledDependencies(int maxTerminalDeps, int maxAssignments,
+      int maxCombinatorDeps, int numBinaryRules) {
+    long maxUnfilledDeps = maxTerminalDeps + (((long) maxCombinatorDeps) * numBinaryRules);
+    return Math.min(maxUnfilledDeps * Math.min(maxAssignments, MAX_CHART_ASSIGNMENTS),
+        ((long) MAX_CHART_DEPS) * numBinaryRules);
+  }
+
+  /**
+   * Gets the logarithm of an upper bound on the weight of the root
+   * syntactic category of a parse, including any unary rule applied
+   * at the root. See {@link #getLogBinaryRuleWeightUpperBound(int)}.
+   *
+   * @param maxAssignments
+   * @return
+   */
+  public double getLogRootWeightUpperBound(int maxAssignments) {
+    double maxUnaryWeight = Math.max(1.0, Tensors.getMaxValueUpperBound(unaryRuleTensor));
+    double maxHeadedWeight = Math.max(1.0,
+        Tensors.getMaxValueUpperBound(headedRootSyntaxDistribution.getWeights()));
+    return Math.log(maxUnaryWeight)
+        + Math.log(Tensors.getMaxValueUpperBound(rootSyntaxDistribution.getWeights()))
+        + (Math.min(maxAssignments, MAX_CHART_ASSIGNMENTS) * Math.log(maxHeadedWeight));
+  }
+
   /**
    * Performs a beam search over possible CCG parses given a
    * {@code chart} initialized with entries for all terminals.
@@ -873,52 +1065,50 @@ public class CcgParser implements Serializable {
     return true;
   }
 
+  /**
+   * Performs the same search as {@link #calculateInsideBeamSingleThreaded}
+   * using {@code numThreads} threads. Each span of the chart is
+   * processed as soon as its two largest subspans are complete, rather
+   * than after all shorter spans, so threads do not wait for slow spans
+   * of the same length. Spans are processed by the shared pool (see
+   * {@link ForkJoinPools}). Must not be called from a task of that
+   * pool.
+   * 
+   * @param chart
+   * @param log
+   * @param maxParseTimeMillis
+   * @param numThreads
+   * @return
+   */
   public boolean calculateInsideBeamParallel(CcgChart chart, LogFunction log, long maxParseTimeMillis,
       int numThreads) {
-    int chartSize = chart.size();
-    long currentTime = 0;
-    long endTime = System.currentTimeMillis() + maxParseTimeMillis;
-    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
-    try {
-      List<Future<Void>> results = Lists.newArrayListWithCapacity(chartSize);
-      for (int spanSize = 1; spanSize < chartSize; spanSize++) {
-        results.clear();
-        for (int spanStart = 0; spanStart + spanSize < chartSize; spanStart++) {
-          int spanEnd = spanStart + spanSize;
-          results.add(executor.submit(new CalculateInsideBeamCallable(this, chart, spanStart, spanEnd, log)));
-        }
+    if (chart.size() <= 1) {
+      return true;
+    }
 
-        // Wait for the current set of spans to finish.
-        for (Future<Void> result : results) {
-          result.get();
-        }
+    ChartSchedule schedule = new ChartSchedule(this, chart, log, maxParseTimeMillis);
+    schedule.start(ForkJoinPools.getSharedPool());
+    return schedule.await();
+  }
 
-        if (maxParseTimeMillis >= 0) {
-          currentTime = System.currentTimeMillis();
-          if (currentTime > endTime) {
-            return false;
-          }
+  private void calculateInsideBeam(int spanStart, int spanEnd, CcgChart chart, LogFunction log) {
+    CcgSpanCache cache = spanCache;
+    SpanKey cacheKey = null;
+    if (cache != null && chart.getChartCost() == null) {
+      cacheKey = SpanKey.fromSentence(version, getSpanCacheConfiguration(chart),
+          chart.getInput(), spanStart, spanEnd);
+      CachedSpan cachedSpan = cache.getSpan(cacheKey);
+      if (cachedSpan != null) {
+        ChartEntry[] entries = cachedSpan.getEntries();
+        double[] probs = cachedSpan.getProbs();
+        for (int i = 0; i < entries.length; i++) {
+          chart.addChartEntryForSpan(entries[i], probs[i], spanStart, spanEnd, syntaxVarType);
         }
-        
-        if (chart.getTotalNumChartEntries() > chart.getMaxChartEntries()) {
-          return false;
-        }        
+        chart.doneAddingChartEntriesForSpan(spanStart, spanEnd);
+        return;
       }
-    } catch (InterruptedException e) {
-      e.printStackTrace();
-      e.getCause().printStackTrace();
-      throw new RuntimeException(e);
-    } catch (ExecutionException e) {
-      e.printStackTrace();
-      e.getCause().printStackTrace();
-      throw new RuntimeException(e);
-    } finally {
-      executor.shutdown();
     }
-    return true;
-  }
 
-  private void calculateInsideBeam(int spanStart, int spanEnd, CcgChart chart, LogFunction log) {
     for (int i = 0; i < spanEnd - spanStart; i++) {
       // Index j only gets used if we allow the skipping of terminals.
       ChartEntry[] leftTrees = chart.getChartEntriesForSpan(spanStart, spanStart + i);
@@ -934,6 +1124,25 @@ public class CcgParser implements Serializable {
     }
 
     chart.doneAddingChartEntriesForSpan(spanStart, spanEnd);
+
+    if (cacheKey != null) {
+      cache.putSpan(cacheKey, chart.getChartEntriesForSpan(spanStart, spanEnd),
+          chart.getChartEntryProbsForSpan(spanStart, spanEnd),
+          chart.getNumChartEntriesForSpan(spanStart, spanEnd));
+    }
+  }
+
+  /**
+   * Gets the properties of {@code chart} that affect the entries
+   * of its spans. Beam search charts with different beam sizes
+   * produce different spans.
+   */
+  private static Object getSpanCacheConfiguration(CcgChart chart) {
+    int beamSize = -1;
+    if (chart instanceof CcgBeamSearchChart) {
+      beamSize = ((CcgBeamSearchChart) chart).getBeamSize();
+    }
+    return Arrays.asList(chart.getClass(), beamSize);
   }
   
   public final void applySearchMoves(CcgChart chart, int leftSpanStart, int leftSpanEnd,
@@ -942,8 +1151,7 @@ public class CcgParser implements Serializable {
       LogFunction log) {
     
     Tensor binaryRuleTensor = binaryRuleDistribution.getWeights();
-    SparseTensor syntaxDistributionTensor = (SparseTensor) compiledSyntaxDistribution.getWeights();
-    long[] syntaxKeyNums = syntaxDistributionTensor.getKeyNums();
+    Tensor syntaxDistributionTensor = compiledSyntaxDistribution.getWeights();
     long[] dimensionOffsets = syntaxDistributionTensor.getDimensionOffsets();
     int tensorSize = syntaxDistributionTensor.size();
 
@@ -961,7 +1169,7 @@ public class CcgParser implements Serializable {
         continue;
       }
       long maxKeyNum = keyNumPrefix + dimensionOffsets[0];
-      long curKeyNum = syntaxKeyNums[index];
+      long curKeyNum = syntaxDistributionTensor.indexToKeyNum(index);
 
       while (curKeyNum < maxKeyNum && index < tensorSize) {
         int rightType = (int) (((curKeyNum - keyNumPrefix) / dimensionOffsets[1]) % dimensionOffsets[0]);
@@ -1001,7 +1209,7 @@ public class CcgParser implements Serializable {
         // Advance the iterator over rules.
         index++;
         if (index < tensorSize) {
-          curKeyNum = syntaxKeyNums[index];
+          curKeyNum = syntaxDistributionTensor.indexToKeyNum(index);
         }
       }
     }
@@ -1196,31 +1404,16 @@ public class CcgParser implements Serializable {
     unfilledDepVarIndexAccumulator[numVars] = numUnfilledDeps;
     // log.stopTimer("ccg_parse/beam_loop/propagate_dependencies");
 
-    // log.startTimer("ccg_parse/beam_loop/copy_stuff");
-    long[] filledDepArray = Arrays.copyOf(filledDepAccumulator, numFilledDeps);
-    int[] unfilledDepVarIndex = Arrays.copyOf(unfilledDepVarIndexAccumulator, numVars + 1);
-    long[] unfilledDepArray = Arrays.copyOf(unfilledDepAccumulator, numUnfilledDeps);
-
-    int[] newAssignmentVarIndex = Arrays.copyOfRange(assignmentVarIndexAccumulator, 0,
-        searchMove.getLeftToReturnInverseRelabeling().length + 1);
-    long[] newAssignments = Arrays.copyOfRange(assignmentAccumulator, 0, numAssignments);
-
-    ChartEntry result = new ChartEntry(resultSyntax, resultSyntaxUniqueVars, resultSyntaxHead,
-        null, searchMove.getLeftUnary(), searchMove.getRightUnary(), newAssignmentVarIndex, newAssignments,
-        unfilledDepVarIndex, unfilledDepArray, filledDepArray, leftSpanStart, leftSpanEnd,
-        leftIndex, rightSpanStart, rightSpanEnd, rightIndex, resultCombinator, isProducedByConjunction);
-    // log.stopTimer("ccg_parse/beam_loop/copy_stuff");
-
     // Get the weights of applying this syntactic combination rule 
     // given the word and POS tag of the result's head.
     // log.startTimer("ccg_parse/beam_loop/headed_rule_weights");
     double headedRuleProb = 1.0;
     long binaryCombinatorKeyNumWithOffset = searchMove.getBinaryCombinatorKeyNum()
         * headedBinaryRuleCombinatorOffset;
-    int syntaxStartIndex = newAssignmentVarIndex[resultSyntaxHead];
-    int syntaxEndIndex = newAssignmentVarIndex[resultSyntaxHead + 1];
+    int syntaxStartIndex = assignmentVarIndexAccumulator[resultSyntaxHead];
+    int syntaxEndIndex = assignmentVarIndexAccumulator[resultSyntaxHead + 1];
     for (int assignmentIndex = syntaxStartIndex; assignmentIndex < syntaxEndIndex; assignmentIndex++) {
-      long assignment = newAssignments[assignmentIndex];
+      long assignment = assignmentAccumulator[assignmentIndex];
       long predicate = (assignment >> ASSIGNMENT_PREDICATE_OFFSET) & PREDICATE_MASK;
       int wordIndex = (int) ((assignment >> ASSIGNMENT_WORD_IND_OFFSET) & WORD_IND_MASK);
       int posTag = currentPosTags[wordIndex];
@@ -1238,12 +1431,11 @@ public class CcgParser implements Serializable {
     double curDepProb = 1.0;
     long[] depLongCache = chart.getDepLongCache();
     double[] depProbCache = chart.getDepProbCache();
-    int filledDepArrayLength = filledDepArray.length;
-    for (int depIndex = 0; depIndex < filledDepArrayLength; depIndex++) {
+    for (int depIndex = 0; depIndex < numFilledDeps; depIndex++) {
       // The contents of this loop takes ~1/3 of all parsing time.
       // TODO: possible speed improvement: use a hash table to cache
       // more than one depLong per core.
-      long depLong = filledDepArray[depIndex];
+      long depLong = filledDepAccumulator[depIndex];
       if (depLong == depLongCache[leftSpanStart]) {
         depProb *= depProbCache[leftSpanStart];
         continue;
@@ -1302,6 +1494,31 @@ public class CcgParser implements Serializable {
 
     // log.startTimer("chart_entry/add_chart_entry");
     double totalProb = ruleProb * headedRuleProb * leftProb * rightProb * depProb;
+    if (chart instanceof CcgPackedBeamSearchChart
+        && ((CcgPackedBeamSearchChart) chart).acceptsPackedChartEntries(leftSpanStart, rightSpanEnd)) {
+      // The chart copies the accumulators into its own storage, so
+      // no chart entry needs to be created.
+      ((CcgPackedBeamSearchChart) chart).addPackedChartEntryForSpan(searchMove,
+          isProducedByConjunction, assignmentVarIndexAccumulator, assignmentAccumulator,
+          numAssignments, unfilledDepVarIndexAccumulator, unfilledDepAccumulator, numUnfilledDeps,
+          filledDepAccumulator, numFilledDeps, leftSpanStart, leftSpanEnd, leftIndex,
+          rightSpanStart, rightSpanEnd, rightIndex, totalProb, leftSpanStart, rightSpanEnd);
+      return;
+    }
+
+    // log.startTimer("ccg_parse/beam_loop/copy_stuff");
+    long[] filledDepArray = Arrays.copyOf(filledDepAccumulator, numFilledDeps);
+    int[] unfilledDepVarIndex = Arrays.copyOf(unfilledDepVarIndexAccumulator, numVars + 1);
+    long[] unfilledDepArray = Arrays.copyOf(unfilledDepAccumulator, numUnfilledDeps);
+
+    int[] newAssignmentVarIndex = Arrays.copyOfRange(assignmentVarIndexAccumulator, 0, numVars + 1);
+    long[] newAssignments = Arrays.copyOfRange(assignmentAccumulator, 0, numAssignments);
+
+    ChartEntry result = new ChartEntry(resultSyntax, resultSyntaxUniqueVars, resultSyntaxHead,
+        null, searchMove.getLeftUnary(), searchMove.getRightUnary(), newAssignmentVarIndex, newAssignments,
+        unfilledDepVarIndex, unfilledDepArray, filledDepArray, leftSpanStart, leftSpanEnd,
+        leftIndex, rightSpanStart, rightSpanEnd, rightIndex, resultCombinator, isProducedByConjunction);
+    // log.stopTimer("ccg_parse/beam_loop/copy_stuff");
     chart.addChartEntryForSpan(result, totalProb, leftSpanStart, rightSpanEnd, syntaxVarType);
     // log.stopTimer("chart_entry/add_chart_entry");
   }
@@ -1666,28 +1883,152 @@ public class CcgParser implements Serializable {
     return assignment ^ (((long) oldVarNum ^ newVarNum) << ASSIGNMENT_VAR_NUM_OFFSET);
   }
   
-  private static class CalculateInsideBeamCallable implements Callable<Void> {
+  /**
+   * Schedules the spans of a chart for parallel parsing. Each span is
+   * submitted to the pool when the spans one word shorter on its left
+   * and right are complete, which guarantees that all of its subspans
+   * are complete. Consequently, spans with the same start index are
+   * never processed concurrently, which is required because
+   * the chart's per-span-start scratch buffers are reused
+   * during parsing.
+   * 
+   * @author jayantk
+   */
+  private static class ChartSchedule {
     private final CcgParser parser;
     private final CcgChart chart;
+    private final LogFunction log;
 
-    private final int spanStart;
-    private final int spanEnd;
+    private final int chartSize;
+    private final long maxParseTimeMillis;
+    private final long endTime;
 
-    private final LogFunction log;
+    // Number of incomplete subspans for each span,
+    // indexed by spanStart * chartSize + spanEnd.
+    private final AtomicIntegerArray pendingSubspans;
+    // Number of submitted spans that are not yet complete.
+    private final AtomicInteger outstandingSpans;
+    private final CountDownLatch done;
+
+    private final AtomicBoolean aborted;
+    private volatile boolean finished;
+    private volatile RuntimeException error;
 
-    public CalculateInsideBeamCallable(CcgParser parser, CcgChart chart, int spanStart, int spanEnd,
-        LogFunction log) {
+    public ChartSchedule(CcgParser parser, CcgChart chart, LogFunction log,
+        long maxParseTimeMillis) {
       this.parser = Preconditions.checkNotNull(parser);
       this.chart = Preconditions.checkNotNull(chart);
-      this.spanStart = spanStart;
-      this.spanEnd = spanEnd;
       this.log = log;
+
+      this.chartSize = chart.size();
+      this.maxParseTimeMillis = maxParseTimeMillis;
+      this.endTime = System.currentTimeMillis() + maxParseTimeMillis;
+
+      this.pendingSubspans = new AtomicIntegerArray(chartSize * chartSize);
+      for (int spanStart = 0; spanStart < chartSize; spanStart++) {
+        for (int spanEnd = spanStart + 2; spanEnd < chartSize; spanEnd++) {
+          pendingSubspans.set(spanStart * chartSize + spanEnd, 2);
+        }
+      }
+      this.outstandingSpans = new AtomicInteger(0);
+      this.done = new CountDownLatch(1);
+
+      this.aborted = new AtomicBoolean(false);
+      this.finished = false;
+      this.error = null;
     }
 
-    @Override
-    public Void call() {
-      parser.calculateInsideBeam(spanStart, spanEnd, chart, log);
-      return null;
+    /**
+     * Submits every span of length 1 to {@code pool}. All other
+     * spans are submitted as their subspans are completed.
+     * 
+     * @param pool
+     */
+    public void start(ForkJoinPool pool) {
+      outstandingSpans.set(chartSize - 1);
+      for (int spanStart = 0; spanStart + 1 < chartSize; spanStart++) {
+        pool.execute(new SpanTask(spanStart, spanStart + 1));
+      }
+    }
+
+    /**
+     * Waits for parsing to finish or be cancelled, and returns
+     * {@code true} if the chart was completely filled in.
+     * 
+     * @return
+     */
+    public boolean await() {
+      try {
+        done.await();
+      } catch (InterruptedException e) {
+        // Stop scheduling new spans. Spans that are already running
+        // may continue to modify the chart.
+        aborted.set(true);
+        e.printStackTrace();
+        throw new RuntimeException(e);
+      }
+
+      if (error != null) {
+        throw new RuntimeException(error);
+      }
+      return finished;
+    }
+
+    private boolean exceedsLimits() {
+      if (maxParseTimeMillis >= 0 && System.currentTimeMillis() > endTime) {
+        return true;
+      }
+      return chart.getTotalNumChartEntries() > chart.getMaxChartEntries();
+    }
+
+    private void subspanCompleted(int spanStart, int spanEnd) {
+      if (pendingSubspans.decrementAndGet(spanStart * chartSize + spanEnd) == 0) {
+        outstandingSpans.incrementAndGet();
+        new SpanTask(spanStart, spanEnd).fork();
+      }
+    }
+
+    private class SpanTask extends RecursiveAction {
+      private static final long serialVersionUID = 1L;
+
+      private final int spanStart;
+      private final int spanEnd;
+
+      public SpanTask(int spanStart, int spanEnd) {
+        this.spanStart = spanStart;
+        this.spanEnd = spanEnd;
+      }
+
+      @Override
+      protected void compute() {
+        try {
+          if (!aborted.get()) {
+            parser.calculateInsideBeam(spanStart, spanEnd, chart, log);
+
+            if (spanStart == 0 && spanEnd == chartSize - 1) {
+              finished = true;
+            } else if (exceedsLimits()) {
+              aborted.set(true);
+            } else {
+              // Each completed span is a subspan of the spans that
+              // extend it by one word in either direction.
+              if (spanStart > 0) {
+                subspanCompleted(spanStart - 1, spanEnd);
+              }
+              if (spanEnd + 1 < chartSize) {
+                subspanCompleted(spanStart, spanEnd + 1);
+              }
+            }
+          }
+        } catch (RuntimeException e) {
+          error = e;
+          aborted.set(true);
+        } finally {
+          if (outstandingSpans.decrementAndGet() == 0) {
+            done.countDown();
+          }
+        }
+      }
     }
   }
 }
\ No newline at end of file
@@ -22,13 +22,13 @@ import com.jayantkrish.jklol.util.IntMultimap;
 public abstract class AbstractCcgChart implements CcgChart {
 
   // The words and pos tags of the sentence being parsed.
-  private final AnnotatedSentence input;
-  private final List<String> terminals;
-  private final List<String> posTags;
+  private AnnotatedSentence input;
+  private List<String> terminals;
+  private List<String> posTags;
   private int[] posTagsInt;
   
   // Maximum number of chart entries.
-  private final int maxChartSize;
+  private int maxChartSize;
 
   // Various kinds of distances between words in the sentence.
   private int[] wordDistances;
@@ -63,6 +63,31 @@ public abstract class AbstractCcgChart implements CcgChart {
     this.finishedParsing = false;
   }
 
+  /**
+   * Replaces the sentence stored in this chart with {@code input}, so
+   * that the chart can be reused to parse another sentence. Subclasses
+   * that support reuse must also clear their chart entries. The
+   * per-sentence state of the chart (e.g., distances and the chart
+   * cost) must be set again before parsing.
+   * 
+   * @param input
+   * @param maxChartSize
+   */
+  protected void resetInput(AnnotatedSentence input, int maxChartSize) {
+    this.input = input;
+    this.terminals = ImmutableList.copyOf(input.getWords());
+    this.posTags = ImmutableList.copyOf(input.getPosTags());
+    this.maxChartSize = maxChartSize;
+
+    this.posTagsInt = null;
+    this.wordDistances = null;
+    this.puncDistances = null;
+    this.verbDistances = null;
+    this.entryFilter = null;
+    this.syntaxDistribution = null;
+    this.finishedParsing = false;
+  }
+
   @Override
   public int size() {
     return terminals.size();
@@ -117,6 +142,11 @@ public abstract class AbstractCcgChart implements CcgChart {
     this.entryFilter = entryFilter;
   }
 
+  @Override
+  public final ChartCost getChartCost() {
+    return entryFilter;
+  }
+
   @Override
   public final int[] getPosTagsInt() {
     return posTagsInt;
@@ -0,0 +1,530 @@
+package com.jayantkrish.jklol.ccg.chart;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.jayantkrish.jklol.ccg.CcgParse;
+import com.jayantkrish.jklol.ccg.CcgParser;
+import com.jayantkrish.jklol.models.DiscreteVariable;
+import com.jayantkrish.jklol.nlpannotation.AnnotatedSentence;
+import com.jayantkrish.jklol.util.HeapUtils;
+import com.jayantkrish.jklol.util.IntMultimap;
+
+/**
+ * Chart for agenda-based A* search with a CCG. Chart entries added
+ * to this chart are first placed on an agenda, which is ordered by
+ * the entry's inside probability times an upper bound on its outside
+ * probability. Entries are removed from the agenda in order and
+ * either discarded (if the span already contains an equivalent entry)
+ * or added to the chart. Given an admissible upper bound, each entry
+ * in the chart has the highest inside probability of any equivalent
+ * entry for its span, and the first root entry removed from the agenda
+ * is the best parse.
+ * <p>
+ * The upper bound for a span is the product of the best lexicon
+ * weight of each word outside the span, and upper bounds on the
+ * weight of each remaining binary rule application, the dependencies
+ * they fill and the root. See {@link #startSearch}.
+ *
+ * @author jayantk
+ */
+public class CcgAStarChart extends AbstractCcgChart {
+
+  private final int numTerminals;
+
+  // Chart entries removed from the agenda.
+  private final ChartEntry[][][] chart;
+  private final double[][][] probabilities;
+  private final int[][] chartSizes;
+  private final IntMultimap[][] chartEntriesBySyntacticCategory;
+  // Hash codes of the entries in each span, used to discard
+  // equivalent entries.
+  // Indexed by spanStart * numTerminals + spanEnd.
+  private final List<Set<Long>> chartEntryHashCodes;
+  // The highest-probability agenda item with each hash code in each
+  // span, used to avoid placing equivalent entries with lower
+  // probabilities on the agenda. Indexed as above.
+  private final List<Map<Long, AgendaItem>> bestAgendaItems;
+  private int totalChartSize;
+
+  // The agenda, represented as a heap of items ordered by the
+  // negative log of their priority.
+  private AgendaItem[] agenda;
+  private double[] agendaKeys;
+  private int agendaSize;
+  private int numAgendaItemsCreated;
+  private int numAgendaItemsRemoved;
+  private boolean searchStarted;
+
+  // Log upper bound on the outside probability of each span.
+  private double[][] logOutsideEstimates;
+  // If true, entries added to the full span are root entries and
+  // are collected instead of added to the agenda.
+  private boolean collectingRootEntries;
+  private final List<ChartEntry> rootEntries;
+  private final List<Double> rootEntryProbs;
+
+  // The index of the best parse in the chart for the full span.
+  private int bestParseIndex;
+
+  private static final int INITIAL_SPAN_CAPACITY = 4;
+  private static final int INITIAL_AGENDA_CAPACITY = 1000;
+
+  public CcgAStarChart(AnnotatedSentence input, int maxChartSize) {
+    super(input, maxChartSize);
+    this.numTerminals = input.size();
+
+    this.chart = new ChartEntry[numTerminals][numTerminals][];
+    this.probabilities = new double[numTerminals][numTerminals][];
+    this.chartSizes = new int[numTerminals][numTerminals];
+    this.chartEntriesBySyntacticCategory = new IntMultimap[numTerminals][numTerminals];
+    this.chartEntryHashCodes = Lists.newArrayList(
+        Collections.<Set<Long>>nCopies(numTerminals * numTerminals, null));
+    this.bestAgendaItems = Lists.newArrayList(
+        Collections.<Map<Long, AgendaItem>>nCopies(numTerminals * numTerminals, null));
+    for (int i = 0; i < numTerminals; i++) {
+      for (int j = i; j < numTerminals; j++) {
+        chart[i][j] = new ChartEntry[INITIAL_SPAN_CAPACITY];
+        probabilities[i][j] = new double[INITIAL_SPAN_CAPACITY];
+      }
+    }
+    this.totalChartSize = 0;
+
+    this.agenda = new AgendaItem[INITIAL_AGENDA_CAPACITY];
+    this.agendaKeys = new double[INITIAL_AGENDA_CAPACITY];
+    this.agendaSize = 0;
+    this.numAgendaItemsCreated = 0;
+    this.numAgendaItemsRemoved = 0;
+    this.searchStarted = false;
+
+    this.collectingRootEntries = false;
+    this.rootEntries = Lists.newArrayList();
+    this.rootEntryProbs = Lists.newArrayList();
+    this.bestParseIndex = -1;
+  }
+
+  /**
+   * Begins the search by moving all chart entries (which should be
+   * the entries for terminals) onto the agenda. Before this method is
+   * called, chart entries are added directly to the chart, so that
+   * lexicons can inspect previously added entries.
+   * <p>
+   * The outside probability of a span is bounded using the
+   * highest-weight chart entry for each terminal, along with upper
+   * bounds from {@code parser} on the weight of the binary rule
+   * applications, the filled dependencies and the root (see
+   * {@link CcgParser#getLogBinaryRuleWeightUpperBound(int)}). The
+   * weight of a terminal entry spanning several words is divided
+   * evenly among them. The bounds on rule and dependency weights
+   * only exceed 0 if some of these weights are greater than 1, in
+   * which case they are scaled by the number of assignments and
+   * unfilled dependencies of the terminals. Chart costs must be
+   * nonpositive for the bound to be admissible.
+   *
+   * @param parser
+   * @return {@code false} if some word is not covered by any chart
+   * entry, in which case the sentence has no parse.
+   */
+  public boolean startSearch(CcgParser parser) {
+    Preconditions.checkState(!searchStarted);
+    searchStarted = true;
+
+    double[] logBestWeights = new double[numTerminals];
+    Arrays.fill(logBestWeights, Double.NEGATIVE_INFINITY);
+    int[] maxAssignments = new int[numTerminals];
+    int[] maxUnfilledDeps = new int[numTerminals];
+    boolean hasMultiwordEntries = false;
+    List<AgendaItem> terminals = Lists.newArrayList();
+    for (int i = 0; i < numTerminals; i++) {
+      for (int j = i; j < numTerminals; j++) {
+        int numEntries = chartSizes[i][j];
+        for (int k = 0; k < numEntries; k++) {
+          ChartEntry entry = chart[i][j][k];
+          double logWeight = Math.log(probabilities[i][j][k]) / (j - i + 1);
+          for (int l = i; l <= j; l++) {
+            logBestWeights[l] = Math.max(logBestWeights[l], logWeight);
+          }
+          maxAssignments[i] = Math.max(maxAssignments[i], entry.getAssignments().length);
+          maxUnfilledDeps[i] = Math.max(maxUnfilledDeps[i],
+              entry.getUnfilledDependencies().length);
+          hasMultiwordEntries = hasMultiwordEntries || i != j;
+          terminals.add(new AgendaItem(entry, probabilities[i][j][k], i, j, false));
+        }
+        clearChartEntriesForSpan(i, j);
+      }
+    }
+
+    for (int i = 0; i < numTerminals; i++) {
+      if (logBestWeights[i] == Double.NEGATIVE_INFINITY) {
+        return false;
+      }
+    }
+
+    // A chart entry's assignments and unfilled dependencies are
+    // inherited from the terminals it spans, or created by binary
+    // rules, so the totals over all terminals bound them.
+    int totalAssignments = 0;
+    int totalUnfilledDeps = 0;
+    for (int i = 0; i < numTerminals; i++) {
+      totalAssignments += maxAssignments[i];
+      totalUnfilledDeps += maxUnfilledDeps[i];
+    }
+    double logBinaryRuleBound = parser.getLogBinaryRuleWeightUpperBound(totalAssignments);
+    double logDependencyBound = parser.getLogDependencyWeightUpperBound();
+    double logRootBound = parser.getLogRootWeightUpperBound(totalAssignments);
+    int maxCombinatorDeps = logDependencyBound > 0.0 ? parser.getMaxCombinatorDependencies() : 0;
+
+    // A terminal entry spanning several words replaces several binary
+    // rule applications, so the bound must also hold for fewer rule
+    // applications than outside words.
+    if (hasMultiwordEntries) {
+      logBinaryRuleBound = Math.max(logBinaryRuleBound, 0.0);
+    }
+
+    double[] cumulativeLogWeights = new double[numTerminals + 1];
+    for (int i = 0; i < numTerminals; i++) {
+      cumulativeLogWeights[i + 1] = cumulativeLogWeights[i] + logBestWeights[i];
+    }
+    logOutsideEstimates = new double[numTerminals][numTerminals];
+    for (int i = 0; i < numTerminals; i++) {
+      for (int j = i; j < numTerminals; j++) {
+        int numOutsideWords = numTerminals - (j - i + 1);
+        double logDependencyWeight = 0.0;
+        if (logDependencyBound > 0.0) {
+          logDependencyWeight = logDependencyBound * parser.getMaxFilledDependencies(
+              totalUnfilledDeps, totalAssignments, maxCombinatorDeps, numOutsideWords);
+        }
+        logOutsideEstimates[i][j] = cumulativeLogWeights[i]
+            + (cumulativeLogWeights[numTerminals] - cumulativeLogWeights[j + 1])
+            + (numOutsideWords * logBinaryRuleBound) + logDependencyWeight + logRootBound;
+      }
+    }
+
+    for (AgendaItem terminal : terminals) {
+      offerAgendaItem(terminal);
+    }
+    return true;
+  }
+
+  /**
+   * Removes the highest priority item from the agenda. Returns
+   * {@code null} if the agenda is empty. Items superseded by an
+   * equivalent item with a higher probability are skipped.
+   *
+   * @return
+   */
+  public AgendaItem pollAgenda() {
+    while (agendaSize > 0) {
+      AgendaItem item = agenda[0];
+      HeapUtils.removeMin(agenda, agendaKeys, agendaSize);
+      agendaSize--;
+      agenda[agendaSize] = null;
+      if (!item.isSuperseded()) {
+        numAgendaItemsRemoved++;
+        return item;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Adds the entry of {@code item} to the chart, unless its span
+   * already contains an equivalent entry. Returns the index of the
+   * entry in the chart, or -1 if it was discarded.
+   *
+   * @param item
+   * @return
+   */
+  public int addAgendaItemToChart(AgendaItem item) {
+    int spanStart = item.getSpanStart();
+    int spanEnd = item.getSpanEnd();
+    int spanIndex = (spanStart * numTerminals) + spanEnd;
+    Set<Long> hashCodes = chartEntryHashCodes.get(spanIndex);
+    if (hashCodes == null) {
+      hashCodes = Sets.newHashSet();
+      chartEntryHashCodes.set(spanIndex, hashCodes);
+    }
+    if (!hashCodes.add(item.getEntry().getSyntaxHeadHashCode())) {
+      return -1;
+    }
+    return appendChartEntry(item.getEntry(), item.getProbability(), spanStart, spanEnd);
+  }
+
+  /**
+   * Records that the best parse is {@code rootItem}, which must be a
+   * root item removed from the agenda.
+   *
+   * @param rootItem
+   */
+  public void setBestParse(AgendaItem rootItem) {
+    Preconditions.checkArgument(rootItem.isRoot());
+    // Root entries are never combined with other entries, so
+    // they are stored with the other entries for the full span.
+    bestParseIndex = appendChartEntry(rootItem.getEntry(), rootItem.getProbability(),
+        0, numTerminals - 1);
+  }
+
+  /**
+   * While {@code collectingRootEntries} is {@code true}, chart
+   * entries added for the full span are collected in a list
+   * (retrieved by {@link #getRootEntries()}) instead of placed on
+   * the agenda. Used to apply root unary rules.
+   *
+   * @param collectingRootEntries
+   */
+  public void setCollectingRootEntries(boolean collectingRootEntries) {
+    this.collectingRootEntries = collectingRootEntries;
+    rootEntries.clear();
+    rootEntryProbs.clear();
+  }
+
+  public List<ChartEntry> getRootEntries() {
+    return rootEntries;
+  }
+
+  public List<Double> getRootEntryProbs() {
+    return rootEntryProbs;
+  }
+
+  /**
+   * Adds a root entry for the full span with probability
+   * {@code probability}, including the weight of the root. Root
+   * entries have no outside probability, and the first root entry
+   * removed from the agenda is the best parse.
+   *
+   * @param entry
+   * @param probability
+   */
+  public void offerRootEntry(ChartEntry entry, double probability) {
+    if (probability != 0.0) {
+      offerAgendaItem(new AgendaItem(entry, probability, 0, numTerminals - 1, true));
+    }
+  }
+
+  /**
+   * Gets the number of items placed on the agenda, which is the
+   * number of chart entries created during search.
+   *
+   * @return
+   */
+  public int getNumAgendaItemsCreated() {
+    return numAgendaItemsCreated;
+  }
+
+  /**
+   * Gets the number of items removed from the agenda by
+   * {@link #pollAgenda()}, including items that were discarded
+   * because their span contained an equivalent entry. Superseded
+   * items are not counted.
+   *
+   * @return
+   */
+  public int getNumAgendaItemsRemoved() {
+    return numAgendaItemsRemoved;
+  }
+
+  @Override
+  public CcgParse decodeBestParse(CcgParser parser) {
+    if (bestParseIndex == -1) {
+      return null;
+    }
+    return decodeParseFromSpan(0, numTerminals - 1, bestParseIndex, parser);
+  }
+
+  @Override
+  public ChartEntry[] getChartEntriesForSpan(int spanStart, int spanEnd) {
+    return chart[spanStart][spanEnd];
+  }
+
+  @Override
+  public double[] getChartEntryProbsForSpan(int spanStart, int spanEnd) {
+    return probabilities[spanStart][spanEnd];
+  }
+
+  @Override
+  public IntMultimap getChartEntriesBySyntacticCategoryForSpan(int spanStart, int spanEnd) {
+    // The index is rebuilt lazily, as spans are updated much more
+    // frequently during search than they are read.
+    if (chartEntriesBySyntacticCategory[spanStart][spanEnd] == null
+        && chartSizes[spanStart][spanEnd] > 0) {
+      chartEntriesBySyntacticCategory[spanStart][spanEnd] = aggregateBySyntacticType(
+          chart[spanStart][spanEnd], chartSizes[spanStart][spanEnd]);
+    }
+    return chartEntriesBySyntacticCategory[spanStart][spanEnd];
+  }
+
+  @Override
+  public int getNumChartEntriesForSpan(int spanStart, int spanEnd) {
+    return chartSizes[spanStart][spanEnd];
+  }
+
+  @Override
+  public int getTotalNumChartEntries() {
+    return totalChartSize;
+  }
+
+  @Override
+  public void addChartEntryForSpan(ChartEntry entry, double probability, int spanStart,
+      int spanEnd, DiscreteVariable syntaxVarType) {
+    if (entryFilter != null) {
+      probability *= Math.exp(entryFilter.apply(entry, spanStart, spanEnd, numTerminals, syntaxVarType));
+    }
+
+    if (probability != 0.0) {
+      if (!searchStarted) {
+        appendChartEntry(entry, probability, spanStart, spanEnd);
+      } else if (collectingRootEntries && spanStart == 0 && spanEnd == numTerminals - 1) {
+        rootEntries.add(entry);
+        rootEntryProbs.add(probability);
+      } else {
+        offerAgendaItem(new AgendaItem(entry, probability, spanStart, spanEnd, false));
+      }
+    }
+  }
+
+  @Override
+  public void doneAddingChartEntriesForSpan(int spanStart, int spanEnd) {
+    // Entries are added to the chart one at a time during search,
+    // so there is nothing to do here.
+  }
+
+  @Override
+  public void clearChartEntriesForSpan(int spanStart, int spanEnd) {
+    totalChartSize -= chartSizes[spanStart][spanEnd];
+    chartSizes[spanStart][spanEnd] = 0;
+    chartEntriesBySyntacticCategory[spanStart][spanEnd] = null;
+    chartEntryHashCodes.set((spanStart * numTerminals) + spanEnd, null);
+    bestAgendaItems.set((spanStart * numTerminals) + spanEnd, null);
+    Arrays.fill(chart[spanStart][spanEnd], null);
+  }
+
+  private int appendChartEntry(ChartEntry entry, double probability, int spanStart, int spanEnd) {
+    int index = chartSizes[spanStart][spanEnd];
+    if (index == chart[spanStart][spanEnd].length) {
+      chart[spanStart][spanEnd] = Arrays.copyOf(chart[spanStart][spanEnd], index * 2);
+      probabilities[spanStart][spanEnd] = Arrays.copyOf(probabilities[spanStart][spanEnd], index * 2);
+    }
+    chart[spanStart][spanEnd][index] = entry;
+    probabilities[spanStart][spanEnd][index] = probability;
+    chartSizes[spanStart][spanEnd]++;
+    chartEntriesBySyntacticCategory[spanStart][spanEnd] = null;
+    totalChartSize++;
+    return index;
+  }
+
+  private void offerAgendaItem(AgendaItem item) {
+    if (!item.isRoot() && !isBestEquivalentItem(item)) {
+      return;
+    }
+
+    if (agendaSize == agenda.length) {
+      agenda = Arrays.copyOf(agenda, agendaSize * 2);
+      agendaKeys = Arrays.copyOf(agendaKeys, agendaSize * 2);
+    }
+
+    double logPriority = Math.log(item.getProbability());
+    if (!item.isRoot()) {
+      logPriority += logOutsideEstimates[item.getSpanStart()][item.getSpanEnd()];
+    }
+    HeapUtils.offer(agenda, agendaKeys, agendaSize, item, -1.0 * logPriority);
+    agendaSize++;
+    numAgendaItemsCreated++;
+  }
+
+  /**
+   * Returns {@code false} if an equivalent entry with at least the
+   * probability of {@code item} was previously placed on the agenda,
+   * in which case {@code item} would be discarded when removed from
+   * the agenda. Otherwise, marks any equivalent entry on the agenda
+   * as superseded by {@code item}.
+   *
+   * @param item
+   * @return
+   */
+  private boolean isBestEquivalentItem(AgendaItem item) {
+    int spanIndex = (item.getSpanStart() * numTerminals) + item.getSpanEnd();
+    long hashCode = item.getEntry().getSyntaxHeadHashCode();
+    Set<Long> hashCodes = chartEntryHashCodes.get(spanIndex);
+    if (hashCodes != null && hashCodes.contains(hashCode)) {
+      return false;
+    }
+
+    Map<Long, AgendaItem> bestItems = bestAgendaItems.get(spanIndex);
+    if (bestItems == null) {
+      bestItems = Maps.newHashMap();
+      bestAgendaItems.set(spanIndex, bestItems);
+    }
+    AgendaItem bestItem = bestItems.get(hashCode);
+    if (bestItem != null) {
+      if (bestItem.getProbability() >= item.getProbability()) {
+        return false;
+      }
+      bestItem.setSuperseded();
+    }
+    bestItems.put(hashCode, item);
+    return true;
+  }
+
+  /**
+   * A chart entry for a span on the agenda, paired with its inside
+   * probability.
+   *
+   * @author jayantk
+   */
+  public static class AgendaItem {
+    private final ChartEntry entry;
+    private final double probability;
+    private final int spanStart;
+    private final int spanEnd;
+    // Root items include the weight of the root.
+    private final boolean isRoot;
+    // Set when an equivalent item with a higher probability is
+    // placed on the agenda.
+    private boolean isSuperseded;
+
+    public AgendaItem(ChartEntry entry, double probability, int spanStart, int spanEnd,
+        boolean isRoot) {
+      this.entry = entry;
+      this.probability = probability;
+      this.spanStart = spanStart;
+      this.spanEnd = spanEnd;
+      this.isRoot = isRoot;
+      this.isSuperseded = false;
+    }
+
+    public ChartEntry getEntry() {
+      return entry;
+    }
+
+    public double getProbability() {
+      return probability;
+    }
+
+    public int getSpanStart() {
+      return spanStart;
+    }
+
+    public int getSpanEnd() {
+      return spanEnd;
+    }
+
+    public boolean isRoot() {
+      return isRoot;
+    }
+
+    public boolean isSuperseded() {
+      return isSuperseded;
+    }
+
+    private void setSuperseded() {
+      isSuperseded = true;
+    }
+  }
+}
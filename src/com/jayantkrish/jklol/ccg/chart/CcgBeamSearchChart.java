@@ -22,13 +22,17 @@ import com.jayantkrish.jklol.util.IntMultimap;
 public class CcgBeamSearchChart extends AbstractCcgChart {
 
   private final int beamSize;
-  private final int numTerminals;
+  private int numTerminals;
+  // The maximum sentence length that fits in the chart's arrays,
+  // which may exceed the length of the current sentence if the chart
+  // is reused.
+  private int capacity;
 
-  private final ChartEntry[][][] chart;
-  private final double[][][] probabilities;
-  private final int[] chartSizes;
+  private ChartEntry[][][] chart;
+  private double[][][] probabilities;
+  private int[] chartSizes;
   
-  private final IntMultimap[][] chartEntriesBySyntacticCategory;
+  private IntMultimap[][] chartEntriesBySyntacticCategory;
 
   private int totalChartSize;
 
@@ -45,16 +49,63 @@ public class CcgBeamSearchChart extends AbstractCcgChart {
     this.beamSize = beamSize;
 
     numTerminals = sentence.size();
-    this.chart = new ChartEntry[numTerminals][numTerminals][beamSize + 1];
-    this.probabilities = new double[numTerminals][numTerminals][beamSize + 1];
-    this.chartSizes = new int[numTerminals * numTerminals];
-    Arrays.fill(chartSizes, 0);
+    allocate(numTerminals);
 
-    this.chartEntriesBySyntacticCategory = new IntMultimap[numTerminals][numTerminals];
+    this.totalChartSize = 0;
+  }
+
+  /**
+   * Clears this chart and prepares it for parsing {@code sentence}.
+   * The chart's arrays are reused if {@code sentence} is no longer than
+   * any sentence previously parsed with this chart, and otherwise are
+   * replaced by arrays sized for {@code sentence}. Reusing a single
+   * chart to parse many sentences avoids allocating a new chart for
+   * each sentence.
+   * 
+   * @param sentence
+   * @param maxChartSize
+   */
+  public void reset(AnnotatedSentence sentence, int maxChartSize) {
+    resetInput(sentence, maxChartSize);
+
+    int oldNumTerminals = numTerminals;
+    numTerminals = sentence.size();
+    if (numTerminals > capacity) {
+      allocate(numTerminals);
+    } else {
+      for (int i = 0; i < oldNumTerminals; i++) {
+        for (int j = i; j < oldNumTerminals; j++) {
+          int numEntries = chartSizes[j + (capacity * i)];
+          if (numEntries > 0) {
+            Arrays.fill(chart[i][j], null);
+            chartSizes[j + (capacity * i)] = 0;
+          }
+          chartEntriesBySyntacticCategory[i][j] = null;
+        }
+      }
+    }
 
     this.totalChartSize = 0;
   }
 
+  private void allocate(int newCapacity) {
+    this.capacity = newCapacity;
+    this.chart = new ChartEntry[capacity][capacity][beamSize + 1];
+    this.probabilities = new double[capacity][capacity][beamSize + 1];
+    this.chartSizes = new int[capacity * capacity];
+    this.chartEntriesBySyntacticCategory = new IntMultimap[capacity][capacity];
+  }
+
+  /**
+   * Gets the length of the longest sentence that can be parsed
+   * with this chart without reallocating its arrays.
+   * 
+   * @return
+   */
+  public int getCapacity() {
+    return capacity;
+  }
+
   /**
    * Gets the size of the beam, which is the maximum number of parses
    * to retain any span during beam search.
@@ -168,7 +219,7 @@ public class CcgBeamSearchChart extends AbstractCcgChart {
 
   @Override
   public int getNumChartEntriesForSpan(int spanStart, int spanEnd) {
-    return chartSizes[spanEnd + (numTerminals * spanStart)];
+    return chartSizes[spanEnd + (capacity * spanStart)];
   }
   
   @Override
@@ -191,8 +242,8 @@ public class CcgBeamSearchChart extends AbstractCcgChart {
 
   @Override
   public void clearChartEntriesForSpan(int spanStart, int spanEnd) {
-    totalChartSize -= chartSizes[spanEnd + (numTerminals * spanStart)];
-    chartSizes[spanEnd + (numTerminals * spanStart)] = 0;
+    totalChartSize -= chartSizes[spanEnd + (capacity * spanStart)];
+    chartSizes[spanEnd + (capacity * spanStart)] = 0;
     chartEntriesBySyntacticCategory[spanStart][spanEnd] = null;
 
     // This part is unnecessary, but makes debugging easier.
@@ -205,6 +256,22 @@ public class CcgBeamSearchChart extends AbstractCcgChart {
         getNumChartEntriesForSpan(spanStart, spanEnd));
   }
 
+  /**
+   * Sets the number of chart entries for {@code spanStart} to
+   * {@code spanEnd}. Used by subclasses that write chart entries
+   * directly into the arrays returned by
+   * {@link #getChartEntriesForSpan} and
+   * {@link #getChartEntryProbsForSpan}.
+   * 
+   * @param spanStart
+   * @param spanEnd
+   * @param numEntries
+   */
+  protected final void setNumChartEntriesForSpan(int spanStart, int spanEnd, int numEntries) {
+    totalChartSize += numEntries - chartSizes[spanEnd + (capacity * spanStart)];
+    chartSizes[spanEnd + (capacity * spanStart)] = numEntries;
+  }
+
   /**
    * Adds a chart entry to the heap for {@code spanStart} to
    * {@code spanEnd}. This operation implements beam truncation by
@@ -213,14 +280,14 @@ public class CcgBeamSearchChart extends AbstractCcgChart {
    */
   private final void offerEntry(ChartEntry entry, double probability, int spanStart, int spanEnd) {
     HeapUtils.offer(chart[spanStart][spanEnd], probabilities[spanStart][spanEnd],
-        chartSizes[spanEnd + (numTerminals * spanStart)], entry, probability);
-    chartSizes[spanEnd + (numTerminals * spanStart)]++;
+        chartSizes[spanEnd + (capacity * spanStart)], entry, probability);
+    chartSizes[spanEnd + (capacity * spanStart)]++;
     totalChartSize++;
 
-    if (chartSizes[spanEnd + (numTerminals * spanStart)] > beamSize) {
+    if (chartSizes[spanEnd + (capacity * spanStart)] > beamSize) {
       HeapUtils.removeMin(chart[spanStart][spanEnd], probabilities[spanStart][spanEnd],
-          chartSizes[spanEnd + (numTerminals * spanStart)]);
-      chartSizes[spanEnd + (numTerminals * spanStart)]--;
+          chartSizes[spanEnd + (capacity * spanStart)]);
+      chartSizes[spanEnd + (capacity * spanStart)]--;
       totalChartSize--;
     }
   }
@@ -57,6 +57,14 @@ public interface CcgChart {
 
   public void setChartCost(ChartCost chartCost);
 
+  /**
+   * Gets the cost used to filter chart entries, or {@code null} if
+   * no entries are filtered.
+   * 
+   * @return
+   */
+  public ChartCost getChartCost();
+
   /**
    * Gets the POS tag of each word being parsed encoded as an integer.
    * 
@@ -0,0 +1,341 @@
+package com.jayantkrish.jklol.ccg.chart;
+
+import java.util.Arrays;
+
+import com.google.common.base.Preconditions;
+import com.jayantkrish.jklol.ccg.CcgSearchMove;
+import com.jayantkrish.jklol.ccg.Combinator;
+import com.jayantkrish.jklol.nlpannotation.AnnotatedSentence;
+import com.jayantkrish.jklol.util.HeapUtils;
+
+/**
+ * A beam search chart that stores the candidate entries for a span
+ * in flat arrays of primitives, rather than as {@link ChartEntry}
+ * objects. Each candidate occupies a slot of a pool, and its syntactic
+ * category, backpointers, scores, assignments and dependencies are
+ * stored at offsets of the pool's arrays determined by the slot.
+ * Slots of candidates that are pruned from the beam are reused.
+ * {@code ChartEntry} objects are only created for the candidates that
+ * remain in the beam once the span is complete.
+ * <p>
+ * Most candidates created during beam search are pruned, so this chart
+ * allocates far fewer objects than {@link CcgBeamSearchChart}, which
+ * reduces garbage collection time during long parsing jobs. Both
+ * charts produce identical parses. Candidates are only stored in
+ * primitive form if the chart has no {@code ChartCost}, as chart costs
+ * are defined on {@code ChartEntry} objects, and if their span has no
+ * terminal entries (see {@link #acceptsPackedChartEntries}).
+ *
+ * @author jayantk
+ */
+public class CcgPackedBeamSearchChart extends CcgBeamSearchChart {
+
+  // Initial number of values reserved per slot for each
+  // variable-length portion of a chart entry.
+  private static final int INITIAL_STRIDE = 8;
+
+  // One pool per span start. Spans with the same start are never
+  // filled concurrently, so each pool is used by at most one thread.
+  private EntryPool[] pools;
+
+  /**
+   * Creates a CCG chart for storing the current state of a beam
+   * search trying to parse {@code sentence}.
+   *
+   * @param sentence
+   * @param maxChartSize
+   * @param beamSize
+   */
+  public CcgPackedBeamSearchChart(AnnotatedSentence sentence, int maxChartSize, int beamSize) {
+    super(sentence, maxChartSize, beamSize);
+    this.pools = new EntryPool[getCapacity()];
+  }
+
+  @Override
+  public void reset(AnnotatedSentence sentence, int maxChartSize) {
+    super.reset(sentence, maxChartSize);
+    if (pools.length < getCapacity()) {
+      pools = Arrays.copyOf(pools, getCapacity());
+    }
+
+    for (int i = 0; i < pools.length; i++) {
+      if (pools[i] != null) {
+        pools[i].clear();
+      }
+    }
+  }
+
+  /**
+   * Returns {@code true} if candidate entries for {@code spanStart}
+   * to {@code spanEnd} may be added using
+   * {@link #addPackedChartEntryForSpan}. If this method returns
+   * {@code false}, entries must be added as {@code ChartEntry}
+   * objects. Spans that already contain entries, such as terminal
+   * entries spanning several words when words can be skipped, do not
+   * accept packed entries, as the pool would replace these entries
+   * when the span is complete.
+   *
+   * @param spanStart
+   * @param spanEnd
+   * @return
+   */
+  public boolean acceptsPackedChartEntries(int spanStart, int spanEnd) {
+    return entryFilter == null && getNumChartEntriesForSpan(spanStart, spanEnd) == 0;
+  }
+
+  /**
+   * Adds a candidate chart entry for {@code spanStart} to
+   * {@code spanEnd} produced by applying {@code searchMove} to two
+   * chart entries. The arguments are identical to those of
+   * {@link ChartEntry}'s constructor, except the syntactic category
+   * and combinators are determined by {@code searchMove}, and the
+   * arrays are read from their beginning up to the given lengths.
+   * The arrays are copied and may be reused by the caller.
+   */
+  public void addPackedChartEntryForSpan(CcgSearchMove searchMove, boolean isProducedByConjunction,
+      int[] assignmentVarIndex, long[] assignments, int numAssignments,
+      int[] unfilledDepVarIndex, long[] unfilledDeps, int numUnfilledDeps,
+      long[] filledDeps, int numFilledDeps, int leftSpanStart, int leftSpanEnd, int leftIndex,
+      int rightSpanStart, int rightSpanEnd, int rightIndex, double probability,
+      int spanStart, int spanEnd) {
+    Preconditions.checkState(entryFilter == null);
+    if (probability == 0.0) {
+      return;
+    }
+
+    EntryPool pool = pools[spanStart];
+    if (pool == null) {
+      pool = new EntryPool(getBeamSize() + 1);
+      pools[spanStart] = pool;
+    }
+    Preconditions.checkState(pool.spanEnd == -1 || pool.spanEnd == spanEnd);
+    pool.spanEnd = spanEnd;
+
+    int numVars = searchMove.getLeftToReturnInverseRelabeling().length;
+    int slot = pool.allocateSlot(numVars + 1, numAssignments, numUnfilledDeps, numFilledDeps);
+    pool.moves[slot] = searchMove;
+    pool.syntax[slot] = searchMove.getBinaryCombinator().getSyntax();
+    pool.isProducedByConjunction[slot] = isProducedByConjunction;
+
+    int backpointerOffset = slot * 6;
+    pool.backpointers[backpointerOffset] = leftSpanStart;
+    pool.backpointers[backpointerOffset + 1] = leftSpanEnd;
+    pool.backpointers[backpointerOffset + 2] = leftIndex;
+    pool.backpointers[backpointerOffset + 3] = rightSpanStart;
+    pool.backpointers[backpointerOffset + 4] = rightSpanEnd;
+    pool.backpointers[backpointerOffset + 5] = rightIndex;
+
+    System.arraycopy(assignmentVarIndex, 0, pool.assignmentVarIndexes,
+        slot * pool.varIndexStride, numVars + 1);
+    System.arraycopy(unfilledDepVarIndex, 0, pool.unfilledDepVarIndexes,
+        slot * pool.varIndexStride, numVars + 1);
+    System.arraycopy(assignments, 0, pool.assignments, slot * pool.assignmentStride, numAssignments);
+    System.arraycopy(unfilledDeps, 0, pool.unfilledDeps, slot * pool.unfilledDepStride, numUnfilledDeps);
+    System.arraycopy(filledDeps, 0, pool.filledDeps, slot * pool.filledDepStride, numFilledDeps);
+    pool.lengths[slot * 4] = numVars + 1;
+    pool.lengths[(slot * 4) + 1] = numAssignments;
+    pool.lengths[(slot * 4) + 2] = numUnfilledDeps;
+    pool.lengths[(slot * 4) + 3] = numFilledDeps;
+
+    // Perform the same heap operations as CcgBeamSearchChart, so that
+    // ties are broken identically.
+    HeapUtils.offer(pool.heapSlots, pool.heapProbs, pool.heapSize, slot, probability);
+    pool.heapSize++;
+    if (pool.heapSize > getBeamSize()) {
+      pool.freeSlot((int) pool.heapSlots[0]);
+      HeapUtils.removeMin(pool.heapSlots, pool.heapProbs, pool.heapSize);
+      pool.heapSize--;
+    }
+  }
+
+  @Override
+  public void clearChartEntriesForSpan(int spanStart, int spanEnd) {
+    super.clearChartEntriesForSpan(spanStart, spanEnd);
+    EntryPool pool = pools[spanStart];
+    if (pool != null && pool.spanEnd == spanEnd) {
+      pool.clear();
+    }
+  }
+
+  @Override
+  public void doneAddingChartEntriesForSpan(int spanStart, int spanEnd) {
+    EntryPool pool = pools[spanStart];
+    if (pool != null && pool.spanEnd == spanEnd) {
+      // Copy the entries in the beam into the chart, preserving
+      // their heap order.
+      ChartEntry[] entries = getChartEntriesForSpan(spanStart, spanEnd);
+      double[] probs = getChartEntryProbsForSpan(spanStart, spanEnd);
+      for (int i = 0; i < pool.heapSize; i++) {
+        entries[i] = pool.toChartEntry((int) pool.heapSlots[i]);
+        probs[i] = pool.heapProbs[i];
+      }
+      setNumChartEntriesForSpan(spanStart, spanEnd, pool.heapSize);
+      pool.clear();
+    }
+
+    super.doneAddingChartEntriesForSpan(spanStart, spanEnd);
+  }
+
+  /**
+   * Primitive storage for the candidate chart entries of a single
+   * span. The values for slot {@code i} of each array are stored
+   * starting at {@code i} times the array's stride.
+   */
+  private static final class EntryPool {
+    private final int numSlots;
+
+    // The span whose entries are stored in this pool, or -1
+    // if the pool is empty.
+    private int spanEnd;
+
+    // Heap of slot indexes, ordered by probability.
+    private final long[] heapSlots;
+    private final double[] heapProbs;
+    private int heapSize;
+
+    private final int[] freeSlots;
+    private int numFreeSlots;
+
+    private final CcgSearchMove[] moves;
+    private final int[] syntax;
+    private final boolean[] isProducedByConjunction;
+    private final int[] backpointers;
+    // Lengths of the variable index, assignment, unfilled
+    // dependency and filled dependency arrays of each slot.
+    private final int[] lengths;
+
+    private int varIndexStride;
+    private int assignmentStride;
+    private int unfilledDepStride;
+    private int filledDepStride;
+    private int[] assignmentVarIndexes;
+    private int[] unfilledDepVarIndexes;
+    private long[] assignments;
+    private long[] unfilledDeps;
+    private long[] filledDeps;
+
+    public EntryPool(int numSlots) {
+      this.numSlots = numSlots;
+      this.heapSlots = new long[numSlots];
+      this.heapProbs = new double[numSlots];
+      this.freeSlots = new int[numSlots];
+
+      this.moves = new CcgSearchMove[numSlots];
+      this.syntax = new int[numSlots];
+      this.isProducedByConjunction = new boolean[numSlots];
+      this.backpointers = new int[numSlots * 6];
+      this.lengths = new int[numSlots * 4];
+
+      this.varIndexStride = INITIAL_STRIDE;
+      this.assignmentStride = INITIAL_STRIDE;
+      this.unfilledDepStride = INITIAL_STRIDE;
+      this.filledDepStride = INITIAL_STRIDE;
+      this.assignmentVarIndexes = new int[numSlots * INITIAL_STRIDE];
+      this.unfilledDepVarIndexes = new int[numSlots * INITIAL_STRIDE];
+      this.assignments = new long[numSlots * INITIAL_STRIDE];
+      this.unfilledDeps = new long[numSlots * INITIAL_STRIDE];
+      this.filledDeps = new long[numSlots * INITIAL_STRIDE];
+
+      clear();
+    }
+
+    public void clear() {
+      spanEnd = -1;
+      heapSize = 0;
+      numFreeSlots = numSlots;
+      for (int i = 0; i < numSlots; i++) {
+        freeSlots[i] = numSlots - (i + 1);
+      }
+      // Release references to search moves.
+      Arrays.fill(moves, null);
+    }
+
+    /**
+     * Gets an unused slot, growing the strides of the pool's
+     * arrays if necessary to store the given number of values.
+     */
+    public int allocateSlot(int numVarIndexes, int numAssignments, int numUnfilledDeps,
+        int numFilledDeps) {
+      if (numVarIndexes > varIndexStride) {
+        int newStride = Math.max(numVarIndexes, varIndexStride * 2);
+        assignmentVarIndexes = restride(assignmentVarIndexes, varIndexStride, newStride);
+        unfilledDepVarIndexes = restride(unfilledDepVarIndexes, varIndexStride, newStride);
+        varIndexStride = newStride;
+      }
+      if (numAssignments > assignmentStride) {
+        int newStride = Math.max(numAssignments, assignmentStride * 2);
+        assignments = restride(assignments, assignmentStride, newStride);
+        assignmentStride = newStride;
+      }
+      if (numUnfilledDeps > unfilledDepStride) {
+        int newStride = Math.max(numUnfilledDeps, unfilledDepStride * 2);
+        unfilledDeps = restride(unfilledDeps, unfilledDepStride, newStride);
+        unfilledDepStride = newStride;
+      }
+      if (numFilledDeps > filledDepStride) {
+        int newStride = Math.max(numFilledDeps, filledDepStride * 2);
+        filledDeps = restride(filledDeps, filledDepStride, newStride);
+        filledDepStride = newStride;
+      }
+
+      numFreeSlots--;
+      return freeSlots[numFreeSlots];
+    }
+
+    public void freeSlot(int slot) {
+      moves[slot] = null;
+      freeSlots[numFreeSlots] = slot;
+      numFreeSlots++;
+    }
+
+    public ChartEntry toChartEntry(int slot) {
+      CcgSearchMove move = moves[slot];
+      Combinator combinator = move.getBinaryCombinator();
+      int lengthOffset = slot * 4;
+      int backpointerOffset = slot * 6;
+
+      int[] entryAssignmentVarIndex = copyRange(assignmentVarIndexes, slot * varIndexStride,
+          lengths[lengthOffset]);
+      int[] entryUnfilledDepVarIndex = copyRange(unfilledDepVarIndexes, slot * varIndexStride,
+          lengths[lengthOffset]);
+      long[] entryAssignments = copyRange(assignments, slot * assignmentStride,
+          lengths[lengthOffset + 1]);
+      long[] entryUnfilledDeps = copyRange(unfilledDeps, slot * unfilledDepStride,
+          lengths[lengthOffset + 2]);
+      long[] entryFilledDeps = copyRange(filledDeps, slot * filledDepStride,
+          lengths[lengthOffset + 3]);
+
+      return new ChartEntry(syntax[slot], combinator.getSyntaxUniqueVars(),
+          combinator.getSyntaxHeadVar(), null, move.getLeftUnary(), move.getRightUnary(),
+          entryAssignmentVarIndex, entryAssignments, entryUnfilledDepVarIndex, entryUnfilledDeps,
+          entryFilledDeps, backpointers[backpointerOffset], backpointers[backpointerOffset + 1],
+          backpointers[backpointerOffset + 2], backpointers[backpointerOffset + 3],
+          backpointers[backpointerOffset + 4], backpointers[backpointerOffset + 5],
+          combinator, isProducedByConjunction[slot]);
+    }
+
+    private int[] restride(int[] values, int oldStride, int newStride) {
+      int[] newValues = new int[numSlots * newStride];
+      for (int i = 0; i < numSlots; i++) {
+        System.arraycopy(values, i * oldStride, newValues, i * newStride, oldStride);
+      }
+      return newValues;
+    }
+
+    private long[] restride(long[] values, int oldStride, int newStride) {
+      long[] newValues = new long[numSlots * newStride];
+      for (int i = 0; i < numSlots; i++) {
+        System.arraycopy(values, i * oldStride, newValues, i * newStride, oldStride);
+      }
+      return newValues;
+    }
+
+    private static int[] copyRange(int[] values, int offset, int length) {
+      return Arrays.copyOfRange(values, offset, offset + length);
+    }
+
+    private static long[] copyRange(long[] values, int offset, int length) {
+      return Arrays.copyOfRange(values, offset, offset + length);
+    }
+  }
+}
@@ -0,0 +1,270 @@
+package com.jayantkrish.jklol.ccg.chart;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.jayantkrish.jklol.nlpannotation.AnnotatedSentence;
+
+/**
+ * A bounded cache of completed chart spans, which permits a
+ * {@code CcgParser} to reuse the chart entries of spans shared by
+ * many sentences (e.g., a common prefix or a repeated entity name)
+ * instead of recomputing them. Spans are evicted in least-recently
+ * used order once the cache contains more than a fixed number of
+ * spans.
+ * <p>
+ * Each cached span is identified by a {@link SpanKey}, which
+ * includes the version of the parser that created it. Using the cache
+ * with a new parser (e.g., one created by
+ * {@code CcgParser.replaceLexicon}) automatically invalidates all of
+ * the spans cached for the previous parser. This class is
+ * thread-safe.
+ *
+ * @author jayantk
+ */
+public class CcgSpanCache {
+
+  private final int maxCachedSpans;
+  private final LinkedHashMap<SpanKey, CachedSpan> cache;
+
+  // Version of the parser whose spans are currently cached.
+  private long parserVersion;
+
+  private long numHits;
+  private long numMisses;
+  private long numEvictions;
+  private long numInvalidations;
+
+  /**
+   * Creates an empty cache that holds at most
+   * {@code maxCachedSpans} spans.
+   *
+   * @param maxCachedSpans
+   */
+  public CcgSpanCache(int maxCachedSpans) {
+    Preconditions.checkArgument(maxCachedSpans > 0);
+    this.maxCachedSpans = maxCachedSpans;
+    this.cache = new LinkedHashMap<SpanKey, CachedSpan>(16, 0.75f, true);
+    this.parserVersion = -1;
+  }
+
+  /**
+   * Gets the chart entries cached for {@code key}, or {@code null}
+   * if the span is not in the cache.
+   *
+   * @param key
+   * @return
+   */
+  public synchronized CachedSpan getSpan(SpanKey key) {
+    checkParserVersion(key.getParserVersion());
+    CachedSpan span = cache.get(key);
+    if (span != null) {
+      numHits++;
+    } else {
+      numMisses++;
+    }
+    return span;
+  }
+
+  /**
+   * Caches the first {@code numEntries} chart entries of
+   * {@code entries}, which are the completed chart entries of the
+   * span identified by {@code key}. The arrays are copied, so charts
+   * may continue to reuse them.
+   *
+   * @param key
+   * @param entries
+   * @param probs
+   * @param numEntries
+   */
+  public synchronized void putSpan(SpanKey key, ChartEntry[] entries, double[] probs,
+      int numEntries) {
+    checkParserVersion(key.getParserVersion());
+    cache.put(key, new CachedSpan(CcgBeamSearchChart.copyChartEntryArray(entries, numEntries),
+        Arrays.copyOf(probs, numEntries)));
+
+    Iterator<SpanKey> iter = cache.keySet().iterator();
+    while (cache.size() > maxCachedSpans) {
+      iter.next();
+      iter.remove();
+      numEvictions++;
+    }
+  }
+
+  private void checkParserVersion(long version) {
+    if (version != parserVersion) {
+      if (cache.size() > 0) {
+        numInvalidations++;
+      }
+      cache.clear();
+      parserVersion = version;
+    }
+  }
+
+  /**
+   * Removes all spans from this cache. The cache's statistics are
+   * not reset.
+   */
+  public synchronized void clear() {
+    cache.clear();
+  }
+
+  public synchronized int size() {
+    return cache.size();
+  }
+
+  public int getMaxCachedSpans() {
+    return maxCachedSpans;
+  }
+
+  public synchronized long getNumHits() {
+    return numHits;
+  }
+
+  public synchronized long getNumMisses() {
+    return numMisses;
+  }
+
+  /**
+   * Gets the fraction of lookups that found a cached span, or 0 if
+   * the cache has not been used.
+   *
+   * @return
+   */
+  public synchronized double getHitRate() {
+    long numLookups = numHits + numMisses;
+    return numLookups > 0 ? ((double) numHits) / numLookups : 0.0;
+  }
+
+  /**
+   * Gets the number of spans removed from the cache because it was
+   * full.
+   *
+   * @return
+   */
+  public synchronized long getNumEvictions() {
+    return numEvictions;
+  }
+
+  /**
+   * Gets the number of times the cache was emptied because it was
+   * used with a new parser.
+   *
+   * @return
+   */
+  public synchronized long getNumInvalidations() {
+    return numInvalidations;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "CcgSpanCache(size=" + cache.size() + ", hits=" + numHits + ", misses=" + numMisses
+        + ", evictions=" + numEvictions + ", invalidations=" + numInvalidations + ")";
+  }
+
+  /**
+   * The chart entries of a completed span.
+   */
+  public static class CachedSpan {
+    private final ChartEntry[] entries;
+    private final double[] probs;
+
+    public CachedSpan(ChartEntry[] entries, double[] probs) {
+      this.entries = entries;
+      this.probs = probs;
+    }
+
+    public ChartEntry[] getEntries() {
+      return entries;
+    }
+
+    public double[] getProbs() {
+      return probs;
+    }
+
+    public int size() {
+      return entries.length;
+    }
+  }
+
+  /**
+   * Identifies a span of a chart. The contents of a span are
+   * determined by the parser, the configuration of the chart (e.g.,
+   * its beam size), the span's position in the sentence, the words
+   * and POS tags within the span, and the sentence's annotations,
+   * which may be used by lexicon scorers. Annotations are compared
+   * using {@code equals}.
+   */
+  public static class SpanKey {
+    private final long parserVersion;
+    private final Object chartConfiguration;
+    private final int spanStart;
+    private final List<String> words;
+    private final List<String> posTags;
+    private final Map<String, Object> annotations;
+
+    private final int hashCode;
+
+    public SpanKey(long parserVersion, Object chartConfiguration, int spanStart,
+        List<String> words, List<String> posTags, Map<String, Object> annotations) {
+      this.parserVersion = parserVersion;
+      this.chartConfiguration = Preconditions.checkNotNull(chartConfiguration);
+      this.spanStart = spanStart;
+      this.words = ImmutableList.copyOf(words);
+      this.posTags = ImmutableList.copyOf(posTags);
+      this.annotations = ImmutableMap.copyOf(annotations);
+
+      this.hashCode = Objects.hashCode(parserVersion, chartConfiguration, spanStart,
+          this.words, this.posTags, this.annotations);
+    }
+
+    /**
+     * Gets the key for the span from {@code spanStart} to
+     * {@code spanEnd} (inclusive) of {@code sentence}.
+     *
+     * @param parserVersion
+     * @param chartConfiguration
+     * @param sentence
+     * @param spanStart
+     * @param spanEnd
+     * @return
+     */
+    public static SpanKey fromSentence(long parserVersion, Object chartConfiguration,
+        AnnotatedSentence sentence, int spanStart, int spanEnd) {
+      return new SpanKey(parserVersion, chartConfiguration, spanStart,
+          sentence.getWords().subList(spanStart, spanEnd + 1),
+          sentence.getPosTags().subList(spanStart, spanEnd + 1), sentence.getAnnotations());
+    }
+
+    public long getParserVersion() {
+      return parserVersion;
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof SpanKey)) {
+        return false;
+      }
+      SpanKey other = (SpanKey) obj;
+      return hashCode == other.hashCode && parserVersion == other.parserVersion
+          && spanStart == other.spanStart && chartConfiguration.equals(other.chartConfiguration)
+          && words.equals(other.words) && posTags.equals(other.posTags)
+          && annotations.equals(other.annotations);
+    }
+  }
+}
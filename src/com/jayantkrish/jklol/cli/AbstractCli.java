@@ -102,6 +102,7 @@ public abstract class AbstractCli {
   protected OptionSpec<Double> sgdRegularizationFrequency;
   protected OptionSpec<Double> sgdClipGradients;
   protected OptionSpec<Void> sgdAdagrad;
+  protected OptionSpec<Void> sgdLazyRegularization;
 
   // LBFGS options.
   protected OptionSpec<Void> lbfgs;
@@ -121,6 +122,8 @@ public abstract class AbstractCli {
   // Map reduce options.
   protected OptionSpec<Integer> mrMaxThreads;
   protected OptionSpec<Integer> mrMaxBatchesPerThread;
+  protected OptionSpec<Void> mrPersistentThreadPool;
+  protected OptionSpec<Void> mrShardedReduce;
 
   // Functional gradient ascent options
   protected OptionSpec<Integer> fgaIterations;
@@ -269,6 +272,9 @@ public abstract class AbstractCli {
       sgdClipGradients = parser.accepts("clipGradients", "Clip gradients to a max l2 norm of the given value.")
           .withRequiredArg().ofType(Double.class).defaultsTo(Double.MAX_VALUE);
       sgdAdagrad = parser.accepts("adagrad", "Use the adagrad algorithm for stochastic gradient descent.");
+      sgdLazyRegularization = parser.accepts("lazyRegularization",
+          "Apply L2 regularization on every iteration in time proportional to the number of "
+          + "nonzero gradient entries. Ignores --regularizationFrequency. Cannot be used with --adagrad.");
     }
 
     if (opts.contains(CommonOptions.LBFGS)) {
@@ -318,6 +324,12 @@ public abstract class AbstractCli {
       mrMaxBatchesPerThread = parser.accepts("maxBatchesPerThread",
           "Number of batches of items to create per thread.")
           .withRequiredArg().ofType(Integer.class).defaultsTo(20);
+      mrPersistentThreadPool = parser.accepts("persistentThreadPool",
+          "Reuse a single pool of worker threads for all parallel operations, "
+          + "instead of creating new threads for each operation.");
+      mrShardedReduce = parser.accepts("shardedReduce",
+          "Reduce items into one accumulator per thread, then combine the accumulators "
+          + "in parallel. Implies --persistentThreadPool.");
     }
 
     if (opts.contains(CommonOptions.FUNCTIONAL_GRADIENT_ASCENT)) {
@@ -350,8 +362,15 @@ public abstract class AbstractCli {
     Pseudorandom.get().setSeed(options.valueOf(randomSeed));
 
     if (opts.contains(CommonOptions.MAP_REDUCE)) {
-      MapReduceConfiguration.setMapReduceExecutor(new LocalMapReduceExecutor(
-          options.valueOf(mrMaxThreads), options.valueOf(mrMaxBatchesPerThread)));
+      if (options.has(mrShardedReduce)) {
+        MapReduceConfiguration.useShardedExecutor(options.valueOf(mrMaxThreads));
+      } else if (options.has(mrPersistentThreadPool)) {
+        MapReduceConfiguration.usePersistentExecutor(options.valueOf(mrMaxThreads),
+            options.valueOf(mrMaxBatchesPerThread));
+      } else {
+        MapReduceConfiguration.setMapReduceExecutor(new LocalMapReduceExecutor(
+            options.valueOf(mrMaxThreads), options.valueOf(mrMaxBatchesPerThread)));
+      }
     }
 
     if (opts.contains(CommonOptions.STOCHASTIC_GRADIENT) || opts.contains(CommonOptions.LBFGS)) {
@@ -388,7 +407,14 @@ public abstract class AbstractCli {
 
     LogFunction log = LogFunctions.getLogFunction();
     StochasticGradientTrainer trainer = null;
-    if (!parsedOptions.has(sgdAdagrad)) {
+    if (parsedOptions.has(sgdLazyRegularization)) {
+      Preconditions.checkArgument(!parsedOptions.has(sgdAdagrad),
+          "--lazyRegularization cannot be used with --adagrad");
+      trainer = StochasticGradientTrainer.createWithLazyL2Regularization(
+          numIterations, batchSize, initialStepSize, !parsedOptions.has(sgdNoDecayStepSize),
+          !parsedOptions.has(sgdNoReturnAveragedParameters), parsedOptions.valueOf(sgdClipGradients),
+          l2Regularization, log);
+    } else if (!parsedOptions.has(sgdAdagrad)) {
       trainer = StochasticGradientTrainer.createWithStochasticL2Regularization(
           numIterations, batchSize, initialStepSize, !parsedOptions.has(sgdNoDecayStepSize),
           !parsedOptions.has(sgdNoReturnAveragedParameters), parsedOptions.valueOf(sgdClipGradients),
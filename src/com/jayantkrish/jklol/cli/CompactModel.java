@@ -0,0 +1,56 @@
+package com.jayantkrish.jklol.cli;
+
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+
+import com.jayantkrish.jklol.tensor.CompactTensor;
+import com.jayantkrish.jklol.tensor.CompactTensor.CompactionStatistics;
+import com.jayantkrish.jklol.tensor.CompactValues.Encoding;
+import com.jayantkrish.jklol.util.IoUtils;
+
+/**
+ * Converts a serialized model (e.g., a trained {@code CcgParser}) into
+ * a smaller model whose tensors store their values with reduced
+ * precision. The converted model is written to disk and can be used
+ * in place of the original model. Prints the amount of memory saved
+ * and the largest error introduced in any parameter value.
+ *
+ * @author jayantk
+ */
+public class CompactModel extends AbstractCli {
+
+  private OptionSpec<String> input;
+  private OptionSpec<String> output;
+  private OptionSpec<String> encoding;
+
+  public CompactModel() {
+    super();
+  }
+
+  @Override
+  public void initializeOptions(OptionParser parser) {
+    input = parser.accepts("input").withRequiredArg().ofType(String.class).required();
+    output = parser.accepts("output").withRequiredArg().ofType(String.class).required();
+    // One of FLOAT32, QUANTIZED16 or QUANTIZED8
+    encoding = parser.accepts("encoding").withRequiredArg().ofType(String.class)
+        .defaultsTo(Encoding.FLOAT32.name());
+  }
+
+  @Override
+  public void run(OptionSet options) {
+    Object model = IoUtils.readSerializedObject(options.valueOf(input), Object.class);
+    Encoding valueEncoding = Encoding.valueOf(options.valueOf(encoding));
+
+    CompactionStatistics stats = new CompactionStatistics();
+    Object compactModel = CompactTensor.compactObject(model, valueEncoding, stats);
+    IoUtils.serializeObjectToFile(compactModel, options.valueOf(output));
+
+    System.out.println("Encoding: " + valueEncoding);
+    System.out.println(stats);
+  }
+
+  public static void main(String[] args) {
+    new CompactModel().run(args);
+  }
+}
@@ -242,6 +242,11 @@ public class CvsmSufficientStatistics implements SufficientStatistics {
     }
   }
 
+  @Override
+  public void trackModifiedEntries() {
+    // This class already tracks its nonzero components.
+  }
+
   @Override 
   public void zeroOut() {
     int numDeleted = 0;
@@ -354,6 +359,15 @@ public class CvsmSufficientStatistics implements SufficientStatistics {
     }
   }
 
+  @Override
+  public void rescale(double amount) {
+    for (int i = 0; i < statistics.size(); i++) {
+      if (statistics.get(i) != null) {
+        statistics.get(i).rescale(amount);
+      }
+    }
+  }
+
   @Override
   public String getDescription() {
     return statistics.toString();
@@ -0,0 +1,508 @@
+package com.jayantkrish.jklol.inference;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Ints;
+import com.google.common.primitives.Longs;
+import com.jayantkrish.jklol.models.DiscreteVariable;
+import com.jayantkrish.jklol.models.Factor;
+import com.jayantkrish.jklol.models.FactorGraph;
+import com.jayantkrish.jklol.models.VariableNumMap;
+import com.jayantkrish.jklol.parallel.ForkJoinPools;
+import com.jayantkrish.jklol.tensor.DenseVectorKernels;
+import com.jayantkrish.jklol.tensor.Tensor;
+import com.jayantkrish.jklol.util.Assignment;
+import com.jayantkrish.jklol.util.Pseudorandom;
+
+/**
+ * Gibbs sampling for discrete factor graphs, using precomputed Markov
+ * blankets and a chromatic schedule. Unlike {@link GibbsSampler},
+ * which conditions every factor on an {@link Assignment} to resample
+ * each variable, this sampler compiles the factor graph into primitive
+ * arrays once: each variable stores its factors and its offset in each
+ * factor's weights, and each chain stores the key number of every
+ * factor's current assignment. Resampling a variable reads its
+ * conditional distribution directly from the factors' log weights, and
+ * updates the key numbers of its factors incrementally.
+ * <p>
+ * Variables are partitioned into colors such that no two variables of
+ * the same color share a factor. Variables of the same color are
+ * conditionally independent given the other colors, so each color is
+ * resampled in parallel. Multiple independent chains may also run in
+ * parallel; their samples are merged into a single
+ * {@link SampleMarginalSet}. Each chain is seeded from
+ * {@link Pseudorandom}, and its samples do not depend on how its
+ * variables are scheduled across threads.
+ * <p>
+ * If every value of a variable has zero probability given the current
+ * values of the other variables, the variable is resampled uniformly.
+ *
+ * @author jayantk
+ */
+public class ChromaticGibbsSampler implements MarginalCalculator {
+  private static final long serialVersionUID = 1L;
+
+  // Colors are resampled in chunks of this many variables. Each chunk
+  // is a separate task when a color is resampled in parallel.
+  private static final int CHUNK_SIZE = 64;
+
+  private final int burnInSamples;
+  private final int numDrawsInMarginal;
+  private final int samplesBetweenDraws;
+
+  private final int numChains;
+  private final int numThreads;
+
+  /**
+   * Creates a sampler which runs a single chain in the calling thread.
+   *
+   * @param burnInSamples
+   * @param numDrawsInMarginal
+   * @param samplesBetweenDraws
+   */
+  public ChromaticGibbsSampler(int burnInSamples, int numDrawsInMarginal,
+      int samplesBetweenDraws) {
+    this(burnInSamples, numDrawsInMarginal, samplesBetweenDraws, 1, 1);
+  }
+
+  /**
+   * Creates a sampler which runs {@code numChains} independent chains
+   * using {@code numThreads} threads. Each chain draws
+   * {@code numDrawsInMarginal} samples, so the returned marginals
+   * contain {@code numChains * numDrawsInMarginal} samples. If
+   * {@code numThreads > 1}, chains run in parallel on the shared pool
+   * (see {@link ForkJoinPools}), and the colors of each chain are
+   * resampled in parallel if there are more threads than chains.
+   *
+   * @param burnInSamples
+   * @param numDrawsInMarginal
+   * @param samplesBetweenDraws
+   * @param numChains
+   * @param numThreads
+   */
+  public ChromaticGibbsSampler(int burnInSamples, int numDrawsInMarginal,
+      int samplesBetweenDraws, int numChains, int numThreads) {
+    Preconditions.checkArgument(numChains > 0);
+    Preconditions.checkArgument(numThreads > 0);
+    this.burnInSamples = burnInSamples;
+    this.numDrawsInMarginal = numDrawsInMarginal;
+    this.samplesBetweenDraws = samplesBetweenDraws;
+    this.numChains = numChains;
+    this.numThreads = numThreads;
+  }
+
+  @Override
+  public MarginalSet computeMarginals(FactorGraph factorGraph) {
+    SamplingModel model = SamplingModel.fromFactorGraph(factorGraph);
+
+    boolean parallel = numThreads > 1;
+    boolean parallelColors = parallel && numThreads > numChains;
+
+    List<ChainTask> chains = Lists.newArrayList();
+    for (int i = 0; i < numChains; i++) {
+      Chain chain = new Chain(model, Pseudorandom.get().nextLong(), parallelColors);
+      chains.add(new ChainTask(chain));
+    }
+
+    if (parallel) {
+      // Chains and chunks wait for each other by joining, so sampling
+      // may also be nested within other tasks of the pool.
+      ForkJoinPools.invokeAll(chains);
+    } else {
+      for (ChainTask chain : chains) {
+        chain.compute();
+      }
+    }
+
+    List<Assignment> samples = Lists.newArrayListWithCapacity(numChains * numDrawsInMarginal);
+    for (ChainTask chain : chains) {
+      samples.addAll(chain.getSamples());
+    }
+    return new SampleMarginalSet(factorGraph.getVariables(), samples,
+        factorGraph.getConditionedVariables(), factorGraph.getConditionedValues());
+  }
+
+  /**
+   * ChromaticGibbsSampler cannot compute max marginals. Throws a runtime
+   * exception if called.
+   */
+  @Override
+  public MaxMarginalSet computeMaxMarginals(FactorGraph factorGraph) {
+    throw new UnsupportedOperationException("Max marginals are not supported by Gibbs sampling");
+  }
+
+  /**
+   * Gets the colors of the variables of {@code factorGraph}. Each
+   * returned array contains the indexes (in
+   * {@code factorGraph.getVariables()}) of the variables of one color.
+   *
+   * @param factorGraph
+   * @return
+   */
+  static int[][] getColors(FactorGraph factorGraph) {
+    return SamplingModel.fromFactorGraph(factorGraph).colors;
+  }
+
+  /**
+   * A factor graph compiled into primitive arrays for sampling.
+   * Variables are identified by their index in the factor graph's
+   * variables, and values by their index in the variable's domain.
+   */
+  private static final class SamplingModel {
+    private final int[] varNums;
+    private final DiscreteVariable[] variables;
+    private final int[] numValues;
+    private final int maxNumValues;
+
+    private final Tensor[] factorWeights;
+    // Log weights of each dense factor, indexed by key number, or null
+    // if the factor is sparse.
+    private final double[][] factorLogWeights;
+    // Variable indexes of each factor, and the offset of each variable
+    // in the key numbers of the factor's weights.
+    private final int[][] factorVars;
+    private final long[][] factorVarOffsets;
+
+    // The Markov blanket of each variable: the factors containing the
+    // variable, and the variable's offset in each factor.
+    private final int[][] varFactors;
+    private final long[][] varFactorOffsets;
+
+    private final int[][] colors;
+
+    private SamplingModel(int[] varNums, DiscreteVariable[] variables, Tensor[] factorWeights,
+        int[][] factorVars, long[][] factorVarOffsets) {
+      this.varNums = varNums;
+      this.variables = variables;
+      this.numValues = new int[variables.length];
+      int maxNumValues = 0;
+      for (int i = 0; i < variables.length; i++) {
+        numValues[i] = variables[i].numValues();
+        maxNumValues = Math.max(maxNumValues, numValues[i]);
+      }
+      this.maxNumValues = maxNumValues;
+
+      this.factorWeights = factorWeights;
+      this.factorLogWeights = new double[factorWeights.length][];
+      for (int i = 0; i < factorWeights.length; i++) {
+        Tensor weights = factorWeights[i];
+        if (weights.size() == weights.getMaxKeyNum()) {
+          // The index of each key of a dense tensor is its key number.
+          double[] logWeights = new double[weights.size()];
+          for (int j = 0; j < logWeights.length; j++) {
+            logWeights[j] = weights.getLogByIndex(j);
+          }
+          factorLogWeights[i] = logWeights;
+        }
+      }
+      this.factorVars = factorVars;
+      this.factorVarOffsets = factorVarOffsets;
+
+      List<List<Integer>> blanketFactors = Lists.newArrayList();
+      List<List<Long>> blanketOffsets = Lists.newArrayList();
+      for (int i = 0; i < variables.length; i++) {
+        blanketFactors.add(Lists.<Integer>newArrayList());
+        blanketOffsets.add(Lists.<Long>newArrayList());
+      }
+      for (int i = 0; i < factorVars.length; i++) {
+        for (int j = 0; j < factorVars[i].length; j++) {
+          blanketFactors.get(factorVars[i][j]).add(i);
+          blanketOffsets.get(factorVars[i][j]).add(factorVarOffsets[i][j]);
+        }
+      }
+      this.varFactors = new int[variables.length][];
+      this.varFactorOffsets = new long[variables.length][];
+      for (int i = 0; i < variables.length; i++) {
+        varFactors[i] = Ints.toArray(blanketFactors.get(i));
+        varFactorOffsets[i] = Longs.toArray(blanketOffsets.get(i));
+      }
+
+      this.colors = colorVariables();
+    }
+
+    public static SamplingModel fromFactorGraph(FactorGraph factorGraph) {
+      VariableNumMap vars = factorGraph.getVariables();
+      Preconditions.checkArgument(vars.getDiscreteVariables().size() == vars.size(),
+          "ChromaticGibbsSampler only supports discrete variables.");
+      int[] varNums = vars.getVariableNumsArray();
+      DiscreteVariable[] variables = vars.getDiscreteVariables().toArray(new DiscreteVariable[0]);
+
+      List<Factor> factors = factorGraph.getFactors();
+      Tensor[] factorWeights = new Tensor[factors.size()];
+      int[][] factorVars = new int[factors.size()][];
+      long[][] factorVarOffsets = new long[factors.size()][];
+      for (int i = 0; i < factors.size(); i++) {
+        Tensor weights = factors.get(i).coerceToDiscrete().getWeights();
+        int[] dims = weights.getDimensionNumbers();
+        factorWeights[i] = weights;
+        factorVars[i] = new int[dims.length];
+        factorVarOffsets[i] = weights.getDimensionOffsets();
+        for (int j = 0; j < dims.length; j++) {
+          factorVars[i][j] = Arrays.binarySearch(varNums, dims[j]);
+          Preconditions.checkArgument(factorVars[i][j] >= 0,
+              "Factor %s contains a variable not in the factor graph: %s", i, dims[j]);
+        }
+      }
+      return new SamplingModel(varNums, variables, factorWeights, factorVars, factorVarOffsets);
+    }
+
+    /**
+     * Greedily colors the variables, such that variables which share a
+     * factor have different colors. Variables are colored in
+     * decreasing order of the size of their Markov blankets.
+     */
+    private int[][] colorVariables() {
+      final int[] blanketSizes = new int[variables.length];
+      List<Integer> order = Lists.newArrayList();
+      for (int i = 0; i < variables.length; i++) {
+        for (int factor : varFactors[i]) {
+          blanketSizes[i] += factorVars[factor].length - 1;
+        }
+        order.add(i);
+      }
+      Collections.sort(order, new Comparator<Integer>() {
+        @Override
+        public int compare(Integer first, Integer second) {
+          return Ints.compare(blanketSizes[second], blanketSizes[first]);
+        }
+      });
+
+      int[] varColors = new int[variables.length];
+      Arrays.fill(varColors, -1);
+      // usedBy[c] == v if a neighbor of variable v has color c.
+      int[] usedBy = new int[variables.length];
+      Arrays.fill(usedBy, -1);
+      List<List<Integer>> colorVars = Lists.newArrayList();
+      for (int var : order) {
+        for (int factor : varFactors[var]) {
+          for (int neighbor : factorVars[factor]) {
+            if (varColors[neighbor] != -1) {
+              usedBy[varColors[neighbor]] = var;
+            }
+          }
+        }
+        int color = 0;
+        while (usedBy[color] == var) {
+          color++;
+        }
+        if (color == colorVars.size()) {
+          colorVars.add(Lists.<Integer>newArrayList());
+        }
+        varColors[var] = color;
+        colorVars.get(color).add(var);
+      }
+
+      int[][] colors = new int[colorVars.size()][];
+      for (int i = 0; i < colors.length; i++) {
+        colors[i] = Ints.toArray(colorVars.get(i));
+        Arrays.sort(colors[i]);
+      }
+      return colors;
+    }
+  }
+
+  /**
+   * The state of a single Markov chain.
+   */
+  private static final class Chain {
+    private final SamplingModel model;
+    private final boolean parallelColors;
+
+    // The value index of each variable, and the key number of each
+    // factor's weights for the current values.
+    private final int[] values;
+    private final long[] factorKeyNums;
+
+    // Chunk i of every color is resampled using randoms[i] and
+    // scores[i], which makes samples independent of the schedule.
+    private final Random[] randoms;
+    private final double[][] scores;
+
+    public Chain(SamplingModel model, long seed, boolean parallelColors) {
+      this.model = model;
+      this.parallelColors = parallelColors;
+
+      // Every variable is initialized to its first value.
+      this.values = new int[model.variables.length];
+      this.factorKeyNums = new long[model.factorVars.length];
+
+      int numChunks = 1;
+      for (int[] color : model.colors) {
+        numChunks = Math.max(numChunks, (color.length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+      }
+      Random seeds = new Random(seed);
+      this.randoms = new Random[numChunks];
+      this.scores = new double[numChunks][model.maxNumValues];
+      for (int i = 0; i < numChunks; i++) {
+        randoms[i] = new Random(seeds.nextLong());
+      }
+    }
+
+    /**
+     * Resamples every variable once, one color at a time.
+     */
+    public void doSamplingRound() {
+      for (int[] color : model.colors) {
+        int numChunks = (color.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        if (parallelColors && numChunks > 1) {
+          List<ChunkTask> tasks = Lists.newArrayListWithCapacity(numChunks);
+          for (int i = 0; i < numChunks; i++) {
+            tasks.add(new ChunkTask(this, color, i));
+          }
+          ForkJoinTask.invokeAll(tasks);
+        } else {
+          for (int i = 0; i < numChunks; i++) {
+            resampleChunk(color, i);
+          }
+        }
+      }
+    }
+
+    public void resampleChunk(int[] color, int chunk) {
+      Random random = randoms[chunk];
+      double[] chunkScores = scores[chunk];
+      int end = Math.min(color.length, (chunk + 1) * CHUNK_SIZE);
+      for (int i = chunk * CHUNK_SIZE; i < end; i++) {
+        resample(color[i], random, chunkScores);
+      }
+    }
+
+    /**
+     * Resamples {@code var} conditioned on the current values of all
+     * other variables.
+     */
+    private void resample(int var, Random random, double[] varScores) {
+      int numValues = model.numValues[var];
+      int curValue = values[var];
+      int[] factors = model.varFactors[var];
+      long[] offsets = model.varFactorOffsets[var];
+
+      Arrays.fill(varScores, 0, numValues, 0.0);
+      for (int i = 0; i < factors.length; i++) {
+        int factor = factors[i];
+        long offset = offsets[i];
+        long keyNum = factorKeyNums[factor] - curValue * offset;
+        double[] logWeights = model.factorLogWeights[factor];
+        if (logWeights != null) {
+          for (int j = 0; j < numValues; j++) {
+            varScores[j] += logWeights[(int) keyNum];
+            keyNum += offset;
+          }
+        } else {
+          Tensor weights = model.factorWeights[factor];
+          for (int j = 0; j < numValues; j++) {
+            varScores[j] += weights.getLog(keyNum);
+            keyNum += offset;
+          }
+        }
+      }
+
+      double max = Double.NEGATIVE_INFINITY;
+      for (int j = 0; j < numValues; j++) {
+        max = Math.max(max, varScores[j]);
+      }
+
+      int newValue;
+      if (max == Double.NEGATIVE_INFINITY) {
+        newValue = random.nextInt(numValues);
+      } else {
+        for (int j = 0; j < numValues; j++) {
+          varScores[j] -= max;
+        }
+        DenseVectorKernels.getInstance().exp(varScores, varScores, numValues);
+        double total = 0.0;
+        for (int j = 0; j < numValues; j++) {
+          total += varScores[j];
+        }
+
+        double draw = random.nextDouble() * total;
+        newValue = 0;
+        double cumulative = varScores[0];
+        while (cumulative <= draw && newValue < numValues - 1) {
+          newValue++;
+          cumulative += varScores[newValue];
+        }
+        // Guard against rounding selecting a zero probability value.
+        while (varScores[newValue] == 0.0) {
+          newValue--;
+        }
+      }
+
+      if (newValue != curValue) {
+        for (int i = 0; i < factors.length; i++) {
+          factorKeyNums[factors[i]] += (newValue - curValue) * offsets[i];
+        }
+        values[var] = newValue;
+      }
+    }
+
+    public Assignment getAssignment() {
+      Object[] assignmentValues = new Object[values.length];
+      for (int i = 0; i < values.length; i++) {
+        assignmentValues[i] = model.variables[i].getValue(values[i]);
+      }
+      return Assignment.fromSortedArrays(model.varNums, assignmentValues);
+    }
+  }
+
+  /**
+   * Runs a chain and records its samples.
+   */
+  private class ChainTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final Chain chain;
+    private final List<Assignment> samples;
+
+    public ChainTask(Chain chain) {
+      this.chain = Preconditions.checkNotNull(chain);
+      this.samples = Lists.newArrayListWithCapacity(numDrawsInMarginal);
+    }
+
+    public List<Assignment> getSamples() {
+      return samples;
+    }
+
+    @Override
+    public void compute() {
+      for (int i = 0; i < burnInSamples; i++) {
+        chain.doSamplingRound();
+      }
+
+      for (int numDraws = 0; numDraws < numDrawsInMarginal; numDraws++) {
+        for (int i = 0; i < samplesBetweenDraws; i++) {
+          chain.doSamplingRound();
+        }
+        chain.doSamplingRound();
+        samples.add(chain.getAssignment());
+      }
+    }
+  }
+
+  private static class ChunkTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final Chain chain;
+    private final int[] color;
+    private final int chunk;
+
+    public ChunkTask(Chain chain, int[] color, int chunk) {
+      this.chain = chain;
+      this.color = color;
+      this.chunk = chunk;
+    }
+
+    @Override
+    public void compute() {
+      chain.resampleChunk(color, chunk);
+    }
+  }
+}
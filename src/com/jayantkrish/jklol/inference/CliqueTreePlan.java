@@ -0,0 +1,255 @@
+package com.jayantkrish.jklol.inference;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.SetMultimap;
+import com.google.common.primitives.Ints;
+import com.jayantkrish.jklol.models.Factor;
+import com.jayantkrish.jklol.models.TableFactor;
+import com.jayantkrish.jklol.models.VariableNumMap;
+
+/**
+ * The structure of a {@link JunctionTree.CliqueTree}, without any
+ * factor values. A plan contains the variables of each clique, the
+ * edges of the tree, the elimination order of the cliques and
+ * (optionally) the order in which messages are passed. The structure
+ * of a clique tree depends only on the variables of the minimal
+ * factors of a factor graph, so a plan can be computed once and then
+ * reused for every factor graph with the same {@link Structure}.
+ * <p>
+ * Plans are immutable and may be shared between threads.
+ *
+ * @author jayantk
+ */
+final class CliqueTreePlan {
+
+  private final Structure structure;
+
+  // Variable numbers of each clique factor which is not a minimal
+  // factor of the factor graph. These cliques are created with unit
+  // weights.
+  private final int[][] addedCliqueVarNums;
+
+  private final ImmutableSetMultimap<Integer, Integer> factorEdges;
+  private final ImmutableList<Integer> eliminationOrder;
+
+  // The messages passed during message passing, in order, and the root
+  // factors of the clique forest. These are null if the message
+  // schedule has not been recorded yet.
+  private final int[] messageStarts;
+  private final int[] messageEnds;
+  private final ImmutableSet<Integer> rootFactors;
+
+  // The dependencies between messages in the schedule. Message i may be
+  // passed once numMessageDependencies[i] messages have been passed, and
+  // messageSuccessors[i] are the messages which depend on message i.
+  private final int[] numMessageDependencies;
+  private final int[][] messageSuccessors;
+
+  private CliqueTreePlan(Structure structure, int[][] addedCliqueVarNums,
+      ImmutableSetMultimap<Integer, Integer> factorEdges, ImmutableList<Integer> eliminationOrder,
+      int[] messageStarts, int[] messageEnds, ImmutableSet<Integer> rootFactors,
+      int[] numMessageDependencies, int[][] messageSuccessors) {
+    this.structure = Preconditions.checkNotNull(structure);
+    this.addedCliqueVarNums = Preconditions.checkNotNull(addedCliqueVarNums);
+    this.factorEdges = Preconditions.checkNotNull(factorEdges);
+    this.eliminationOrder = Preconditions.checkNotNull(eliminationOrder);
+    this.messageStarts = messageStarts;
+    this.messageEnds = messageEnds;
+    this.rootFactors = rootFactors;
+    this.numMessageDependencies = numMessageDependencies;
+    this.messageSuccessors = messageSuccessors;
+  }
+
+  /**
+   * Creates a plan for a clique tree whose first
+   * {@code minimalFactors.size()} cliques are {@code minimalFactors},
+   * and whose remaining cliques are {@code addedCliques}.
+   *
+   * @param minimalFactors
+   * @param addedCliques
+   * @param factorEdges
+   * @param eliminationOrder
+   * @return
+   */
+  public static CliqueTreePlan create(List<Factor> minimalFactors, List<Factor> addedCliques,
+      SetMultimap<Integer, Integer> factorEdges, List<Integer> eliminationOrder) {
+    int[][] addedCliqueVarNums = new int[addedCliques.size()][];
+    for (int i = 0; i < addedCliqueVarNums.length; i++) {
+      addedCliqueVarNums[i] = addedCliques.get(i).getVars().getVariableNumsArray();
+    }
+    return new CliqueTreePlan(Structure.fromFactors(minimalFactors), addedCliqueVarNums,
+        ImmutableSetMultimap.copyOf(factorEdges), ImmutableList.copyOf(eliminationOrder),
+        null, null, null, null, null);
+  }
+
+  /**
+   * Gets a copy of this plan which replays the given message schedule.
+   * Message {@code i} is passed from clique {@code messageStarts[i]} to
+   * clique {@code messageEnds[i]}.
+   * <p>
+   * Passing a message from a clique reads the messages the clique has
+   * received and updates the clique's marginal. Therefore, each message
+   * depends on the previous message sent by its start clique, and on
+   * every message received by its start clique since then. Passing the
+   * messages in any order consistent with these dependencies produces
+   * the same messages as passing them in the given order.
+   *
+   * @param messageStarts
+   * @param messageEnds
+   * @param rootFactors
+   * @return
+   */
+  public CliqueTreePlan withMessageSchedule(int[] messageStarts, int[] messageEnds,
+      Set<Integer> rootFactors) {
+    Preconditions.checkArgument(messageStarts.length == messageEnds.length);
+    int numMessages = messageStarts.length;
+    int numFactors = eliminationOrder.size();
+
+    // The last message sent by each clique, and the messages received by
+    // each clique since then.
+    int[] lastSent = new int[numFactors];
+    Arrays.fill(lastSent, -1);
+    List<List<Integer>> received = Lists.newArrayList();
+    for (int i = 0; i < numFactors; i++) {
+      received.add(Lists.<Integer>newArrayList());
+    }
+
+    int[] numDependencies = new int[numMessages];
+    List<List<Integer>> successors = Lists.newArrayList();
+    for (int i = 0; i < numMessages; i++) {
+      successors.add(Lists.<Integer>newArrayList());
+
+      int start = messageStarts[i];
+      if (lastSent[start] != -1) {
+        successors.get(lastSent[start]).add(i);
+        numDependencies[i]++;
+      }
+      for (int dependency : received.get(start)) {
+        successors.get(dependency).add(i);
+        numDependencies[i]++;
+      }
+      lastSent[start] = i;
+      received.get(start).clear();
+      received.get(messageEnds[i]).add(i);
+    }
+
+    int[][] successorArray = new int[numMessages][];
+    for (int i = 0; i < numMessages; i++) {
+      successorArray[i] = Ints.toArray(successors.get(i));
+    }
+
+    return new CliqueTreePlan(structure, addedCliqueVarNums, factorEdges, eliminationOrder,
+        Arrays.copyOf(messageStarts, numMessages), Arrays.copyOf(messageEnds, numMessages),
+        ImmutableSet.copyOf(rootFactors), numDependencies, successorArray);
+  }
+
+  public Structure getStructure() {
+    return structure;
+  }
+
+  /**
+   * Gets the cliques of the planned clique tree, given the minimal
+   * factors of a factor graph with this plan's structure.
+   *
+   * @param minimalFactors
+   * @return
+   */
+  public List<Factor> getCliqueFactors(List<Factor> minimalFactors) {
+    ImmutableList.Builder<Factor> cliqueFactors = ImmutableList.builder();
+    cliqueFactors.addAll(minimalFactors);
+    if (addedCliqueVarNums.length > 0) {
+      VariableNumMap allVars = VariableNumMap.EMPTY;
+      for (Factor factor : minimalFactors) {
+        allVars = allVars.union(factor.getVars());
+      }
+      for (int i = 0; i < addedCliqueVarNums.length; i++) {
+        cliqueFactors.add(TableFactor.unity(allVars.intersection(addedCliqueVarNums[i])));
+      }
+    }
+    return cliqueFactors.build();
+  }
+
+  public SetMultimap<Integer, Integer> getFactorEdges() {
+    return factorEdges;
+  }
+
+  public List<Integer> getEliminationOrder() {
+    return eliminationOrder;
+  }
+
+  public boolean hasMessageSchedule() {
+    return messageStarts != null;
+  }
+
+  public int getNumMessages() {
+    return messageStarts.length;
+  }
+
+  public int getMessageStart(int messageNum) {
+    return messageStarts[messageNum];
+  }
+
+  public int getMessageEnd(int messageNum) {
+    return messageEnds[messageNum];
+  }
+
+  public int getNumMessageDependencies(int messageNum) {
+    return numMessageDependencies[messageNum];
+  }
+
+  public int[] getMessageSuccessors(int messageNum) {
+    return messageSuccessors[messageNum];
+  }
+
+  public Set<Integer> getRootFactors() {
+    return rootFactors;
+  }
+
+  /**
+   * The structure signature of a factor graph: the variable numbers of
+   * each of its minimal factors, in order. Factor graphs with equal
+   * structures have the same clique tree plan.
+   */
+  static final class Structure {
+    private final int[][] factorVarNums;
+    private final int hashCode;
+
+    private Structure(int[][] factorVarNums) {
+      this.factorVarNums = factorVarNums;
+      this.hashCode = Arrays.deepHashCode(factorVarNums);
+    }
+
+    public static Structure fromFactors(List<Factor> minimalFactors) {
+      int[][] factorVarNums = new int[minimalFactors.size()][];
+      for (int i = 0; i < factorVarNums.length; i++) {
+        factorVarNums[i] = minimalFactors.get(i).getVars().getVariableNumsArray();
+      }
+      return new Structure(factorVarNums);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (this == other) {
+        return true;
+      } else if (other instanceof Structure) {
+        Structure otherStructure = (Structure) other;
+        return hashCode == otherStructure.hashCode
+            && Arrays.deepEquals(factorVarNums, otherStructure.factorVarNums);
+      }
+      return false;
+    }
+  }
+}
@@ -11,13 +11,17 @@ import com.jayantkrish.jklol.models.FactorGraph;
 import com.jayantkrish.jklol.models.VariableNumMap;
 import com.jayantkrish.jklol.tensor.DenseTensorBuilder;
 import com.jayantkrish.jklol.tensor.SparseTensor;
+import com.jayantkrish.jklol.tensor.Tensor;
 import com.jayantkrish.jklol.tensor.TensorBuilder;
+import com.jayantkrish.jklol.tensor.TensorBuilderPool;
 import com.jayantkrish.jklol.util.IndexedList;
 
 /**
  * Approximate inference technique for computing the MAP (highest weight)
  * assignment to a graphical model. This marginal calculator only supports
- * computing max-marginals.
+ * computing max-marginals. The per-variable and per-factor weights are
+ * stored in builders from a {@link TensorBuilderPool}, so repeated
+ * inference on the same thread reuses their storage.
  * 
  * @author jayantk
  */
@@ -50,7 +54,7 @@ public class DualDecomposition implements MarginalCalculator {
     for (int i = 0; i < numVars; i++) {
       int[] dimensions = new int[] { variableNums.get(i) };
       int[] sizes = new int[] { variableTypes.get(i).numValues() };
-      DenseTensorBuilder weights = new DenseTensorBuilder(dimensions, sizes);
+      DenseTensorBuilder weights = TensorBuilderPool.getDenseBuilder(dimensions, sizes);
 
       // Integrate all unary factors into the variable weights.
       for (int factorIndex : factorGraph.getFactorsWithVariable(variableNums.get(i))) {
@@ -71,10 +75,27 @@ public class DualDecomposition implements MarginalCalculator {
         // weights.
         continue;
       }
-      factorWeights.add(DenseTensorBuilder.copyOf(
-          factor.coerceToDiscrete().getWeights().elementwiseLog()));
+      Tensor logWeights = factor.coerceToDiscrete().getWeights().elementwiseLog();
+      DenseTensorBuilder weights = TensorBuilderPool.getDenseBuilder(
+          logWeights.getDimensionNumbers(), logWeights.getDimensionSizes());
+      weights.increment(logWeights);
+      factorWeights.add(weights);
     }
 
+    try {
+      return computeMaxMarginals(factorGraph, variables, variableWeights, factorWeights);
+    } finally {
+      for (TensorBuilder builder : variableWeights) {
+        TensorBuilderPool.release(builder);
+      }
+      for (TensorBuilder builder : factorWeights) {
+        TensorBuilderPool.release(builder);
+      }
+    }
+  }
+
+  private MaxMarginalSet computeMaxMarginals(FactorGraph factorGraph, VariableNumMap variables,
+      List<TensorBuilder> variableWeights, List<TensorBuilder> factorWeights) {
     int numDisagreements = 1;
     for (int i = 0; i < maxIterations && numDisagreements > 0; i++) {
       /*
@@ -1,14 +1,23 @@
 package com.jayantkrish.jklol.inference;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.HashMultimap;
@@ -16,13 +25,21 @@ import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
+import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Sets;
 import com.google.common.collect.TreeMultimap;
+import com.google.common.primitives.Ints;
 import com.jayantkrish.jklol.models.Factor;
 import com.jayantkrish.jklol.models.FactorGraph;
 import com.jayantkrish.jklol.models.SeparatorSet;
 import com.jayantkrish.jklol.models.TableFactor;
 import com.jayantkrish.jklol.models.VariableNumMap;
+import com.jayantkrish.jklol.parallel.ForkJoinPools;
+import com.jayantkrish.jklol.tensor.DenseTensor;
+import com.jayantkrish.jklol.tensor.LogSpaceKernels;
+import com.jayantkrish.jklol.tensor.LogSpaceTensorAdapter;
+import com.jayantkrish.jklol.tensor.SparseTensor;
+import com.jayantkrish.jklol.tensor.Tensor;
 import com.jayantkrish.jklol.training.LogFunction;
 import com.jayantkrish.jklol.training.LogFunctions;
 import com.jayantkrish.jklol.util.Assignment;
@@ -39,12 +56,64 @@ import com.jayantkrish.jklol.util.Assignment;
  * to the original model. Essentially all graphical models where inference is
  * tractable should fall into this class. If an input factor graph cannot be
  * simplified, the marginal computation will throw an exception.
+ * <p>
+ * The structure of the clique tree (its cliques, edges and message
+ * passing order) depends only on the variables of the factor graph's
+ * factors. By default, this class caches these structures, so that
+ * repeatedly running inference on factor graphs with the same shape
+ * but different factor values only constructs the clique tree once.
+ * The cache is shared by all junction trees, so callers that create
+ * a new {@code JunctionTree} for each inference also reuse plans.
+ * <p>
+ * Cached plans also record the order in which messages are passed.
+ * Junction trees created with more than one thread use this order to
+ * pass messages in parallel: each message is passed as soon as the
+ * messages it depends on have been passed, so independent subtrees and
+ * disconnected components of the clique forest are processed
+ * concurrently. The computed messages are identical to those computed
+ * by a single thread.
+ * <p>
+ * Junction trees may also pass messages in log space. In this mode,
+ * messages are tensors of log weights, and each message is
+ * computed by a fused kernel ({@link LogSpaceKernels}) which sums out
+ * variables while multiplying the clique's factor with its inbound
+ * messages, without materializing any intermediate factors. Instead of
+ * dividing out the reverse message, each clique caches partial products
+ * of its factor and inbound messages. Log-space message passing does not
+ * overflow, so {@code renormalize} is unnecessary, and the returned
+ * marginals are scaled so that their largest weight is 1. The partition
+ * function is still computed exactly (in log space). Messages sent by
+ * cliques with sparse factors are sparse, so they are never larger than
+ * the factor that sent them.
  */
 public class JunctionTree implements MarginalCalculator {
   private static final long serialVersionUID = 1L;
 
+  // Maximum number of clique tree plans cached. The least recently
+  // used plan is evicted when the cache is full.
+  private static final int MAX_CACHED_PLANS = 1024;
+
   private final boolean renormalize;
   private final PruningStrategy pruningStrategy;
+  private final boolean cachePlans;
+  private final int numThreads;
+  private final boolean logSpace;
+
+  // Clique tree plans, keyed by factor graph structure, in access
+  // order. Shared by all junction trees, since plans do not depend on
+  // how inference is performed. Guarded by itself.
+  private static final Map<CliqueTreePlan.Structure, CliqueTreePlan> planCache =
+      new LinkedHashMap<CliqueTreePlan.Structure, CliqueTreePlan>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(
+            Map.Entry<CliqueTreePlan.Structure, CliqueTreePlan> eldest) {
+          // Factor graph structures may vary too much to cache all of
+          // them.
+          return size() > MAX_CACHED_PLANS;
+        }
+      };
 
   /**
    * Creates a new junction tree without renormalization.
@@ -52,6 +121,9 @@ public class JunctionTree implements MarginalCalculator {
   public JunctionTree() {
     this.renormalize = false;
     this.pruningStrategy = null;
+    this.cachePlans = true;
+    this.numThreads = 1;
+    this.logSpace = false;
   }
 
   /**
@@ -65,11 +137,75 @@ public class JunctionTree implements MarginalCalculator {
   public JunctionTree(boolean renormalize) {
     this.renormalize = renormalize;
     this.pruningStrategy = null;
+    this.cachePlans = true;
+    this.numThreads = 1;
+    this.logSpace = false;
   }
 
   public JunctionTree(boolean renormalize, PruningStrategy pruningStrategy) {
     this.renormalize = renormalize;
     this.pruningStrategy = pruningStrategy;
+    this.cachePlans = true;
+    this.numThreads = 1;
+    this.logSpace = false;
+  }
+
+  /**
+   * Creates a new junction tree.
+   * 
+   * @param renormalize see {@link #JunctionTree(boolean)}.
+   * @param pruningStrategy
+   * @param cachePlans If {@code true}, the structure of each clique tree is
+   * cached and reused for later factor graphs with the same structure.
+   * Otherwise, the clique tree is constructed from scratch on every call.
+   */
+  public JunctionTree(boolean renormalize, PruningStrategy pruningStrategy,
+      boolean cachePlans) {
+    this(renormalize, pruningStrategy, cachePlans, 1);
+  }
+
+  /**
+   * Creates a new junction tree which passes messages using
+   * {@code numThreads} threads. If {@code numThreads > 1}, messages
+   * are passed in parallel on the shared pool (see
+   * {@link ForkJoinPools}). Messages are passed in parallel only
+   * for factor graphs whose structure has a cached plan, i.e., messages
+   * are passed by the calling thread the first time any junction tree
+   * sees each structure, and whenever {@code cachePlans} is
+   * {@code false}.
+   * 
+   * @param renormalize see {@link #JunctionTree(boolean)}.
+   * @param pruningStrategy
+   * @param cachePlans see {@link #JunctionTree(boolean, PruningStrategy, boolean)}.
+   * @param numThreads
+   */
+  public JunctionTree(boolean renormalize, PruningStrategy pruningStrategy,
+      boolean cachePlans, int numThreads) {
+    this(renormalize, pruningStrategy, cachePlans, numThreads, false);
+  }
+
+  /**
+   * Creates a new junction tree.
+   * 
+   * @param renormalize see {@link #JunctionTree(boolean)}. Ignored if
+   * {@code logSpace} is {@code true}.
+   * @param pruningStrategy must be {@code null} if {@code logSpace} is
+   * {@code true}.
+   * @param cachePlans see {@link #JunctionTree(boolean, PruningStrategy, boolean)}.
+   * @param numThreads see
+   * {@link #JunctionTree(boolean, PruningStrategy, boolean, int)}.
+   * @param logSpace If {@code true}, messages are computed in log space.
+   */
+  public JunctionTree(boolean renormalize, PruningStrategy pruningStrategy,
+      boolean cachePlans, int numThreads, boolean logSpace) {
+    Preconditions.checkArgument(numThreads > 0);
+    Preconditions.checkArgument(!logSpace || pruningStrategy == null,
+        "Pruning is not supported in log space.");
+    this.renormalize = renormalize;
+    this.pruningStrategy = pruningStrategy;
+    this.cachePlans = cachePlans;
+    this.numThreads = numThreads;
+    this.logSpace = logSpace;
   }
 
   @Override
@@ -90,7 +226,7 @@ public class JunctionTree implements MarginalCalculator {
     }
     
     // long time = System.nanoTime();
-    CliqueTree cliqueTree = CliqueTree.fromHeuristicVariableElimination(factorGraph);
+    CliqueTree cliqueTree = buildCliqueTree(factorGraph);
     // long delta = (System.nanoTime() - time) / 1000;
     // System.out.println("building clique tree: " + delta);
     
@@ -100,7 +236,9 @@ public class JunctionTree implements MarginalCalculator {
     // System.out.println("Running message passing: " + delta);
 
     // time = System.nanoTime();
-    FactorMarginalSet marginals = cliqueTreeToMarginalSet(cliqueTree, rootFactorNums, factorGraph);
+    FactorMarginalSet marginals = logSpace
+        ? logSpaceCliqueTreeToMarginalSet(cliqueTree, rootFactorNums, factorGraph)
+        : cliqueTreeToMarginalSet(cliqueTree, rootFactorNums, factorGraph);
     // delta = (System.nanoTime() - time) / 1000;
     // System.out.println("marginals: " + delta);
 
@@ -119,7 +257,7 @@ public class JunctionTree implements MarginalCalculator {
     LogFunction log = LogFunctions.getLogFunction();
 
     log.startTimer("inference/build_clique_tree");
-    CliqueTree cliqueTree = CliqueTree.fromHeuristicVariableElimination(factorGraph);
+    CliqueTree cliqueTree = buildCliqueTree(factorGraph);
     log.stopTimer("inference/build_clique_tree");
 
     log.startTimer("inference/message_passing");
@@ -127,19 +265,82 @@ public class JunctionTree implements MarginalCalculator {
     log.stopTimer("inference/message_passing");
 
     log.startTimer("inference/build_max_marginals");
-    MaxMarginalSet maxMarginals = cliqueTreeToMaxMarginalSet(cliqueTree, factorGraph);
+    MaxMarginalSet maxMarginals = logSpace
+        ? logSpaceCliqueTreeToMaxMarginalSet(cliqueTree, factorGraph)
+        : cliqueTreeToMaxMarginalSet(cliqueTree, factorGraph);
     log.stopTimer("inference/build_max_marginals");
     return maxMarginals;
   }
 
+  /**
+   * Constructs a clique tree for {@code factorGraph}, reusing a cached
+   * plan for the clique tree's structure if possible.
+   * 
+   * @param factorGraph
+   * @return
+   */
+  private CliqueTree buildCliqueTree(FactorGraph factorGraph) {
+    if (!cachePlans) {
+      return CliqueTree.fromHeuristicVariableElimination(factorGraph);
+    }
+
+    List<Factor> minimalFactors = factorGraph.getMinimalFactors();
+    CliqueTreePlan plan = getCachedPlan(minimalFactors);
+    if (plan == null) {
+      plan = CliqueTree.planHeuristicVariableElimination(minimalFactors, factorGraph);
+      cachePlan(plan);
+    }
+    return CliqueTree.fromPlan(minimalFactors, plan);
+  }
+
+  /**
+   * Gets the cached plan for factor graphs whose minimal factors
+   * have the same variables as {@code minimalFactors}, or {@code null}
+   * if no such plan is cached.
+   * 
+   * @param minimalFactors
+   * @return
+   */
+  static CliqueTreePlan getCachedPlan(List<Factor> minimalFactors) {
+    CliqueTreePlan.Structure structure = CliqueTreePlan.Structure.fromFactors(minimalFactors);
+    synchronized (planCache) {
+      return planCache.get(structure);
+    }
+  }
+
+  private static void cachePlan(CliqueTreePlan plan) {
+    synchronized (planCache) {
+      planCache.put(plan.getStructure(), plan);
+    }
+  }
+
   /**
    * Runs the junction tree message-passing algorithm on {@code cliqueTree}. If
    * {@code useSumProduct == true}, then uses sum-product. Otherwise uses
-   * max-product.
+   * max-product. Returns the root factors of the clique tree.
    */
   private Set<Integer> runMessagePassing(CliqueTree cliqueTree, boolean useSumProduct) {
+    CliqueTreePlan plan = cliqueTree.getPlan();
+    if (plan.hasMessageSchedule()) {
+      // The messages were computed in this order for a previous
+      // clique tree with the same structure.
+      if (numThreads > 1 && plan.getNumMessages() > 1 && !ForkJoinPools.inSharedPool()) {
+        // Tasks running in the pool (e.g., inference nested within
+        // another inference) pass messages sequentially, as waiting
+        // for other tasks could deadlock the pool.
+        new MessageSchedule(cliqueTree, plan, useSumProduct).run(ForkJoinPools.getSharedPool());
+      } else {
+        for (int i = 0; i < plan.getNumMessages(); i++) {
+          passMessage(cliqueTree, plan.getMessageStart(i), plan.getMessageEnd(i), useSumProduct);
+        }
+      }
+      return plan.getRootFactors();
+    }
+
     Set<Integer> rootFactors = Sets.newHashSet();
     int numFactors = cliqueTree.numFactors();
+    List<Integer> messageStarts = Lists.newArrayList();
+    List<Integer> messageEnds = Lists.newArrayList();
 
     for (int i = 0; i < 2 * numFactors; i++) {
       // Perform both rounds of message passing in the same loop by
@@ -158,6 +359,8 @@ public class JunctionTree implements MarginalCalculator {
       for (SeparatorSet possibleOutboundMessage : possibleOutboundMessages) {
         if (!alreadyPassedMessages.contains(possibleOutboundMessage.getEndFactor())) {
           passMessage(cliqueTree, possibleOutboundMessage.getStartFactor(), possibleOutboundMessage.getEndFactor(), useSumProduct);
+          messageStarts.add(possibleOutboundMessage.getStartFactor());
+          messageEnds.add(possibleOutboundMessage.getEndFactor());
         }
       }
 
@@ -177,6 +380,13 @@ public class JunctionTree implements MarginalCalculator {
       }
     }
 
+    if (cachePlans) {
+      // The set of computable messages depends only on which messages
+      // have been passed, so this schedule is valid for every clique
+      // tree with the same structure.
+      cachePlan(plan.withMessageSchedule(Ints.toArray(messageStarts),
+          Ints.toArray(messageEnds), rootFactors));
+    }
     return rootFactors;
   }
 
@@ -184,6 +394,11 @@ public class JunctionTree implements MarginalCalculator {
    * Compute the message that gets passed from startFactor to destFactor.
    */
   private void passMessage(CliqueTree cliqueTree, int startFactor, int destFactor, boolean useSumProduct) {
+    if (logSpace) {
+      passLogSpaceMessage(cliqueTree, startFactor, destFactor, useSumProduct);
+      return;
+    }
+
     VariableNumMap sharedVars = cliqueTree.getFactor(startFactor).getVars().intersection(cliqueTree.getFactor(destFactor).getVars());
 
     // Find the factors which have yet to be merged into the marginal
@@ -244,6 +459,287 @@ public class JunctionTree implements MarginalCalculator {
     cliqueTree.addMessage(startFactor, destFactor, messageFactor);
   }
 
+  /**
+   * Computes the message from {@code startFactor} to {@code destFactor}
+   * in log space. The message is stored in {@code cliqueTree} using
+   * {@link CliqueTree#addLogMessage}.
+   * 
+   * @param cliqueTree
+   * @param startFactor
+   * @param destFactor
+   * @param useSumProduct
+   */
+  private static void passLogSpaceMessage(CliqueTree cliqueTree, int startFactor, int destFactor,
+      boolean useSumProduct) {
+    VariableNumMap sharedVars = cliqueTree.getFactor(startFactor).getVars()
+        .intersection(cliqueTree.getFactor(destFactor).getVars());
+
+    Tensor message = null;
+    if (cliqueTree.getMessage(destFactor, startFactor) == null) {
+      // startFactor has received every message except the one from
+      // destFactor. Add these messages to the cached partial product
+      // of startFactor, then sum out the non-shared variables.
+      double[] logValues = updateLogPartialProduct(cliqueTree, startFactor, destFactor);
+      message = LogSpaceKernels.logSumProductOutDimensions(getCliqueWeights(cliqueTree, startFactor),
+          logValues, null, new Tensor[0], sharedVars.getVariableNumsArray(), !useSumProduct);
+    } else {
+      // startFactor has received every message, including the one
+      // from destFactor. All of the remaining messages from startFactor
+      // are computed at once.
+      Map<Integer, Tensor> pendingMessages = cliqueTree.getPendingLogMessages(startFactor);
+      if (pendingMessages == null) {
+        pendingMessages = computeLogMessagesExcludingEach(cliqueTree, startFactor, useSumProduct);
+        cliqueTree.setPendingLogMessages(startFactor, pendingMessages);
+      }
+      message = pendingMessages.remove(destFactor);
+    }
+    cliqueTree.addLogMessage(startFactor, destFactor, sharedVars, message);
+  }
+
+  /**
+   * Multiplies every inbound message to {@code factorNum} which has
+   * been received, except the message from {@code excludedFactor}, into
+   * the cached partial product of the factor. Returns the log values of
+   * the partial product, which are aligned with the factor's weights.
+   * 
+   * @param cliqueTree
+   * @param factorNum
+   * @param excludedFactor
+   * @return
+   */
+  private static double[] updateLogPartialProduct(CliqueTree cliqueTree, int factorNum,
+      int excludedFactor) {
+    Tensor weights = getCliqueWeights(cliqueTree, factorNum);
+    double[] logValues = cliqueTree.getLogPartialProduct(factorNum);
+    if (logValues == null) {
+      double[] logWeights = getCliqueLogWeights(cliqueTree, factorNum);
+      logValues = Arrays.copyOf(logWeights, logWeights.length);
+      cliqueTree.setLogPartialProduct(factorNum, logValues);
+    }
+
+    Set<Integer> factorsInProduct = cliqueTree.getFactorsInMarginal(factorNum);
+    Set<Integer> factorsToAdd = Sets.newTreeSet();
+    for (int neighbor : cliqueTree.getNeighboringFactors(factorNum)) {
+      if (neighbor != excludedFactor && !factorsInProduct.contains(neighbor)
+          && cliqueTree.getMessage(neighbor, factorNum) != null) {
+        factorsToAdd.add(neighbor);
+      }
+    }
+    for (int neighbor : factorsToAdd) {
+      LogSpaceKernels.addLogFactor(weights, logValues, getLogMessage(cliqueTree, neighbor, factorNum));
+    }
+    cliqueTree.addFactorsToMarginal(factorNum, factorsToAdd);
+    return logValues;
+  }
+
+  /**
+   * Computes the message from {@code factorNum} to each neighboring
+   * factor which it has not yet sent a message to. Requires
+   * {@code factorNum} to have received all of its inbound messages.
+   * <p>
+   * Each message is the product of the factor with every inbound
+   * message except one. Rather than dividing out that message, this
+   * method recursively splits the recipients in half, multiplying the
+   * messages from each half into the product used for the other half.
+   * Computing {@code k} messages therefore requires {@code O(k log k)}
+   * tensor operations, and only {@code O(log k)} clique-sized arrays
+   * are live at once. The cached partial product of the factor becomes
+   * its marginal.
+   * 
+   * @param cliqueTree
+   * @param factorNum
+   * @param useSumProduct
+   * @return
+   */
+  private static Map<Integer, Tensor> computeLogMessagesExcludingEach(CliqueTree cliqueTree,
+      int factorNum, boolean useSumProduct) {
+    Tensor weights = getCliqueWeights(cliqueTree, factorNum);
+    Set<Integer> alreadySent = cliqueTree.getOutboundFactors(factorNum);
+    List<Integer> recipients = Lists.newArrayList();
+    double[] logWeights = getCliqueLogWeights(cliqueTree, factorNum);
+    double[] logValues = Arrays.copyOf(logWeights, logWeights.length);
+    for (int neighbor : Sets.newTreeSet(cliqueTree.getNeighboringFactors(factorNum))) {
+      if (alreadySent.contains(neighbor)) {
+        // Included in the message to every recipient.
+        LogSpaceKernels.addLogFactor(weights, logValues, getLogMessage(cliqueTree, neighbor, factorNum));
+      } else {
+        recipients.add(neighbor);
+      }
+    }
+
+    Map<Integer, Tensor> messages = Maps.newHashMap();
+    if (recipients.size() > 0) {
+      computeLogMessagesExcludingEach(cliqueTree, factorNum, weights, logValues, recipients,
+          0, recipients.size(), useSumProduct, messages);
+    }
+
+    // The product of all messages is the factor's marginal.
+    updateLogPartialProduct(cliqueTree, factorNum, -1);
+    return messages;
+  }
+
+  /**
+   * Computes the messages from {@code factorNum} to
+   * {@code recipients[start]} through {@code recipients[end - 1]}, and
+   * stores them in {@code messages}. {@code logValues} contains the
+   * product of the factor and every inbound message, except the
+   * messages from these recipients. {@code logValues} is modified.
+   */
+  private static void computeLogMessagesExcludingEach(CliqueTree cliqueTree, int factorNum,
+      Tensor weights, double[] logValues, List<Integer> recipients, int start, int end,
+      boolean useSumProduct, Map<Integer, Tensor> messages) {
+    if (end - start == 1) {
+      int recipient = recipients.get(start);
+      VariableNumMap sharedVars = cliqueTree.getFactor(factorNum).getVars()
+          .intersection(cliqueTree.getFactor(recipient).getVars());
+      messages.put(recipient, LogSpaceKernels.logSumProductOutDimensions(weights, logValues,
+          null, new Tensor[0], sharedVars.getVariableNumsArray(), !useSumProduct));
+      return;
+    }
+
+    int mid = (start + end) / 2;
+    double[] leftValues = Arrays.copyOf(logValues, logValues.length);
+    for (int i = mid; i < end; i++) {
+      LogSpaceKernels.addLogFactor(weights, leftValues,
+          getLogMessage(cliqueTree, recipients.get(i), factorNum));
+    }
+    computeLogMessagesExcludingEach(cliqueTree, factorNum, weights, leftValues, recipients,
+        start, mid, useSumProduct, messages);
+    leftValues = null;
+
+    for (int i = start; i < mid; i++) {
+      LogSpaceKernels.addLogFactor(weights, logValues,
+          getLogMessage(cliqueTree, recipients.get(i), factorNum));
+    }
+    computeLogMessagesExcludingEach(cliqueTree, factorNum, weights, logValues, recipients,
+        mid, end, useSumProduct, messages);
+  }
+
+  private static Tensor getCliqueWeights(CliqueTree cliqueTree, int factorNum) {
+    return cliqueTree.getFactor(factorNum).coerceToDiscrete().getWeights();
+  }
+
+  /**
+   * Gets the log values of the weights of the {@code factorNum}th
+   * clique. The returned array must not be modified.
+   */
+  private static double[] getCliqueLogWeights(CliqueTree cliqueTree, int factorNum) {
+    double[] logWeights = cliqueTree.getLogWeights(factorNum);
+    if (logWeights == null) {
+      logWeights = LogSpaceKernels.getLogValues(getCliqueWeights(cliqueTree, factorNum));
+      cliqueTree.setLogWeights(factorNum, logWeights);
+    }
+    return logWeights;
+  }
+
+  private static Tensor getLogMessage(CliqueTree cliqueTree, int startFactor, int endFactor) {
+    return cliqueTree.getLogMessage(startFactor, endFactor);
+  }
+
+  /**
+   * Passes the messages of a clique tree's recorded message schedule in
+   * parallel. Each message is submitted to the pool once all of the
+   * messages it depends on have been passed.
+   */
+  private class MessageSchedule {
+    private final CliqueTree cliqueTree;
+    private final CliqueTreePlan plan;
+    private final boolean useSumProduct;
+
+    // Number of unpassed dependencies of each message.
+    private final AtomicIntegerArray pendingDependencies;
+    // Number of messages which have been submitted to the pool,
+    // but not yet passed.
+    private final AtomicInteger outstandingMessages;
+    private final CountDownLatch done;
+
+    private final AtomicBoolean aborted;
+    private volatile Throwable error;
+
+    public MessageSchedule(CliqueTree cliqueTree, CliqueTreePlan plan, boolean useSumProduct) {
+      this.cliqueTree = Preconditions.checkNotNull(cliqueTree);
+      this.plan = Preconditions.checkNotNull(plan);
+      this.useSumProduct = useSumProduct;
+
+      int numMessages = plan.getNumMessages();
+      this.pendingDependencies = new AtomicIntegerArray(numMessages);
+      for (int i = 0; i < numMessages; i++) {
+        pendingDependencies.set(i, plan.getNumMessageDependencies(i));
+      }
+      this.outstandingMessages = new AtomicInteger(0);
+      this.done = new CountDownLatch(1);
+      this.aborted = new AtomicBoolean(false);
+      this.error = null;
+    }
+
+    /**
+     * Passes every message using {@code pool}, and waits for them to
+     * finish. Rethrows any exception thrown while passing a message.
+     * 
+     * @param pool
+     */
+    public void run(ForkJoinPool pool) {
+      List<MessageTask> initialTasks = Lists.newArrayList();
+      for (int i = 0; i < plan.getNumMessages(); i++) {
+        if (plan.getNumMessageDependencies(i) == 0) {
+          initialTasks.add(new MessageTask(i));
+        }
+      }
+      outstandingMessages.set(initialTasks.size());
+      for (MessageTask task : initialTasks) {
+        pool.execute(task);
+      }
+
+      try {
+        done.await();
+      } catch (InterruptedException e) {
+        // Stop scheduling new messages.
+        aborted.set(true);
+        throw new RuntimeException(e);
+      }
+
+      if (error instanceof RuntimeException) {
+        throw (RuntimeException) error;
+      } else if (error instanceof Error) {
+        throw (Error) error;
+      }
+    }
+
+    private class MessageTask extends RecursiveAction {
+      private static final long serialVersionUID = 1L;
+
+      private final int messageNum;
+
+      public MessageTask(int messageNum) {
+        this.messageNum = messageNum;
+      }
+
+      @Override
+      protected void compute() {
+        try {
+          if (!aborted.get()) {
+            passMessage(cliqueTree, plan.getMessageStart(messageNum),
+                plan.getMessageEnd(messageNum), useSumProduct);
+
+            for (int successor : plan.getMessageSuccessors(messageNum)) {
+              if (pendingDependencies.decrementAndGet(successor) == 0) {
+                outstandingMessages.incrementAndGet();
+                new MessageTask(successor).fork();
+              }
+            }
+          }
+        } catch (Throwable e) {
+          error = e;
+          aborted.set(true);
+        } finally {
+          if (outstandingMessages.decrementAndGet() == 0) {
+            done.countDown();
+          }
+        }
+      }
+    }
+  }
+
   /**
    * Computes the marginal distribution over the {@code factorNum}'th factor in
    * {@code cliqueTree}. If {@code useSumProduct} is {@code true}, this computes
@@ -299,6 +795,77 @@ public class JunctionTree implements MarginalCalculator {
         originalFactorGraph.getConditionedVariables(), originalFactorGraph.getConditionedValues());
   }
 
+  /**
+   * Computes the marginal of {@code factorNum} from its log-space
+   * messages, and stores it in {@code cliqueTree}. The marginal is
+   * scaled so that its largest weight is 1. Returns the log of the total
+   * weight of the unscaled marginal.
+   * 
+   * @param cliqueTree
+   * @param factorNum
+   * @return
+   */
+  private static double computeLogSpaceMarginal(CliqueTree cliqueTree, int factorNum) {
+    double[] logValues = updateLogPartialProduct(cliqueTree, factorNum, -1);
+    Tensor weights = getCliqueWeights(cliqueTree, factorNum);
+
+    double max = Double.NEGATIVE_INFINITY;
+    for (int i = 0; i < logValues.length; i++) {
+      max = Math.max(max, logValues[i]);
+    }
+    double[] values = new double[logValues.length];
+    double sum = 0.0;
+    if (max != Double.NEGATIVE_INFINITY) {
+      for (int i = 0; i < logValues.length; i++) {
+        values[i] = Math.exp(logValues[i] - max);
+        sum += values[i];
+      }
+    }
+
+    Tensor marginalWeights = null;
+    if (values.length == weights.getMaxKeyNum()) {
+      // Every key has an index, and the keys are in order.
+      marginalWeights = new DenseTensor(weights.getDimensionNumbers(),
+          weights.getDimensionSizes(), values);
+    } else {
+      long[] keyNums = new long[values.length];
+      for (int i = 0; i < keyNums.length; i++) {
+        keyNums[i] = weights.indexToKeyNum(i);
+      }
+      marginalWeights = SparseTensor.fromUnorderedKeyValuesNoCopy(weights.getDimensionNumbers(),
+          weights.getDimensionSizes(), keyNums, values);
+    }
+    cliqueTree.setMarginal(factorNum, new TableFactor(cliqueTree.getFactor(factorNum).getVars(),
+        marginalWeights));
+    return (max == Double.NEGATIVE_INFINITY) ? max : max + Math.log(sum);
+  }
+
+  private static FactorMarginalSet logSpaceCliqueTreeToMarginalSet(CliqueTree cliqueTree,
+      Set<Integer> rootFactorNums, FactorGraph originalFactorGraph) {
+    double logPartitionFunction = 0.0;
+    for (int i = 0; i < cliqueTree.numFactors(); i++) {
+      double logTotalWeight = computeLogSpaceMarginal(cliqueTree, i);
+      if (rootFactorNums.contains(i)) {
+        logPartitionFunction += logTotalWeight;
+      }
+    }
+
+    if (logPartitionFunction == Double.NEGATIVE_INFINITY) {
+      throw new ZeroProbabilityError();
+    }
+
+    return new FactorMarginalSet(cliqueTree.getMarginals(), logPartitionFunction,
+        originalFactorGraph.getConditionedVariables(), originalFactorGraph.getConditionedValues());
+  }
+
+  private static MaxMarginalSet logSpaceCliqueTreeToMaxMarginalSet(CliqueTree cliqueTree,
+      FactorGraph originalFactorGraph) {
+    for (int i = 0; i < cliqueTree.numFactors(); i++) {
+      computeLogSpaceMarginal(cliqueTree, i);
+    }
+    return new FactorMaxMarginalSet(cliqueTree, originalFactorGraph.getConditionedValues());
+  }
+
   /**
    * Retrieves max marginals from the given clique tree.
    * 
@@ -324,8 +891,8 @@ public class JunctionTree implements MarginalCalculator {
     private List<Factor> cliqueFactors;
 
     // These data structures represent the actual junction tree.
-    private HashMultimap<Integer, Integer> factorEdges;
-    private List<Map<Integer, SeparatorSet>> separatorSets;
+    private CliqueTreePlan plan;
+    private SetMultimap<Integer, Integer> factorEdges;
     private List<Map<Integer, Factor>> messages;
 
     // As message passing progresses, we will multiply together the factors
@@ -335,27 +902,32 @@ public class JunctionTree implements MarginalCalculator {
     private List<Factor> marginals;
     private List<Set<Integer>> factorsInMarginals;
 
+    // State of log-space message passing. logWeights contains the log
+    // values of each factor's weights, logPartialProducts contains
+    // the log values of the product of each factor with the messages in
+    // factorsInMarginals, and pendingLogMessages contains messages which
+    // have been computed but not yet passed. logMessages contains the
+    // passed log-space messages, which are also added to messages.
+    private double[][] logWeights;
+    private double[][] logPartialProducts;
+    private List<Map<Integer, Tensor>> pendingLogMessages;
+    private List<Map<Integer, Tensor>> logMessages;
+
     private List<Integer> cliqueEliminationOrder;
 
-    private CliqueTree(List<Factor> cliqueFactors, HashMultimap<Integer, Integer> factorEdges,
-        List<Integer> cliqueEliminationOrder) {
+    private CliqueTree(List<Factor> cliqueFactors, CliqueTreePlan plan) {
       this.cliqueFactors = Preconditions.checkNotNull(cliqueFactors);
-      this.factorEdges = Preconditions.checkNotNull(factorEdges);
+      this.plan = Preconditions.checkNotNull(plan);
+      this.factorEdges = plan.getFactorEdges();
+      this.cliqueEliminationOrder = plan.getEliminationOrder();
 
-      this.cliqueEliminationOrder = Preconditions.checkNotNull(cliqueEliminationOrder);
-
-      // Initialize messages and separator sets along the
-      // edges of the clique tree.
-      this.separatorSets = new ArrayList<Map<Integer, SeparatorSet>>();
+      // Messages are concurrent maps because messages may be passed
+      // in parallel (see MessageSchedule).
       this.messages = new ArrayList<Map<Integer, Factor>>();
+      this.logMessages = new ArrayList<Map<Integer, Tensor>>();
       for (int i = 0; i < cliqueFactors.size(); i++) {
-        separatorSets.add(Maps.<Integer, SeparatorSet> newHashMap());
-        messages.add(Maps.<Integer, Factor> newHashMap());
-
-        for (Integer adjacentFactor : factorEdges.get(i)) {
-          separatorSets.get(i).put(adjacentFactor, new SeparatorSet(i, adjacentFactor,
-              cliqueFactors.get(i).getVars().intersection(cliqueFactors.get(adjacentFactor).getVars())));
-        }
+        messages.add(new ConcurrentHashMap<Integer, Factor>(4));
+        logMessages.add(new ConcurrentHashMap<Integer, Tensor>(4));
       }
 
       marginals = Lists.newArrayList(cliqueFactors);
@@ -363,11 +935,45 @@ public class JunctionTree implements MarginalCalculator {
       for (int i = 0; i < marginals.size(); i++) {
         factorsInMarginals.add(Sets.<Integer> newHashSet());
       }
+
+      logWeights = new double[cliqueFactors.size()][];
+      logPartialProducts = new double[cliqueFactors.size()][];
+      pendingLogMessages = Lists.newArrayList(
+          Collections.<Map<Integer, Tensor>> nCopies(cliqueFactors.size(), null));
     }
 
     public static CliqueTree fromHeuristicVariableElimination(FactorGraph factorGraph) {
+      List<Factor> minimalFactors = factorGraph.getMinimalFactors();
+      return fromPlan(minimalFactors, planHeuristicVariableElimination(minimalFactors, factorGraph));
+    }
+
+    /**
+     * Creates a clique tree with the structure given by {@code plan}.
+     * {@code minimalFactors} are the minimal factors of a factor graph
+     * with the same structure as the factor graph used to create
+     * {@code plan}.
+     * 
+     * @param minimalFactors
+     * @param plan
+     * @return
+     */
+    static CliqueTree fromPlan(List<Factor> minimalFactors, CliqueTreePlan plan) {
+      return new CliqueTree(plan.getCliqueFactors(minimalFactors), plan);
+    }
+
+    /**
+     * Determines the structure of a clique tree for the factor graph with
+     * minimal factors {@code minimalFactors} using heuristic variable
+     * elimination.
+     * 
+     * @param minimalFactors
+     * @param factorGraph the factor graph, used in error messages.
+     * @return
+     */
+    static CliqueTreePlan planHeuristicVariableElimination(List<Factor> minimalFactors,
+        FactorGraph factorGraph) {
       // Initialize cliqueFactors with minimal cliques from the factor graph.
-      List<Factor> cliqueFactors = new ArrayList<Factor>(factorGraph.getMinimalFactors());
+      List<Factor> cliqueFactors = new ArrayList<Factor>(minimalFactors);
       HashMultimap<Integer, Integer> factorEdges = HashMultimap.create();
 
       // Store factors which contain each variable so that we can
@@ -489,7 +1095,9 @@ public class JunctionTree implements MarginalCalculator {
         // cliqueFactors.get(bestEliminationOrder.get(position)).getVars());
       }
       
-      return new CliqueTree(cliqueFactors, factorEdges, cliqueEliminationOrder);
+      return CliqueTreePlan.create(minimalFactors,
+          cliqueFactors.subList(minimalFactors.size(), cliqueFactors.size()),
+          factorEdges, cliqueEliminationOrder);
     }
 
     /*
@@ -563,6 +1171,10 @@ public class JunctionTree implements MarginalCalculator {
       return f;
     }
 
+    CliqueTreePlan getPlan() {
+      return plan;
+    }
+
     public int numFactors() {
       return cliqueFactors.size();
     }
@@ -577,8 +1189,10 @@ public class JunctionTree implements MarginalCalculator {
 
     public Map<SeparatorSet, Factor> getInboundMessages(int factorNum) {
       Map<SeparatorSet, Factor> inboundMessages = Maps.newHashMap();
+      VariableNumMap factorVars = cliqueFactors.get(factorNum).getVars();
       for (int neighbor : getNeighboringFactors(factorNum)) {
-        SeparatorSet separatorSet = separatorSets.get(factorNum).get(neighbor);
+        SeparatorSet separatorSet = new SeparatorSet(factorNum, neighbor,
+            factorVars.intersection(cliqueFactors.get(neighbor).getVars()));
         if (messages.get(neighbor).containsKey(factorNum)) {
           inboundMessages.put(separatorSet, messages.get(neighbor).get(factorNum));
         } else {
@@ -623,5 +1237,62 @@ public class JunctionTree implements MarginalCalculator {
     public void addFactorsToMarginal(int factorNum, Set<Integer> factorsToAdd) {
       factorsInMarginals.get(factorNum).addAll(factorsToAdd);
     }
+
+    double[] getLogWeights(int factorNum) {
+      return logWeights[factorNum];
+    }
+
+    void setLogWeights(int factorNum, double[] weights) {
+      logWeights[factorNum] = weights;
+    }
+
+    double[] getLogPartialProduct(int factorNum) {
+      return logPartialProducts[factorNum];
+    }
+
+    void setLogPartialProduct(int factorNum, double[] logValues) {
+      logPartialProducts[factorNum] = logValues;
+    }
+
+    Map<Integer, Tensor> getPendingLogMessages(int factorNum) {
+      return pendingLogMessages.get(factorNum);
+    }
+
+    void setPendingLogMessages(int factorNum, Map<Integer, Tensor> messages) {
+      pendingLogMessages.set(factorNum, messages);
+    }
+
+    Tensor getLogMessage(int startFactor, int endFactor) {
+      return logMessages.get(startFactor).get(endFactor);
+    }
+
+    /**
+     * Adds a message whose weights are {@code logMessage}, a tensor of
+     * log weights (see {@link LogSpaceKernels}). The message is also
+     * added as a {@code TableFactor}, so that {@link #getMessage} and
+     * {@link #getInboundMessages} include it. Sparse messages are
+     * scaled so that their largest weight is 1 in this factor.
+     */
+    void addLogMessage(int startFactor, int endFactor, VariableNumMap vars, Tensor logMessage) {
+      Tensor weights = null;
+      if (logMessage instanceof DenseTensor) {
+        weights = new LogSpaceTensorAdapter(logMessage);
+      } else {
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < logMessage.size(); i++) {
+          max = Math.max(max, logMessage.getByIndex(i));
+        }
+        double[] values = new double[logMessage.size()];
+        if (max != Double.NEGATIVE_INFINITY) {
+          for (int i = 0; i < values.length; i++) {
+            values[i] = Math.exp(logMessage.getByIndex(i) - max);
+          }
+        }
+        weights = logMessage.replaceValues(values);
+      }
+
+      logMessages.get(startFactor).put(endFactor, logMessage);
+      addMessage(startFactor, endFactor, new TableFactor(vars, weights));
+    }
   }
 }
\ No newline at end of file
@@ -194,6 +194,13 @@ public class ListSufficientStatistics implements SufficientStatistics {
     }
   }
 
+  @Override
+  public void trackModifiedEntries() {
+    for (SufficientStatistics statistic : statistics) {
+      statistic.trackModifiedEntries();
+    }
+  }
+
   @Override
   public void zeroOut() {
     for (SufficientStatistics statistic : statistics) {
@@ -267,6 +274,13 @@ public class ListSufficientStatistics implements SufficientStatistics {
     }
   }
 
+  @Override
+  public void rescale(double amount) {
+    for (int i = 0; i < statistics.size(); i++) {
+      statistics.get(i).rescale(amount);
+    }
+  }
+
   @Override
   public String getDescription() {
     StringBuilder sb = new StringBuilder();
@@ -138,6 +138,17 @@ public interface SufficientStatistics extends Serializable {
    */
   public void makeDense();
 
+  /**
+   * Requests that these statistics track which of their entries are
+   * modified. Tracking allows operations that accumulate sparse
+   * statistics, such as {@link #increment(SufficientStatistics, double)}
+   * between two tracking instances, {@link #zeroOut()} and
+   * {@link #getL2Norm()}, to run in time proportional to the number of
+   * modified entries. Implementations that cannot track modifications
+   * may ignore this request.
+   */
+  public void trackModifiedEntries();
+
   /**
    * Sets all elements of these sufficient statistics to 0.
    */
@@ -186,6 +197,16 @@ public interface SufficientStatistics extends Serializable {
   public void incrementAdagrad(SufficientStatistics gradient, SufficientStatistics sumSquares,
       double multiplier);
 
+  /**
+   * Multiplies each element of this by {@code amount}. This has the
+   * same result as {@link #multiply(double)}, but implementations may
+   * perform it in constant time by deferring the multiplication (see
+   * {@link com.jayantkrish.jklol.tensor.DenseTensorBuilder#rescale}).
+   *
+   * @param amount
+   */
+  public void rescale(double amount);
+
   /**
    * Gets a human-readable description of the parameter values in this
    * object.
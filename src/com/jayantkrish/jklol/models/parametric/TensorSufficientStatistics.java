@@ -167,7 +167,13 @@ public class TensorSufficientStatistics implements SufficientStatistics {
   public void increment(SufficientStatistics other, double multiplier) {
     Preconditions.checkArgument(other instanceof TensorSufficientStatistics);
     TensorSufficientStatistics otherStats = (TensorSufficientStatistics) other;
-    increment(otherStats.get(), multiplier);
+    if (isDense && otherStats.isDense) {
+      // Incrementing by the builder itself allows the increment to use
+      // any information about which entries of other are nonzero.
+      statistics.incrementWithMultiplier(otherStats.statistics, multiplier);
+    } else {
+      increment(otherStats.get(), multiplier);
+    }
   }
 
   public void increment(Tensor other, double multiplier) {
@@ -337,6 +343,13 @@ public class TensorSufficientStatistics implements SufficientStatistics {
     }
   }
   
+  @Override
+  public void trackModifiedEntries() {
+    if (isDense && statistics instanceof DenseTensorBuilder) {
+      ((DenseTensorBuilder) statistics).trackModifiedEntries();
+    }
+  }
+
   @Override
   public void zeroOut() {
     if (isDense) {
@@ -407,6 +420,15 @@ public class TensorSufficientStatistics implements SufficientStatistics {
     }
   }
 
+  @Override
+  public void rescale(double amount) {
+    if (isDense && statistics instanceof DenseTensorBuilder) {
+      ((DenseTensorBuilder) statistics).rescale(amount);
+    } else {
+      multiply(amount);
+    }
+  }
+
   @Override
   public String getDescription() {
     return getFactor().getParameterDescription();
@@ -0,0 +1,37 @@
+package com.jayantkrish.jklol.parallel;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ForkJoinWorkerThreadFactory;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Creates the worker threads of long-lived {@code ForkJoinPool}s.
+ * Workers are daemon threads so that an unreleased pool does not
+ * prevent the program from terminating.
+ *
+ * @author jayantk
+ */
+public class DaemonForkJoinThreadFactory implements ForkJoinWorkerThreadFactory {
+
+  private final String namePrefix;
+
+  /**
+   * Creates a factory whose threads are named {@code namePrefix}
+   * followed by the thread's index in its pool.
+   * 
+   * @param namePrefix
+   */
+  public DaemonForkJoinThreadFactory(String namePrefix) {
+    this.namePrefix = Preconditions.checkNotNull(namePrefix);
+  }
+
+  @Override
+  public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+    ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+    thread.setDaemon(true);
+    thread.setName(namePrefix + thread.getPoolIndex());
+    return thread;
+  }
+}
@@ -0,0 +1,95 @@
+package com.jayantkrish.jklol.parallel;
+
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * The {@code ForkJoinPool} shared by the parallel computations of
+ * jklol (e.g., parsing, message passing, sampling, tensor operations
+ * and map-reduce). The pool has one daemon thread per processor, so
+ * computations that run concurrently, or within each other, do not
+ * use more threads than there are processors.
+ * <p>
+ * Tasks running in the shared pool must not block waiting for other
+ * tasks of the pool, as every worker could end up waiting. Nested
+ * computations should either run sequentially or wait using
+ * {@code ForkJoinTask} joins, which execute pending tasks while
+ * waiting; {@link #invokeAll(Collection)} does the latter.
+ *
+ * @author jayantk
+ */
+public final class ForkJoinPools {
+
+  private static ForkJoinPool pool = null;
+
+  private ForkJoinPools() {
+    // Prevent instantiation.
+  }
+
+  /**
+   * Gets the shared pool, creating it if necessary.
+   *
+   * @return
+   */
+  public static synchronized ForkJoinPool getSharedPool() {
+    if (pool == null) {
+      pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+          new DaemonForkJoinThreadFactory("jklol-worker-"), null, false);
+    }
+    return pool;
+  }
+
+  /**
+   * Gets the number of threads of the shared pool.
+   *
+   * @return
+   */
+  public static int getParallelism() {
+    return getSharedPool().getParallelism();
+  }
+
+  /**
+   * Returns {@code true} if the current thread is a worker of the
+   * shared pool.
+   *
+   * @return
+   */
+  public static boolean inSharedPool() {
+    return ForkJoinTask.inForkJoinPool() && ForkJoinTask.getPool() == getSharedPool();
+  }
+
+  /**
+   * Runs {@code tasks} in the shared pool and waits for them to
+   * complete. If called from a task of the shared pool, the tasks are
+   * forked and joined by the current worker, rather than submitted.
+   *
+   * @param tasks
+   */
+  public static void invokeAll(Collection<? extends ForkJoinTask<?>> tasks) {
+    Preconditions.checkNotNull(tasks);
+    if (inSharedPool()) {
+      ForkJoinTask.invokeAll(tasks);
+    } else {
+      getSharedPool().invoke(new InvokeAllTask(tasks));
+    }
+  }
+
+  private static class InvokeAllTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final Collection<? extends ForkJoinTask<?>> tasks;
+
+    public InvokeAllTask(Collection<? extends ForkJoinTask<?>> tasks) {
+      this.tasks = tasks;
+    }
+
+    @Override
+    protected void compute() {
+      ForkJoinTask.invokeAll(tasks);
+    }
+  }
+}
@@ -18,6 +18,24 @@ import com.jayantkrish.jklol.parallel.Reducers.FilterReducer;
 /**
  * A parallelized, single-machine implementation of map-reduce pipelines. This
  * executor batches the input items and executes them on multiple local CPUs.
+ * <p>
+ * By default, a new thread pool is created for each call to
+ * {@link #mapReduce} or {@link #map}, and shut down when the call completes.
+ * Executors created with {@link #createPersistent} instead run on the shared,
+ * long-lived work-stealing pool of daemon threads (see {@link ForkJoinPools}),
+ * which avoids paying thread creation costs for programs (such as stochastic
+ * gradient descent) that perform many small map-reduce operations. Parallel
+ * computations within the mapped items (e.g., parsing) run on the same
+ * pool, so they do not create more threads than there are processors.
+ * <p>
+ * Executors created with {@link #createSharded} additionally change how
+ * {@link #mapReduce} accumulates results. Instead of reducing each batch
+ * into its own accumulator and combining the batch results serially in the
+ * calling thread, each worker reduces a contiguous shard of the items into a
+ * single accumulator, and the per-worker accumulators are combined in
+ * parallel using a tree reduction. This mode is preferable when
+ * {@link Reducer#combine} is expensive, e.g., when accumulating large
+ * gradient vectors.
  * 
  * @author jayantk
  */
@@ -26,6 +44,12 @@ public class LocalMapReduceExecutor implements MapReduceExecutor {
   private final int batchesPerThread;
   private final int numThreads;
 
+  // If true, a single thread pool is reused across calls.
+  private final boolean persistent;
+  // If true, mapReduce uses one accumulator per thread and combines
+  // accumulators with a parallel tree reduction.
+  private final boolean sharded;
+
   /**
    * Constructs an executor that processes batches of items using a fixed number
    * of local threads. {@code numThreads} threads are created, and items are
@@ -36,8 +60,65 @@ public class LocalMapReduceExecutor implements MapReduceExecutor {
    * @param batchesPerThread
    */
   public LocalMapReduceExecutor(int numThreads, int batchesPerThread) {
+    this(numThreads, batchesPerThread, false, false);
+  }
+
+  private LocalMapReduceExecutor(int numThreads, int batchesPerThread, boolean persistent,
+      boolean sharded) {
     this.numThreads = numThreads;
     this.batchesPerThread = batchesPerThread;
+    this.persistent = persistent;
+    this.sharded = sharded;
+  }
+
+  /**
+   * Constructs an executor that processes batches of items using the
+   * shared work-stealing pool of daemon threads (see
+   * {@link ForkJoinPools}). Items are batched as in
+   * {@link #LocalMapReduceExecutor(int, int)}, and at most
+   * {@link ForkJoinPools#getParallelism()} batches run at once.
+   *
+   * @param numThreads
+   * @param batchesPerThread
+   * @return
+   */
+  public static LocalMapReduceExecutor createPersistent(int numThreads, int batchesPerThread) {
+    return new LocalMapReduceExecutor(numThreads, batchesPerThread, true, false);
+  }
+
+  /**
+   * Constructs an executor that runs on the shared pool (as in
+   * {@link #createPersistent}) and reduces items into one accumulator
+   * per thread. {@code mapReduce} splits its items into
+   * {@code numThreads} contiguous shards, and combines the resulting
+   * accumulators using a parallel tree reduction that preserves the order
+   * of the items. {@code map} is unaffected by sharding.
+   *
+   * @param numThreads
+   * @return
+   */
+  public static LocalMapReduceExecutor createSharded(int numThreads) {
+    return new LocalMapReduceExecutor(numThreads, 1, true, true);
+  }
+
+  /**
+   * Returns {@code true} if this executor reuses a single thread pool across
+   * calls.
+   *
+   * @return
+   */
+  public boolean isPersistent() {
+    return persistent;
+  }
+
+  /**
+   * Returns {@code true} if this executor reduces items into one
+   * accumulator per thread.
+   *
+   * @return
+   */
+  public boolean isSharded() {
+    return sharded;
   }
   
   @Override
@@ -65,6 +146,10 @@ public class LocalMapReduceExecutor implements MapReduceExecutor {
     ExecutorService executor = getExecutor();
     // Set up the item batches for the executor service. 
     ImmutableList<A> itemsAsList = ImmutableList.copyOf(items);
+    if (sharded) {
+      return shardedMapReduce(itemsAsList, mapper, reducer, accumulator, executor);
+    }
+
     int batchSize = (int) Math.ceil(((double) items.size()) / (numThreads * batchesPerThread));
     
     // If batchSize is 1, then there are potentially more batches than items.
@@ -91,11 +176,64 @@ public class LocalMapReduceExecutor implements MapReduceExecutor {
       e.getCause().printStackTrace();
       throw new RuntimeException(e);
     } finally {
-      executor.shutdown();
+      if (!persistent) {
+        executor.shutdown();
+      }
     }
     return accumulator;
   }
 
+  /**
+   * Implementation of {@code mapReduce} for sharded executors.
+   */
+  private <A, B, C> C shardedMapReduce(ImmutableList<A> items, Mapper<A, B> mapper,
+      Reducer<B, C> reducer, C accumulator, ExecutorService executor) {
+    int numShards = Math.min(numThreads, items.size());
+    List<Future<C>> shardResults = Lists.newArrayList();
+    for (int i = 0; i < numShards; i++) {
+      // Shards are contiguous so that the tree reduction below preserves
+      // the order of the items.
+      ImmutableList<A> shardItems = items.subList((int) (((long) i) * items.size() / numShards),
+          (int) (((long) (i + 1)) * items.size() / numShards));
+      shardResults.add(executor.submit(new MapReduceBatch<A, B, C>(shardItems, mapper, reducer)));
+    }
+
+    try {
+      List<C> partialResults = Lists.newArrayList();
+      for (Future<C> result : shardResults) {
+        partialResults.add(result.get());
+      }
+
+      // Combine adjacent pairs of results in parallel until only one
+      // result remains.
+      while (partialResults.size() > 1) {
+        List<Future<C>> combinedResults = Lists.newArrayList();
+        for (int i = 0; i + 1 < partialResults.size(); i += 2) {
+          combinedResults.add(executor.submit(new CombineBatch<B, C>(
+              partialResults.get(i + 1), partialResults.get(i), reducer)));
+        }
+
+        List<C> nextPartialResults = Lists.newArrayList();
+        for (Future<C> result : combinedResults) {
+          nextPartialResults.add(result.get());
+        }
+        if (partialResults.size() % 2 == 1) {
+          nextPartialResults.add(partialResults.get(partialResults.size() - 1));
+        }
+        partialResults = nextPartialResults;
+      }
+
+      return reducer.combine(partialResults.get(0), accumulator);
+    } catch (InterruptedException e) {
+      e.printStackTrace();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      e.printStackTrace();
+      e.getCause().printStackTrace();
+      throw new RuntimeException(e);
+    }
+  }
+
   @Override
   public <A, B, C extends Mapper<A, B>> List<B> map(Collection<? extends A> items, C mapper) {
     List<B> results = Lists.newArrayList();
@@ -118,7 +256,9 @@ public class LocalMapReduceExecutor implements MapReduceExecutor {
       e.getCause().printStackTrace();
       throw new RuntimeException(e);
     } finally {
-      executor.shutdownNow();
+      if (!persistent) {
+        executor.shutdownNow();
+      }
     }
     return results;
   }
@@ -128,7 +268,21 @@ public class LocalMapReduceExecutor implements MapReduceExecutor {
     return mapReduce(items, Mappers.<A>identity(), new FilterReducer<A>(predicate));
   }
 
+  /**
+   * Does nothing. Persistent executors run on the shared pool, whose
+   * threads are daemons that are kept for the lifetime of the program,
+   * and other executors release their threads after each call. The
+   * executor remains usable after this call.
+   */
+  @Override
+  public void shutdown() {
+  }
+
   private ExecutorService getExecutor() {
+    if (persistent) {
+      return ForkJoinPools.getSharedPool();
+    }
+
     // This thread pool executor is equivalent to using 
     // Executors.newFixedThreadPool(numThreads), except that
     // unused threads are eventually terminated, allowing the
@@ -173,6 +327,28 @@ public class LocalMapReduceExecutor implements MapReduceExecutor {
     }
   }
   
+  /**
+   * Combines two accumulated results of a reducer.
+   * 
+   * @author jayantk
+   */
+  private static class CombineBatch<B, C> implements Callable<C> {
+    private final C other;
+    private final C accumulated;
+    private final Reducer<B, C> reducer;
+
+    public CombineBatch(C other, C accumulated, Reducer<B, C> reducer) {
+      this.other = other;
+      this.accumulated = accumulated;
+      this.reducer = reducer;
+    }
+
+    @Override
+    public C call() {
+      return reducer.combine(other, accumulated);
+    }
+  }
+
   public static class MapBatch<A, B> implements Callable<B> {
     private final A item;
     private final Mapper<A, B> mapper;
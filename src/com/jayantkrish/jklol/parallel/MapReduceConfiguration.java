@@ -13,6 +13,8 @@ public class MapReduceConfiguration {
 
   /**
    * Sets the global map-reduce executor to the {@code newExecutor}.
+   * The previously configured executor (if any) is not shut down; use
+   * {@link #replaceMapReduceExecutor} to do so.
    * 
    * @param newExecutor
    */
@@ -20,6 +22,46 @@ public class MapReduceConfiguration {
     executor = newExecutor;
   }
 
+  /**
+   * Sets the global map-reduce executor to {@code newExecutor}, shutting
+   * down the previously configured executor.
+   * 
+   * @param newExecutor
+   */
+  public static synchronized void replaceMapReduceExecutor(MapReduceExecutor newExecutor) {
+    MapReduceExecutor oldExecutor = executor;
+    executor = newExecutor;
+    if (oldExecutor != null && oldExecutor != newExecutor) {
+      oldExecutor.shutdown();
+    }
+  }
+
+  /**
+   * Configures the global map-reduce executor to use a persistent
+   * pool of {@code numThreads} worker threads, which is reused across
+   * all map-reduce operations until {@link #shutdown()} is called.
+   * See {@link LocalMapReduceExecutor#createPersistent}.
+   * 
+   * @param numThreads
+   * @param batchesPerThread
+   */
+  public static void usePersistentExecutor(int numThreads, int batchesPerThread) {
+    replaceMapReduceExecutor(LocalMapReduceExecutor.createPersistent(
+        numThreads, batchesPerThread));
+  }
+
+  /**
+   * Configures the global map-reduce executor to use a persistent
+   * pool of {@code numThreads} worker threads, each of which reduces
+   * items into its own accumulator. See
+   * {@link LocalMapReduceExecutor#createSharded}.
+   * 
+   * @param numThreads
+   */
+  public static void useShardedExecutor(int numThreads) {
+    replaceMapReduceExecutor(LocalMapReduceExecutor.createSharded(numThreads));
+  }
+
   /**
    * Gets the global map-reduce executor.
    * 
@@ -34,6 +76,17 @@ public class MapReduceConfiguration {
     return executor;
   }
 
+  /**
+   * Releases any resources (e.g., worker threads) held by the global
+   * map-reduce executor. The executor remains configured and may
+   * continue to be used after this call.
+   */
+  public static synchronized void shutdown() {
+    if (executor != null) {
+      executor.shutdown();
+    }
+  }
+
   private MapReduceConfiguration() {
     // Prevent instantiation.
   }
@@ -52,4 +52,11 @@ public interface MapReduceExecutor {
    * @return
    */
   public <A> List<A> filter(List<A> items, Predicate<A> predicate);
+
+  /**
+   * Releases any resources, such as worker threads, held by this
+   * executor between calls. Executors that do not hold resources
+   * between calls may implement this method as a no-op.
+   */
+  public void shutdown();
 }
@@ -8,9 +8,10 @@ import java.util.Map;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Maps;
 import com.jayantkrish.jklol.models.DiscreteVariable;
-import com.jayantkrish.jklol.tensor.SparseTensorBuilder;
+import com.jayantkrish.jklol.tensor.AppendOnlySparseTensorBuilder;
 import com.jayantkrish.jklol.tensor.Tensor;
 import com.jayantkrish.jklol.tensor.TensorBase.KeyValue;
+import com.jayantkrish.jklol.tensor.TensorBuilderPool;
 import com.jayantkrish.jklol.util.CountAccumulator;
 import com.jayantkrish.jklol.util.IndexedList;
 
@@ -87,17 +88,23 @@ public class DictionaryFeatureVectorGenerator<T, U> implements FeatureVectorGene
   @Override
   public Tensor apply(T item) {
     Map<U, Double> featureCounts = generator.generateFeatures(item);
-    SparseTensorBuilder featureBuilder = new SparseTensorBuilder(new int[] { 0 }, new int[] { getNumberOfFeatures() });
-    for (Map.Entry<U, Double> entry : featureCounts.entrySet()) {
-      if (!featureIndexes.contains(entry.getKey())) {
-        // The generator instantiated a feature which is not mapped to
-        // an index.
-        Preconditions.checkState(ignoreOovFeatures, "Generated an out-of-vocabulary feature: " + entry.getKey());
-        continue;
+    AppendOnlySparseTensorBuilder featureBuilder = TensorBuilderPool.getSparseBuilder(
+        new int[] { 0 }, new int[] { getNumberOfFeatures() });
+    try {
+      for (Map.Entry<U, Double> entry : featureCounts.entrySet()) {
+        if (!featureIndexes.contains(entry.getKey())) {
+          // The generator instantiated a feature which is not mapped to
+          // an index.
+          Preconditions.checkState(ignoreOovFeatures, "Generated an out-of-vocabulary feature: " + entry.getKey());
+          continue;
+        }
+        featureBuilder.incrementEntryByKeyNum(entry.getValue(),
+            featureIndexes.getIndex(entry.getKey()));
       }
-      featureBuilder.incrementEntry(entry.getValue(), featureIndexes.getIndex(entry.getKey()));
+      return featureBuilder.build();
+    } finally {
+      TensorBuilderPool.release(featureBuilder);
     }
-    return featureBuilder.build();
   }
 
   @Override
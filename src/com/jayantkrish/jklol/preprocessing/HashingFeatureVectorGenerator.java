@@ -4,8 +4,9 @@ import java.util.Map;
 
 import com.google.common.base.Preconditions;
 import com.jayantkrish.jklol.models.DiscreteVariable;
-import com.jayantkrish.jklol.tensor.SparseTensorBuilder;
+import com.jayantkrish.jklol.tensor.AppendOnlySparseTensorBuilder;
 import com.jayantkrish.jklol.tensor.Tensor;
+import com.jayantkrish.jklol.tensor.TensorBuilderPool;
 
 /**
  * Hashes the features generated by a {@code FeatureGenerator} into a
@@ -33,11 +34,16 @@ public class HashingFeatureVectorGenerator<T> implements FeatureVectorGenerator<
   @Override
   public Tensor apply(T item) {
     Map<? extends Object, Double> features = featureGenerator.generateFeatures(item);
-    SparseTensorBuilder featureBuilder = new SparseTensorBuilder(new int[] {0}, new int[] {dimension});
-    for (Map.Entry<? extends Object, Double> entry : features.entrySet()) {
-      featureBuilder.incrementEntry(entry.getValue(), getFeatureIndex(entry.getKey()));
+    AppendOnlySparseTensorBuilder featureBuilder = TensorBuilderPool.getSparseBuilder(
+        new int[] {0}, new int[] {dimension});
+    try {
+      for (Map.Entry<? extends Object, Double> entry : features.entrySet()) {
+        featureBuilder.incrementEntryByKeyNum(entry.getValue(), getFeatureIndex(entry.getKey()));
+      }
+      return featureBuilder.build();
+    } finally {
+      TensorBuilderPool.release(featureBuilder);
     }
-    return featureBuilder.build();
   }
   
   private int getFeatureIndex(Object obj) {
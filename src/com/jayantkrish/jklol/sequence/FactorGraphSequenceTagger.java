@@ -1,5 +1,7 @@
 package com.jayantkrish.jklol.sequence;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.util.List;
 
 import com.google.common.base.Function;
@@ -10,6 +12,7 @@ import com.jayantkrish.jklol.inference.FactorMarginalSet;
 import com.jayantkrish.jklol.inference.JunctionTree;
 import com.jayantkrish.jklol.inference.MarginalCalculator;
 import com.jayantkrish.jklol.models.DiscreteFactor;
+import com.jayantkrish.jklol.models.DiscreteVariable;
 import com.jayantkrish.jklol.models.FactorGraph;
 import com.jayantkrish.jklol.models.VariableNumMap;
 import com.jayantkrish.jklol.models.dynamic.DynamicAssignment;
@@ -19,6 +22,7 @@ import com.jayantkrish.jklol.models.dynamic.VariablePattern.VariableMatch;
 import com.jayantkrish.jklol.models.parametric.ParametricFactorGraph;
 import com.jayantkrish.jklol.models.parametric.SufficientStatistics;
 import com.jayantkrish.jklol.preprocessing.FeatureVectorGenerator;
+import com.jayantkrish.jklol.tensor.Tensor;
 import com.jayantkrish.jklol.util.Assignment;
 
 /**
@@ -26,6 +30,16 @@ import com.jayantkrish.jklol.util.Assignment;
  * graphical model constructed using
  * {@link TaggerUtils#buildFeaturizedSequenceModel} and trained using
  * any method.
+ * <p>
+ * If the model is a first-order chain (which is the case for all
+ * models constructed by {@code TaggerUtils}), inference is performed
+ * by {@link LinearChainScores} on scores read directly from the
+ * model's factors. This requires the corresponding marginal
+ * calculator to be a {@code JunctionTree}, since both compute exact
+ * (max-)marginals. Other models and marginal calculators are
+ * instantiated as a {@code FactorGraph} for each input sequence. In
+ * either case, the label probabilities returned by {@link #multitag}
+ * are normalized marginal probabilities.
  * 
  * @author jayantk
  * @param <I>
@@ -46,6 +60,10 @@ public class FactorGraphSequenceTagger<I, O> extends TrainedModelSet implements
   private final I startInput;
   private final O startLabel;
 
+  // Efficient representation of the model for inference, or null if
+  // the model is not a linear chain.
+  private transient LinearChainModel chainModel;
+
   public FactorGraphSequenceTagger(ParametricFactorGraph modelFamily,
       SufficientStatistics parameters, DynamicFactorGraph instantiatedModel,
       FeatureVectorGenerator<LocalContext<I>> featureGenerator, 
@@ -65,6 +83,13 @@ public class FactorGraphSequenceTagger<I, O> extends TrainedModelSet implements
 
     // Either both or neither are null. 
     Preconditions.checkArgument(!(startInput == null ^ startLabel == null));
+
+    this.chainModel = LinearChainModel.fromDynamicFactorGraph(instantiatedModel);
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    this.chainModel = LinearChainModel.fromDynamicFactorGraph(getInstantiatedModel());
   }
 
   @Override
@@ -95,6 +120,131 @@ public class FactorGraphSequenceTagger<I, O> extends TrainedModelSet implements
 
   @Override
   public TaggedSequence<I, O> tag(List<I> items) {
+    if (chainModel == null || !(maxMarginalCalculator instanceof JunctionTree)) {
+      return tagWithFactorGraph(items);
+    }
+
+    int[] bestLabels = getChainScores(items).getBestLabels();
+    return new ListTaggedSequence<I, O>(items, getLabels(bestLabels));
+  }
+
+  /**
+   * Gets the {@code k} highest-scoring label sequences for
+   * {@code items}, in descending order of score. This method
+   * requires the tagger's model to be a first-order chain.
+   *
+   * @param items
+   * @param k
+   * @return
+   */
+  public List<TaggedSequence<I, O>> tagKBest(List<I> items, int k) {
+    Preconditions.checkState(chainModel != null, "k-best tagging requires a linear-chain model");
+    List<TaggedSequence<I, O>> sequences = Lists.newArrayList();
+    for (int[] labels : getChainScores(items).getBestLabels(k)) {
+      sequences.add(new ListTaggedSequence<I, O>(items, getLabels(labels)));
+    }
+    return sequences;
+  }
+
+  @Override
+  public MultitaggedSequence<I, O> multitag(List<I> items, double tagThreshold) {
+    Preconditions.checkArgument(tagThreshold >= 0 && tagThreshold <= 1.0, "tagThreshold must be between 0 and 1");
+    if (chainModel == null || !(marginalCalculator instanceof JunctionTree)) {
+      return multitagWithFactorGraph(items, tagThreshold);
+    }
+
+    double[][] marginals = getChainScores(items).getMarginals();
+    DiscreteVariable labelType = chainModel.getLabelType();
+    List<List<O>> labels = Lists.newArrayList();
+    List<List<Double>> labelProbs = Lists.newArrayList();
+    int startIndex = (startInput == null) ? 0 : 1;
+    for (int i = startIndex; i < marginals.length; i++) {
+      double[] probs = marginals[i];
+      int best = 0;
+      for (int j = 1; j < probs.length; j++) {
+        if (probs[j] > probs[best]) {
+          best = j;
+        }
+      }
+
+      // Select the labels above the threshold, in descending order of
+      // probability. The most probable label is always selected.
+      List<Integer> selected = Lists.newArrayList();
+      for (int j = 0; j < probs.length; j++) {
+        if (j == best || probs[j] > tagThreshold * probs[best]) {
+          int insertIndex = selected.size();
+          while (insertIndex > 0 && probs[selected.get(insertIndex - 1)] < probs[j]) {
+            insertIndex--;
+          }
+          selected.add(insertIndex, j);
+        }
+      }
+
+      List<O> curLabels = Lists.newArrayList();
+      List<Double> curProbs = Lists.newArrayList();
+      for (int j : selected) {
+        curLabels.add(outputClass.cast(labelType.getValue(j)));
+        curProbs.add(probs[j]);
+      }
+      labels.add(curLabels);
+      labelProbs.add(curProbs);
+    }
+
+    return new ListMultitaggedSequence<I, O>(items, labels, labelProbs);
+  }
+
+  /**
+   * Computes the scores of each label for {@code items} using
+   * {@code chainModel}, adding the start input and label if necessary.
+   */
+  private LinearChainScores getChainScores(List<I> items) {
+    // As in TaggerUtils.reformatTrainingData, the start input is
+    // only part of the context of the start item.
+    List<LocalContext<I>> contexts = Lists.newArrayList();
+    if (startInput != null) {
+      List<I> itemsWithStart = Lists.newArrayList();
+      itemsWithStart.add(startInput);
+      itemsWithStart.addAll(items);
+      contexts.add(new ListLocalContext<I>(itemsWithStart, 0));
+    }
+    for (int i = 0; i < items.size(); i++) {
+      contexts.add(new ListLocalContext<I>(items, i));
+    }
+
+    List<Tensor> inputFeatures = Lists.newArrayListWithCapacity(contexts.size());
+    List<Object> inputs = Lists.newArrayListWithCapacity(contexts.size());
+    for (LocalContext<I> context : contexts) {
+      inputFeatures.add(featureGenerator.apply(context));
+      inputs.add(inputGen.apply(context));
+    }
+
+    int firstLabel = (startLabel == null) ? -1
+        : chainModel.getLabelType().getValueIndex(startLabel);
+    return chainModel.getScores(inputFeatures, inputs, firstLabel);
+  }
+
+  /**
+   * Converts the label indexes of a chain to labels, omitting the
+   * start label.
+   */
+  private List<O> getLabels(int[] labelIndexes) {
+    DiscreteVariable labelType = chainModel.getLabelType();
+    List<O> labels = Lists.newArrayList();
+    int startIndex = (startInput == null) ? 0 : 1;
+    for (int i = startIndex; i < labelIndexes.length; i++) {
+      labels.add(outputClass.cast(labelType.getValue(labelIndexes[i])));
+    }
+    return labels;
+  }
+
+  /**
+   * Tags {@code items} by instantiating a factor graph and running
+   * {@code maxMarginalCalculator}.
+   *
+   * @param items
+   * @return
+   */
+  TaggedSequence<I, O> tagWithFactorGraph(List<I> items) {
     TaggedSequence<I, O> sequence = new ListTaggedSequence<I, O>(items, null);
 
     DynamicAssignment input = TaggerUtils.reformatTrainingData(sequence, getFeatureGenerator(),
@@ -119,10 +269,15 @@ public class FactorGraphSequenceTagger<I, O> extends TrainedModelSet implements
     return new ListTaggedSequence<I, O>(items, labels);
   }
   
-  @Override
-  public MultitaggedSequence<I, O> multitag(List<I> items, double tagThreshold) {
-    Preconditions.checkArgument(tagThreshold >= 0 && tagThreshold <= 1.0, "tagThreshold must be between 0 and 1");
-
+  /**
+   * Multitags {@code items} by instantiating a factor graph and
+   * running {@code marginalCalculator}.
+   *
+   * @param items
+   * @param tagThreshold
+   * @return
+   */
+  MultitaggedSequence<I, O> multitagWithFactorGraph(List<I> items, double tagThreshold) {
     TaggedSequence<I, O> sequence = new ListTaggedSequence<I, O>(items, null);
     DynamicAssignment input = TaggerUtils.reformatTrainingData(sequence, getFeatureGenerator(),
         inputGen, getModelFamily().getVariables(), startInput, startLabel).getInput();
@@ -148,6 +303,9 @@ public class FactorGraphSequenceTagger<I, O> extends TrainedModelSet implements
       VariableMatch match = matches.get(i);
       int varNum = match.getMatchedVariablesFromTemplateVariables(templateLabelVar).getOnlyVariableNum();
       DiscreteFactor marginal = marginals.getUnnormalizedMarginal(varNum).coerceToDiscrete();
+      // Normalize the marginal to match the probabilities returned
+      // by the linear chain inference.
+      marginal = marginal.product(1.0 / marginal.getTotalUnnormalizedProbability());
       List<Assignment> bestAssignments = marginal.getMostLikelyAssignments(-1);
 
       List<O> curLabels = Lists.newArrayList();
@@ -0,0 +1,268 @@
+package com.jayantkrish.jklol.sequence;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.jayantkrish.jklol.models.DiscreteVariable;
+import com.jayantkrish.jklol.models.Factor;
+import com.jayantkrish.jklol.models.VariableNumMap;
+import com.jayantkrish.jklol.models.dynamic.DynamicFactorGraph;
+import com.jayantkrish.jklol.models.dynamic.DynamicVariableSet;
+import com.jayantkrish.jklol.models.dynamic.PlateFactor;
+import com.jayantkrish.jklol.models.dynamic.ReplicatedFactor;
+import com.jayantkrish.jklol.tensor.Tensor;
+import com.jayantkrish.jklol.util.Assignment;
+
+/**
+ * A first-order linear-chain view of a sequence model constructed by
+ * {@link TaggerUtils#buildFeaturizedSequenceModel}. This class reads
+ * the label scores for each item of an input sequence directly from
+ * the model's template factors and returns them as
+ * {@link LinearChainScores}, which avoids instantiating a
+ * {@code FactorGraph} for every input sequence.
+ * <p>
+ * Factors which do not depend on the input (e.g., label transitions)
+ * are evaluated once, when the {@code LinearChainModel} is created.
+ *
+ * @author jayantk
+ */
+public class LinearChainModel {
+
+  private final DiscreteVariable labelType;
+
+  // Template variable numbers of the plate variables, or -1 if
+  // no factor contains the variable.
+  private final int inputFeaturesVarNum;
+  private final int inputVarNum;
+
+  // Factors over the current label whose scores depend on the input.
+  private final Factor[] unaryFactors;
+  // Factors over the previous and current label whose scores depend
+  // on the input. The flags indicate the layout of the conditional
+  // factors' weights.
+  private final Factor[] transitionFactors;
+  private final boolean[] transitionFactorsTransposed;
+
+  // Scores of all factors that do not depend on the input.
+  private final double[] constantUnaryScores;
+  private final double[] constantTransitionScores;
+
+  private LinearChainModel(DiscreteVariable labelType, int inputFeaturesVarNum, int inputVarNum,
+      Factor[] unaryFactors, Factor[] transitionFactors, boolean[] transitionFactorsTransposed,
+      double[] constantUnaryScores, double[] constantTransitionScores) {
+    this.labelType = Preconditions.checkNotNull(labelType);
+    this.inputFeaturesVarNum = inputFeaturesVarNum;
+    this.inputVarNum = inputVarNum;
+    this.unaryFactors = Preconditions.checkNotNull(unaryFactors);
+    this.transitionFactors = Preconditions.checkNotNull(transitionFactors);
+    this.transitionFactorsTransposed = Preconditions.checkNotNull(transitionFactorsTransposed);
+    this.constantUnaryScores = Preconditions.checkNotNull(constantUnaryScores);
+    this.constantTransitionScores = Preconditions.checkNotNull(constantTransitionScores);
+  }
+
+  /**
+   * Gets a {@code LinearChainModel} for {@code model}, or {@code null}
+   * if {@code model} is not a first-order chain whose factors are
+   * defined over the variables of
+   * {@link TaggerUtils#buildFeaturizedSequenceModel}.
+   *
+   * @param model
+   * @return
+   */
+  public static LinearChainModel fromDynamicFactorGraph(DynamicFactorGraph model) {
+    DynamicVariableSet variables = model.getVariables();
+    if (variables.getFixedVariables().size() > 0) {
+      return null;
+    }
+
+    List<String> knownNames = Arrays.asList(TaggerUtils.INPUT_FEATURES_PATTERN,
+        TaggerUtils.INPUT_PATTERN, TaggerUtils.PREV_OUTPUT_PATTERN, TaggerUtils.OUTPUT_PATTERN);
+    int[] templateVarNums = new int[knownNames.size()];
+    Arrays.fill(templateVarNums, -1);
+    DiscreteVariable labelType = null;
+    List<Factor> factors = Lists.newArrayList();
+    for (PlateFactor plateFactor : model.getPlateFactors()) {
+      if (!(plateFactor instanceof ReplicatedFactor)) {
+        return null;
+      }
+      Factor factor = plateFactor.getFactor();
+      VariableNumMap factorVars = factor.getVars();
+      if (!factorVars.contains(TaggerUtils.OUTPUT_PATTERN)) {
+        return null;
+      }
+
+      int[] varNums = factorVars.getVariableNumsArray();
+      String[] varNames = factorVars.getVariableNamesArray();
+      for (int i = 0; i < varNums.length; i++) {
+        int index = knownNames.indexOf(varNames[i]);
+        if (index == -1 || (templateVarNums[index] != -1 && templateVarNums[index] != varNums[i])) {
+          return null;
+        }
+        templateVarNums[index] = varNums[i];
+      }
+
+      VariableNumMap labelVars = factorVars.getVariablesByName(TaggerUtils.PREV_OUTPUT_PATTERN,
+          TaggerUtils.OUTPUT_PATTERN);
+      for (DiscreteVariable labelVar : labelVars.getDiscreteVariables()) {
+        if (labelType != null && !labelType.equals(labelVar)) {
+          return null;
+        }
+        labelType = labelVar;
+      }
+      if (labelVars.getDiscreteVariables().size() != labelVars.size()) {
+        return null;
+      }
+      factors.add(factor);
+    }
+    if (labelType == null) {
+      return null;
+    }
+
+    int inputFeaturesVarNum = templateVarNums[0];
+    int inputVarNum = templateVarNums[1];
+    int prevLabelVarNum = templateVarNums[2];
+    int labelVarNum = templateVarNums[3];
+    int numLabels = labelType.numValues();
+
+    List<Factor> unaryFactors = Lists.newArrayList();
+    List<Factor> transitionFactors = Lists.newArrayList();
+    List<Boolean> transposed = Lists.newArrayList();
+    double[] constantUnaryScores = new double[numLabels];
+    double[] constantTransitionScores = new double[numLabels * numLabels];
+    for (Factor factor : factors) {
+      VariableNumMap factorVars = factor.getVars();
+      boolean isConstant = !factorVars.contains(inputFeaturesVarNum)
+          && !factorVars.contains(inputVarNum);
+      boolean isTransition = factorVars.contains(prevLabelVarNum);
+      boolean isTransposed = labelVarNum < prevLabelVarNum;
+      if (isConstant && isTransition) {
+        addTransitionScores(factor, isTransposed, numLabels, constantTransitionScores);
+      } else if (isConstant) {
+        addUnaryScores(factor, constantUnaryScores);
+      } else if (isTransition) {
+        transitionFactors.add(factor);
+        transposed.add(isTransposed);
+      } else {
+        unaryFactors.add(factor);
+      }
+    }
+
+    boolean[] transposedArray = new boolean[transposed.size()];
+    for (int i = 0; i < transposedArray.length; i++) {
+      transposedArray[i] = transposed.get(i);
+    }
+    return new LinearChainModel(labelType, inputFeaturesVarNum, inputVarNum,
+        unaryFactors.toArray(new Factor[0]), transitionFactors.toArray(new Factor[0]),
+        transposedArray, constantUnaryScores, constantTransitionScores);
+  }
+
+  public DiscreteVariable getLabelType() {
+    return labelType;
+  }
+
+  /**
+   * Gets the scores of the model's labels for a sequence whose items
+   * have the given input feature vectors and input values. If
+   * {@code firstLabel} is nonnegative, the label of the first item is
+   * fixed to the label with that index.
+   *
+   * @param inputFeatures
+   * @param inputs
+   * @param firstLabel
+   * @return
+   */
+  public LinearChainScores getScores(List<? extends Tensor> inputFeatures,
+      List<? extends Object> inputs, int firstLabel) {
+    Preconditions.checkArgument(inputFeatures.size() == inputs.size());
+    int length = inputs.size();
+    int numLabels = labelType.numValues();
+
+    double[][] unaryScores = new double[length][];
+    double[][] transitionScores = new double[length][];
+    for (int i = 0; i < length; i++) {
+      unaryScores[i] = Arrays.copyOf(constantUnaryScores, numLabels);
+      if (i > 0) {
+        // All positions share the constant transition scores,
+        // unless some transition factor depends on the input.
+        transitionScores[i] = (transitionFactors.length == 0) ? constantTransitionScores
+            : Arrays.copyOf(constantTransitionScores, constantTransitionScores.length);
+      }
+
+      if (unaryFactors.length == 0 && (i == 0 || transitionFactors.length == 0)) {
+        continue;
+      }
+      Assignment input = getInputAssignment(inputFeatures.get(i), inputs.get(i));
+      for (int j = 0; j < unaryFactors.length; j++) {
+        addUnaryScores(unaryFactors[j].conditional(input), unaryScores[i]);
+      }
+      if (i > 0) {
+        for (int j = 0; j < transitionFactors.length; j++) {
+          addTransitionScores(transitionFactors[j].conditional(input),
+              transitionFactorsTransposed[j], numLabels, transitionScores[i]);
+        }
+      }
+    }
+
+    if (firstLabel >= 0 && length > 0) {
+      for (int j = 0; j < numLabels; j++) {
+        if (j != firstLabel) {
+          unaryScores[0][j] = Double.NEGATIVE_INFINITY;
+        }
+      }
+    }
+    return new LinearChainScores(numLabels, unaryScores, transitionScores);
+  }
+
+  private Assignment getInputAssignment(Tensor inputFeatures, Object input) {
+    if (inputFeaturesVarNum == -1) {
+      return new Assignment(inputVarNum, input);
+    } else if (inputVarNum == -1) {
+      return new Assignment(inputFeaturesVarNum, inputFeatures);
+    } else {
+      return Assignment.fromUnsortedArrays(new int[] {inputFeaturesVarNum, inputVarNum},
+          new Object[] {inputFeatures, input});
+    }
+  }
+
+  /**
+   * Adds the log weights of {@code factor}, a factor over the current
+   * label, to {@code scores}.
+   */
+  private static void addUnaryScores(Factor factor, double[] scores) {
+    Tensor weights = factor.coerceToDiscrete().getWeights();
+    double[] factorScores = new double[scores.length];
+    Arrays.fill(factorScores, Double.NEGATIVE_INFINITY);
+    int size = weights.size();
+    for (int i = 0; i < size; i++) {
+      factorScores[(int) weights.indexToKeyNum(i)] = weights.getLogByIndex(i);
+    }
+    for (int i = 0; i < scores.length; i++) {
+      scores[i] += factorScores[i];
+    }
+  }
+
+  /**
+   * Adds the log weights of {@code factor}, a factor over the previous
+   * and current labels, to {@code scores}. If {@code transposed},
+   * the current label is the first dimension of the factor's weights.
+   */
+  private static void addTransitionScores(Factor factor, boolean transposed, int numLabels,
+      double[] scores) {
+    Tensor weights = factor.coerceToDiscrete().getWeights();
+    double[] factorScores = new double[scores.length];
+    Arrays.fill(factorScores, Double.NEGATIVE_INFINITY);
+    int size = weights.size();
+    for (int i = 0; i < size; i++) {
+      int keyNum = (int) weights.indexToKeyNum(i);
+      if (transposed) {
+        keyNum = (keyNum % numLabels) * numLabels + (keyNum / numLabels);
+      }
+      factorScores[keyNum] = weights.getLogByIndex(i);
+    }
+    for (int i = 0; i < scores.length; i++) {
+      scores[i] += factorScores[i];
+    }
+  }
+}
@@ -0,0 +1,379 @@
+package com.jayantkrish.jklol.sequence;
+
+import java.util.Arrays;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Log-space scores of a first-order linear-chain model over a
+ * sequence, stored in primitive arrays. The score of a label sequence
+ * {@code y} is the sum of {@code unaryScores[i][y[i]]} over all
+ * positions, plus {@code transitionScores[i][y[i - 1] * numLabels + y[i]]}
+ * for every position after the first. Scores of
+ * {@code Double.NEGATIVE_INFINITY} mark impossible labels.
+ * <p>
+ * This class implements exact Viterbi, k-best and forward-backward
+ * inference for such chains in time linear in the sequence length,
+ * without constructing factor graphs, assignments or tensors.
+ * Transition score arrays may be shared between positions.
+ *
+ * @author jayantk
+ */
+public class LinearChainScores {
+
+  private final int numLabels;
+  private final double[][] unaryScores;
+  private final double[][] transitionScores;
+
+  /**
+   * Creates scores for a sequence of length
+   * {@code unaryScores.length}. {@code transitionScores[0]} is
+   * ignored, and may be {@code null}. The arrays are not copied.
+   *
+   * @param numLabels
+   * @param unaryScores
+   * @param transitionScores
+   */
+  public LinearChainScores(int numLabels, double[][] unaryScores, double[][] transitionScores) {
+    Preconditions.checkArgument(unaryScores.length == transitionScores.length);
+    for (int i = 0; i < unaryScores.length; i++) {
+      Preconditions.checkArgument(unaryScores[i].length == numLabels);
+      Preconditions.checkArgument(i == 0 || transitionScores[i].length == numLabels * numLabels);
+    }
+    this.numLabels = numLabels;
+    this.unaryScores = unaryScores;
+    this.transitionScores = transitionScores;
+  }
+
+  public int getNumLabels() {
+    return numLabels;
+  }
+
+  public int getSequenceLength() {
+    return unaryScores.length;
+  }
+
+  /**
+   * Gets the log score of the label sequence {@code labels}.
+   *
+   * @param labels
+   * @return
+   */
+  public double getLogScore(int[] labels) {
+    Preconditions.checkArgument(labels.length == unaryScores.length);
+    double score = 0.0;
+    for (int i = 0; i < labels.length; i++) {
+      score += unaryScores[i][labels[i]];
+      if (i > 0) {
+        score += transitionScores[i][labels[i - 1] * numLabels + labels[i]];
+      }
+    }
+    return score;
+  }
+
+  /**
+   * Gets the highest-scoring label sequence using the Viterbi
+   * algorithm. Ties are broken in favor of smaller label indexes.
+   *
+   * @return
+   */
+  public int[] getBestLabels() {
+    int length = unaryScores.length;
+    int[] labels = new int[length];
+    if (length == 0) {
+      return labels;
+    }
+
+    int[][] backpointers = new int[length][numLabels];
+    double[] scores = Arrays.copyOf(unaryScores[0], numLabels);
+    double[] nextScores = new double[numLabels];
+    for (int i = 1; i < length; i++) {
+      double[] transitions = transitionScores[i];
+      double[] unary = unaryScores[i];
+      int[] curBackpointers = backpointers[i];
+      for (int cur = 0; cur < numLabels; cur++) {
+        double best = Double.NEGATIVE_INFINITY;
+        int bestPrev = 0;
+        for (int prev = 0; prev < numLabels; prev++) {
+          double score = scores[prev] + transitions[prev * numLabels + cur];
+          if (score > best) {
+            best = score;
+            bestPrev = prev;
+          }
+        }
+        nextScores[cur] = best + unary[cur];
+        curBackpointers[cur] = bestPrev;
+      }
+      double[] temp = scores;
+      scores = nextScores;
+      nextScores = temp;
+    }
+
+    labels[length - 1] = argmax(scores);
+    for (int i = length - 1; i > 0; i--) {
+      labels[i - 1] = backpointers[i][labels[i]];
+    }
+    return labels;
+  }
+
+  /**
+   * Gets the {@code k} highest-scoring label sequences, in
+   * descending order of score. Fewer than {@code k} sequences are
+   * returned if the chain has fewer than {@code k} possible label
+   * sequences.
+   *
+   * @param k
+   * @return
+   */
+  public int[][] getBestLabels(int k) {
+    Preconditions.checkArgument(k > 0);
+    int length = unaryScores.length;
+    if (length == 0) {
+      return new int[][] {new int[0]};
+    }
+
+    // For each position and label, the k best scores of sequences
+    // ending in that label, along with the label and rank of the
+    // previous position of each sequence.
+    double[][][] scores = new double[length][numLabels][];
+    int[][][] prevLabels = new int[length][numLabels][];
+    int[][][] prevRanks = new int[length][numLabels][];
+    for (int cur = 0; cur < numLabels; cur++) {
+      double score = unaryScores[0][cur];
+      scores[0][cur] = (score == Double.NEGATIVE_INFINITY) ? new double[0] : new double[] {score};
+    }
+
+    double[] candidateScores = new double[numLabels * k];
+    int[] candidateLabels = new int[numLabels * k];
+    int[] candidateRanks = new int[numLabels * k];
+    for (int i = 1; i < length; i++) {
+      double[] transitions = transitionScores[i];
+      for (int cur = 0; cur < numLabels; cur++) {
+        int numCandidates = 0;
+        double unary = unaryScores[i][cur];
+        if (unary != Double.NEGATIVE_INFINITY) {
+          for (int prev = 0; prev < numLabels; prev++) {
+            double transition = transitions[prev * numLabels + cur];
+            if (transition == Double.NEGATIVE_INFINITY) {
+              continue;
+            }
+            double[] prevScores = scores[i - 1][prev];
+            for (int rank = 0; rank < prevScores.length; rank++) {
+              candidateScores[numCandidates] = prevScores[rank] + transition + unary;
+              candidateLabels[numCandidates] = prev;
+              candidateRanks[numCandidates] = rank;
+              numCandidates++;
+            }
+          }
+        }
+
+        int numBest = selectBest(candidateScores, candidateLabels, candidateRanks,
+            numCandidates, k);
+        scores[i][cur] = new double[numBest];
+        prevLabels[i][cur] = new int[numBest];
+        prevRanks[i][cur] = new int[numBest];
+        for (int j = 0; j < numBest; j++) {
+          scores[i][cur][j] = candidateScores[j];
+          prevLabels[i][cur][j] = candidateLabels[j];
+          prevRanks[i][cur][j] = candidateRanks[j];
+        }
+      }
+    }
+
+    // Choose the best sequences across the labels of the last position.
+    int numCandidates = 0;
+    for (int cur = 0; cur < numLabels; cur++) {
+      double[] lastScores = scores[length - 1][cur];
+      for (int rank = 0; rank < lastScores.length; rank++) {
+        candidateScores[numCandidates] = lastScores[rank];
+        candidateLabels[numCandidates] = cur;
+        candidateRanks[numCandidates] = rank;
+        numCandidates++;
+      }
+    }
+    int numBest = selectBest(candidateScores, candidateLabels, candidateRanks, numCandidates, k);
+
+    int[][] sequences = new int[numBest][length];
+    for (int j = 0; j < numBest; j++) {
+      int label = candidateLabels[j];
+      int rank = candidateRanks[j];
+      for (int i = length - 1; i >= 0; i--) {
+        sequences[j][i] = label;
+        if (i > 0) {
+          int prevLabel = prevLabels[i][label][rank];
+          rank = prevRanks[i][label][rank];
+          label = prevLabel;
+        }
+      }
+    }
+    return sequences;
+  }
+
+  /**
+   * Gets the marginal distribution over the labels of each position
+   * using the forward-backward algorithm. Element {@code [i][j]} of the
+   * returned array is the probability that position {@code i} has label
+   * {@code j}.
+   *
+   * @return
+   */
+  public double[][] getMarginals() {
+    int length = unaryScores.length;
+    if (length == 0) {
+      return new double[0][];
+    }
+
+    // The algorithm runs in probability space, on exponentiated scores
+    // which are shifted so that each array's maximum is 1. The forward
+    // and backward vectors are rescaled to sum to 1 at each position.
+    // The shifts and scales are constant per position, so they do not
+    // affect the normalized marginals.
+    double[][] unaryProbs = new double[length][];
+    double[][] transitionProbs = new double[length][];
+    for (int i = 0; i < length; i++) {
+      unaryProbs[i] = expShifted(unaryScores[i]);
+      if (i > 0) {
+        // Positions frequently share transition scores.
+        transitionProbs[i] = (i > 1 && transitionScores[i] == transitionScores[i - 1])
+            ? transitionProbs[i - 1] : expShifted(transitionScores[i]);
+      }
+    }
+
+    double[][] forward = new double[length][];
+    forward[0] = Arrays.copyOf(unaryProbs[0], numLabels);
+    normalize(forward[0]);
+    for (int i = 1; i < length; i++) {
+      double[] prevForward = forward[i - 1];
+      double[] transitions = transitionProbs[i];
+      double[] curForward = new double[numLabels];
+      for (int prev = 0; prev < numLabels; prev++) {
+        double prevProb = prevForward[prev];
+        if (prevProb == 0.0) {
+          continue;
+        }
+        int offset = prev * numLabels;
+        for (int cur = 0; cur < numLabels; cur++) {
+          curForward[cur] += prevProb * transitions[offset + cur];
+        }
+      }
+      double[] unary = unaryProbs[i];
+      for (int cur = 0; cur < numLabels; cur++) {
+        curForward[cur] *= unary[cur];
+      }
+      normalize(curForward);
+      forward[i] = curForward;
+    }
+
+    double[][] marginals = new double[length][];
+    double[] backward = new double[numLabels];
+    Arrays.fill(backward, 1.0);
+    for (int i = length - 1; i >= 0; i--) {
+      double[] marginal = new double[numLabels];
+      for (int j = 0; j < numLabels; j++) {
+        marginal[j] = forward[i][j] * backward[j];
+      }
+      normalize(marginal);
+      marginals[i] = marginal;
+
+      if (i > 0) {
+        double[] transitions = transitionProbs[i];
+        double[] unary = unaryProbs[i];
+        double[] weightedBackward = new double[numLabels];
+        for (int next = 0; next < numLabels; next++) {
+          weightedBackward[next] = unary[next] * backward[next];
+        }
+        double[] prevBackward = new double[numLabels];
+        for (int prev = 0; prev < numLabels; prev++) {
+          int offset = prev * numLabels;
+          double sum = 0.0;
+          for (int next = 0; next < numLabels; next++) {
+            sum += transitions[offset + next] * weightedBackward[next];
+          }
+          prevBackward[prev] = sum;
+        }
+        normalize(prevBackward);
+        backward = prevBackward;
+      }
+    }
+    return marginals;
+  }
+
+  /**
+   * Returns {@code exp(scores[i] - max(scores))} for every element of
+   * {@code scores}.
+   */
+  private static double[] expShifted(double[] scores) {
+    double max = Double.NEGATIVE_INFINITY;
+    for (int i = 0; i < scores.length; i++) {
+      max = Math.max(max, scores[i]);
+    }
+    double[] probs = new double[scores.length];
+    if (max == Double.NEGATIVE_INFINITY) {
+      return probs;
+    }
+    for (int i = 0; i < scores.length; i++) {
+      probs[i] = Math.exp(scores[i] - max);
+    }
+    return probs;
+  }
+
+  /**
+   * Scales {@code values} to sum to 1, unless they are all 0.
+   */
+  private static void normalize(double[] values) {
+    double sum = 0.0;
+    for (int i = 0; i < values.length; i++) {
+      sum += values[i];
+    }
+    if (sum > 0.0) {
+      for (int i = 0; i < values.length; i++) {
+        values[i] /= sum;
+      }
+    }
+  }
+
+  private static int argmax(double[] values) {
+    int best = 0;
+    for (int i = 1; i < values.length; i++) {
+      if (values[i] > values[best]) {
+        best = i;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Moves the (at most) {@code k} largest of the first
+   * {@code numCandidates} candidates to the front of the candidate
+   * arrays, in descending order of score, and returns their number.
+   * Candidates with score {@code Double.NEGATIVE_INFINITY} are never
+   * selected.
+   */
+  private static int selectBest(double[] scores, int[] labels, int[] ranks,
+      int numCandidates, int k) {
+    int numSelected = 0;
+    while (numSelected < k && numSelected < numCandidates) {
+      int best = numSelected;
+      for (int j = numSelected + 1; j < numCandidates; j++) {
+        if (scores[j] > scores[best]) {
+          best = j;
+        }
+      }
+      if (scores[best] == Double.NEGATIVE_INFINITY) {
+        break;
+      }
+
+      double score = scores[best];
+      scores[best] = scores[numSelected];
+      scores[numSelected] = score;
+      int label = labels[best];
+      labels[best] = labels[numSelected];
+      labels[numSelected] = label;
+      int rank = ranks[best];
+      ranks[best] = ranks[numSelected];
+      ranks[numSelected] = rank;
+      numSelected++;
+    }
+    return numSelected;
+  }
+}
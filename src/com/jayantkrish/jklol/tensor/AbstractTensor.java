@@ -100,7 +100,7 @@ public abstract class AbstractTensor extends AbstractTensorBase implements Tenso
 
     int firstAlignedDim = -1;
     int numOtherDims = 0;
-    for (int i = 0; i < myDimensionNums.length; i++) {
+    for (int i = 0; i < myDimensionNums.length && numOtherDims < otherDimensionNums.length; i++) {
       if (myDimensionNums[i] == otherDimensionNums[numOtherDims]) {
         if (numOtherDims == 0) {
           firstAlignedDim = i;
@@ -153,7 +153,10 @@ public abstract class AbstractTensor extends AbstractTensorBase implements Tenso
 
     long[] resultDimensionOffsets = builder.getDimensionOffsets();
     long resultPrefixOffset = firstAlignedDim != 0 ? resultDimensionOffsets[firstAlignedDim - 1] : 0;
-    long resultMiddleOffset = resultDimensionOffsets[firstAlignedDim + numOtherUnalignedDims - 1];
+    // If every dimension of second is aligned, the result has no
+    // dimensions from second and this offset is unused.
+    long resultMiddleOffset = numOtherUnalignedDims > 0 ?
+        resultDimensionOffsets[firstAlignedDim + numOtherUnalignedDims - 1] : 0;
     long resultSuffixOffset = 1L;
     
     // Use the alignment of dimensions to compute a mapping between
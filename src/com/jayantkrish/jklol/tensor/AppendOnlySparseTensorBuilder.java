@@ -1,16 +1,22 @@
 package com.jayantkrish.jklol.tensor;
 
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.List;
 
-import com.google.common.collect.Lists;
-import com.google.common.primitives.Doubles;
-import com.google.common.primitives.Longs;
+import com.jayantkrish.jklol.util.ArrayUtils;
 
 /**
  * A builder for {@code SparseTensor}s which only supports the {@code put}
- * method. This class only implements a subset of the {@code TensorBuilder}
- * interface, but is much more efficient when constructing large tensors.
+ * and {@code incrementEntry} methods. This class only implements a subset of
+ * the {@code TensorBuilder} interface, but is much more efficient when
+ * constructing large tensors.
+ * <p>
+ * Keys and values are appended to growable arrays, which are sorted
+ * when a tensor is built. If a key is added more than once, its values
+ * are summed; hence, {@code put} should be called at most once per key.
+ * Zero values are omitted from the built tensor. The arrays are reused
+ * after {@link #reset()}, so a single builder can construct many tensors
+ * without allocating (see {@link TensorBuilderPool}).
  * 
  * @author jayantk
  */
@@ -18,13 +24,21 @@ public class AppendOnlySparseTensorBuilder extends AbstractTensorBase implements
 
   private static final long serialVersionUID = 1L;
   
-  private List<Long> keys;
-  private List<Double> values;
+  private static final int INITIAL_CAPACITY = 16;
+
+  private long[] keys;
+  private double[] values;
+  private int size;
+  // Set when a tensor built by buildNoCopy() shares keys and values.
+  // The arrays are then copied before they are modified.
+  private boolean shared;
 
   public AppendOnlySparseTensorBuilder(int[] dimensionNums, int[] dimensionSizes) {
     super(dimensionNums, dimensionSizes);
-    this.keys = Lists.newArrayList();
-    this.values = Lists.newArrayList();
+    this.keys = new long[INITIAL_CAPACITY];
+    this.values = new double[INITIAL_CAPACITY];
+    this.size = 0;
+    this.shared = false;
   }
   
   public static TensorFactory getFactory() {
@@ -38,7 +52,7 @@ public class AppendOnlySparseTensorBuilder extends AbstractTensorBase implements
 
   @Override
   public int size() {
-    return keys.size();
+    return size;
   }
 
   @Override
@@ -94,8 +108,15 @@ public class AppendOnlySparseTensorBuilder extends AbstractTensorBase implements
 
   @Override
   public void putByKeyNum(long keyNum, double value) {
-    keys.add(keyNum);
-    values.add(value);
+    if (shared || size == keys.length) {
+      int capacity = (size == keys.length) ? Math.max(INITIAL_CAPACITY, size * 2) : keys.length;
+      keys = Arrays.copyOf(keys, capacity);
+      values = Arrays.copyOf(values, capacity);
+      shared = false;
+    }
+    keys[size] = keyNum;
+    values[size] = value;
+    size++;
   }
 
   @Override
@@ -147,12 +168,12 @@ public class AppendOnlySparseTensorBuilder extends AbstractTensorBase implements
 
   @Override
   public void incrementEntry(double amount, int... key) {
-    throw new UnsupportedOperationException();
+    putByKeyNum(dimKeyToKeyNum(key), amount);
   }
   
   @Override
   public void incrementEntryByKeyNum(double amount, long keyNum) {
-    throw new UnsupportedOperationException();
+    putByKeyNum(keyNum, amount);
   }
 
   @Override
@@ -201,16 +222,68 @@ public class AppendOnlySparseTensorBuilder extends AbstractTensorBase implements
   }
 
   @Override
-  public SparseTensor build() {
-    long[] keyArray = Longs.toArray(keys);
-    double[] valueArray = Doubles.toArray(values);
-    return SparseTensor.fromUnorderedKeyValues(getDimensionNumbers(), getDimensionSizes(),
-        keyArray, valueArray);
+  public void reset() {
+    if (shared) {
+      keys = new long[keys.length];
+      values = new double[values.length];
+      shared = false;
+    }
+    size = 0;
   }
 
   @Override
-  public Tensor buildNoCopy() {
-    return build();
+  public SparseTensor build() {
+    int numKeys = sortAndMerge();
+    return new SparseTensor(getDimensionNumbers(), getDimensionSizes(),
+        ArrayUtils.copyOf(keys, numKeys), ArrayUtils.copyOf(values, numKeys));
+  }
+
+  /**
+   * Builds a tensor which shares the arrays of this builder if they
+   * are exactly full. Otherwise, this method copies the keys and values,
+   * like {@link #build()}. In both cases, this builder can be modified or
+   * {@code reset()} without affecting the returned tensor.
+   * 
+   * @return
+   */
+  @Override
+  public SparseTensor buildNoCopy() {
+    int numKeys = sortAndMerge();
+    if (numKeys != keys.length) {
+      return build();
+    }
+    shared = true;
+    return new SparseTensor(getDimensionNumbers(), getDimensionSizes(), keys, values);
+  }
+
+  /**
+   * Sorts the keys of this builder, sums the values of duplicate keys,
+   * and removes zero values. Returns the number of remaining keys.
+   */
+  private int sortAndMerge() {
+    if (shared) {
+      // The arrays are already sorted.
+      return size;
+    }
+    ArrayUtils.sortKeyValuePairs(keys, values, 0, size);
+    int numKeys = 0;
+    for (int i = 0; i < size; i++) {
+      if (numKeys > 0 && keys[numKeys - 1] == keys[i]) {
+        values[numKeys - 1] += values[i];
+      } else {
+        if (numKeys > 0 && values[numKeys - 1] == 0.0) {
+          numKeys--;
+        }
+        keys[numKeys] = keys[i];
+        values[numKeys] = values[i];
+        numKeys++;
+      }
+    }
+    if (numKeys > 0 && values[numKeys - 1] == 0.0) {
+      numKeys--;
+    }
+    size = numKeys;
+    return numKeys;
   }
 
   @Override
@@ -1,15 +1,15 @@
 package com.jayantkrish.jklol.tensor;
 
 import java.util.Arrays;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
 import com.google.common.primitives.Ints;
 import com.jayantkrish.jklol.util.ArrayUtils;
-import com.jayantkrish.jklol.util.PermutationIterator;
 
 /**
  * A {@code SparseTensor} which internally caches the results of
@@ -18,48 +18,119 @@ import com.jayantkrish.jklol.util.PermutationIterator;
  * mathematical operations (products, sums, etc). Hence, this class can
  * dramatically improve performance when there are large tensors that are
  * operated on repeatedly in the course of a computation.
+ * <p>
+ * Each permutation of the dimensions is cached as a
+ * {@link PermutedSparseTensor}, which stores only the order of this
+ * tensor's keys under the permutation, and is used for slices and
+ * products. Permutations returned by {@code relabelDimensions()} are
+ * additionally cached as {@code SparseTensor}s, whose arrays are
+ * shared by every relabeling with the same permutation. Permutations
+ * are computed the first time they are used. The caches are not
+ * serialized; deserialized
+ * tensors (including those serialized by earlier versions of this
+ * class, which cached every permutation eagerly) start with an empty
+ * cache.
  */
 public class CachedSparseTensor extends SparseTensor {
 
   private static final long serialVersionUID = 8039031224458210634L;
 
-  private final Map<List<Integer>, SparseTensor> tensorCache;
+  private final transient ConcurrentMap<List<Integer>, PermutedSparseTensor> tensorCache;
+  private final transient ConcurrentMap<List<Integer>, SparseTensor> relabeledCache;
 
   /**
-   * Gets a tensor with the specified dimensions, caching all permutations of
-   * values in {@code tensorCache}.
+   * Gets a tensor with the specified dimensions, which caches
+   * permutations of its dimensions as they are used.
+   * 
+   * @param dimensionNums
+   * @param dimensionSizes
+   * @param keyNums
+   * @param values
+   */
+  public CachedSparseTensor(int[] dimensionNums, int[] dimensionSizes,
+      long[] keyNums, double[] values) {
+    super(dimensionNums, dimensionSizes, keyNums, values);
+    this.tensorCache = Maps.newConcurrentMap();
+    this.relabeledCache = Maps.newConcurrentMap();
+  }
+
+  /**
+   * Same as above. {@code tensorCache} is ignored, since permutations
+   * are now computed as they are used.
    * 
    * @param dimensionNums
    * @param dimensionSizes
    * @param keyNums
    * @param values
    * @param tensorCache
+   * @deprecated use {@link #CachedSparseTensor(int[], int[], long[], double[])}.
    */
+  @Deprecated
   public CachedSparseTensor(int[] dimensionNums, int[] dimensionSizes,
       long[] keyNums, double[] values, Map<List<Integer>, SparseTensor> tensorCache) {
-    super(dimensionNums, dimensionSizes, keyNums, values);
-    this.tensorCache = Maps.newHashMap(tensorCache);
+    this(dimensionNums, dimensionSizes, keyNums, values);
   }
 
   /**
    * Construct a {@code CachedSparseTensor} which caches out all possible
    * permutations of the dimensions of {@code tensor}. The returned tensor is
    * functionally identical to {@code tensor}, but may be faster for certain
-   * operations.
+   * operations. Each permutation is computed the first time it is used.
    * 
    * @param tensor
    * @return
    */
   public static CachedSparseTensor cacheAllPermutations(SparseTensor tensor) {
-    Map<List<Integer>, SparseTensor> tensorCache = Maps.newHashMap();
-    Iterator<int[]> permutationIterator = new PermutationIterator(tensor.getDimensionNumbers().length);
-    while (permutationIterator.hasNext()) {
-      List<Integer> currentPermutation = Ints.asList(permutationIterator.next());
-      tensorCache.put(currentPermutation, tensor.relabelDimensions(
-          Ints.toArray(currentPermutation)));
-    }
     return new CachedSparseTensor(tensor.getDimensionNumbers(), tensor.getDimensionSizes(),
-        tensor.keyNums, tensor.values, tensorCache);
+        tensor.keyNums, tensor.values);
+  }
+
+  /**
+   * Gets the view of this tensor whose {@code i}th dimension is
+   * labeled {@code permutation.get(i)}, computing it if necessary.
+   * 
+   * @param permutation
+   * @return
+   */
+  private PermutedSparseTensor getPermutation(List<Integer> permutation) {
+    PermutedSparseTensor cached = tensorCache.get(permutation);
+    if (cached == null) {
+      cached = new PermutedSparseTensor(this, Ints.toArray(permutation));
+      PermutedSparseTensor previous = tensorCache.putIfAbsent(permutation, cached);
+      if (previous != null) {
+        cached = previous;
+      }
+    }
+    return cached;
+  }
+
+  /**
+   * Gets a copy of the view returned by {@link #getPermutation},
+   * computing it if necessary.
+   * 
+   * @param permutation
+   * @return
+   */
+  private SparseTensor getRelabeled(List<Integer> permutation) {
+    SparseTensor cached = relabeledCache.get(permutation);
+    if (cached == null) {
+      cached = getPermutation(permutation).toSparseTensor();
+      SparseTensor previous = relabeledCache.putIfAbsent(permutation, cached);
+      if (previous != null) {
+        cached = previous;
+      }
+    }
+    return cached;
+  }
+
+  /**
+   * Replaces a deserialized tensor with a copy that has an empty
+   * permutation cache.
+   * 
+   * @return
+   */
+  private Object readResolve() {
+    return new CachedSparseTensor(getDimensionNumbers(), getDimensionSizes(), keyNums, values);
   }
 
   public static TensorFactory getFactory() {
@@ -71,23 +142,6 @@ public class CachedSparseTensor extends SparseTensor {
     };
   }
 
-  private int[] getLeftAlignedPermutation(int[] dimensionNumbers) {
-    int[] myDims = getDimensionNumbers();
-    int[] permutation = new int[myDims.length];
-    int numRemaining = 0;
-    for (int i = 0; i < myDims.length; i++) {
-      int index = Ints.indexOf(dimensionNumbers, myDims[i]);
-      if (index == -1) {
-        permutation[i] = dimensionNumbers.length + numRemaining;
-        numRemaining++;
-      } else {
-        permutation[i] = index;
-      }
-    }
-    Preconditions.checkState(numRemaining == (myDims.length - dimensionNumbers.length));
-    return permutation;
-  }
-
   private int[] getRightmostDimensions(int[] dimensionNumbers, int[] permutation, int numDims) {
     int[] remainingDims = new int[numDims];
     int numFilled = 0;
@@ -108,36 +162,32 @@ public class CachedSparseTensor extends SparseTensor {
     }
     
     int[] permutation = getLeftAlignedPermutation(dimensionNumbers);
-    SparseTensor cached = tensorCache.get(Ints.asList(permutation));
-    // System.out.println(cachedPermutation + " " + Ints.asList(cached.getDimensionNumbers()) + " " + Ints.asList(permutation));
-    if (cached != null) {
-      int[] remainingDims = getRightmostDimensions(getDimensionNumbers(), permutation, 
-          permutation.length - dimensionNumbers.length);
-      int[] sequence = ArrayUtils.range(0, dimensionNumbers.length);
-      return cached.slice(sequence, key).relabelDimensions(remainingDims);
-    }
-    
-    // No cached tensor falls into the efficient case.
-    return super.slice(dimensionNumbers, key);
+    PermutedSparseTensor cached = getPermutation(Ints.asList(permutation));
+    int[] remainingDims = getRightmostDimensions(getDimensionNumbers(), permutation, 
+        permutation.length - dimensionNumbers.length);
+    int[] sequence = ArrayUtils.range(0, dimensionNumbers.length);
+    return cached.slice(sequence, key).relabelDimensions(remainingDims);
   }
 
   @Override
   public Tensor innerProduct(Tensor other) {
     int[] otherDims = other.getDimensionNumbers();
     int[] permutation = getLeftAlignedPermutation(otherDims);
-    SparseTensor cached = tensorCache.get(Ints.asList(permutation));
-    if (cached != null) {
-      int[] remainingDims = getRightmostDimensions(getDimensionNumbers(), permutation, 
-          permutation.length - otherDims.length);
-      int[] sequence = ArrayUtils.range(0, otherDims.length);
-      return cached.innerProduct(other.relabelDimensions(sequence)).relabelDimensions(remainingDims);
-    }
-    return super.innerProduct(other);
+    PermutedSparseTensor cached = getPermutation(Ints.asList(permutation));
+    int[] remainingDims = getRightmostDimensions(getDimensionNumbers(), permutation, 
+        permutation.length - otherDims.length);
+    int[] sequence = ArrayUtils.range(0, otherDims.length);
+    return cached.innerProduct(other.relabelDimensions(sequence)).relabelDimensions(remainingDims);
   }
 
   @Override
   public SparseTensor relabelDimensions(int[] newDimensions) {
     Preconditions.checkArgument(newDimensions.length == numDimensions());
+    if (Ordering.natural().isOrdered(Ints.asList(newDimensions))) {
+      // The keys are not reordered, so the relabeled tensor shares
+      // the keys and values of this.
+      return new SparseTensor(newDimensions, getDimensionSizes(), keyNums, values);
+    }
 
     // Compute how {@code newDimensions} permutes the indexes of this.
     int[] sortedDims = ArrayUtils.copyOf(newDimensions, newDimensions.length);
@@ -153,11 +203,17 @@ public class CachedSparseTensor extends SparseTensor {
       permutation[i] = newDimensionIndexes.get(newDimensions[i]);
     }
 
-    if (tensorCache.containsKey(Ints.asList(permutation))) {
-      return tensorCache.get(Ints.asList(permutation)).relabelDimensions(sortedDims);
-    } else {
-      return super.relabelDimensions(newDimensions);
-    }
+    return getRelabeled(Ints.asList(permutation)).relabelDimensions(sortedDims);
+  }
+
+  @Override
+  protected SparseTensor elementwiseMultiplyNotAligned(Tensor other) {
+    return elementwiseMultiplyPermuted(this, other);
+  }
+
+  @Override
+  protected PermutedSparseTensor getLeftAlignedView(int[] dimensionNumbers) {
+    return getPermutation(Ints.asList(getLeftAlignedPermutation(dimensionNumbers)));
   }
 
   /**
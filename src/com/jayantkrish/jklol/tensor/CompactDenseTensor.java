@@ -0,0 +1,76 @@
+package com.jayantkrish.jklol.tensor;
+
+import java.util.Iterator;
+
+import com.jayantkrish.jklol.tensor.CompactValues.Encoding;
+import com.jayantkrish.jklol.util.IntegerArrayIterator;
+
+/**
+ * A read-only dense tensor whose values are stored with reduced
+ * precision. This class stores the same entries as the
+ * {@link DenseTensor} it was created from, but does not extend it. See
+ * {@link CompactTensor}.
+ *
+ * @author jayantk
+ */
+public class CompactDenseTensor extends CompactTensor {
+
+  private static final long serialVersionUID = 1L;
+
+  public CompactDenseTensor(int[] dimensionNums, int[] dimensionSizes, CompactValues values) {
+    super(dimensionNums, dimensionSizes, values);
+  }
+
+  public static CompactDenseTensor fromTensor(DenseTensor tensor, Encoding encoding) {
+    return new CompactDenseTensor(tensor.getDimensionNumbers(), tensor.getDimensionSizes(),
+        CompactValues.encode(tensor.getValues(), encoding));
+  }
+
+  @Override
+  public DenseTensor toDoubleTensor() {
+    return new DenseTensor(getDimensionNumbers(), getDimensionSizes(), values.toArray());
+  }
+
+  @Override
+  public long indexToKeyNum(int index) {
+    return index;
+  }
+
+  @Override
+  public int keyNumToIndex(long keyNum) {
+    return (int) keyNum;
+  }
+
+  @Override
+  public int getNearestIndex(long keyNum) {
+    return (int) keyNum;
+  }
+
+  @Override
+  public double get(long keyNum) {
+    return values.get((int) keyNum);
+  }
+
+  @Override
+  public Iterator<KeyValue> keyValueIterator() {
+    return new KeyToKeyValueIterator(new IntegerArrayIterator(getDimensionSizes(), new int[0]),
+        this);
+  }
+
+  @Override
+  public Iterator<KeyValue> keyValuePrefixIterator(int[] keyPrefix) {
+    return new KeyToKeyValueIterator(IntegerArrayIterator.createFromKeyPrefix(
+        getDimensionSizes(), keyPrefix), this);
+  }
+
+  @Override
+  public Tensor innerProduct(Tensor other) {
+    return AbstractTensor.innerProduct(this, other, DenseTensorBuilder.getFactory());
+  }
+
+  @Override
+  public TensorHash toHash() {
+    // Dense tensors already support fast random access.
+    return this;
+  }
+}
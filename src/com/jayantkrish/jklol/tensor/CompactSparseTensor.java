@@ -0,0 +1,97 @@
+package com.jayantkrish.jklol.tensor;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import com.google.common.base.Preconditions;
+import com.jayantkrish.jklol.tensor.CompactValues.Encoding;
+
+/**
+ * A read-only sparse tensor whose values are stored with reduced
+ * precision. This class has the same keys as the {@link SparseTensor}
+ * it was created from, but does not extend it. See
+ * {@link CompactTensor}.
+ *
+ * @author jayantk
+ */
+public class CompactSparseTensor extends CompactTensor {
+
+  private static final long serialVersionUID = 1L;
+
+  private final long[] keyNums;
+
+  public CompactSparseTensor(int[] dimensionNums, int[] dimensionSizes, long[] keyNums,
+      CompactValues values) {
+    super(dimensionNums, dimensionSizes, values);
+    Preconditions.checkArgument(keyNums.length == values.size());
+    this.keyNums = keyNums;
+  }
+
+  public static CompactSparseTensor fromTensor(SparseTensor tensor, Encoding encoding) {
+    // The key array of a SparseTensor is never modified, so it can
+    // be shared.
+    return new CompactSparseTensor(tensor.getDimensionNumbers(), tensor.getDimensionSizes(),
+        tensor.getKeyNums(), CompactValues.encode(tensor.getValues(), encoding));
+  }
+
+  @Override
+  public SparseTensor toDoubleTensor() {
+    return new SparseTensor(getDimensionNumbers(), getDimensionSizes(), keyNums,
+        values.toArray());
+  }
+
+  public long[] getKeyNums() {
+    return keyNums;
+  }
+
+  @Override
+  public long indexToKeyNum(int index) {
+    return keyNums[index];
+  }
+
+  @Override
+  public int keyNumToIndex(long keyNum) {
+    int possibleIndex = Arrays.binarySearch(keyNums, keyNum);
+    return possibleIndex >= 0 ? possibleIndex : -1;
+  }
+
+  @Override
+  public int getNearestIndex(long keyNum) {
+    int index = Arrays.binarySearch(keyNums, keyNum);
+    if (index < 0) {
+      index = (-1 * index) - 1;
+    }
+    return index;
+  }
+
+  @Override
+  public Iterator<KeyValue> keyValueIterator() {
+    return new SparseKeyValueIterator(this, 0, size());
+  }
+
+  @Override
+  public Iterator<KeyValue> keyValuePrefixIterator(int[] keyPrefix) {
+    if (keyPrefix.length == 0) {
+      return keyValueIterator();
+    }
+
+    long startKeyNum = dimKeyPrefixToKeyNum(keyPrefix);
+    long endKeyNum = startKeyNum + indexOffsets[keyPrefix.length - 1];
+    return new SparseKeyValueIterator(this, getNearestIndex(startKeyNum),
+        getNearestIndex(endKeyNum));
+  }
+
+  @Override
+  public Tensor innerProduct(Tensor other) {
+    return AbstractTensor.innerProduct(this, other, SparseTensorBuilder.getFactory());
+  }
+
+  /**
+   * Gets a hash table for looking up this tensor's values, which
+   * also stores the values with reduced precision.
+   */
+  @Override
+  public TensorHash toHash() {
+    return CompactTensorHash.fromTensor(this);
+  }
+}
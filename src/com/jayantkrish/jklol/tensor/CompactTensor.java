@@ -0,0 +1,449 @@
+package com.jayantkrish.jklol.tensor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.lang.ref.SoftReference;
+import java.util.Collection;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+import com.jayantkrish.jklol.tensor.CompactValues.Encoding;
+
+/**
+ * A read-only tensor whose values are stored with reduced precision
+ * (see {@link CompactValues}), for deploying trained models using
+ * less memory. Lookups, iteration and inner products read the compact
+ * values directly. Other operations decode this tensor into a
+ * {@code SparseTensor} or {@code DenseTensor} (see
+ * {@link #toDoubleTensor()}) and return the result of performing the
+ * operation on the decoded tensor. The decoded tensor is cached
+ * through a soft reference, so repeated operations decode the values
+ * only once, yet the garbage collector can still reclaim the decoded
+ * values when memory is low.
+ * <p>
+ * {@link #compactObject} converts every tensor in a trained model,
+ * such as a {@code CcgParser}, to a compact tensor.
+ *
+ * @author jayantk
+ */
+public abstract class CompactTensor extends AbstractTensor {
+
+  private static final long serialVersionUID = 1L;
+
+  protected final CompactValues values;
+
+  // Cache of toDoubleTensor(), used by operations that are not
+  // implemented on the compact values.
+  private transient volatile SoftReference<Tensor> decodedTensor;
+
+  public CompactTensor(int[] dimensions, int[] sizes, CompactValues values) {
+    super(dimensions, sizes);
+    this.values = Preconditions.checkNotNull(values);
+  }
+
+  /**
+   * Gets a compact copy of {@code tensor}. Dense tensors are converted
+   * to {@link CompactDenseTensor}s and all other tensors to
+   * {@link CompactSparseTensor}s.
+   *
+   * @param tensor
+   * @param encoding
+   * @return
+   */
+  public static CompactTensor fromTensor(Tensor tensor, Encoding encoding) {
+    if (tensor instanceof DenseTensor) {
+      return CompactDenseTensor.fromTensor((DenseTensor) tensor, encoding);
+    } else if (tensor instanceof SparseTensor) {
+      return CompactSparseTensor.fromTensor((SparseTensor) tensor, encoding);
+    } else {
+      return CompactSparseTensor.fromTensor(SparseTensor.copyOf(tensor), encoding);
+    }
+  }
+
+  /**
+   * Gets a copy of {@code object} in which every {@code DenseTensor},
+   * {@code SparseTensor} and {@code RobinHoodTensorHash} reachable from
+   * {@code object} is replaced by its compact equivalent. The copy is
+   * made by serializing {@code object}, so every object reachable from
+   * it must be serializable, and every field that refers to a tensor
+   * must be declared as a {@code Tensor} or {@code TensorHash}.
+   *
+   * @param object
+   * @param encoding
+   * @param stats if not {@code null}, accumulates statistics about
+   * the replaced tensors.
+   * @return
+   */
+  public static <T> T compactObject(T object, Encoding encoding, CompactionStatistics stats) {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      ObjectOutputStream out = new CompactingObjectOutputStream(bytes, encoding, stats);
+      out.writeObject(object);
+      out.close();
+
+      ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+      @SuppressWarnings("unchecked")
+      T result = (T) in.readObject();
+      in.close();
+      return result;
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    } catch (ClassNotFoundException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Gets a tensor containing the decoded values of this tensor.
+   *
+   * @return
+   */
+  public abstract Tensor toDoubleTensor();
+
+  /**
+   * Gets a tensor containing the decoded values of this tensor, which
+   * may be shared with previous calls to this method.
+   *
+   * @return
+   */
+  protected Tensor getDecodedTensor() {
+    SoftReference<Tensor> reference = decodedTensor;
+    Tensor decoded = (reference != null) ? reference.get() : null;
+    if (decoded == null) {
+      decoded = toDoubleTensor();
+      decodedTensor = new SoftReference<Tensor>(decoded);
+    }
+    return decoded;
+  }
+
+  /**
+   * Gets the compact representation of this tensor's values.
+   *
+   * @return
+   */
+  public CompactValues getCompactValues() {
+    return values;
+  }
+
+  // ////////////////////////////////////////////////////////////////////
+  // Inherited from TensorBase
+  // ////////////////////////////////////////////////////////////////////
+
+  @Override
+  public int size() {
+    return values.size();
+  }
+
+  @Override
+  public double getByIndex(int index) {
+    if (index == -1) {
+      return 0.0;
+    }
+    return values.get(index);
+  }
+
+  @Override
+  public double getLogByIndex(int index) {
+    return Math.log(getByIndex(index));
+  }
+
+  @Override
+  public double getL2Norm() {
+    double sumSquared = 0.0;
+    int size = size();
+    for (int i = 0; i < size; i++) {
+      double value = values.get(i);
+      sumSquared += value * value;
+    }
+    return Math.sqrt(sumSquared);
+  }
+
+  @Override
+  public double getTrace() {
+    double sum = 0.0;
+    int size = size();
+    for (int i = 0; i < size; i++) {
+      sum += values.get(i);
+    }
+    return sum;
+  }
+
+  @Override
+  public long[] getLargestValues(int n) {
+    return getDecodedTensor().getLargestValues(n);
+  }
+
+  // ////////////////////////////////////////////////////////////////////
+  // Inherited from Tensor
+  // ////////////////////////////////////////////////////////////////////
+
+  @Override
+  public Tensor slice(int[] dimensionNumbers, int[] keys) {
+    return getDecodedTensor().slice(dimensionNumbers, keys);
+  }
+
+  @Override
+  public Tensor retainKeys(Tensor indicatorTensor) {
+    return getDecodedTensor().retainKeys(indicatorTensor);
+  }
+
+  @Override
+  public Tensor findKeysLargerThan(double thresholdValue) {
+    return getDecodedTensor().findKeysLargerThan(thresholdValue);
+  }
+
+  @Override
+  public Tensor elementwiseProduct(Tensor other) {
+    return getDecodedTensor().elementwiseProduct(other);
+  }
+
+  @Override
+  public Tensor matrixInnerProduct(Tensor other) {
+    return getDecodedTensor().matrixInnerProduct(other);
+  }
+
+  @Override
+  public Tensor outerProduct(Tensor other) {
+    return getDecodedTensor().outerProduct(other);
+  }
+
+  @Override
+  public Tensor elementwiseAddition(Tensor other) {
+    return getDecodedTensor().elementwiseAddition(other);
+  }
+
+  @Override
+  public Tensor elementwiseAddition(double value) {
+    return getDecodedTensor().elementwiseAddition(value);
+  }
+
+  @Override
+  public Tensor elementwiseMaximum(Tensor other) {
+    return getDecodedTensor().elementwiseMaximum(other);
+  }
+
+  @Override
+  public Tensor elementwiseInverse() {
+    return getDecodedTensor().elementwiseInverse();
+  }
+
+  @Override
+  public Tensor elementwiseSqrt() {
+    return getDecodedTensor().elementwiseSqrt();
+  }
+
+  @Override
+  public Tensor elementwiseLog() {
+    return getDecodedTensor().elementwiseLog();
+  }
+
+  @Override
+  public Tensor elementwiseLogSparse() {
+    return getDecodedTensor().elementwiseLogSparse();
+  }
+
+  @Override
+  public Tensor elementwiseExp() {
+    return getDecodedTensor().elementwiseExp();
+  }
+
+  @Override
+  public Tensor elementwiseExpSparse() {
+    return getDecodedTensor().elementwiseExpSparse();
+  }
+
+  @Override
+  public Tensor elementwiseTanh() {
+    return getDecodedTensor().elementwiseTanh();
+  }
+
+  @Override
+  public Tensor elementwiseAbs() {
+    return getDecodedTensor().elementwiseAbs();
+  }
+
+  @Override
+  public Tensor elementwiseLaplaceSigmoid(double smoothness) {
+    return getDecodedTensor().elementwiseLaplaceSigmoid(smoothness);
+  }
+
+  @Override
+  public Tensor softThreshold(double threshold) {
+    return getDecodedTensor().softThreshold(threshold);
+  }
+
+  @Override
+  public Tensor getEntriesLargerThan(double threshold) {
+    return getDecodedTensor().getEntriesLargerThan(threshold);
+  }
+
+  @Override
+  public Tensor sumOutDimensions(Collection<Integer> dimensionsToEliminate) {
+    return getDecodedTensor().sumOutDimensions(dimensionsToEliminate);
+  }
+
+  @Override
+  public Tensor maxOutDimensions(Collection<Integer> dimensionsToEliminate) {
+    return getDecodedTensor().maxOutDimensions(dimensionsToEliminate);
+  }
+
+  @Override
+  public Tensor maxOutDimensions(Collection<Integer> dimensionsToEliminate,
+      Backpointers backpointers) {
+    return getDecodedTensor().maxOutDimensions(dimensionsToEliminate, backpointers);
+  }
+
+  @Override
+  public Tensor relabelDimensions(int[] newDimensions) {
+    return getDecodedTensor().relabelDimensions(newDimensions);
+  }
+
+  @Override
+  public Tensor relabelDimensions(Map<Integer, Integer> relabeling) {
+    return getDecodedTensor().relabelDimensions(relabeling);
+  }
+
+  @Override
+  public Tensor replaceValues(double[] newValues) {
+    return getDecodedTensor().replaceValues(newValues);
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * The returned array contains the decoded values of this tensor.
+   */
+  @Override
+  public double[] getValues() {
+    return values.toArray();
+  }
+
+  /**
+   * Statistics about the tensors replaced by
+   * {@link CompactTensor#compactObject}.
+   */
+  public static class CompactionStatistics {
+    private int numTensors = 0;
+    private long numValues = 0;
+    private long originalBytes = 0;
+    private long compactBytes = 0;
+    private double maxRelativeError = 0.0;
+    private double maxAbsoluteError = 0.0;
+
+    private void add(double[] originalValues, CompactValues compactValues) {
+      numTensors++;
+      numValues += originalValues.length;
+      originalBytes += ((long) originalValues.length) * 8;
+      compactBytes += compactValues.getNumBytes();
+      for (int i = 0; i < originalValues.length; i++) {
+        double original = originalValues[i];
+        double error = Math.abs(compactValues.get(i) - original);
+        maxAbsoluteError = Math.max(maxAbsoluteError, error);
+        if (original != 0.0) {
+          maxRelativeError = Math.max(maxRelativeError, error / Math.abs(original));
+        }
+      }
+    }
+
+    public int getNumTensors() {
+      return numTensors;
+    }
+
+    public long getNumValues() {
+      return numValues;
+    }
+
+    /**
+     * Gets the number of bytes used by the values of the replaced
+     * tensors.
+     *
+     * @return
+     */
+    public long getOriginalBytes() {
+      return originalBytes;
+    }
+
+    /**
+     * Gets the number of bytes used by the compact values of the
+     * replacement tensors.
+     *
+     * @return
+     */
+    public long getCompactBytes() {
+      return compactBytes;
+    }
+
+    /**
+     * Gets the maximum relative error of any compact value whose
+     * original value is nonzero.
+     *
+     * @return
+     */
+    public double getMaxRelativeError() {
+      return maxRelativeError;
+    }
+
+    /**
+     * Gets the maximum absolute error of any compact value.
+     *
+     * @return
+     */
+    public double getMaxAbsoluteError() {
+      return maxAbsoluteError;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%d tensors, %d values: %d bytes -> %d bytes, "
+          + "max relative error %.3g, max absolute error %.3g", numTensors, numValues,
+          originalBytes, compactBytes, maxRelativeError, maxAbsoluteError);
+    }
+  }
+
+  /**
+   * Serializes objects, replacing tensors with compact tensors.
+   */
+  private static class CompactingObjectOutputStream extends ObjectOutputStream {
+    private final Encoding encoding;
+    private final CompactionStatistics stats;
+
+    public CompactingObjectOutputStream(OutputStream out, Encoding encoding,
+        CompactionStatistics stats) throws IOException {
+      super(out);
+      this.encoding = encoding;
+      this.stats = stats;
+      enableReplaceObject(true);
+    }
+
+    @Override
+    protected Object replaceObject(Object object) {
+      // Only the exact classes are replaced, because subclasses
+      // (e.g., CachedSparseTensor) may be referenced by their
+      // own type.
+      CompactValues compactValues = null;
+      double[] originalValues = null;
+      Object replacement = object;
+      if (object.getClass().equals(DenseTensor.class)
+          || object.getClass().equals(SparseTensor.class)) {
+        CompactTensor tensor = CompactTensor.fromTensor((Tensor) object, encoding);
+        originalValues = ((Tensor) object).getValues();
+        compactValues = tensor.getCompactValues();
+        replacement = tensor;
+      } else if (object instanceof RobinHoodTensorHash) {
+        CompactTensorHash hash = ((RobinHoodTensorHash) object).toCompactHash(encoding);
+        originalValues = ((RobinHoodTensorHash) object).getSlotValues();
+        compactValues = hash.getCompactValues();
+        replacement = hash;
+      }
+
+      if (stats != null && compactValues != null) {
+        stats.add(originalValues, compactValues);
+      }
+      return replacement;
+    }
+  }
+}
@@ -0,0 +1,244 @@
+package com.jayantkrish.jklol.tensor;
+
+import java.util.Iterator;
+
+import com.google.common.base.Preconditions;
+import com.jayantkrish.jklol.tensor.CompactValues.Encoding;
+
+/**
+ * A {@code TensorBuilder} that builds {@link CompactTensor}s. Values
+ * are accumulated at full precision by another builder, and are only
+ * encoded with reduced precision when a tensor is built.
+ *
+ * @author jayantk
+ */
+public class CompactTensorBuilder extends AbstractTensorBase implements TensorBuilder {
+
+  private static final long serialVersionUID = 1L;
+
+  private final TensorBuilder builder;
+  private final Encoding encoding;
+
+  public CompactTensorBuilder(TensorBuilder builder, Encoding encoding) {
+    super(builder.getDimensionNumbers(), builder.getDimensionSizes());
+    this.builder = Preconditions.checkNotNull(builder);
+    this.encoding = Preconditions.checkNotNull(encoding);
+  }
+
+  /**
+   * Gets a factory for builders that accumulate values using builders
+   * from {@code baseFactory}, then build {@code CompactTensor}s using
+   * {@code encoding}.
+   *
+   * @param baseFactory
+   * @param encoding
+   * @return
+   */
+  public static TensorFactory getFactory(final TensorFactory baseFactory,
+      final Encoding encoding) {
+    return new TensorFactory() {
+      @Override
+      public TensorBuilder getBuilder(int[] dimNums, int[] dimSizes) {
+        return new CompactTensorBuilder(baseFactory.getBuilder(dimNums, dimSizes), encoding);
+      }
+    };
+  }
+
+  @Override
+  public CompactTensor build() {
+    return CompactTensor.fromTensor(builder.build(), encoding);
+  }
+
+  @Override
+  public CompactTensor buildNoCopy() {
+    return CompactTensor.fromTensor(builder.buildNoCopy(), encoding);
+  }
+
+  @Override
+  public void reset() {
+    builder.reset();
+  }
+
+  @Override
+  public CompactTensorBuilder getCopy() {
+    return new CompactTensorBuilder(builder.getCopy(), encoding);
+  }
+
+  // ////////////////////////////////////////////////////////////////////
+  // Methods delegated to builder
+  // ////////////////////////////////////////////////////////////////////
+
+  @Override
+  public int size() {
+    return builder.size();
+  }
+
+  @Override
+  public double get(long keyNum) {
+    return builder.get(keyNum);
+  }
+
+  @Override
+  public double getByIndex(int index) {
+    return builder.getByIndex(index);
+  }
+
+  @Override
+  public double getLog(long keyNum) {
+    return builder.getLog(keyNum);
+  }
+
+  @Override
+  public double getLogByIndex(int index) {
+    return builder.getLogByIndex(index);
+  }
+
+  @Override
+  public int keyNumToIndex(long keyNum) {
+    return builder.keyNumToIndex(keyNum);
+  }
+
+  @Override
+  public long indexToKeyNum(int index) {
+    return builder.indexToKeyNum(index);
+  }
+
+  @Override
+  public Iterator<KeyValue> keyValueIterator() {
+    return builder.keyValueIterator();
+  }
+
+  @Override
+  public Iterator<KeyValue> keyValuePrefixIterator(int[] keyPrefix) {
+    return builder.keyValuePrefixIterator(keyPrefix);
+  }
+
+  @Override
+  public double getL2Norm() {
+    return builder.getL2Norm();
+  }
+
+  @Override
+  public double getTrace() {
+    return builder.getTrace();
+  }
+
+  @Override
+  public long[] getLargestValues(int n) {
+    return builder.getLargestValues(n);
+  }
+
+  @Override
+  public void put(int[] key, double value) {
+    builder.put(key, value);
+  }
+
+  @Override
+  public void putByKeyNum(long keyNum, double value) {
+    builder.putByKeyNum(keyNum, value);
+  }
+
+  @Override
+  public void increment(TensorBase other) {
+    builder.increment(other);
+  }
+
+  @Override
+  public void increment(double amount) {
+    builder.increment(amount);
+  }
+
+  @Override
+  public void incrementWithMultiplier(TensorBase other, double multiplier) {
+    builder.incrementWithMultiplier(other, multiplier);
+  }
+
+  @Override
+  public void incrementOuterProductWithMultiplier(Tensor leftTensor, Tensor rightTensor,
+      double multiplier) {
+    builder.incrementOuterProductWithMultiplier(leftTensor, rightTensor, multiplier);
+  }
+
+  @Override
+  public void incrementInnerProductWithMultiplier(Tensor leftTensor, Tensor rightTensor,
+      double multiplier) {
+    builder.incrementInnerProductWithMultiplier(leftTensor, rightTensor, multiplier);
+  }
+
+  @Override
+  public void incrementSquare(TensorBase other, double multiplier) {
+    builder.incrementSquare(other, multiplier);
+  }
+
+  @Override
+  public void incrementAdagrad(TensorBase other, TensorBase squareTensor, double multiplier) {
+    builder.incrementAdagrad(other, squareTensor, multiplier);
+  }
+
+  @Override
+  public void multiplyInverseAdagrad(TensorBase squareTensor, double constant,
+      double multiplier) {
+    builder.multiplyInverseAdagrad(squareTensor, constant, multiplier);
+  }
+
+  @Override
+  public void incrementSquareAdagrad(TensorBase gradient, TensorBase parameters,
+      double multiplier) {
+    builder.incrementSquareAdagrad(gradient, parameters, multiplier);
+  }
+
+  @Override
+  public void incrementEntry(double amount, int... key) {
+    builder.incrementEntry(amount, key);
+  }
+
+  @Override
+  public void incrementEntryByKeyNum(double amount, long keyNum) {
+    builder.incrementEntryByKeyNum(amount, keyNum);
+  }
+
+  @Override
+  public void multiply(TensorBase other) {
+    builder.multiply(other);
+  }
+
+  @Override
+  public void multiply(double amount) {
+    builder.multiply(amount);
+  }
+
+  @Override
+  public void multiplyEntry(double amount, int... key) {
+    builder.multiplyEntry(amount, key);
+  }
+
+  @Override
+  public void multiplyEntryByKeyNum(double amount, long keyNum) {
+    builder.multiplyEntryByKeyNum(amount, keyNum);
+  }
+
+  @Override
+  public void softThreshold(double threshold) {
+    builder.softThreshold(threshold);
+  }
+
+  @Override
+  public void findEntriesLargerThan(double threshold) {
+    builder.findEntriesLargerThan(threshold);
+  }
+
+  @Override
+  public void maximum(TensorBase other) {
+    builder.maximum(other);
+  }
+
+  @Override
+  public double innerProduct(TensorBase other) {
+    return builder.innerProduct(other);
+  }
+
+  @Override
+  public void exp() {
+    builder.exp();
+  }
+}
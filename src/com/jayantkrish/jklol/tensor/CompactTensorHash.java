@@ -0,0 +1,82 @@
+package com.jayantkrish.jklol.tensor;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A {@link RobinHoodTensorHash} whose values are stored with
+ * reduced precision (see {@link CompactValues}).
+ *
+ * @author jayantk
+ */
+public class CompactTensorHash implements TensorHash {
+  private static final long serialVersionUID = 1L;
+
+  // The key in each slot of the table, laid out as in
+  // RobinHoodTensorHash.
+  private final long[] keys;
+  private final CompactValues values;
+  private final int mask;
+  private final int maxProbeDistance;
+
+  public CompactTensorHash(long[] keys, CompactValues values, int maxProbeDistance) {
+    this.keys = Preconditions.checkNotNull(keys);
+    this.values = Preconditions.checkNotNull(values);
+    Preconditions.checkArgument(Integer.bitCount(keys.length) == 1);
+    Preconditions.checkArgument(keys.length == values.size());
+    this.mask = keys.length - 1;
+    this.maxProbeDistance = maxProbeDistance;
+  }
+
+  /**
+   * Creates a hash table for looking up the values of
+   * {@code tensor}. The values are copied without being encoded
+   * again, so lookups return the same values as {@code tensor}.
+   *
+   * @param tensor
+   * @return
+   */
+  public static CompactTensorHash fromTensor(CompactSparseTensor tensor) {
+    int size = tensor.size();
+    long[] indexes = new long[size];
+    for (int i = 0; i < size; i++) {
+      indexes[i] = i;
+    }
+    long[] table = RobinHoodTensorHash.buildTable(tensor.getKeyNums(), indexes, size);
+
+    long[] keys = new long[table.length / 2];
+    int[] slotIndexes = new int[keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = table[2 * i];
+      slotIndexes[i] = keys[i] == RobinHoodTensorHash.EMPTY_KEY ? -1 : (int) table[(2 * i) + 1];
+    }
+    return new CompactTensorHash(keys, tensor.getCompactValues().select(slotIndexes),
+        RobinHoodTensorHash.getMaxProbeDistance(table));
+  }
+
+  @Override
+  public double get(long key) {
+    int index = RobinHoodTensorHash.slot(key, mask);
+    for (int distance = 0; distance <= maxProbeDistance; distance++) {
+      long slotKey = keys[index];
+      if (slotKey == key) {
+        return values.get(index);
+      } else if (slotKey == RobinHoodTensorHash.EMPTY_KEY) {
+        break;
+      }
+      index = (index + 1) & mask;
+    }
+
+    // This is a sparse tensor, so keys not in the tensor
+    // have value 0
+    return 0.0;
+  }
+
+  /**
+   * Gets the values stored in each slot of this table.
+   *
+   * @return
+   */
+  public CompactValues getCompactValues() {
+    return values;
+  }
+}
@@ -0,0 +1,313 @@
+package com.jayantkrish.jklol.tensor;
+
+import java.io.Serializable;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A read-only array of {@code double} values stored with reduced
+ * precision. Values are stored either as 32-bit floats, or quantized
+ * to 16 or 8 bits.
+ * <p>
+ * Quantized values are evenly spaced between the minimum and maximum
+ * nonzero value of the array. If every value is nonnegative, the
+ * logarithms of the values are quantized instead, which bounds the
+ * relative (rather than absolute) error of each value. This encoding
+ * suits probabilities and other values with a large dynamic range.
+ * Zero is always assigned its own code and is represented exactly, so
+ * sparse tensors remain sparse.
+ *
+ * @author jayantk
+ */
+public abstract class CompactValues implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Storage formats for values.
+   */
+  public static enum Encoding {
+    FLOAT32(32), QUANTIZED16(16), QUANTIZED8(8);
+
+    private final int numBits;
+
+    private Encoding(int numBits) {
+      this.numBits = numBits;
+    }
+
+    /**
+     * Gets the number of bits used to store each value.
+     *
+     * @return
+     */
+    public int getNumBits() {
+      return numBits;
+    }
+  }
+
+  /**
+   * Gets the value at {@code index}.
+   *
+   * @param index
+   * @return
+   */
+  public abstract double get(int index);
+
+  public abstract int size();
+
+  public abstract Encoding getEncoding();
+
+  /**
+   * Gets a new array whose {@code i}th value is the value at
+   * {@code indexes[i]} in this array, or 0 if {@code indexes[i]}
+   * is -1. The values are copied without being encoded again,
+   * so they are unchanged.
+   *
+   * @param indexes
+   * @return
+   */
+  public abstract CompactValues select(int[] indexes);
+
+  /**
+   * Gets the number of bytes used to store the values.
+   *
+   * @return
+   */
+  public long getNumBytes() {
+    return (((long) size()) * getEncoding().getNumBits()) / 8;
+  }
+
+  /**
+   * Decodes all of the values in this array.
+   *
+   * @return
+   */
+  public double[] toArray() {
+    double[] values = new double[size()];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = get(i);
+    }
+    return values;
+  }
+
+  /**
+   * Encodes {@code values} using {@code encoding}.
+   *
+   * @param values
+   * @param encoding
+   * @return
+   */
+  public static CompactValues encode(double[] values, Encoding encoding) {
+    if (encoding == Encoding.FLOAT32) {
+      float[] floatValues = new float[values.length];
+      for (int i = 0; i < values.length; i++) {
+        floatValues[i] = (float) values[i];
+      }
+      return new FloatValues(floatValues);
+    }
+
+    Quantizer quantizer = Quantizer.fromValues(values, encoding.getNumBits());
+    if (encoding == Encoding.QUANTIZED16) {
+      short[] codes = new short[values.length];
+      for (int i = 0; i < values.length; i++) {
+        codes[i] = (short) quantizer.encode(values[i]);
+      }
+      return new ShortValues(codes, quantizer);
+    } else {
+      byte[] codes = new byte[values.length];
+      for (int i = 0; i < values.length; i++) {
+        codes[i] = (byte) quantizer.encode(values[i]);
+      }
+      return new ByteValues(codes, quantizer);
+    }
+  }
+
+  /**
+   * Maps values to evenly-spaced integer codes between 1 and
+   * {@code 2^numBits - 1}, and maps codes back to values. Code 0
+   * represents 0.0.
+   */
+  private static class Quantizer implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final boolean logDomain;
+    private final int maxCode;
+    // The values represented by codes 1 and maxCode, which are
+    // decoded exactly.
+    private final double minValue;
+    private final double maxValue;
+    // Code c > 0 represents offset + ((c - 1) * scale), or the
+    // exponential of this quantity if logDomain is true.
+    private final double offset;
+    private final double scale;
+
+    public Quantizer(boolean logDomain, int maxCode, double minValue, double maxValue) {
+      this.logDomain = logDomain;
+      this.maxCode = maxCode;
+      this.minValue = minValue;
+      this.maxValue = maxValue;
+      this.offset = logDomain ? Math.log(minValue) : minValue;
+      double range = logDomain ? Math.log(maxValue) - offset : maxValue - offset;
+      this.scale = range / (maxCode - 1);
+    }
+
+    public static Quantizer fromValues(double[] values, int numBits) {
+      boolean logDomain = true;
+      double min = Double.POSITIVE_INFINITY;
+      double max = Double.NEGATIVE_INFINITY;
+      for (int i = 0; i < values.length; i++) {
+        double value = values[i];
+        Preconditions.checkArgument(!Double.isNaN(value) && !Double.isInfinite(value),
+            "Cannot quantize value: %s", value);
+        logDomain = logDomain && value >= 0.0;
+        if (value != 0.0) {
+          min = Math.min(min, value);
+          max = Math.max(max, value);
+        }
+      }
+
+      int maxCode = (1 << numBits) - 1;
+      if (min > max) {
+        // Every value is 0.
+        return new Quantizer(false, maxCode, 0.0, 0.0);
+      }
+      return new Quantizer(logDomain, maxCode, min, max);
+    }
+
+    public int encode(double value) {
+      if (value == 0.0) {
+        return 0;
+      } else if (scale == 0.0) {
+        return 1;
+      }
+
+      double x = logDomain ? Math.log(value) : value;
+      long code = 1 + Math.round((x - offset) / scale);
+      return (int) Math.max(1, Math.min(maxCode, code));
+    }
+
+    public double decode(int code) {
+      if (code == 0) {
+        return 0.0;
+      } else if (code == 1) {
+        return minValue;
+      } else if (code == maxCode) {
+        return maxValue;
+      }
+
+      double x = offset + ((code - 1) * scale);
+      return logDomain ? Math.exp(x) : x;
+    }
+  }
+
+  private static class FloatValues extends CompactValues {
+    private static final long serialVersionUID = 1L;
+
+    private final float[] values;
+
+    public FloatValues(float[] values) {
+      this.values = Preconditions.checkNotNull(values);
+    }
+
+    @Override
+    public double get(int index) {
+      return values[index];
+    }
+
+    @Override
+    public int size() {
+      return values.length;
+    }
+
+    @Override
+    public Encoding getEncoding() {
+      return Encoding.FLOAT32;
+    }
+
+    @Override
+    public CompactValues select(int[] indexes) {
+      float[] selected = new float[indexes.length];
+      for (int i = 0; i < indexes.length; i++) {
+        selected[i] = indexes[i] == -1 ? 0.0f : values[indexes[i]];
+      }
+      return new FloatValues(selected);
+    }
+  }
+
+  private static class ShortValues extends CompactValues {
+    private static final long serialVersionUID = 1L;
+
+    private final short[] codes;
+    private final Quantizer quantizer;
+
+    public ShortValues(short[] codes, Quantizer quantizer) {
+      this.codes = Preconditions.checkNotNull(codes);
+      this.quantizer = Preconditions.checkNotNull(quantizer);
+    }
+
+    @Override
+    public double get(int index) {
+      return quantizer.decode(codes[index] & 0xffff);
+    }
+
+    @Override
+    public int size() {
+      return codes.length;
+    }
+
+    @Override
+    public Encoding getEncoding() {
+      return Encoding.QUANTIZED16;
+    }
+
+    @Override
+    public CompactValues select(int[] indexes) {
+            short[] selected = new short[indexes.length];
+      for (int i = 0; i < indexes.length; i++) {
+        selected[i] = indexes[i] == -1 ? 0 : codes[indexes[i]];
+      }
+      return new ShortValues(selected, quantizer);
+    }
+  }
+
+  private static class ByteValues extends CompactValues {
+    private static final long serialVersionUID = 1L;
+
+    private final byte[] codes;
+    private final Quantizer quantizer;
+    // Decoded value of every code.
+    private final double[] decodedValues;
+
+    public ByteValues(byte[] codes, Quantizer quantizer) {
+      this.codes = Preconditions.checkNotNull(codes);
+      this.quantizer = Preconditions.checkNotNull(quantizer);
+      this.decodedValues = new double[256];
+      for (int i = 0; i < decodedValues.length; i++) {
+        decodedValues[i] = quantizer.decode(i);
+      }
+    }
+
+    @Override
+    public double get(int index) {
+      return decodedValues[codes[index] & 0xff];
+    }
+
+    @Override
+    public int size() {
+      return codes.length;
+    }
+
+    @Override
+    public Encoding getEncoding() {
+      return Encoding.QUANTIZED8;
+    }
+
+    @Override
+    public CompactValues select(int[] indexes) {
+            byte[] selected = new byte[indexes.length];
+      for (int i = 0; i < indexes.length; i++) {
+        selected[i] = indexes[i] == -1 ? 0 : codes[indexes[i]];
+      }
+      return new ByteValues(selected, quantizer);
+    }
+  }
+}
@@ -0,0 +1,270 @@
+package com.jayantkrish.jklol.tensor;
+
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+import com.google.common.collect.Lists;
+import com.jayantkrish.jklol.parallel.ForkJoinPools;
+
+/**
+ * Matrix-matrix (GEMM) and matrix-vector (GEMV) products over
+ * row-major {@code double} arrays, used to implement inner products
+ * of {@link DenseTensor}s. The products are tiled so that the
+ * accessed blocks of each matrix remain in cache, and each pass over
+ * a row of the right-hand matrix updates several rows of the result.
+ * Large products are divided by rows among the threads of the shared
+ * pool (see {@link ForkJoinPools}).
+ * <p>
+ * Every entry of the result is accumulated in the same order as the
+ * naive triple loop, so the results do not depend on the tile sizes
+ * or the number of threads.
+ *
+ * @author jayantk
+ */
+public final class DenseMatrixKernels {
+
+  // Number of rows of the result updated by each pass over a
+  // row of the right-hand matrix.
+  private static final int ROW_BLOCK = 4;
+  // Tile sizes for the inner (summed) dimension and the columns of
+  // the result. A tile of the right-hand matrix fills 512 KB.
+  private static final int INNER_BLOCK = 128;
+  private static final int COLUMN_BLOCK = 512;
+
+  // Products with fewer multiply-adds than this are computed by
+  // the calling thread.
+  private static final long PARALLEL_THRESHOLD = 1L << 22;
+  // Minimum number of result rows computed by each thread.
+  private static final int MIN_ROWS_PER_TASK = 16;
+
+  private DenseMatrixKernels() {
+    // Prevent instantiation.
+  }
+
+  /**
+   * Computes {@code C += A * B}, where {@code C} is an
+   * {@code m x n} row-major matrix starting at {@code cOffset},
+   * {@code B} is a {@code k x n} row-major matrix starting at
+   * {@code bOffset}, and {@code A} is an {@code m x k} matrix whose
+   * entry {@code (i, j)} is
+   * {@code a[aOffset + (i * aRowStride) + (j * aColumnStride)]}. The
+   * strides of {@code A} permit it to be transposed.
+   *
+   * @param a
+   * @param aOffset
+   * @param aRowStride
+   * @param aColumnStride
+   * @param b
+   * @param bOffset
+   * @param c
+   * @param cOffset
+   * @param m
+   * @param k
+   * @param n
+   */
+  public static void gemm(double[] a, int aOffset, int aRowStride, int aColumnStride,
+      double[] b, int bOffset, double[] c, int cOffset, int m, int k, int n) {
+    int numTasks = getNumTasks(m, ((long) m) * k * n);
+    if (numTasks <= 1) {
+      gemmRows(a, aOffset, aRowStride, aColumnStride, b, bOffset, c, cOffset, 0, m, k, n);
+    } else {
+      List<RecursiveAction> tasks = Lists.newArrayList();
+      for (int i = 0; i < numTasks; i++) {
+        tasks.add(new GemmTask(a, aOffset, aRowStride, aColumnStride, b, bOffset, c, cOffset,
+            (int) ((((long) m) * i) / numTasks), (int) ((((long) m) * (i + 1)) / numTasks), k, n));
+      }
+      invokeAll(tasks);
+    }
+  }
+
+  /**
+   * Computes {@code y += A * x}, where {@code A} is an {@code m x k}
+   * row-major matrix starting at {@code aOffset}, and {@code x} and
+   * {@code y} are vectors of length {@code k} and {@code m} starting
+   * at {@code xOffset} and {@code yOffset}.
+   *
+   * @param a
+   * @param aOffset
+   * @param x
+   * @param xOffset
+   * @param y
+   * @param yOffset
+   * @param m
+   * @param k
+   */
+  public static void gemv(double[] a, int aOffset, double[] x, int xOffset, double[] y,
+      int yOffset, int m, int k) {
+    int numTasks = getNumTasks(m, ((long) m) * k);
+    if (numTasks <= 1) {
+      gemvRows(a, aOffset, x, xOffset, y, yOffset, 0, m, k);
+    } else {
+      List<RecursiveAction> tasks = Lists.newArrayList();
+      for (int i = 0; i < numTasks; i++) {
+        tasks.add(new GemvTask(a, aOffset, x, xOffset, y, yOffset,
+            (int) ((((long) m) * i) / numTasks), (int) ((((long) m) * (i + 1)) / numTasks), k));
+      }
+      invokeAll(tasks);
+    }
+  }
+
+  private static void gemmRows(double[] a, int aOffset, int aRowStride, int aColumnStride,
+      double[] b, int bOffset, double[] c, int cOffset, int rowStart, int rowEnd, int k, int n) {
+    for (int columnStart = 0; columnStart < n; columnStart += COLUMN_BLOCK) {
+      int columnEnd = Math.min(n, columnStart + COLUMN_BLOCK);
+      for (int innerStart = 0; innerStart < k; innerStart += INNER_BLOCK) {
+        int innerEnd = Math.min(k, innerStart + INNER_BLOCK);
+
+        int i = rowStart;
+        for (; i + ROW_BLOCK <= rowEnd; i += ROW_BLOCK) {
+          int c0 = cOffset + (i * n);
+          int c1 = c0 + n;
+          int c2 = c1 + n;
+          int c3 = c2 + n;
+          int aRow = aOffset + (i * aRowStride);
+          for (int l = innerStart; l < innerEnd; l++) {
+            int aIndex = aRow + (l * aColumnStride);
+            double a0 = a[aIndex];
+            double a1 = a[aIndex + aRowStride];
+            double a2 = a[aIndex + (2 * aRowStride)];
+            double a3 = a[aIndex + (3 * aRowStride)];
+            int bRow = bOffset + (l * n);
+            for (int j = columnStart; j < columnEnd; j++) {
+              double bValue = b[bRow + j];
+              c[c0 + j] += a0 * bValue;
+              c[c1 + j] += a1 * bValue;
+              c[c2 + j] += a2 * bValue;
+              c[c3 + j] += a3 * bValue;
+            }
+          }
+        }
+
+        for (; i < rowEnd; i++) {
+          int c0 = cOffset + (i * n);
+          int aRow = aOffset + (i * aRowStride);
+          for (int l = innerStart; l < innerEnd; l++) {
+            double a0 = a[aRow + (l * aColumnStride)];
+            int bRow = bOffset + (l * n);
+            for (int j = columnStart; j < columnEnd; j++) {
+              c[c0 + j] += a0 * b[bRow + j];
+            }
+          }
+        }
+      }
+    }
+  }
+
+  private static void gemvRows(double[] a, int aOffset, double[] x, int xOffset, double[] y,
+      int yOffset, int rowStart, int rowEnd, int k) {
+    int i = rowStart;
+    for (; i + ROW_BLOCK <= rowEnd; i += ROW_BLOCK) {
+      int a0 = aOffset + (i * k);
+      int a1 = a0 + k;
+      int a2 = a1 + k;
+      int a3 = a2 + k;
+      double sum0 = 0.0, sum1 = 0.0, sum2 = 0.0, sum3 = 0.0;
+      for (int j = 0; j < k; j++) {
+        double xValue = x[xOffset + j];
+        sum0 += a[a0 + j] * xValue;
+        sum1 += a[a1 + j] * xValue;
+        sum2 += a[a2 + j] * xValue;
+        sum3 += a[a3 + j] * xValue;
+      }
+      y[yOffset + i] += sum0;
+      y[yOffset + i + 1] += sum1;
+      y[yOffset + i + 2] += sum2;
+      y[yOffset + i + 3] += sum3;
+    }
+
+    for (; i < rowEnd; i++) {
+      int a0 = aOffset + (i * k);
+      double sum = 0.0;
+      for (int j = 0; j < k; j++) {
+        sum += a[a0 + j] * x[xOffset + j];
+      }
+      y[yOffset + i] += sum;
+    }
+  }
+
+  private static int getNumTasks(int numRows, long numOperations) {
+    if (numOperations < PARALLEL_THRESHOLD) {
+      return 1;
+    }
+    int numThreads = ForkJoinPools.getParallelism();
+    return Math.max(1, Math.min(numThreads, numRows / MIN_ROWS_PER_TASK));
+  }
+
+  private static void invokeAll(List<RecursiveAction> tasks) {
+    ForkJoinPools.invokeAll(tasks);
+  }
+
+  private static class GemmTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final double[] a;
+    private final int aOffset;
+    private final int aRowStride;
+    private final int aColumnStride;
+    private final double[] b;
+    private final int bOffset;
+    private final double[] c;
+    private final int cOffset;
+    private final int rowStart;
+    private final int rowEnd;
+    private final int k;
+    private final int n;
+
+    public GemmTask(double[] a, int aOffset, int aRowStride, int aColumnStride, double[] b,
+        int bOffset, double[] c, int cOffset, int rowStart, int rowEnd, int k, int n) {
+      this.a = a;
+      this.aOffset = aOffset;
+      this.aRowStride = aRowStride;
+      this.aColumnStride = aColumnStride;
+      this.b = b;
+      this.bOffset = bOffset;
+      this.c = c;
+      this.cOffset = cOffset;
+      this.rowStart = rowStart;
+      this.rowEnd = rowEnd;
+      this.k = k;
+      this.n = n;
+    }
+
+    @Override
+    protected void compute() {
+      gemmRows(a, aOffset, aRowStride, aColumnStride, b, bOffset, c, cOffset, rowStart, rowEnd,
+          k, n);
+    }
+  }
+
+  private static class GemvTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final double[] a;
+    private final int aOffset;
+    private final double[] x;
+    private final int xOffset;
+    private final double[] y;
+    private final int yOffset;
+    private final int rowStart;
+    private final int rowEnd;
+    private final int k;
+
+    public GemvTask(double[] a, int aOffset, double[] x, int xOffset, double[] y, int yOffset,
+        int rowStart, int rowEnd, int k) {
+      this.a = a;
+      this.aOffset = aOffset;
+      this.x = x;
+      this.xOffset = xOffset;
+      this.y = y;
+      this.yOffset = yOffset;
+      this.rowStart = rowStart;
+      this.rowEnd = rowEnd;
+      this.k = k;
+    }
+
+    @Override
+    protected void compute() {
+      gemvRows(a, aOffset, x, xOffset, y, yOffset, rowStart, rowEnd, k);
+    }
+  }
+}
@@ -219,8 +219,95 @@ public class DenseTensor extends DenseTensorBase implements Tensor, Serializable
 
   @Override
   public Tensor matrixInnerProduct(Tensor other) {
+    if (other instanceof DenseTensor) {
+      DenseTensor result = denseMatrixInnerProduct((DenseTensor) other);
+      if (result != null) {
+        return result;
+      }
+    }
     return AbstractTensor.innerProduct(this, other, DenseTensorBuilder.getFactory());
   }
+
+  /**
+   * Implementation of {@link #matrixInnerProduct} for two dense
+   * tensors using {@link DenseMatrixKernels}. {@code this} has
+   * dimensions {@code (prefix, aligned, suffix)} and {@code other} has
+   * dimensions {@code (aligned, otherSuffix)}, and the result has
+   * dimensions {@code (prefix, otherSuffix, suffix)}. Returns
+   * {@code null} if the dimensions of the tensors are not arranged
+   * this way.
+   * 
+   * @param other
+   * @return
+   */
+  private DenseTensor denseMatrixInnerProduct(DenseTensor other) {
+    int[] myDims = getDimensionNumbers();
+    int[] mySizes = getDimensionSizes();
+    int[] otherDims = other.getDimensionNumbers();
+    int[] otherSizes = other.getDimensionSizes();
+    if (otherDims.length == 0) {
+      return null;
+    }
+
+    int firstAlignedDim = Ints.indexOf(myDims, otherDims[0]);
+    if (firstAlignedDim == -1) {
+      return null;
+    }
+    int numAlignedDims = 0;
+    while (firstAlignedDim + numAlignedDims < myDims.length && numAlignedDims < otherDims.length
+        && myDims[firstAlignedDim + numAlignedDims] == otherDims[numAlignedDims]) {
+      if (mySizes[firstAlignedDim + numAlignedDims] != otherSizes[numAlignedDims]) {
+        return null;
+      }
+      numAlignedDims++;
+    }
+    int suffixStart = firstAlignedDim + numAlignedDims;
+    int numOtherSuffixDims = otherDims.length - numAlignedDims;
+    if (numOtherSuffixDims > 0 && ((firstAlignedDim > 0
+        && myDims[firstAlignedDim - 1] > otherDims[numAlignedDims])
+        || (suffixStart < myDims.length && myDims[suffixStart] < otherDims[otherDims.length - 1]))) {
+      // The remaining dimensions of other are not between the prefix
+      // and suffix dimensions of this.
+      return null;
+    }
+    for (int i = numAlignedDims; i < otherDims.length; i++) {
+      if (Ints.contains(myDims, otherDims[i])) {
+        return null;
+      }
+    }
+
+    int[] resultDims = Ints.concat(ArrayUtils.copyOfRange(myDims, 0, firstAlignedDim),
+        ArrayUtils.copyOfRange(otherDims, numAlignedDims, otherDims.length),
+        ArrayUtils.copyOfRange(myDims, suffixStart, myDims.length));
+    int[] resultSizes = Ints.concat(ArrayUtils.copyOfRange(mySizes, 0, firstAlignedDim),
+        ArrayUtils.copyOfRange(otherSizes, numAlignedDims, otherSizes.length),
+        ArrayUtils.copyOfRange(mySizes, suffixStart, mySizes.length));
+
+    long[] myOffsets = getDimensionOffsets();
+    int suffixSize = (int) myOffsets[suffixStart - 1];
+    int alignedSize = (int) ((firstAlignedDim == 0 ? getMaxKeyNum() : myOffsets[firstAlignedDim - 1])
+        / suffixSize);
+    int prefixSize = (int) (getMaxKeyNum() / (alignedSize * suffixSize));
+    int otherSuffixSize = (int) (other.getMaxKeyNum() / alignedSize);
+
+    double[] otherValues = other.values;
+    double[] resultValues = new double[prefixSize * otherSuffixSize * suffixSize];
+    if (suffixSize == 1) {
+      // Matrix-matrix product of (prefix x aligned) and
+      // (aligned x otherSuffix) matrices.
+      DenseMatrixKernels.gemm(values, 0, alignedSize, 1, otherValues, 0, resultValues, 0,
+          prefixSize, alignedSize, otherSuffixSize);
+    } else {
+      // For each prefix, multiply the transpose of other by the
+      // (aligned x suffix) matrix of this.
+      for (int i = 0; i < prefixSize; i++) {
+        DenseMatrixKernels.gemm(otherValues, 0, 1, otherSuffixSize, values,
+            i * alignedSize * suffixSize, resultValues, i * otherSuffixSize * suffixSize,
+            otherSuffixSize, alignedSize, suffixSize);
+      }
+    }
+    return new DenseTensor(resultDims, resultSizes, resultValues);
+  }
   
   /**
    * Implementation of inner product where both tensors are dense and have
@@ -236,11 +323,7 @@ public class DenseTensor extends DenseTensorBase implements Tensor, Serializable
     int length = values.length;
     Preconditions.checkArgument(otherValues.length == length);
     
-    double innerProduct = 0.0;
-    for (int i = 0; i < length; i++) {
-      innerProduct += values[i] * otherValues[i];
-    }
-    return innerProduct;
+    return DenseVectorKernels.getInstance().dot(values, otherValues, length);
   }
   
   private double denseSparseInnerProduct(SparseTensor other) {
@@ -265,47 +348,60 @@ public class DenseTensor extends DenseTensorBase implements Tensor, Serializable
    * @return
    */
   private DenseTensor fastInnerProductRightAligned(Tensor other, long maxKeyNum, long keyNumIncrement, 
-      int[] newDims, int[] newSizes) {        
-    DenseTensorBuilder resultBuilder = new DenseTensorBuilder(newDims, newSizes);
+      int[] newDims, int[] newSizes) {
+    int finalIndex = (int) (maxKeyNum / keyNumIncrement);
+    double[] resultValues = new double[finalIndex];
+    if (other instanceof DenseTensor) {
+      // Matrix-vector product.
+      DenseMatrixKernels.gemv(values, 0, ((DenseTensor) other).values, 0, resultValues, 0,
+          finalIndex, (int) keyNumIncrement);
+      return new DenseTensor(newDims, newSizes, resultValues);
+    }
+
     int otherSize = other.size();
     double[] otherValues = other.getValues();
+    int[] otherKeyNums = new int[otherSize];
+    for (int otherIndex = 0; otherIndex < otherSize; otherIndex++) {
+      otherKeyNums[otherIndex] = (int) other.indexToKeyNum(otherIndex);
+    }
+
     // Iterate over the keys of this, then (hopefully sparsely) iterate over the 
     // keys of {@code other},
-    double innerProd;
-    int otherIndex;
-    int finalIndex = (int) (maxKeyNum / keyNumIncrement);
-    long myKeyNum;
     for (int i = 0; i < finalIndex; i++) {
-      myKeyNum = i * keyNumIncrement;
-      innerProd = 0.0;
-      for (otherIndex = 0; otherIndex < otherSize; otherIndex++) {
-        long otherKeyNum = other.indexToKeyNum(otherIndex);
-        double otherValue = otherValues[otherIndex];
-        innerProd += values[(int) (myKeyNum + otherKeyNum)] * otherValue;
+      int myKeyNum = (int) (i * keyNumIncrement);
+      double innerProd = 0.0;
+      for (int otherIndex = 0; otherIndex < otherSize; otherIndex++) {
+        innerProd += values[myKeyNum + otherKeyNums[otherIndex]] * otherValues[otherIndex];
       }
-      resultBuilder.putByKeyNum(i, innerProd);
+      resultValues[i] = innerProd;
     }
-    return resultBuilder.buildNoCopy();
+    return new DenseTensor(newDims, newSizes, resultValues);
   }
 
   private DenseTensor fastInnerProductLeftAligned(Tensor other, long maxKeyNum,
       int[] newDims, int[] newSizes) {
-    DenseTensorBuilder resultBuilder = new DenseTensorBuilder(newDims, newSizes);
+    int finalIndex = (int) maxKeyNum;
+    double[] resultValues = new double[finalIndex];
+    if (other instanceof DenseTensor) {
+      // Product of a row vector and a matrix.
+      double[] otherValues = ((DenseTensor) other).values;
+      DenseMatrixKernels.gemm(otherValues, 0, otherValues.length, 1, values, 0, resultValues, 0,
+          1, otherValues.length, finalIndex);
+      return new DenseTensor(newDims, newSizes, resultValues);
+    }
+
     int otherSize = other.size();
     double[] otherValues = other.getValues();
     // Iterate over the keys of this tensor in the inner loop for
     // better cache locality.
-    double otherValue;
-    int finalIndex = (int) maxKeyNum;
-    int otherKeyNum;
     for (int otherIndex = 0; otherIndex < otherSize; otherIndex++) {
-      otherKeyNum = (int) (other.indexToKeyNum(otherIndex) * maxKeyNum);
-      otherValue = otherValues[otherIndex];
+      int otherKeyNum = (int) (other.indexToKeyNum(otherIndex) * maxKeyNum);
+      double otherValue = otherValues[otherIndex];
       for (int i = 0; i < finalIndex; i++) {
-        resultBuilder.incrementEntryByKeyNum(values[i + otherKeyNum] * otherValue, i);
+        resultValues[i] += values[i + otherKeyNum] * otherValue;
       }
     }
-    return resultBuilder.buildNoCopy();
+    return new DenseTensor(newDims, newSizes, resultValues);
   }
 
   @Override
@@ -384,9 +480,7 @@ public class DenseTensor extends DenseTensorBase implements Tensor, Serializable
   public DenseTensor elementwiseLog() {
     DenseTensorBuilder outputBuilder = new DenseTensorBuilder(getDimensionNumbers(),
         getDimensionSizes());
-    for (int i = 0; i < values.length; i++) {
-      outputBuilder.values[i] = Math.log(values[i]);
-    }
+    DenseVectorKernels.getInstance().log(values, outputBuilder.values, values.length);
     return outputBuilder.buildNoCopy();
   }
   
@@ -399,9 +493,7 @@ public class DenseTensor extends DenseTensorBase implements Tensor, Serializable
   public DenseTensor elementwiseExp() {
     DenseTensorBuilder outputBuilder = new DenseTensorBuilder(getDimensionNumbers(),
         getDimensionSizes());
-    for (int i = 0; i < values.length; i++) {
-      outputBuilder.values[i] = Math.exp(values[i]);
-    }
+    DenseVectorKernels.getInstance().exp(values, outputBuilder.values, values.length);
     return outputBuilder.buildNoCopy();
   }
   
@@ -414,9 +506,7 @@ public class DenseTensor extends DenseTensorBase implements Tensor, Serializable
   public DenseTensor elementwiseTanh() {
     DenseTensorBuilder outputBuilder = new DenseTensorBuilder(getDimensionNumbers(),
         getDimensionSizes());
-    for (int i = 0; i < values.length; i++) {
-      outputBuilder.values[i] = Math.tanh(values[i]);
-    }
+    DenseVectorKernels.getInstance().tanh(values, outputBuilder.values, values.length);
     return outputBuilder.buildNoCopy();
   }
   
@@ -434,16 +524,8 @@ public class DenseTensor extends DenseTensorBase implements Tensor, Serializable
   public DenseTensor elementwiseLaplaceSigmoid(double smoothness) {
     DenseTensorBuilder outputBuilder = new DenseTensorBuilder(getDimensionNumbers(),
         getDimensionSizes());
-    for (int i = 0; i < values.length; i++) {
-      double value = values[i];
-      if (value > 0) {
-        outputBuilder.values[i] = 1 - Math.exp(-1 * smoothness * value);
-      } else if (value < 0) {
-        outputBuilder.values[i] = -1 + Math.exp(smoothness * value);
-      } else {
-        outputBuilder.values[i] = 0;
-      }
-    }
+    DenseVectorKernels.getInstance().laplaceSigmoid(values, outputBuilder.values, smoothness,
+        values.length);
     return outputBuilder.buildNoCopy();
   }
 
@@ -532,28 +614,62 @@ public class DenseTensor extends DenseTensorBase implements Tensor, Serializable
       }
     }
 
-    DenseTensorBuilder outputBuilder = new DenseTensorBuilder(Ints.toArray(dimensionNumsToKeep),
-        Ints.toArray(dimensionSizesToKeep));
+    final DenseTensorBuilder outputBuilder = new DenseTensorBuilder(
+        Ints.toArray(dimensionNumsToKeep), Ints.toArray(dimensionSizesToKeep));
+    final int numResultValues = outputBuilder.values.length;
+    if (dimensionNumsToKeep.size() == 0 && useSum && backpointers == null) {
+      // Faster implementation for summing up all values in the tensor,
+      // a common operation.
+      outputBuilder.values[0] = ParallelReductions.sum(values, values.length);
+      return outputBuilder.buildNoCopy();
+    }
+
     // Optionally return the list of keynums which determined the values
-    // in the returned tensor.
+    // in the returned tensor. The ith value of the result is determined
+    // by oldBackpointerNums[i].
     long[] newBackpointerNums = null;
-    long[] oldBackpointerNums = null;
+    final long[] oldBackpointerNums = (backpointers != null) ? new long[numResultValues] : null;
+
+    // Maps a key of the reduced tensor into a partial key of this.
+    final int[] dimensionMapping = getDimensionMapping(outputBuilder.getDimensionNumbers());
+    final boolean sum = useSum;
+    // Each partition reduces a contiguous range of the result's keys.
+    final int numPartitions = ParallelReductions.getNumPartitions(values.length,
+        numResultValues);
+    ParallelReductions.run(numPartitions, new ParallelReductions.Partition() {
+      @Override
+      public void reduce(int partition) {
+        reduceKeyRange(outputBuilder, dimensionMapping, sum, oldBackpointerNums,
+            ParallelReductions.getPartitionStart(partition, numPartitions, numResultValues),
+            ParallelReductions.getPartitionStart(partition + 1, numPartitions, numResultValues));
+      }
+    });
+
     if (backpointers != null) {
-      newBackpointerNums = new long[outputBuilder.values.length];
-      oldBackpointerNums = new long[outputBuilder.values.length];
+      newBackpointerNums = new long[numResultValues];
+      for (int i = 0; i < numResultValues; i++) {
+        newBackpointerNums[i] = i;
+      }
+      backpointers.setBackpointers(newBackpointerNums, oldBackpointerNums, numResultValues, this);
     }
 
-    // Maps a key of the reduced tensor into a partial key of this.
-    int[] dimensionMapping = getDimensionMapping(outputBuilder.getDimensionNumbers());
+    return outputBuilder.buildNoCopy();
+  }
+
+  /**
+   * Computes the values of the keys of {@code outputBuilder} from
+   * {@code startKeyNum} (inclusive) to {@code endKeyNum} (exclusive)
+   * for {@link #reduceDimensions}.
+   */
+  private void reduceKeyRange(DenseTensorBuilder outputBuilder, int[] dimensionMapping,
+      boolean useSum, long[] oldBackpointerNums, int startKeyNum, int endKeyNum) {
+    int[] outputKey = new int[outputBuilder.getDimensionNumbers().length];
     int[] partialKey = new int[getDimensionNumbers().length];
     Arrays.fill(partialKey, -1);
-    Iterator<KeyValue> otherKeyValues = outputBuilder.keyValueIterator();
-
-    int backpointerIndex = 0;
-    while (otherKeyValues.hasNext()) {
-      KeyValue otherKeyValue = otherKeyValues.next();
-      for (int i = 0; i < otherKeyValue.getKey().length; i++) {
-        partialKey[dimensionMapping[i]] = otherKeyValue.getKey()[i];
+    for (int keyNum = startKeyNum; keyNum < endKeyNum; keyNum++) {
+      outputBuilder.keyNumToDimKey(keyNum, outputKey);
+      for (int i = 0; i < outputKey.length; i++) {
+        partialKey[dimensionMapping[i]] = outputKey[i];
       }
 
       Iterator<int[]> myKeyIterator = new SliceIndexIterator(getDimensionSizes(), partialKey);
@@ -571,20 +687,12 @@ public class DenseTensor extends DenseTensorBase implements Tensor, Serializable
           }
         }
       }
-      outputBuilder.put(otherKeyValue.getKey(), resultVal);
+      outputBuilder.values[keyNum] = resultVal;
 
-      if (backpointers != null) {
-        newBackpointerNums[backpointerIndex] = outputBuilder.dimKeyToKeyNum(otherKeyValue.getKey());
-        oldBackpointerNums[backpointerIndex] = backpointerKeyNum;
-        backpointerIndex++;
+      if (oldBackpointerNums != null) {
+        oldBackpointerNums[keyNum] = backpointerKeyNum;
       }
     }
-
-    if (backpointers != null) {
-      backpointers.setBackpointers(newBackpointerNums, oldBackpointerNums, backpointerIndex, this);
-    }
-
-    return outputBuilder.buildNoCopy();
   }
 
   @Override
@@ -72,12 +72,12 @@ public class DenseTensorBase extends AbstractTensorBase {
   }
 
   @Override
-  public final double getByIndex(int index) {
+  public double getByIndex(int index) {
     return values[index];
   }
 
   @Override
-  public final double getLogByIndex(int index) {
+  public double getLogByIndex(int index) {
     return Math.log(values[index]);
   }
 
@@ -1,5 +1,7 @@
 package com.jayantkrish.jklol.tensor;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.util.Arrays;
 import java.util.Iterator;
 
@@ -9,6 +11,22 @@ import com.jayantkrish.jklol.util.IntegerArrayIterator;
 
 /**
  * Builder for incrementally constructing dense tensors.
+ * <p>
+ * Builders can optionally track which of their entries have been
+ * modified (see {@link #trackModifiedEntries()}). Tracking is done at the
+ * granularity of small blocks of consecutive entries, and allows
+ * operations such as {@link #increment(TensorBase)} (when the argument is
+ * also a tracking builder), {@code multiply(0.0)} and {@link #getL2Norm()}
+ * to run in time proportional to the number of modified entries rather
+ * than the size of the tensor. Tracking is useful for accumulating sparse
+ * gradients of models with many parameters.
+ * <p>
+ * Builders can also be multiplied by a constant in constant time using
+ * {@link #rescale(double)}, which stores the constant as a scale factor
+ * of every value. Reads and sparse increments account for the scale
+ * factor; other updates first multiply it into the values, which takes
+ * time proportional to the size of the tensor. Rescaling is useful for
+ * L2 regularization of parameters with sparse gradients.
  *
  * @author jayantk
  */
@@ -16,6 +34,30 @@ public class DenseTensorBuilder extends DenseTensorBase implements TensorBuilder
 
   private static final long serialVersionUID = 1707937213062867772L;
 
+  // Entries are tracked in blocks of 2^MODIFIED_BLOCK_BITS consecutive
+  // entries.
+  private static final int MODIFIED_BLOCK_BITS = 4;
+  private static final int MODIFIED_BLOCK_SIZE = 1 << MODIFIED_BLOCK_BITS;
+
+  // If non-null, bit i of this bitmap is set whenever block i may
+  // contain a nonzero value. All entries of unset blocks are 0.
+  private long[] modifiedBlocks;
+
+  // Set by buildNoCopy() when a tensor shares this builder's values.
+  // Such builders cannot be reused by a TensorBuilderPool.
+  private boolean valuesShared;
+
+  // The value of entry i of this builder is scale * values[i]. The
+  // scale is always positive, and is 1.0 unless rescale() has been
+  // called since the last update that multiplied it into values.
+  private double scale;
+
+  // Bounds on the scale factor. Rescaling beyond these bounds
+  // multiplies the scale into the values, so that values does not
+  // overflow.
+  private static final double MIN_SCALE = 1e-100;
+  private static final double MAX_SCALE = 1e100;
+
   /**
    * Creates a {@code DenseTensorBuilder} with all values initialized to 0.
    * 
@@ -23,9 +65,9 @@ public class DenseTensorBuilder extends DenseTensorBase implements TensorBuilder
    * @param sizes
    */
   public DenseTensorBuilder(int[] dimensions, int[] sizes) {
+    // The values of this builder are initialized to 0 on allocation.
     super(dimensions, sizes);
-    // Initialize the values of this builder to 0.
-    Arrays.fill(values, 0.0);
+    scale = 1.0;
   }
 
   /**
@@ -38,6 +80,7 @@ public class DenseTensorBuilder extends DenseTensorBase implements TensorBuilder
   public DenseTensorBuilder(int[] dimensions, int[] sizes, double initialValue) {
     super(dimensions, sizes);
     Arrays.fill(values, initialValue);
+    scale = 1.0;
   }
 
   /**
@@ -48,16 +91,175 @@ public class DenseTensorBuilder extends DenseTensorBase implements TensorBuilder
   public DenseTensorBuilder(DenseTensorBase builder) {
     super(builder.getDimensionNumbers(), builder.getDimensionSizes(),
         ArrayUtils.copyOf(builder.values, builder.values.length));
+    scale = getScale(builder);
+    if (builder instanceof DenseTensorBuilder) {
+      long[] otherModifiedBlocks = ((DenseTensorBuilder) builder).modifiedBlocks;
+      if (otherModifiedBlocks != null) {
+        modifiedBlocks = Arrays.copyOf(otherModifiedBlocks, otherModifiedBlocks.length);
+      }
+    }
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    if (scale == 0.0) {
+      // This builder was serialized before builders had a scale factor.
+      scale = 1.0;
+    }
+  }
+
+  /**
+   * Gets the factor by which the entries of {@code tensor}'s values
+   * array must be multiplied to get its values.
+   */
+  private static double getScale(DenseTensorBase tensor) {
+    return (tensor instanceof DenseTensorBuilder) ? ((DenseTensorBuilder) tensor).scale : 1.0;
+  }
+
+  /**
+   * Multiplies the scale factor of this builder into its values, so
+   * that {@code values} contains the values of this builder. Takes time
+   * proportional to the size of this tensor if the scale is not 1.0.
+   */
+  private void applyScale() {
+    if (scale != 1.0) {
+      double oldScale = scale;
+      scale = 1.0;
+      multiply(oldScale);
+    }
+  }
+
+  /**
+   * Multiplies every value in this builder by {@code amount}. This
+   * method has the same result as {@link #multiply(double)}, but runs in
+   * constant time (except for an occasional pass over the values when
+   * {@code amount} is not positive or the accumulated scale becomes
+   * very large or small). Other operations may multiply the accumulated
+   * scale into the values; see the class comment.
+   * 
+   * @param amount
+   */
+  public void rescale(double amount) {
+    double newScale = scale * amount;
+    if (amount > 0.0 && newScale >= MIN_SCALE && newScale <= MAX_SCALE) {
+      scale = newScale;
+    } else {
+      applyScale();
+      multiply(amount);
+    }
+  }
+
+  /**
+   * Starts tracking the modified entries of this builder. Once enabled,
+   * tracking remains on for the lifetime of this builder and any copies
+   * made of it.
+   */
+  public void trackModifiedEntries() {
+    if (modifiedBlocks != null) {
+      return;
+    }
+
+    int numBlocks = (values.length + MODIFIED_BLOCK_SIZE - 1) >>> MODIFIED_BLOCK_BITS;
+    modifiedBlocks = new long[(numBlocks + 63) >>> 6];
+    for (int block = 0; block < numBlocks; block++) {
+      // A block is nonzero if any of its values has a nonzero bit
+      // pattern. (This conservatively marks blocks containing -0.0.)
+      long bits = 0L;
+      int end = Math.min((block + 1) << MODIFIED_BLOCK_BITS, values.length);
+      for (int j = block << MODIFIED_BLOCK_BITS; j < end; j++) {
+        bits |= Double.doubleToRawLongBits(values[j]);
+      }
+      if (bits != 0L) {
+        modifiedBlocks[block >>> 6] |= 1L << block;
+      }
+    }
+  }
+
+  /**
+   * Returns {@code true} if this builder is tracking its modified entries.
+   * 
+   * @return
+   */
+  public boolean isTrackingModifiedEntries() {
+    return modifiedBlocks != null;
+  }
+
+  /**
+   * Gets the indexes of all entries of this builder that may be nonzero,
+   * in increasing order. If this builder is tracking modified entries,
+   * this method runs in time proportional to the number of modified
+   * entries; otherwise, it returns every index of this builder. The
+   * returned array may include indexes whose value is 0.
+   *
+   * @return
+   */
+  public int[] getModifiedIndexes() {
+    if (modifiedBlocks == null) {
+      int[] indexes = new int[values.length];
+      for (int i = 0; i < indexes.length; i++) {
+        indexes[i] = i;
+      }
+      return indexes;
+    }
+
+    int numModified = 0;
+    for (int i = 0; i < modifiedBlocks.length; i++) {
+      numModified += Long.bitCount(modifiedBlocks[i]);
+    }
+
+    int[] indexes = new int[numModified * MODIFIED_BLOCK_SIZE];
+    int numIndexes = 0;
+    for (int i = 0; i < modifiedBlocks.length; i++) {
+      long word = modifiedBlocks[i];
+      while (word != 0) {
+        int block = (i << 6) + Long.numberOfTrailingZeros(word);
+        word &= word - 1;
+        int end = Math.min((block + 1) << MODIFIED_BLOCK_BITS, values.length);
+        for (int j = block << MODIFIED_BLOCK_BITS; j < end; j++) {
+          indexes[numIndexes] = j;
+          numIndexes++;
+        }
+      }
+    }
+    return numIndexes == indexes.length ? indexes : Arrays.copyOf(indexes, numIndexes);
+  }
+
+  private final void markModified(int index) {
+    int block = index >>> MODIFIED_BLOCK_BITS;
+    modifiedBlocks[block >>> 6] |= 1L << block;
+  }
+
+  private void markAllModified() {
+    if (modifiedBlocks != null) {
+      Arrays.fill(modifiedBlocks, -1L);
+    }
+  }
+
+  @Override
+  public final double getByIndex(int index) {
+    return values[index] * scale;
+  }
+
+  @Override
+  public final double getLogByIndex(int index) {
+    return Math.log(values[index] * scale);
   }
 
   @Override
   public final void put(int[] key, double value) {
-    values[dimKeyToIndex(key)] = value;
+    int index = dimKeyToIndex(key);
+    values[index] = value / scale;
+    if (modifiedBlocks != null) {
+      markModified(index);
+    }
   }
 
   @Override
   public final void putByKeyNum(long keyNum, double value) {
-    values[(int) keyNum] = value;
+    values[(int) keyNum] = value / scale;
+    if (modifiedBlocks != null) {
+      markModified((int) keyNum);
+    }
   }
 
   @Override
@@ -67,20 +269,26 @@ public class DenseTensorBuilder extends DenseTensorBase implements TensorBuilder
 
   @Override
   public void increment(double amount) {
-    // info.yeppp.Core.Add_IV64fS64f_IV64f(values, 0, amount, values.length);
-    for (int i = 0; i < values.length; i++) {
-      values[i] += amount;
-    }
+    applyScale();
+    DenseVectorKernels.getInstance().add(amount, values, values.length);
+    markAllModified();
   }
 
   @Override
   public final void incrementEntry(double amount, int... key) {
-    values[dimKeyToIndex(key)] += amount;
+    int index = dimKeyToIndex(key);
+    values[index] += amount / scale;
+    if (modifiedBlocks != null) {
+      markModified(index);
+    }
   }
   
   @Override
   public final void incrementEntryByKeyNum(double amount, long keyNum) {
-    values[(int) keyNum] += amount;
+    values[(int) keyNum] += amount / scale;
+    if (modifiedBlocks != null) {
+      markModified((int) keyNum);
+    }
   }
 
   /**
@@ -103,24 +311,15 @@ public class DenseTensorBuilder extends DenseTensorBase implements TensorBuilder
   @Override
   public void incrementSquare(TensorBase other, double multiplier) {
     if (other instanceof DenseTensorBase) {
-      // TODO: optimize
-      double square = multiplier * multiplier;
+      applyScale();
+      double otherScale = getScale((DenseTensorBase) other);
+      double square = multiplier * multiplier * otherScale * otherScale;
       double[] otherTensorValues = ((DenseTensorBase) other).values;
       Preconditions.checkArgument(otherTensorValues.length == values.length);
 
-      /*
-      double[] squaredOtherValues = Arrays.copyOf(otherTensorValues, otherTensorValues.length);
-      info.yeppp.Core.Multiply_IV64fV64f_IV64f(squaredOtherValues, 0, squaredOtherValues, 0, squaredOtherValues.length);
-      info.yeppp.Core.Multiply_IV64fS64f_IV64f(squaredOtherValues, 0, square, squaredOtherValues.length);
-      info.yeppp.Core.Add_IV64fV64f_IV64f(values, 0, squaredOtherValues, 0, squaredOtherValues.length);
-      */
-
-      int length = values.length;
-      double otherVal = 0;
-      for (int i = 0; i < length; i++) {
-        otherVal = otherTensorValues[i];
-        values[i] += otherVal * otherVal * square;
-      }
+      DenseVectorKernels.getInstance().addSquares(otherTensorValues, square, values,
+          values.length);
+      markAllModified();
     } else {
       throw new UnsupportedOperationException();
     }
@@ -129,6 +328,9 @@ public class DenseTensorBuilder extends DenseTensorBase implements TensorBuilder
   @Override
   public void incrementAdagrad(TensorBase other, TensorBase squareTensor, double multiplier) {
     if (other instanceof DenseTensorBase && squareTensor instanceof DenseTensorBase) {
+      applyScale();
+      double otherScale = getScale((DenseTensorBase) other);
+      double squareScale = getScale((DenseTensorBase) squareTensor);
       double[] otherTensorValues = ((DenseTensorBase) other).values;
       double[] squareTensorValues = ((DenseTensorBase) squareTensor).values;
       Preconditions.checkArgument(otherTensorValues.length == values.length);
@@ -137,12 +339,13 @@ public class DenseTensorBuilder extends DenseTensorBase implements TensorBuilder
       double otherVal = 0;
       double squareVal = 0;
       for (int i = 0; i < length; i++) {
-        otherVal = otherTensorValues[i];
-        squareVal = squareTensorValues[i];
+        otherVal = otherTensorValues[i] * otherScale;
+        squareVal = squareTensorValues[i] * squareScale;
         if (squareVal != 0.0) {
           values[i] += otherVal * multiplier / Math.sqrt(squareVal);
         }
       }
+      markAllModified();
     } else {
       throw new UnsupportedOperationException();
     }
@@ -151,17 +354,19 @@ public class DenseTensorBuilder extends DenseTensorBase implements TensorBuilder
   @Override
   public void multiplyInverseAdagrad(TensorBase squareTensor, double constant, double multiplier) {
     if (squareTensor instanceof DenseTensorBase) {
+      double squareScale = getScale((DenseTensorBase) squareTensor);
       double[] squareTensorValues = ((DenseTensorBase) squareTensor).values;
       Preconditions.checkArgument(squareTensorValues.length == values.length);
       int length = values.length;
       double squareVal = 0;
       for (int i = 0; i < length; i++) {
-        squareVal = squareTensorValues[i];
+        squareVal = squareTensorValues[i] * squareScale;
         if (squareVal != 0.0) {
           squareVal = 1 / squareVal;
         }
         values[i] *= (constant + (multiplier * Math.sqrt(squareVal)));
       }
+      markAllModified();
     } else {
       throw new UnsupportedOperationException();
     }
@@ -170,18 +375,23 @@ public class DenseTensorBuilder extends DenseTensorBase implements TensorBuilder
   @Override
   public void incrementSquareAdagrad(TensorBase gradient, TensorBase parameters, double multiplier) {
     if (gradient instanceof DenseTensorBase && parameters instanceof DenseTensorBase) {
+      applyScale();
+      double gradientScale = getScale((DenseTensorBase) gradient);
       double[] gradientTensorValues = ((DenseTensorBase) gradient).values;
       Preconditions.checkArgument(gradientTensorValues.length == values.length);
       
+      double parameterMultiplier = multiplier * getScale((DenseTensorBase) parameters);
       double[] parameterTensorValues = ((DenseTensorBase) parameters).values;
       Preconditions.checkArgument(parameterTensorValues.length == values.length);
       
       int length = values.length;
       double val = 0;
       for (int i = 0; i < length; i++) {
-        val = gradientTensorValues[i] + (multiplier * parameterTensorValues[i]);
+        val = (gradientScale * gradientTensorValues[i])
+            + (parameterMultiplier * parameterTensorValues[i]);
         values[i] += val * val;
       }
+      markAllModified();
     } else {
       throw new UnsupportedOperationException();
     }
@@ -196,19 +406,59 @@ public class DenseTensorBuilder extends DenseTensorBase implements TensorBuilder
    */
   private void simpleIncrement(TensorBase other, double multiplier) {
     Preconditions.checkArgument(Arrays.equals(other.getDimensionNumbers(), getDimensionNumbers()));
-    if (other instanceof DenseTensorBase) {
+    if (other instanceof DenseTensorBuilder && ((DenseTensorBuilder) other).modifiedBlocks != null) {
+      DenseTensorBuilder otherBuilder = (DenseTensorBuilder) other;
+      sparseIncrement(otherBuilder, multiplier * otherBuilder.scale / scale);
+    } else if (other instanceof DenseTensorBase) {
       double[] otherTensorValues = ((DenseTensorBase) other).values;
       Preconditions.checkArgument(otherTensorValues.length == values.length);
-      int length = values.length;
-      for (int i = 0; i < length; i++) {
-        values[i] += otherTensorValues[i] * multiplier;
-      }
+      double valueMultiplier = multiplier * getScale((DenseTensorBase) other) / scale;
+      DenseVectorKernels.getInstance().axpy(otherTensorValues, valueMultiplier, values, values.length);
+      markAllModified();
     } else {
+      double valueMultiplier = multiplier / scale;
       int otherSize = other.size();
       for (int i = 0; i < otherSize; i++) {
         long keyNum = other.indexToKeyNum(i);
         double value = other.getByIndex(i);
-        values[keyNumToIndex(keyNum)] += value * multiplier;
+        int index = keyNumToIndex(keyNum);
+        values[index] += value * valueMultiplier;
+        if (modifiedBlocks != null) {
+          markModified(index);
+        }
+      }
+    }
+  }
+
+  /**
+   * Increment algorithm for the case where {@code other} tracks its
+   * modified entries. Only the modified blocks of {@code other} are
+   * visited. {@code multiplier} is applied to the entries of the values
+   * arrays, so it must include the scale factors of both builders.
+   * 
+   * @param other
+   * @param multiplier
+   */
+  private void sparseIncrement(DenseTensorBuilder other, double multiplier) {
+    double[] otherTensorValues = other.values;
+    long[] otherModifiedBlocks = other.modifiedBlocks;
+    Preconditions.checkArgument(otherTensorValues.length == values.length);
+    for (int i = 0; i < otherModifiedBlocks.length; i++) {
+      long word = otherModifiedBlocks[i];
+      if (word == 0) {
+        continue;
+      }
+
+      if (modifiedBlocks != null) {
+        modifiedBlocks[i] |= word;
+      }
+      while (word != 0) {
+        int block = (i << 6) + Long.numberOfTrailingZeros(word);
+        word &= word - 1;
+        int end = Math.min((block + 1) << MODIFIED_BLOCK_BITS, values.length);
+        for (int j = block << MODIFIED_BLOCK_BITS; j < end; j++) {
+          values[j] += otherTensorValues[j] * multiplier;
+        }
       }
     }
   }
@@ -243,6 +493,7 @@ public class DenseTensorBuilder extends DenseTensorBase implements TensorBuilder
     }
     Preconditions.checkState(ind == keyOffsets.length);
 
+    double valueMultiplier = multiplier / scale;
     Iterator<KeyValue> otherKeyValues = other.keyValueIterator();
     while (otherKeyValues.hasNext()) {
       KeyValue otherKeyValue = otherKeyValues.next();
@@ -252,7 +503,10 @@ public class DenseTensorBuilder extends DenseTensorBase implements TensorBuilder
       }
 
       for (int i = 0; i < keyOffsets.length; i++) {
-        values[baseOffset + keyOffsets[i]] += otherKeyValue.getValue() * multiplier;
+        values[baseOffset + keyOffsets[i]] += otherKeyValue.getValue() * valueMultiplier;
+        if (modifiedBlocks != null) {
+          markModified(baseOffset + keyOffsets[i]);
+        }
       }
     }
   }
@@ -279,14 +533,18 @@ public class DenseTensorBuilder extends DenseTensorBase implements TensorBuilder
     double leftValue, rightValue;
     double[] leftValues = leftTensor.getValues();
     double[] rightValues = rightTensor.getValues();
+    double valueMultiplier = multiplier / scale;
     for (int i = 0; i < leftSize; i++) {
       leftKeyNumOffset = leftTensor.indexToKeyNum(i) * leftKeyNumMultiplier;
-      leftValue = leftValues[i] * multiplier;
+      leftValue = leftValues[i] * valueMultiplier;
       for (int j = 0; j < rightSize; j++) {
         rightValue = rightValues[j];
         if (rightValue != 0.0) {
           rightKeyNum = rightTensor.indexToKeyNum(j);
           values[(int) (leftKeyNumOffset + rightKeyNum)] += leftValue * rightValue;
+          if (modifiedBlocks != null) {
+            markModified((int) (leftKeyNumOffset + rightKeyNum));
+          }
         }
       }
     }
@@ -332,11 +590,14 @@ public class DenseTensorBuilder extends DenseTensorBase implements TensorBuilder
       rightKeyNum = leftKeyNum / keyNumSplit;
 
       if (rightKeyNum != oldRightKeyNum) {
-        rightValue = rightTensor.get(rightKeyNum) * multiplier;
+        rightValue = rightTensor.get(rightKeyNum) * multiplier / scale;
         oldRightKeyNum = rightKeyNum;
       }
 
       values[(int) myKeyNum] += leftValues[i] * rightValue;
+      if (modifiedBlocks != null) {
+        markModified((int) myKeyNum);
+      }
     }
   }
 
@@ -346,11 +607,13 @@ public class DenseTensorBuilder extends DenseTensorBase implements TensorBuilder
     if (other instanceof DenseTensorBase) {
       DenseTensorBase otherTensor = (DenseTensorBase) other;
       Preconditions.checkArgument(otherTensor.values.length == values.length);
+      applyScale();
+      double otherScale = getScale(otherTensor);
 
       // info.yeppp.Core.Multiply_V64fV64f_V64f(values, 0, otherTensor.values, 0, values, 0, values.length);
 
       for (int i = 0; i < values.length; i++) {
-        values[i] *= otherTensor.values[i];
+        values[i] *= otherTensor.values[i] * otherScale;
       }
     } else {
       Iterator<KeyValue> keyValueIter = keyValueIterator();
@@ -359,29 +622,79 @@ public class DenseTensorBuilder extends DenseTensorBase implements TensorBuilder
         values[dimKeyToIndex(keyValue.getKey())] *= other.getByDimKey(keyValue.getKey());
       }
     }
+    markAllModified();
   }
 
   @Override
   public void multiply(double amount) {
+    if (amount == 0.0 && modifiedBlocks != null) {
+      // Only the modified blocks can contain nonzero values.
+      zeroModifiedBlocks();
+      scale = 1.0;
+      return;
+    }
+
+    if (modifiedBlocks != null && !Double.isInfinite(amount) && !Double.isNaN(amount)) {
+      // The entries of the unmodified blocks are 0.
+      for (int i = 0; i < modifiedBlocks.length; i++) {
+        long word = modifiedBlocks[i];
+        while (word != 0) {
+          int block = (i << 6) + Long.numberOfTrailingZeros(word);
+          word &= word - 1;
+          int end = Math.min((block + 1) << MODIFIED_BLOCK_BITS, values.length);
+          for (int j = block << MODIFIED_BLOCK_BITS; j < end; j++) {
+            values[j] *= amount;
+          }
+        }
+      }
+      return;
+    }
+
     // Not optimized.
     // info.yeppp.Core.Multiply_V64fS64f_V64f(values, 0, amount, values, 0, values.length);
     for (int i = 0; i < values.length; i++) {
       values[i] *= amount;
     }
+
+    if (Double.isInfinite(amount) || Double.isNaN(amount)) {
+      markAllModified();
+    }
+  }
+
+  private void zeroModifiedBlocks() {
+    for (int i = 0; i < modifiedBlocks.length; i++) {
+      long word = modifiedBlocks[i];
+      while (word != 0) {
+        int block = (i << 6) + Long.numberOfTrailingZeros(word);
+        word &= word - 1;
+        int end = Math.min((block + 1) << MODIFIED_BLOCK_BITS, values.length);
+        Arrays.fill(values, block << MODIFIED_BLOCK_BITS, end, 0.0);
+      }
+      modifiedBlocks[i] = 0L;
+    }
   }
 
   @Override
   public void multiplyEntry(double amount, int... key) {
-    values[dimKeyToIndex(key)] *= amount;
+    int index = dimKeyToIndex(key);
+    values[index] *= amount;
+    if (modifiedBlocks != null) {
+      markModified(index);
+    }
   }
   
   @Override
   public final void multiplyEntryByKeyNum(double amount, long keyNum) {
-    values[keyNumToIndex(keyNum)] *= amount;
+    int index = keyNumToIndex(keyNum);
+    values[index] *= amount;
+    if (modifiedBlocks != null) {
+      markModified(index);
+    }
   }
 
   @Override
   public void softThreshold(double threshold) {
+    applyScale();
     double negativeThreshold = -1.0 * threshold;
     for (int i = 0; i < values.length; i++) {
       if (values[i] > threshold) {
@@ -392,10 +705,12 @@ public class DenseTensorBuilder extends DenseTensorBase implements TensorBuilder
         values[i] = 0.0;
       }
     }
+    markAllModified();
   }
   
   @Override
   public void findEntriesLargerThan(double threshold) {
+    applyScale();
     for (int i = 0; i < values.length; i++) {
       if (values[i] >= threshold) {
         values[i] = 1.0;
@@ -403,6 +718,7 @@ public class DenseTensorBuilder extends DenseTensorBase implements TensorBuilder
         values[i] = 0.0;
       }
     }
+    markAllModified();
   }
 
   @Override
@@ -411,10 +727,13 @@ public class DenseTensorBuilder extends DenseTensorBase implements TensorBuilder
     if (other instanceof DenseTensorBase) {
       DenseTensorBase otherTensor = (DenseTensorBase) other;
       Preconditions.checkArgument(otherTensor.values.length == values.length);
+      applyScale();
+      double otherScale = getScale(otherTensor);
       for (int i = 0; i < values.length; i++) {
-        values[i] = Math.max(otherTensor.values[i], values[i]);
+        values[i] = Math.max(otherTensor.values[i] * otherScale, values[i]);
       }
     } else {
+      applyScale();
       Iterator<KeyValue> keyValueIter = keyValueIterator();
       while (keyValueIter.hasNext()) {
         KeyValue keyValue = keyValueIter.next();
@@ -422,6 +741,7 @@ public class DenseTensorBuilder extends DenseTensorBase implements TensorBuilder
         values[index] = Math.max(values[index], other.getByDimKey(keyValue.getKey()));
       }
     }
+    markAllModified();
   }
       
   @Override
@@ -434,7 +754,7 @@ public class DenseTensorBuilder extends DenseTensorBase implements TensorBuilder
       for (int i = 0; i < values.length; i++) {
         total += otherTensor.values[i] * values[i];
       }
-      return total;
+      return total * scale * getScale(otherTensor);
     } else {
       double total = 0.0;
       
@@ -445,20 +765,96 @@ public class DenseTensorBuilder extends DenseTensorBase implements TensorBuilder
         
         total += values[index] * other.getByDimKey(keyValue.getKey());
       }
-      return total;
+      return total * scale;
+    }
+  }
+
+  @Override
+  public double getL2Norm() {
+    if (modifiedBlocks == null) {
+      return super.getL2Norm() * scale;
+    }
+
+    double sumSquares = 0.0;
+    for (int i = 0; i < modifiedBlocks.length; i++) {
+      long word = modifiedBlocks[i];
+      while (word != 0) {
+        int block = (i << 6) + Long.numberOfTrailingZeros(word);
+        word &= word - 1;
+        int end = Math.min((block + 1) << MODIFIED_BLOCK_BITS, values.length);
+        for (int j = block << MODIFIED_BLOCK_BITS; j < end; j++) {
+          sumSquares += values[j] * values[j];
+        }
+      }
+    }
+    return Math.sqrt(sumSquares) * scale;
+  }
+
+  @Override
+  public double getTrace() {
+    return super.getTrace() * scale;
+  }
+
+  @Override
+  public double[][] toMatrix(int[] rowDims, int[] colDims) {
+    double[][] matrix = super.toMatrix(rowDims, colDims);
+    if (scale != 1.0) {
+      for (int i = 0; i < matrix.length; i++) {
+        for (int j = 0; j < matrix[i].length; j++) {
+          matrix[i][j] *= scale;
+        }
+      }
     }
+    return matrix;
   }
 
   @Override
   public void exp() {
+    applyScale();
     for (int i = 0; i < values.length; i++) {
       values[i] = Math.exp(values[i]);
     }
+    markAllModified();
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * Throws {@code IllegalStateException} if a tensor returned by
+   * {@link #buildNoCopy()} shares the values of this builder, as
+   * zeroing them would modify that tensor.
+   */
+  @Override
+  public void reset() {
+    Preconditions.checkState(!valuesShared,
+        "Cannot reset a builder whose values were shared by buildNoCopy()");
+    if (modifiedBlocks != null) {
+      zeroModifiedBlocks();
+    } else {
+      Arrays.fill(values, 0.0);
+    }
+    scale = 1.0;
+  }
+
+  /**
+   * Returns {@code true} if a tensor returned by {@link #buildNoCopy()}
+   * shares the values of this builder.
+   *
+   * @return
+   */
+  boolean hasSharedValues() {
+    return valuesShared;
   }
 
   @Override
   public DenseTensor build() {
-    return new DenseTensor(getDimensionNumbers(), getDimensionSizes(), ArrayUtils.copyOf(values, values.length));
+    double[] newValues = ArrayUtils.copyOf(values, values.length);
+    if (scale != 1.0) {
+      for (int i = 0; i < newValues.length; i++) {
+        newValues[i] *= scale;
+      }
+    }
+    return new DenseTensor(getDimensionNumbers(), getDimensionSizes(), newValues);
   }
 
   /**
@@ -470,6 +866,8 @@ public class DenseTensorBuilder extends DenseTensorBase implements TensorBuilder
    */
   @Override
   public DenseTensor buildNoCopy() {
+    applyScale();
+    valuesShared = true;
     return new DenseTensor(getDimensionNumbers(), getDimensionSizes(), values);
   }
 
@@ -480,7 +878,7 @@ public class DenseTensorBuilder extends DenseTensorBase implements TensorBuilder
 
   @Override
   public String toString() {
-    return Arrays.toString(values);
+    return Arrays.toString(build().values);
   }
 
   // ///////////////////////////////////////////////////////////////////
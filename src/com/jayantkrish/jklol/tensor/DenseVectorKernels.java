@@ -0,0 +1,263 @@
+package com.jayantkrish.jklol.tensor;
+
+/**
+ * Elementwise operations and dot products over {@code double} arrays,
+ * used by the inner loops of {@link DenseTensor} and
+ * {@link DenseTensorBuilder}. Two implementations exist: a scalar
+ * implementation, and an implementation using the SIMD instructions
+ * of the CPU through the JDK's incubating Vector API
+ * ({@code jdk.incubator.vector}). The vectorized implementation is
+ * compiled separately (from {@code vector/src}) because it requires
+ * JDK 16 or later, and is only used if its classes are on the
+ * classpath and the JVM is started with
+ * {@code --add-modules jdk.incubator.vector}. Setting the system
+ * property {@code jklol.vectorKernels=false} disables it.
+ * <p>
+ * Both implementations return identical results for the arithmetic
+ * operations. In particular, {@link #dot} always sums the products in
+ * 8 interleaved partial sums, regardless of the number of SIMD lanes.
+ * The vectorized {@code exp}, {@code log} and {@code tanh} may differ
+ * from {@link Math} in the last bit.
+ *
+ * @author jayantk
+ */
+public abstract class DenseVectorKernels {
+
+  /**
+   * Number of interleaved partial sums computed by {@link #dot}.
+   */
+  public static final int DOT_PARTIAL_SUMS = 8;
+
+  private static final String VECTOR_KERNELS_CLASS = "com.jayantkrish.jklol.tensor.VectorApiKernels";
+  private static final String VECTOR_KERNELS_PROPERTY = "jklol.vectorKernels";
+
+  private static final DenseVectorKernels SCALAR = new ScalarKernels();
+  private static final DenseVectorKernels INSTANCE = loadKernels();
+
+  /**
+   * Gets the fastest available implementation of these kernels.
+   *
+   * @return
+   */
+  public static DenseVectorKernels getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Gets the scalar implementation of these kernels.
+   *
+   * @return
+   */
+  public static DenseVectorKernels getScalarKernels() {
+    return SCALAR;
+  }
+
+  /**
+   * Returns {@code true} if {@link #getInstance()} uses SIMD
+   * instructions.
+   *
+   * @return
+   */
+  public static boolean isVectorized() {
+    return INSTANCE != SCALAR;
+  }
+
+  private static DenseVectorKernels loadKernels() {
+    if (!Boolean.parseBoolean(System.getProperty(VECTOR_KERNELS_PROPERTY, "true"))) {
+      return SCALAR;
+    }
+
+    try {
+      return Class.forName(VECTOR_KERNELS_CLASS).asSubclass(DenseVectorKernels.class)
+          .getDeclaredConstructor().newInstance();
+    } catch (ClassNotFoundException e) {
+      // The vectorized kernels were not compiled.
+    } catch (ReflectiveOperationException e) {
+      // The vectorized kernels could not be instantiated, e.g.,
+      // because their constructor threw an exception.
+    } catch (LinkageError e) {
+      // The jdk.incubator.vector module is not available.
+    }
+    return SCALAR;
+  }
+
+  /**
+   * Gets a name for this implementation, e.g., for benchmark output.
+   *
+   * @return
+   */
+  public abstract String getName();
+
+  /**
+   * Sets {@code result[i] = Math.exp(x[i])} for {@code i < length}.
+   *
+   * @param x
+   * @param result
+   * @param length
+   */
+  public abstract void exp(double[] x, double[] result, int length);
+
+  /**
+   * Sets {@code result[i] = Math.log(x[i])} for {@code i < length}.
+   *
+   * @param x
+   * @param result
+   * @param length
+   */
+  public abstract void log(double[] x, double[] result, int length);
+
+  /**
+   * Sets {@code result[i] = Math.tanh(x[i])} for {@code i < length}.
+   *
+   * @param x
+   * @param result
+   * @param length
+   */
+  public abstract void tanh(double[] x, double[] result, int length);
+
+  /**
+   * Applies the Laplace sigmoid (see
+   * {@link Tensor#elementwiseLaplaceSigmoid(double)}) to
+   * {@code x[i]} for {@code i < length}.
+   *
+   * @param x
+   * @param result
+   * @param smoothness
+   * @param length
+   */
+  public abstract void laplaceSigmoid(double[] x, double[] result, double smoothness, int length);
+
+  /**
+   * Gets the sum of {@code x[i] * y[i]} for {@code i < length}. The
+   * product at index {@code i} is added to partial sum
+   * {@code i % DOT_PARTIAL_SUMS} for the largest multiple of
+   * {@code DOT_PARTIAL_SUMS} below {@code length}. The partial sums
+   * are then added in order, followed by the remaining products.
+   *
+   * @param x
+   * @param y
+   * @param length
+   * @return
+   */
+  public abstract double dot(double[] x, double[] y, int length);
+
+  /**
+   * Sets {@code y[i] += x[i] * multiplier} for {@code i < length}.
+   *
+   * @param x
+   * @param multiplier
+   * @param y
+   * @param length
+   */
+  public abstract void axpy(double[] x, double multiplier, double[] y, int length);
+
+  /**
+   * Sets {@code y[i] += x[i] * x[i] * multiplier} for
+   * {@code i < length}.
+   *
+   * @param x
+   * @param multiplier
+   * @param y
+   * @param length
+   */
+  public abstract void addSquares(double[] x, double multiplier, double[] y, int length);
+
+  /**
+   * Sets {@code y[i] += value} for {@code i < length}.
+   *
+   * @param value
+   * @param y
+   * @param length
+   */
+  public abstract void add(double value, double[] y, int length);
+
+  /**
+   * Scalar implementation of the kernels.
+   */
+  private static class ScalarKernels extends DenseVectorKernels {
+
+    @Override
+    public String getName() {
+      return "scalar";
+    }
+
+    @Override
+    public void exp(double[] x, double[] result, int length) {
+      for (int i = 0; i < length; i++) {
+        result[i] = Math.exp(x[i]);
+      }
+    }
+
+    @Override
+    public void log(double[] x, double[] result, int length) {
+      for (int i = 0; i < length; i++) {
+        result[i] = Math.log(x[i]);
+      }
+    }
+
+    @Override
+    public void tanh(double[] x, double[] result, int length) {
+      for (int i = 0; i < length; i++) {
+        result[i] = Math.tanh(x[i]);
+      }
+    }
+
+    @Override
+    public void laplaceSigmoid(double[] x, double[] result, double smoothness, int length) {
+      for (int i = 0; i < length; i++) {
+        double value = x[i];
+        if (value > 0) {
+          result[i] = 1 - Math.exp(-1 * smoothness * value);
+        } else if (value < 0) {
+          result[i] = -1 + Math.exp(smoothness * value);
+        } else {
+          result[i] = 0;
+        }
+      }
+    }
+
+    @Override
+    public double dot(double[] x, double[] y, int length) {
+      double s0 = 0.0, s1 = 0.0, s2 = 0.0, s3 = 0.0, s4 = 0.0, s5 = 0.0, s6 = 0.0, s7 = 0.0;
+      int blockEnd = length - (length % DOT_PARTIAL_SUMS);
+      for (int i = 0; i < blockEnd; i += DOT_PARTIAL_SUMS) {
+        s0 += x[i] * y[i];
+        s1 += x[i + 1] * y[i + 1];
+        s2 += x[i + 2] * y[i + 2];
+        s3 += x[i + 3] * y[i + 3];
+        s4 += x[i + 4] * y[i + 4];
+        s5 += x[i + 5] * y[i + 5];
+        s6 += x[i + 6] * y[i + 6];
+        s7 += x[i + 7] * y[i + 7];
+      }
+
+      double sum = s0 + s1 + s2 + s3 + s4 + s5 + s6 + s7;
+      for (int i = blockEnd; i < length; i++) {
+        sum += x[i] * y[i];
+      }
+      return sum;
+    }
+
+    @Override
+    public void axpy(double[] x, double multiplier, double[] y, int length) {
+      for (int i = 0; i < length; i++) {
+        y[i] += x[i] * multiplier;
+      }
+    }
+
+    @Override
+    public void addSquares(double[] x, double multiplier, double[] y, int length) {
+      for (int i = 0; i < length; i++) {
+        double value = x[i];
+        y[i] += value * value * multiplier;
+      }
+    }
+
+    @Override
+    public void add(double value, double[] y, int length) {
+      for (int i = 0; i < length; i++) {
+        y[i] += value;
+      }
+    }
+  }
+}
@@ -3,14 +3,32 @@ package com.jayantkrish.jklol.tensor;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.common.primitives.Ints;
 import com.jayantkrish.jklol.util.IntegerArrayIterator;
 
 /**
- * A tensor represented as a product of tensors.
+ * A tensor represented as a product of tensors. Each tensor in the
+ * product (a factor) contains a subset of the dimensions of this
+ * tensor. For example, a word x category x feature tensor can be
+ * represented as the product of a word x category and a category x
+ * feature tensor, using far less memory than the full tensor.
+ * <p>
+ * Products, slices, relabelings and marginalizations are performed
+ * symbolically: sums and maxes over a dimension are computed by
+ * multiplying together only the factors which contain the dimension,
+ * and the result is another {@code FactoredTensor}. Operations which
+ * do not distribute over the factors (e.g., {@link #elementwiseLog()})
+ * compute the full tensor using {@link #materialize()}.
  * 
  * @author jayantk
  */
@@ -47,9 +65,226 @@ public class FactoredTensor extends AbstractTensor {
     }
   }
 
+  /**
+   * Gets the tensors whose product is this tensor.
+   * 
+   * @return
+   */
+  public Tensor[] getTensors() {
+    return tensors;
+  }
+
+  /**
+   * Gets the product of {@code factors} as a {@code FactoredTensor}
+   * with the given dimensions. Factors which are themselves
+   * {@code FactoredTensor}s are replaced by their factors, and
+   * factors without any dimensions are multiplied into a single
+   * scalar factor. If the product consists of a single factor with
+   * all of the dimensions, that factor is returned instead.
+   * 
+   * @param dimensions
+   * @param sizes
+   * @param factors
+   * @return
+   */
+  public static Tensor fromFactors(int[] dimensions, int[] sizes, List<Tensor> factors) {
+    List<Tensor> resultFactors = Lists.newArrayList();
+    double scalar = 1.0;
+    for (Tensor factor : factors) {
+      if (factor instanceof FactoredTensor) {
+        for (Tensor subfactor : ((FactoredTensor) factor).getTensors()) {
+          if (subfactor.numDimensions() == 0) {
+            scalar *= subfactor.getByDimKey();
+          } else {
+            resultFactors.add(subfactor);
+          }
+        }
+      } else if (factor.numDimensions() == 0) {
+        scalar *= factor.getByDimKey();
+      } else {
+        resultFactors.add(factor);
+      }
+    }
+
+    if (dimensions.length == 0) {
+      return DenseTensor.scalar(scalar);
+    } else if (scalar != 1.0) {
+      resultFactors.add(DenseTensor.scalar(scalar));
+    } else if (resultFactors.size() == 1
+        && Arrays.equals(resultFactors.get(0).getDimensionNumbers(), dimensions)) {
+      return resultFactors.get(0);
+    }
+    return new FactoredTensor(dimensions, sizes, resultFactors.toArray(new Tensor[0]));
+  }
+
+  /**
+   * Computes the tensor represented by this product of tensors.
+   * The result is a dense tensor unless one of the factors is a
+   * sparse tensor containing all of the dimensions of this tensor.
+   * 
+   * @return
+   */
+  public Tensor materialize() {
+    return multiplyFactors(getDimensionNumbers(), getDimensionSizes(), Arrays.asList(tensors));
+  }
+
+  /**
+   * Multiplies together {@code factors}, whose dimensions are subsets
+   * of {@code dimensions}.
+   */
+  private static Tensor multiplyFactors(int[] dimensions, int[] sizes, List<Tensor> factors) {
+    // Start from a factor containing every dimension if one exists,
+    // as it may be sparse.
+    int initialIndex = -1;
+    for (int i = 0; i < factors.size(); i++) {
+      if (Arrays.equals(factors.get(i).getDimensionNumbers(), dimensions)) {
+        initialIndex = i;
+        break;
+      }
+    }
+
+    Tensor result = initialIndex == -1 ? DenseTensor.constant(dimensions, sizes, 1.0)
+        : factors.get(initialIndex);
+    for (int i = 0; i < factors.size(); i++) {
+      if (i != initialIndex) {
+        result = result.elementwiseProduct(factors.get(i));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Gets the dimension numbers and sizes of the union of the
+   * dimensions of {@code tensors}. The returned array contains the
+   * dimension numbers in its first row and sizes in its second row.
+   */
+  private static int[][] getUnionDimensions(Collection<? extends TensorBase> tensors) {
+    SortedMap<Integer, Integer> dimensionSizes = Maps.newTreeMap();
+    for (TensorBase tensor : tensors) {
+      int[] dims = tensor.getDimensionNumbers();
+      int[] sizes = tensor.getDimensionSizes();
+      for (int i = 0; i < dims.length; i++) {
+        Integer size = dimensionSizes.get(dims[i]);
+        Preconditions.checkArgument(size == null || size == sizes[i],
+            "Dimension %s has inconsistent sizes %s and %s", dims[i], size, sizes[i]);
+        dimensionSizes.put(dims[i], sizes[i]);
+      }
+    }
+    return new int[][] {Ints.toArray(dimensionSizes.keySet()),
+        Ints.toArray(dimensionSizes.values())};
+  }
+
+  /**
+   * Sums or maxes out {@code dimensionsToEliminate} from the product
+   * of {@code factors}, whose dimensions are {@code dimensions}. Each
+   * dimension is eliminated from the product of only the factors
+   * which contain it, as in variable elimination.
+   */
+  private static Tensor eliminateDimensions(int[] dimensions, int[] sizes,
+      List<Tensor> factors, Collection<Integer> dimensionsToEliminate, boolean useMax) {
+    List<Tensor> currentFactors = Lists.newArrayList(factors);
+    SortedSet<Integer> toEliminate = Sets.newTreeSet(dimensionsToEliminate);
+    toEliminate.retainAll(Ints.asList(dimensions));
+    for (int dimension : toEliminate) {
+      List<Tensor> containing = Lists.newArrayList();
+      List<Tensor> remaining = Lists.newArrayList();
+      for (Tensor factor : currentFactors) {
+        if (Ints.contains(factor.getDimensionNumbers(), dimension)) {
+          containing.add(factor);
+        } else {
+          remaining.add(factor);
+        }
+      }
+
+      if (containing.size() == 0) {
+        // The product is constant along this dimension.
+        if (!useMax) {
+          int size = sizes[Ints.indexOf(dimensions, dimension)];
+          remaining.add(DenseTensor.scalar(size));
+        }
+      } else {
+        Tensor product = containing.get(0);
+        if (containing.size() > 1) {
+          int[][] productDims = getUnionDimensions(containing);
+          product = multiplyFactors(productDims[0], productDims[1], containing);
+        }
+
+        if (useMax) {
+          remaining.add(product.maxOutDimensions(Ints.asList(dimension)));
+        } else {
+          remaining.add(product.sumOutDimensions(Ints.asList(dimension)));
+        }
+      }
+      currentFactors = remaining;
+    }
+
+    List<Integer> resultDims = Lists.newArrayList();
+    List<Integer> resultSizes = Lists.newArrayList();
+    for (int i = 0; i < dimensions.length; i++) {
+      if (!toEliminate.contains(dimensions[i])) {
+        resultDims.add(dimensions[i]);
+        resultSizes.add(sizes[i]);
+      }
+    }
+    return fromFactors(Ints.toArray(resultDims), Ints.toArray(resultSizes), currentFactors);
+  }
+
+  /**
+   * Returns {@code true} if every value of every factor is
+   * nonnegative. Maximization only distributes over products of
+   * nonnegative factors.
+   */
+  private boolean hasNonnegativeFactors() {
+    for (Tensor tensor : tensors) {
+      int size = tensor.size();
+      for (int i = 0; i < size; i++) {
+        if (tensor.getByIndex(i) < 0.0) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
   @Override
   public Tensor slice(int[] dimensionNumbers, int[] keys) {
-    throw new UnsupportedOperationException("Not implemented.");
+    Preconditions.checkArgument(dimensionNumbers.length == keys.length);
+    if (dimensionNumbers.length == 0) {
+      return this;
+    }
+
+    List<Tensor> slicedFactors = Lists.newArrayList();
+    for (Tensor tensor : tensors) {
+      int[] tensorDims = tensor.getDimensionNumbers();
+      List<Integer> sliceDims = Lists.newArrayList();
+      List<Integer> sliceKeys = Lists.newArrayList();
+      for (int i = 0; i < dimensionNumbers.length; i++) {
+        if (Ints.contains(tensorDims, dimensionNumbers[i])) {
+          sliceDims.add(dimensionNumbers[i]);
+          sliceKeys.add(keys[i]);
+        }
+      }
+
+      if (sliceDims.size() == 0) {
+        slicedFactors.add(tensor);
+      } else {
+        slicedFactors.add(tensor.slice(Ints.toArray(sliceDims), Ints.toArray(sliceKeys)));
+      }
+    }
+
+    int[] dims = getDimensionNumbers();
+    int[] sizes = getDimensionSizes();
+    List<Integer> resultDims = Lists.newArrayList();
+    List<Integer> resultSizes = Lists.newArrayList();
+    for (int i = 0; i < dims.length; i++) {
+      if (!Ints.contains(dimensionNumbers, dims[i])) {
+        resultDims.add(dims[i]);
+        resultSizes.add(sizes[i]);
+      }
+    }
+    Preconditions.checkArgument(resultDims.size() == dims.length - dimensionNumbers.length,
+        "Cannot slice dimensions %s of %s", Ints.asList(dimensionNumbers), Ints.asList(dims));
+    return fromFactors(Ints.toArray(resultDims), Ints.toArray(resultSizes), slicedFactors);
   }
 
   @Override
@@ -59,122 +294,186 @@ public class FactoredTensor extends AbstractTensor {
   
   @Override
   public Tensor findKeysLargerThan(double thresholdValue) {
-    throw new UnsupportedOperationException("Not implemented.");
+    return materialize().findKeysLargerThan(thresholdValue);
   }
 
   @Override
   public Tensor elementwiseProduct(Tensor other) {
-    throw new UnsupportedOperationException("Not implemented.");
+    int[] dims = getDimensionNumbers();
+    int[] sizes = getDimensionSizes();
+    int[] otherDims = other.getDimensionNumbers();
+    int[] otherSizes = other.getDimensionSizes();
+    for (int i = 0; i < otherDims.length; i++) {
+      int index = Ints.indexOf(dims, otherDims[i]);
+      Preconditions.checkArgument(index != -1 && sizes[index] == otherSizes[i],
+          "Dimensions %s are not a subset of %s", Ints.asList(otherDims), Ints.asList(dims));
+    }
+
+    List<Tensor> factors = Lists.newArrayList(tensors);
+    factors.add(other);
+    return fromFactors(dims, sizes, factors);
+  }
+
+  @Override
+  public Tensor elementwiseProduct(double value) {
+    return elementwiseProduct(DenseTensor.scalar(value));
   }
 
   @Override
   public Tensor innerProduct(Tensor other) {
-    throw new UnsupportedOperationException("Not implemented.");
+    return elementwiseProduct(other).sumOutDimensions(Ints.asList(other.getDimensionNumbers()));
   }
   
   @Override
   public Tensor matrixInnerProduct(Tensor other) {
-    throw new UnsupportedOperationException("Not implemented.");
+    List<Tensor> factors = Lists.newArrayList(tensors);
+    factors.add(other);
+    int[][] dims = getUnionDimensions(Arrays.asList(this, other));
+
+    Set<Integer> sharedDims = Sets.newHashSet(Ints.asList(getDimensionNumbers()));
+    sharedDims.retainAll(Ints.asList(other.getDimensionNumbers()));
+    return eliminateDimensions(dims[0], dims[1], factors, sharedDims, false);
   }
 
   @Override
   public Tensor outerProduct(Tensor other) {
-    throw new UnsupportedOperationException("Not implemented.");
+    List<Tensor> factors = Lists.newArrayList(tensors);
+    factors.add(other);
+    int[][] dims = getUnionDimensions(Arrays.asList(this, other));
+    Preconditions.checkArgument(dims[0].length == numDimensions + other.numDimensions(),
+        "Outer product requires disjoint dimensions");
+    return fromFactors(dims[0], dims[1], factors);
   }
 
   @Override
   public Tensor elementwiseAddition(Tensor other) {
-    throw new UnsupportedOperationException("Not implemented.");
+    return materialize().elementwiseAddition(other);
   }
 
   @Override
   public Tensor elementwiseAddition(double value) {
-    throw new UnsupportedOperationException("Not implemented.");
+    return materialize().elementwiseAddition(value);
   }
 
   @Override
   public Tensor elementwiseMaximum(Tensor other) {
-    throw new UnsupportedOperationException("Not implemented.");
+    return materialize().elementwiseMaximum(other);
   }
 
   @Override
   public Tensor elementwiseInverse() {
-    throw new UnsupportedOperationException("Not implemented.");
+    // The inverse of 0 is 0, which is consistent with inverting
+    // each factor.
+    Tensor[] inverses = new Tensor[tensors.length];
+    for (int i = 0; i < tensors.length; i++) {
+      inverses[i] = tensors[i].elementwiseInverse();
+    }
+    return new FactoredTensor(getDimensionNumbers(), getDimensionSizes(), inverses);
   }
 
   @Override
   public Tensor elementwiseSqrt() {
-    throw new UnsupportedOperationException("Not implemented.");
+    return materialize().elementwiseSqrt();
   }
 
   @Override
   public Tensor elementwiseLog() {
-    throw new UnsupportedOperationException("Not implemented.");
+    return materialize().elementwiseLog();
   }
 
   @Override
-  public DenseTensor elementwiseLogSparse() {
-    throw new UnsupportedOperationException("Not implemented.");
+  public Tensor elementwiseLogSparse() {
+    return materialize().elementwiseLogSparse();
   }
 
   @Override
   public Tensor elementwiseExp() {
-    throw new UnsupportedOperationException("Not implemented.");
+    return materialize().elementwiseExp();
   }
 
   @Override
-  public DenseTensor elementwiseExpSparse() {
-    throw new UnsupportedOperationException("Not implemented.");
+  public Tensor elementwiseExpSparse() {
+    return materialize().elementwiseExpSparse();
   }
   
   @Override
   public Tensor elementwiseTanh() {
-    throw new UnsupportedOperationException("Not implemented.");
+    return materialize().elementwiseTanh();
   }
   
   @Override
   public Tensor elementwiseAbs() {
-    throw new UnsupportedOperationException("Not implemented.");
+    Tensor[] absolutes = new Tensor[tensors.length];
+    for (int i = 0; i < tensors.length; i++) {
+      absolutes[i] = tensors[i].elementwiseAbs();
+    }
+    return new FactoredTensor(getDimensionNumbers(), getDimensionSizes(), absolutes);
   }
 
   @Override
   public Tensor elementwiseLaplaceSigmoid(double smoothness) {
-    throw new UnsupportedOperationException("Not implemented.");
+    return materialize().elementwiseLaplaceSigmoid(smoothness);
   }
 
   @Override
   public Tensor softThreshold(double threshold) {
-    throw new UnsupportedOperationException("Not implemented.");
+    return materialize().softThreshold(threshold);
   }
   
   @Override
   public Tensor getEntriesLargerThan(double threshold) {
-    throw new UnsupportedOperationException("Not implemented.");
+    return materialize().getEntriesLargerThan(threshold);
   }
 
   @Override
   public Tensor sumOutDimensions(Collection<Integer> dimensionsToEliminate) {
-    throw new UnsupportedOperationException("Not implemented.");
+    return eliminateDimensions(getDimensionNumbers(), getDimensionSizes(),
+        Arrays.asList(tensors), dimensionsToEliminate, false);
   }
 
   @Override
   public Tensor maxOutDimensions(Collection<Integer> dimensionsToEliminate) {
-    throw new UnsupportedOperationException("Not implemented.");
+    if (hasNonnegativeFactors()) {
+      return eliminateDimensions(getDimensionNumbers(), getDimensionSizes(),
+          Arrays.asList(tensors), dimensionsToEliminate, true);
+    } else {
+      return materialize().maxOutDimensions(dimensionsToEliminate);
+    }
   }
 
   @Override
   public Tensor maxOutDimensions(Collection<Integer> dimensionsToEliminate, Backpointers backpointers) {
-    throw new UnsupportedOperationException("Not implemented.");
+    return materialize().maxOutDimensions(dimensionsToEliminate, backpointers);
   }
 
   @Override
   public Tensor relabelDimensions(int[] newDimensions) {
-    throw new UnsupportedOperationException("Not implemented.");
+    Preconditions.checkArgument(newDimensions.length == numDimensions);
+    Map<Integer, Integer> relabeling = Maps.newHashMap();
+    int[] dims = getDimensionNumbers();
+    for (int i = 0; i < dims.length; i++) {
+      relabeling.put(dims[i], newDimensions[i]);
+    }
+    return relabelDimensions(relabeling);
   }
 
   @Override
   public Tensor relabelDimensions(Map<Integer, Integer> relabeling) {
-    throw new UnsupportedOperationException("Not implemented.");
+    List<Tensor> relabeledFactors = Lists.newArrayList();
+    for (Tensor tensor : tensors) {
+      relabeledFactors.add(tensor.relabelDimensions(relabeling));
+    }
+
+    SortedMap<Integer, Integer> newDimensionSizes = Maps.newTreeMap();
+    int[] dims = getDimensionNumbers();
+    int[] sizes = getDimensionSizes();
+    for (int i = 0; i < dims.length; i++) {
+      newDimensionSizes.put(relabeling.get(dims[i]), sizes[i]);
+    }
+    Preconditions.checkArgument(newDimensionSizes.size() == dims.length,
+        "Relabeling %s is not one-to-one", relabeling);
+    return new FactoredTensor(Ints.toArray(newDimensionSizes.keySet()),
+        Ints.toArray(newDimensionSizes.values()), relabeledFactors.toArray(new Tensor[0]));
   }
 
   @Override
@@ -279,17 +578,25 @@ public class FactoredTensor extends AbstractTensor {
 
   @Override
   public double getL2Norm() {
-    throw new UnsupportedOperationException("Not implemented.");
+    // The squared values of this tensor are the product of the
+    // squared values of each factor.
+    List<Tensor> squares = Lists.newArrayList();
+    for (Tensor tensor : tensors) {
+      squares.add(tensor.elementwiseProduct(tensor));
+    }
+    Tensor sumOfSquares = eliminateDimensions(getDimensionNumbers(), getDimensionSizes(),
+        squares, Ints.asList(getDimensionNumbers()), false);
+    return Math.sqrt(sumOfSquares.getByDimKey());
   }
 
   @Override
   public double getTrace() {
-    throw new UnsupportedOperationException("Not implemented.");
+    return sumOutDimensions(Ints.asList(getDimensionNumbers())).getByDimKey();
   }
 
   @Override
   public long[] getLargestValues(int n) {
-    throw new UnsupportedOperationException("Not implemented.");
+    return materialize().getLargestValues(n);
   }
   
   private static class FactoredTensorHash implements TensorHash {
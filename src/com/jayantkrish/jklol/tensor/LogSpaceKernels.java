@@ -0,0 +1,287 @@
+package com.jayantkrish.jklol.tensor;
+
+import java.util.Arrays;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Fused product and reduction operations on tensors in log space.
+ * These operations compute the product of a tensor with several
+ * smaller tensors (whose dimensions are subsets of the tensor's
+ * dimensions), then sum or max out some dimensions of the product.
+ * Unlike {@link Tensor#elementwiseProduct(Tensor)} followed by
+ * {@link Tensor#sumOutDimensions(java.util.Collection)}, the product
+ * is never materialized as a tensor: each value of the product is
+ * computed as the sum of log values and immediately accumulated into
+ * the reduced result.
+ * <p>
+ * Values of the product are represented as arrays of log values
+ * aligned with the indexes of a (possibly sparse) tensor, called the
+ * base tensor. The smaller tensors and all results are
+ * {@link DenseTensor}s or {@link SparseTensor}s containing log
+ * values, where {@code Double.NEGATIVE_INFINITY} represents a weight
+ * of 0. Keys which have no index in a sparse tensor of log values
+ * also have weight 0 (unlike in {@link SparseLogSpaceTensorAdapter}).
+ * Results are sparse if the base tensor is sparse and has fewer keys
+ * than the result's dimensions, so the size of a result never exceeds
+ * the size of the base tensor.
+ *
+ * @author jayantk
+ */
+public final class LogSpaceKernels {
+
+  private LogSpaceKernels() {
+    // Prevent instantiation.
+  }
+
+  /**
+   * Gets the log value of each index of {@code tensor}.
+   *
+   * @param tensor
+   * @return
+   */
+  public static double[] getLogValues(Tensor tensor) {
+    int size = tensor.size();
+    double[] logValues = new double[size];
+    for (int i = 0; i < size; i++) {
+      logValues[i] = tensor.getLogByIndex(i);
+    }
+    return logValues;
+  }
+
+  /**
+   * Adds the log values in {@code logFactor} to {@code logValues},
+   * which is aligned with the indexes of {@code base}. Each index of
+   * {@code base} is incremented by the value of {@code logFactor} for
+   * the projection of the index's key onto {@code logFactor}'s
+   * dimensions, which must be a subset of {@code base}'s dimensions.
+   *
+   * @param base
+   * @param logValues
+   * @param logFactor
+   */
+  public static void addLogFactor(Tensor base, double[] logValues, Tensor logFactor) {
+    Preconditions.checkArgument(logValues.length == base.size());
+    long[] projection = getProjectionOffsets(base, logFactor.getDimensionNumbers());
+    boolean isDense = isDense(base);
+    boolean isFactorDense = isDense(logFactor);
+    int[] dimKey = new int[base.numDimensions()];
+    for (int i = 0; i < logValues.length; i++) {
+      if (isDense) {
+        if (i > 0) {
+          increment(dimKey, base.getDimensionSizes());
+        }
+      } else {
+        base.keyNumToDimKey(base.indexToKeyNum(i), dimKey);
+      }
+      logValues[i] += getLogValue(logFactor, isFactorDense, project(dimKey, projection));
+    }
+  }
+
+  /**
+   * Computes the log of the sum (or the maximum, if {@code useMax}) of
+   * the values of a product, for each assignment to
+   * {@code dimensionsToKeep}. Index {@code i} of the product has log
+   * value {@code logValues[i] + otherLogValues[i]}, plus the values of
+   * each of {@code logFactors} for the index's key in {@code base}.
+   * {@code otherLogValues} may be {@code null}. The result is sparse
+   * if {@code base} is sparse and has fewer keys than the result's
+   * dimensions, in which case it contains the projection of each of
+   * {@code base}'s keys.
+   *
+   * @param base
+   * @param logValues
+   * @param otherLogValues
+   * @param logFactors
+   * @param dimensionsToKeep
+   * @param useMax
+   * @return
+   */
+  public static Tensor logSumProductOutDimensions(Tensor base, double[] logValues,
+      double[] otherLogValues, Tensor[] logFactors, int[] dimensionsToKeep, boolean useMax) {
+    Preconditions.checkArgument(logValues.length == base.size());
+    Preconditions.checkArgument(otherLogValues == null || otherLogValues.length == logValues.length);
+
+    int[] baseDims = base.getDimensionNumbers();
+    int[] baseSizes = base.getDimensionSizes();
+
+    int[] keptDims = dimensionsToKeep.clone();
+    Arrays.sort(keptDims);
+    int[] keptSizes = new int[keptDims.length];
+    long numKeptKeys = 1;
+    for (int i = 0; i < keptDims.length; i++) {
+      int index = Arrays.binarySearch(baseDims, keptDims[i]);
+      Preconditions.checkArgument(index >= 0, "Cannot keep dimension %s", keptDims[i]);
+      keptSizes[i] = baseSizes[index];
+      numKeptKeys *= keptSizes[i];
+    }
+
+    boolean isDense = isDense(base);
+    long[] resultProjection = getProjectionOffsets(base, keptDims);
+    long[] resultKeyNums = null;
+    int resultSize = 0;
+    if (!isDense && base.size() < numKeptKeys) {
+      resultKeyNums = getProjectedKeyNums(base, resultProjection);
+      resultSize = resultKeyNums.length;
+    } else {
+      Preconditions.checkArgument(numKeptKeys <= Integer.MAX_VALUE,
+          "Too many keys in result: %s", numKeptKeys);
+      resultSize = (int) numKeptKeys;
+    }
+
+    long[][] factorProjections = new long[logFactors.length][];
+    boolean[] isFactorDense = new boolean[logFactors.length];
+    for (int j = 0; j < logFactors.length; j++) {
+      factorProjections[j] = getProjectionOffsets(base, logFactors[j].getDimensionNumbers());
+      isFactorDense[j] = isDense(logFactors[j]);
+    }
+
+    // Running maximum of each result key. For sums, the running sum is
+    // stored relative to the running maximum, as in log-sum-exp.
+    double[] maxes = new double[resultSize];
+    double[] sums = useMax ? null : new double[resultSize];
+    Arrays.fill(maxes, Double.NEGATIVE_INFINITY);
+
+    int[] dimKey = new int[baseDims.length];
+    for (int i = 0; i < logValues.length; i++) {
+      if (isDense) {
+        if (i > 0) {
+          increment(dimKey, baseSizes);
+        }
+      }
+
+      double value = logValues[i];
+      if (otherLogValues != null) {
+        value += otherLogValues[i];
+      }
+      if (value == Double.NEGATIVE_INFINITY) {
+        continue;
+      }
+
+      if (!isDense) {
+        base.keyNumToDimKey(base.indexToKeyNum(i), dimKey);
+      }
+      for (int j = 0; j < logFactors.length && value != Double.NEGATIVE_INFINITY; j++) {
+        value += getLogValue(logFactors[j], isFactorDense[j],
+            project(dimKey, factorProjections[j]));
+      }
+      if (value == Double.NEGATIVE_INFINITY) {
+        continue;
+      }
+
+      long resultKeyNum = project(dimKey, resultProjection);
+      int resultKey = (resultKeyNums == null) ? (int) resultKeyNum
+          : Arrays.binarySearch(resultKeyNums, resultKeyNum);
+      double max = maxes[resultKey];
+      if (useMax) {
+        if (value > max) {
+          maxes[resultKey] = value;
+        }
+      } else if (value > max) {
+        sums[resultKey] = sums[resultKey] * Math.exp(max - value) + 1.0;
+        maxes[resultKey] = value;
+      } else {
+        sums[resultKey] += Math.exp(value - max);
+      }
+    }
+
+    if (!useMax) {
+      for (int i = 0; i < maxes.length; i++) {
+        if (maxes[i] != Double.NEGATIVE_INFINITY) {
+          maxes[i] += Math.log(sums[i]);
+        }
+      }
+    }
+    if (resultKeyNums == null) {
+      return new DenseTensor(keptDims, keptSizes, maxes);
+    } else {
+      return new SparseTensor(keptDims, keptSizes, resultKeyNums, maxes);
+    }
+  }
+
+  /**
+   * Gets the log value of {@code keyNum} in {@code logFactor}, which is
+   * {@code Double.NEGATIVE_INFINITY} if {@code logFactor} is sparse and
+   * does not contain {@code keyNum}.
+   */
+  private static double getLogValue(Tensor logFactor, boolean isDense, long keyNum) {
+    if (isDense) {
+      return logFactor.getByIndex((int) keyNum);
+    }
+    int index = logFactor.keyNumToIndex(keyNum);
+    return (index == -1) ? Double.NEGATIVE_INFINITY : logFactor.getByIndex(index);
+  }
+
+  /**
+   * Gets the sorted, distinct projections of the keys of {@code base}
+   * using {@code projection}.
+   */
+  private static long[] getProjectedKeyNums(Tensor base, long[] projection) {
+    int[] dimKey = new int[base.numDimensions()];
+    long[] keyNums = new long[base.size()];
+    for (int i = 0; i < keyNums.length; i++) {
+      base.keyNumToDimKey(base.indexToKeyNum(i), dimKey);
+      keyNums[i] = project(dimKey, projection);
+    }
+    Arrays.sort(keyNums);
+
+    int numDistinct = 0;
+    for (int i = 0; i < keyNums.length; i++) {
+      if (numDistinct == 0 || keyNums[i] != keyNums[numDistinct - 1]) {
+        keyNums[numDistinct] = keyNums[i];
+        numDistinct++;
+      }
+    }
+    return Arrays.copyOf(keyNums, numDistinct);
+  }
+
+  /**
+   * Gets the offset of each dimension of {@code base} in a tensor with
+   * dimensions {@code projectedDims}, or 0 if the dimension is not one of
+   * {@code projectedDims}.
+   */
+  private static long[] getProjectionOffsets(Tensor base, int[] projectedDims) {
+    int[] baseDims = base.getDimensionNumbers();
+    int[] baseSizes = base.getDimensionSizes();
+    long[] projection = new long[baseDims.length];
+    long offset = 1;
+    for (int i = projectedDims.length - 1; i >= 0; i--) {
+      int index = Arrays.binarySearch(baseDims, projectedDims[i]);
+      Preconditions.checkArgument(index >= 0, "Cannot project onto dimension %s", projectedDims[i]);
+      projection[index] = offset;
+      offset *= baseSizes[index];
+    }
+    return projection;
+  }
+
+  /**
+   * Returns {@code true} if the index of every key of {@code tensor} is
+   * equal to the key, in which case keys can be enumerated without
+   * calling {@link Tensor#indexToKeyNum(int)}.
+   */
+  private static boolean isDense(Tensor tensor) {
+    return tensor.size() == tensor.getMaxKeyNum();
+  }
+
+  /**
+   * Advances {@code dimKey} to the next key in a tensor with the
+   * given dimension sizes.
+   */
+  private static void increment(int[] dimKey, int[] sizes) {
+    for (int d = dimKey.length - 1; d >= 0; d--) {
+      dimKey[d]++;
+      if (dimKey[d] < sizes[d]) {
+        return;
+      }
+      dimKey[d] = 0;
+    }
+  }
+
+  private static long project(int[] dimKey, long[] projection) {
+    long projected = 0;
+    for (int d = 0; d < dimKey.length; d++) {
+      projected += dimKey[d] * projection[d];
+    }
+    return projected;
+  }
+}
@@ -33,6 +33,15 @@ public class LogSpaceTensorAdapter extends AbstractTensor {
     Preconditions.checkArgument(logWeights.getMaxKeyNum() < Integer.MAX_VALUE);
   }
 
+  /**
+   * Gets the tensor containing the logarithms of this tensor's values.
+   * 
+   * @return
+   */
+  public Tensor getLogWeights() {
+    return logWeights;
+  }
+
   @Override
   public int size() {
     long size = logWeights.getMaxKeyNum();
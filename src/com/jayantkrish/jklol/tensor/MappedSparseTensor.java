@@ -0,0 +1,614 @@
+package com.jayantkrish.jklol.tensor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectStreamException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Ordering;
+import com.google.common.primitives.Ints;
+import com.jayantkrish.jklol.util.HeapUtils;
+
+/**
+ * A read-only sparse tensor whose keys and values are stored in a
+ * memory-mapped file. Mapping a tensor is nearly instantaneous
+ * regardless of its size, the tensor's data does not occupy the Java
+ * heap, and processes that map the same file share a single copy of
+ * the data in the operating system's page cache.
+ * <p>
+ * Lookups, iteration, norms, {@link #getLargestValues(int)},
+ * relabelings that preserve the order of the dimensions, and
+ * elementwise and inner products with tensors over the same dimensions
+ * read the mapped file directly. Slices of leading dimensions only copy
+ * the sliced entries. All other operations, including
+ * {@link #getValues()}, copy the entire tensor onto the Java heap (see
+ * {@link #toSparseTensor()}), so they should be avoided for tensors
+ * that are mapped because they are large.
+ * <p>
+ * Files are created using {@link #writeToFile}. Serializing a
+ * {@code MappedSparseTensor} only writes the name of its file, which
+ * is mapped again when the tensor is deserialized.
+ *
+ * @author jayantk
+ */
+public class MappedSparseTensor extends AbstractTensor {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final int MAGIC_NUMBER = 0x4a4b5354;
+  private static final int FORMAT_VERSION = 1;
+  private static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+  // A single mapping may contain at most 2^31 bytes, so keys and
+  // values are mapped in chunks of 2^DEFAULT_CHUNK_SHIFT entries.
+  private static final int DEFAULT_CHUNK_SHIFT = 27;
+  private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+  private final String filename;
+  private final int size;
+
+  private final int chunkShift;
+  private final int chunkMask;
+  private final transient LongBuffer[] keyChunks;
+  private final transient DoubleBuffer[] valueChunks;
+
+  private MappedSparseTensor(int[] dimensionNums, int[] dimensionSizes, String filename,
+      int size, int chunkShift, LongBuffer[] keyChunks, DoubleBuffer[] valueChunks) {
+    super(dimensionNums, dimensionSizes);
+    this.filename = Preconditions.checkNotNull(filename);
+    this.size = size;
+    this.chunkShift = chunkShift;
+    this.chunkMask = (1 << chunkShift) - 1;
+    this.keyChunks = Preconditions.checkNotNull(keyChunks);
+    this.valueChunks = Preconditions.checkNotNull(valueChunks);
+  }
+
+  /**
+   * Writes the keys and values of {@code tensor} to {@code filename}
+   * in the format read by {@link #fromFile(String)}.
+   *
+   * @param tensor
+   * @param filename
+   */
+  public static void writeToFile(SparseTensor tensor, String filename) {
+    int[] dimensionNums = tensor.getDimensionNumbers();
+    int[] dimensionSizes = tensor.getDimensionSizes();
+    long[] keyNums = tensor.getKeyNums();
+    double[] values = tensor.getValues();
+
+    try (RandomAccessFile file = new RandomAccessFile(filename, "rw")) {
+      file.setLength(0);
+      FileChannel channel = file.getChannel();
+
+      ByteBuffer header = ByteBuffer.allocate(getHeaderSize(dimensionNums.length))
+          .order(BYTE_ORDER);
+      header.putInt(MAGIC_NUMBER);
+      header.putInt(FORMAT_VERSION);
+      header.putInt(dimensionNums.length);
+      header.putInt(keyNums.length);
+      for (int i = 0; i < dimensionNums.length; i++) {
+        header.putInt(dimensionNums[i]);
+        header.putInt(dimensionSizes[i]);
+      }
+      header.rewind();
+      writeFully(channel, header);
+
+      ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(BYTE_ORDER);
+      for (int i = 0; i < keyNums.length; i++) {
+        if (!buffer.hasRemaining()) {
+          flush(channel, buffer);
+        }
+        buffer.putLong(keyNums[i]);
+      }
+      for (int i = 0; i < values.length; i++) {
+        if (!buffer.hasRemaining()) {
+          flush(channel, buffer);
+        }
+        buffer.putDouble(values[i]);
+      }
+      flush(channel, buffer);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Maps a tensor stored in {@code filename} by
+   * {@link #writeToFile(SparseTensor, String)}. The file must not be
+   * modified while the returned tensor is in use.
+   *
+   * @param filename
+   * @return
+   */
+  public static MappedSparseTensor fromFile(String filename) {
+    return fromFile(filename, DEFAULT_CHUNK_SHIFT);
+  }
+
+  static MappedSparseTensor fromFile(String filename, int chunkShift) {
+    String path = new File(filename).getAbsolutePath();
+    try (RandomAccessFile file = new RandomAccessFile(path, "r")) {
+      FileChannel channel = file.getChannel();
+
+      ByteBuffer prefix = channel.map(FileChannel.MapMode.READ_ONLY, 0, 16).order(BYTE_ORDER);
+      Preconditions.checkArgument(prefix.getInt() == MAGIC_NUMBER,
+          "Not a mapped tensor file: %s", path);
+      int version = prefix.getInt();
+      Preconditions.checkArgument(version == FORMAT_VERSION,
+          "Unsupported mapped tensor version %s in file: %s", version, path);
+      int numDimensions = prefix.getInt();
+      int size = prefix.getInt();
+
+      ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 16,
+          numDimensions * 8).order(BYTE_ORDER);
+      int[] dimensionNums = new int[numDimensions];
+      int[] dimensionSizes = new int[numDimensions];
+      for (int i = 0; i < numDimensions; i++) {
+        dimensionNums[i] = header.getInt();
+        dimensionSizes[i] = header.getInt();
+      }
+
+      long keysOffset = getHeaderSize(numDimensions);
+      long valuesOffset = keysOffset + (((long) size) * 8);
+      Preconditions.checkArgument(channel.size() == valuesOffset + (((long) size) * 8),
+          "Mapped tensor file has the wrong length: %s", path);
+
+      int numChunks = (int) ((((long) size) + (1 << chunkShift) - 1) >> chunkShift);
+      LongBuffer[] keyChunks = new LongBuffer[numChunks];
+      DoubleBuffer[] valueChunks = new DoubleBuffer[numChunks];
+      for (int i = 0; i < numChunks; i++) {
+        long start = ((long) i) << chunkShift;
+        long chunkSize = Math.min(1L << chunkShift, size - start);
+        keyChunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, keysOffset + (start * 8),
+            chunkSize * 8).order(BYTE_ORDER).asLongBuffer();
+        valueChunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, valuesOffset + (start * 8),
+            chunkSize * 8).order(BYTE_ORDER).asDoubleBuffer();
+      }
+
+      return new MappedSparseTensor(dimensionNums, dimensionSizes, path, size, chunkShift,
+          keyChunks, valueChunks);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static int getHeaderSize(int numDimensions) {
+    // The header is a multiple of 8 bytes long, so the keys and
+    // values that follow it are aligned.
+    return 16 + (numDimensions * 8);
+  }
+
+  private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+    buffer.flip();
+    writeFully(channel, buffer);
+    buffer.clear();
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  /**
+   * Gets the name of the file containing this tensor.
+   *
+   * @return
+   */
+  public String getFilename() {
+    return filename;
+  }
+
+  /**
+   * Copies the keys and values of this tensor into a
+   * {@code SparseTensor} on the Java heap.
+   *
+   * @return
+   */
+  public SparseTensor toSparseTensor() {
+    return new SparseTensor(getDimensionNumbers(), getDimensionSizes(), getKeyNums(0, size),
+        getValues(0, size));
+  }
+
+  private long[] getKeyNums(int startIndex, int endIndex) {
+    long[] keyNums = new long[endIndex - startIndex];
+    for (int i = startIndex; i < endIndex; i++) {
+      keyNums[i - startIndex] = indexToKeyNum(i);
+    }
+    return keyNums;
+  }
+
+  private double[] getValues(int startIndex, int endIndex) {
+    double[] values = new double[endIndex - startIndex];
+    for (int i = startIndex; i < endIndex; i++) {
+      values[i - startIndex] = getByIndex(i);
+    }
+    return values;
+  }
+
+  // ////////////////////////////////////////////////////////////////////
+  // Inherited from TensorBase
+  // ////////////////////////////////////////////////////////////////////
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public double getByIndex(int index) {
+    if (index == -1) {
+      return 0.0;
+    }
+    return valueChunks[index >>> chunkShift].get(index & chunkMask);
+  }
+
+  @Override
+  public double getLogByIndex(int index) {
+    return Math.log(getByIndex(index));
+  }
+
+  @Override
+  public long indexToKeyNum(int index) {
+    return keyChunks[index >>> chunkShift].get(index & chunkMask);
+  }
+
+  @Override
+  public int keyNumToIndex(long keyNum) {
+    int index = getNearestIndex(keyNum);
+    return (index < size && indexToKeyNum(index) == keyNum) ? index : -1;
+  }
+
+  @Override
+  public int getNearestIndex(long keyNum) {
+    // Binary search for the first index whose key is >= keyNum.
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (indexToKeyNum(mid) < keyNum) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  @Override
+  public Iterator<KeyValue> keyValueIterator() {
+    return new SparseKeyValueIterator(this, 0, size);
+  }
+
+  @Override
+  public Iterator<KeyValue> keyValuePrefixIterator(int[] keyPrefix) {
+    if (keyPrefix.length == 0) {
+      return keyValueIterator();
+    }
+
+    long startKeyNum = dimKeyPrefixToKeyNum(keyPrefix);
+    long endKeyNum = startKeyNum + indexOffsets[keyPrefix.length - 1];
+    return new SparseKeyValueIterator(this, getNearestIndex(startKeyNum), getNearestIndex(endKeyNum));
+  }
+
+  @Override
+  public double getL2Norm() {
+    double sumSquared = 0.0;
+    for (int i = 0; i < size; i++) {
+      double value = getByIndex(i);
+      sumSquared += value * value;
+    }
+    return Math.sqrt(sumSquared);
+  }
+
+  @Override
+  public double getTrace() {
+    double sum = 0.0;
+    for (int i = 0; i < size; i++) {
+      sum += getByIndex(i);
+    }
+    return sum;
+  }
+
+  @Override
+  public long[] getLargestValues(int n) {
+    long[] heapKeys = new long[n + 1];
+    double[] heapValues = new double[n + 1];
+    int heapSize = 0;
+    for (int i = 0; i < size; i++) {
+      HeapUtils.offer(heapKeys, heapValues, heapSize, indexToKeyNum(i), getByIndex(i));
+      heapSize++;
+      if (heapSize > n) {
+        HeapUtils.removeMin(heapKeys, heapValues, heapSize);
+        heapSize--;
+      }
+    }
+
+    long[] largestKeyNums = new long[heapSize];
+    while (heapSize > 0) {
+      largestKeyNums[heapSize - 1] = heapKeys[0];
+      HeapUtils.removeMin(heapKeys, heapValues, heapSize);
+      heapSize--;
+    }
+    return largestKeyNums;
+  }
+
+  // ////////////////////////////////////////////////////////////////////
+  // Inherited from Tensor
+  // ////////////////////////////////////////////////////////////////////
+
+  @Override
+  public Tensor slice(int[] dimensionNumbers, int[] keys) {
+    if (dimensionNumbers.length == 0) {
+      return this;
+    }
+
+    int[] myDimensionNums = getDimensionNumbers();
+    if (Arrays.equals(dimensionNumbers, Arrays.copyOf(myDimensionNums,
+        Math.min(dimensionNumbers.length, myDimensionNums.length)))) {
+      // Slicing the leading dimensions selects a contiguous range
+      // of keys, so only that range needs to be copied.
+      long minKeyNum = dimKeyPrefixToKeyNum(keys);
+      long maxKeyNum = minKeyNum + indexOffsets[keys.length - 1];
+      int startIndex = getNearestIndex(minKeyNum);
+      int endIndex = getNearestIndex(maxKeyNum);
+
+      long[] keyNums = getKeyNums(startIndex, endIndex);
+      for (int i = 0; i < keyNums.length; i++) {
+        keyNums[i] -= minKeyNum;
+      }
+      int numDims = myDimensionNums.length;
+      return new SparseTensor(Arrays.copyOfRange(myDimensionNums, keys.length, numDims),
+          Arrays.copyOfRange(getDimensionSizes(), keys.length, numDims), keyNums,
+          getValues(startIndex, endIndex));
+    }
+    return toSparseTensor().slice(dimensionNumbers, keys);
+  }
+
+  @Override
+  public Tensor retainKeys(Tensor indicatorTensor) {
+    return toSparseTensor().retainKeys(indicatorTensor);
+  }
+
+  @Override
+  public Tensor findKeysLargerThan(double thresholdValue) {
+    return toSparseTensor().findKeysLargerThan(thresholdValue);
+  }
+
+  @Override
+  public Tensor elementwiseProduct(Tensor other) {
+    if (!Arrays.equals(getDimensionNumbers(), other.getDimensionNumbers())) {
+      return toSparseTensor().elementwiseProduct(other);
+    }
+    Preconditions.checkArgument(Arrays.equals(getDimensionSizes(), other.getDimensionSizes()));
+
+    // Only keys of the smaller tensor can have nonzero products, so
+    // the keys of the smaller tensor are looked up in the larger.
+    int otherSize = other.size();
+    int maxResultSize = Math.min(size, otherSize);
+    long[] resultKeyNums = new long[maxResultSize];
+    double[] resultValues = new double[maxResultSize];
+    int numFilled = 0;
+    if (otherSize < size) {
+      for (int i = 0; i < otherSize; i++) {
+        long keyNum = other.indexToKeyNum(i);
+        double value = getByIndex(keyNumToIndex(keyNum)) * other.getByIndex(i);
+        if (value != 0.0) {
+          resultKeyNums[numFilled] = keyNum;
+          resultValues[numFilled] = value;
+          numFilled++;
+        }
+      }
+    } else {
+      for (int i = 0; i < size; i++) {
+        long keyNum = indexToKeyNum(i);
+        double value = getByIndex(i) * other.get(keyNum);
+        if (value != 0.0) {
+          resultKeyNums[numFilled] = keyNum;
+          resultValues[numFilled] = value;
+          numFilled++;
+        }
+      }
+    }
+    return new SparseTensor(getDimensionNumbers(), getDimensionSizes(),
+        Arrays.copyOf(resultKeyNums, numFilled), Arrays.copyOf(resultValues, numFilled));
+  }
+
+  @Override
+  public Tensor innerProduct(Tensor other) {
+    return elementwiseProduct(other).sumOutDimensions(Ints.asList(other.getDimensionNumbers()));
+  }
+
+  @Override
+  public Tensor matrixInnerProduct(Tensor other) {
+    return toSparseTensor().matrixInnerProduct(other);
+  }
+
+  @Override
+  public Tensor outerProduct(Tensor other) {
+    return toSparseTensor().outerProduct(other);
+  }
+
+  @Override
+  public Tensor elementwiseAddition(Tensor other) {
+    return toSparseTensor().elementwiseAddition(other);
+  }
+
+  @Override
+  public Tensor elementwiseAddition(double value) {
+    return toSparseTensor().elementwiseAddition(value);
+  }
+
+  @Override
+  public Tensor elementwiseMaximum(Tensor other) {
+    return toSparseTensor().elementwiseMaximum(other);
+  }
+
+  @Override
+  public Tensor elementwiseInverse() {
+    return toSparseTensor().elementwiseInverse();
+  }
+
+  @Override
+  public Tensor elementwiseSqrt() {
+    return toSparseTensor().elementwiseSqrt();
+  }
+
+  @Override
+  public Tensor elementwiseLog() {
+    return toSparseTensor().elementwiseLog();
+  }
+
+  @Override
+  public Tensor elementwiseLogSparse() {
+    return toSparseTensor().elementwiseLogSparse();
+  }
+
+  @Override
+  public Tensor elementwiseExp() {
+    return toSparseTensor().elementwiseExp();
+  }
+
+  @Override
+  public Tensor elementwiseExpSparse() {
+    return toSparseTensor().elementwiseExpSparse();
+  }
+
+  @Override
+  public Tensor elementwiseTanh() {
+    return toSparseTensor().elementwiseTanh();
+  }
+
+  @Override
+  public Tensor elementwiseAbs() {
+    return toSparseTensor().elementwiseAbs();
+  }
+
+  @Override
+  public Tensor elementwiseLaplaceSigmoid(double smoothness) {
+    return toSparseTensor().elementwiseLaplaceSigmoid(smoothness);
+  }
+
+  @Override
+  public Tensor softThreshold(double threshold) {
+    return toSparseTensor().softThreshold(threshold);
+  }
+
+  @Override
+  public Tensor getEntriesLargerThan(double threshold) {
+    return toSparseTensor().getEntriesLargerThan(threshold);
+  }
+
+  @Override
+  public Tensor sumOutDimensions(Collection<Integer> dimensionsToEliminate) {
+    return toSparseTensor().sumOutDimensions(dimensionsToEliminate);
+  }
+
+  @Override
+  public Tensor maxOutDimensions(Collection<Integer> dimensionsToEliminate) {
+    return toSparseTensor().maxOutDimensions(dimensionsToEliminate);
+  }
+
+  @Override
+  public Tensor maxOutDimensions(Collection<Integer> dimensionsToEliminate,
+      Backpointers backpointers) {
+    return toSparseTensor().maxOutDimensions(dimensionsToEliminate, backpointers);
+  }
+
+  @Override
+  public Tensor relabelDimensions(int[] newDimensions) {
+    Preconditions.checkArgument(newDimensions.length == numDimensions());
+    if (Ordering.natural().isOrdered(Ints.asList(newDimensions))) {
+      // The keys are not reordered, so the relabeled tensor reads
+      // the same mapped file.
+      return new MappedSparseTensor(newDimensions, getDimensionSizes(), filename, size,
+          chunkShift, keyChunks, valueChunks);
+    }
+    return toSparseTensor().relabelDimensions(newDimensions);
+  }
+
+  @Override
+  public Tensor relabelDimensions(Map<Integer, Integer> relabeling) {
+    int[] newDimensions = new int[numDimensions()];
+    int[] dimensionNums = getDimensionNumbers();
+    for (int i = 0; i < dimensionNums.length; i++) {
+      Preconditions.checkArgument(relabeling.containsKey(dimensionNums[i]),
+          "Dimension %s not in relabeling %s", dimensionNums[i], relabeling);
+      newDimensions[i] = relabeling.get(dimensionNums[i]);
+    }
+    return relabelDimensions(newDimensions);
+  }
+
+  @Override
+  public Tensor replaceValues(double[] values) {
+    Preconditions.checkArgument(values.length == size);
+    return new SparseTensor(getDimensionNumbers(), getDimensionSizes(), getKeyNums(0, size),
+        values);
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * The returned array is a copy of this tensor's values.
+   */
+  @Override
+  public double[] getValues() {
+    return getValues(0, size);
+  }
+
+  /**
+   * Returns {@code this}, as lookups in a mapped tensor do not
+   * require a separate hash table.
+   */
+  @Override
+  public TensorHash toHash() {
+    return this;
+  }
+
+  @Override
+  public String toString() {
+    return "MappedSparseTensor(" + filename + ", dimensions " + Ints.asList(getDimensionNumbers())
+        + ", sizes " + Ints.asList(getDimensionSizes()) + ", " + size + " entries)";
+  }
+
+  private Object writeReplace() throws ObjectStreamException {
+    return new SerializedForm(filename, getDimensionNumbers());
+  }
+
+  /**
+   * Serialized representation of a mapped tensor, which is mapped
+   * again from its file when deserialized.
+   */
+  private static class SerializedForm implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String filename;
+    // The dimensions of the tensor, which differ from the dimensions
+    // in the file if the tensor was relabeled. null in forms
+    // serialized before tensors could be relabeled.
+    private final int[] dimensionNums;
+
+    public SerializedForm(String filename, int[] dimensionNums) {
+      this.filename = filename;
+      this.dimensionNums = dimensionNums;
+    }
+
+    private Object readResolve() throws ObjectStreamException {
+      MappedSparseTensor tensor = fromFile(filename);
+      if (dimensionNums != null && !Arrays.equals(dimensionNums, tensor.getDimensionNumbers())) {
+        return tensor.relabelDimensions(dimensionNums);
+      }
+      return tensor;
+    }
+  }
+}
@@ -0,0 +1,192 @@
+package com.jayantkrish.jklol.tensor;
+
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.jayantkrish.jklol.parallel.ForkJoinPools;
+
+/**
+ * Runs the reductions of large tensors (e.g.,
+ * {@link Tensor#sumOutDimensions(java.util.Collection)} and
+ * {@link Tensor#maxOutDimensions(java.util.Collection, Backpointers)})
+ * in parallel on the shared pool (see {@link ForkJoinPools}). A tensor's keys are
+ * divided into contiguous partitions, each partition is reduced
+ * independently into its own partial result, and the partial results
+ * are merged in partition order.
+ * <p>
+ * Tensors with fewer values than {@link #getParallelThreshold()} are
+ * reduced by the calling thread. The threshold defaults to the value
+ * of the system property {@code jklol.parallelReductionThreshold}, or
+ * {@code 2^20} if the property is not set.
+ *
+ * @author jayantk
+ */
+public final class ParallelReductions {
+
+  private static final String THRESHOLD_PROPERTY = "jklol.parallelReductionThreshold";
+  private static final long DEFAULT_THRESHOLD = 1L << 20;
+
+  // Number of partitions per thread, which balances the load when
+  // some partitions take longer than others.
+  private static final int PARTITIONS_PER_THREAD = 4;
+  // Number of values added into each partial sum by sum(). Fixing
+  // this size (instead of the number of partitions) makes the result
+  // independent of the number of threads.
+  private static final int SUM_BLOCK_SIZE = 1 << 16;
+
+  private static volatile long parallelThreshold = Long.getLong(THRESHOLD_PROPERTY,
+      DEFAULT_THRESHOLD);
+
+  private ParallelReductions() {
+    // Prevent instantiation.
+  }
+
+  /**
+   * Gets the minimum number of values in a tensor for its reductions
+   * to run in parallel.
+   *
+   * @return
+   */
+  public static long getParallelThreshold() {
+    return parallelThreshold;
+  }
+
+  /**
+   * Sets the minimum number of values in a tensor for its reductions
+   * to run in parallel. {@code Long.MAX_VALUE} disables parallel
+   * reductions.
+   *
+   * @param threshold
+   */
+  public static void setParallelThreshold(long threshold) {
+    Preconditions.checkArgument(threshold >= 0);
+    parallelThreshold = threshold;
+  }
+
+  /**
+   * Gets the number of partitions to use for reducing a tensor with
+   * {@code numValues} values, which is at most {@code maxPartitions}.
+   * Returns 1 if the reduction should not run in parallel.
+   *
+   * @param numValues
+   * @param maxPartitions
+   * @return
+   */
+  static int getNumPartitions(long numValues, long maxPartitions) {
+    if (numValues < parallelThreshold) {
+      return 1;
+    }
+    int numPartitions = Math.max(2,
+        ForkJoinPools.getParallelism() * PARTITIONS_PER_THREAD);
+    return (int) Math.max(1, Math.min(numPartitions, maxPartitions));
+  }
+
+  /**
+   * Returns the sum of the first {@code length} entries of
+   * {@code values}. Above the parallel threshold, the values are
+   * summed in fixed-size blocks, then the blocks' sums are added in
+   * order.
+   *
+   * @param values
+   * @param length
+   * @return
+   */
+  static double sum(final double[] values, int length) {
+    if (length < parallelThreshold) {
+      return sumRange(values, 0, length);
+    }
+
+    final int numBlocks = (int) ((length + (long) SUM_BLOCK_SIZE - 1) / SUM_BLOCK_SIZE);
+    final double[] blockSums = new double[numBlocks];
+    final int end = length;
+    final int numPartitions = getNumPartitions(length, numBlocks);
+    run(numPartitions, new Partition() {
+      @Override
+      public void reduce(int partition) {
+        int firstBlock = getPartitionStart(partition, numPartitions, numBlocks);
+        int lastBlock = getPartitionStart(partition + 1, numPartitions, numBlocks);
+        for (int i = firstBlock; i < lastBlock; i++) {
+          int start = i * SUM_BLOCK_SIZE;
+          blockSums[i] = sumRange(values, start, Math.min(end, start + SUM_BLOCK_SIZE));
+        }
+      }
+    });
+
+    double result = 0.0;
+    for (int i = 0; i < numBlocks; i++) {
+      result += blockSums[i];
+    }
+    return result;
+  }
+
+  private static double sumRange(double[] values, int start, int end) {
+    double result = 0.0;
+    for (int i = start; i < end; i++) {
+      result += values[i];
+    }
+    return result;
+  }
+
+  /**
+   * Gets the first index of {@code partition} when {@code size}
+   * indexes are divided into {@code numPartitions} contiguous
+   * partitions of (nearly) equal size.
+   *
+   * @param partition
+   * @param numPartitions
+   * @param size
+   * @return
+   */
+  static int getPartitionStart(int partition, int numPartitions, int size) {
+    return (int) ((((long) size) * partition) / numPartitions);
+  }
+
+  /**
+   * Calls {@code partition.reduce(i)} for every
+   * {@code i < numPartitions}, in parallel, and waits for all of the
+   * calls to complete.
+   *
+   * @param numPartitions
+   * @param partition
+   */
+  static void run(int numPartitions, Partition partition) {
+    if (numPartitions == 1) {
+      partition.reduce(0);
+      return;
+    }
+
+    List<RecursiveAction> tasks = Lists.newArrayList();
+    for (int i = 0; i < numPartitions; i++) {
+      tasks.add(new PartitionTask(partition, i));
+    }
+
+    ForkJoinPools.invokeAll(tasks);
+  }
+
+  /**
+   * A reduction which is divided into partitions. Each partition must
+   * only write to its own portion of the partial results.
+   */
+  static interface Partition {
+    void reduce(int partition);
+  }
+
+  private static class PartitionTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final Partition partition;
+    private final int index;
+
+    public PartitionTask(Partition partition, int index) {
+      this.partition = partition;
+      this.index = index;
+    }
+
+    @Override
+    protected void compute() {
+      partition.reduce(index);
+    }
+  }
+}
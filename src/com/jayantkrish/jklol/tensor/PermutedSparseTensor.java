@@ -0,0 +1,556 @@
+package com.jayantkrish.jklol.tensor;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Ordering;
+import com.google.common.primitives.Ints;
+import com.jayantkrish.jklol.util.ArrayUtils;
+
+/**
+ * A view of a {@code SparseTensor} whose dimensions have been
+ * relabeled (see {@link SparseTensor#relabelDimensions(int[])}).
+ * Relabeling dimensions changes the order of the tensor's keys.
+ * Rather than copying and sorting the keys and values, this view
+ * stores only the order of the underlying tensor's keys.
+ * <p>
+ * Lookups, iteration, slices along the leading dimensions, and
+ * elementwise products with tensors whose dimensions are aligned with
+ * the leading dimensions of this view are performed by merging
+ * through the key order, without copying the underlying tensor. Other
+ * operations copy this view into a {@code SparseTensor} (see
+ * {@link #toSparseTensor()}) and return the result of performing the
+ * operation on the copy.
+ *
+ * @author jayantk
+ */
+public class PermutedSparseTensor extends AbstractTensor {
+
+  private static final long serialVersionUID = 1L;
+
+  private final SparseTensor tensor;
+  // The index in tensor's dimensions of each dimension of this.
+  private final int[] tensorDimIndexes;
+  // The offset of each dimension of this in tensor's keyNums.
+  private final long[] tensorDimOffsets;
+  // The number of leading dimensions of this that must be sorted on
+  // to compute order. The remaining dimensions are in the same order
+  // in this and tensor.
+  private final int numSortedDims;
+
+  // Indexes of tensor's keys, in the order of the keys of this.
+  private final int[] order;
+
+  // Largest number of keys of the sorted dimensions that are
+  // bucketed (rather than comparison sorted) to compute order.
+  private static final int MIN_BUCKET_LIMIT = 1 << 16;
+
+  /**
+   * Creates a view of {@code tensor} where the {@code i}th dimension
+   * of {@code tensor} is relabeled as {@code newDimensions[i]}.
+   *
+   * @param tensor
+   * @param newDimensions
+   */
+  public PermutedSparseTensor(SparseTensor tensor, int[] newDimensions) {
+    super(sortedCopy(newDimensions), permuteSizes(tensor.getDimensionSizes(), newDimensions));
+    this.tensor = Preconditions.checkNotNull(tensor);
+
+    int[] dimensionNums = getDimensionNumbers();
+    long[] offsets = tensor.getDimensionOffsets();
+    tensorDimIndexes = new int[dimensionNums.length];
+    tensorDimOffsets = new long[dimensionNums.length];
+    for (int i = 0; i < dimensionNums.length; i++) {
+      tensorDimIndexes[i] = Ints.indexOf(newDimensions, dimensionNums[i]);
+      tensorDimOffsets[i] = offsets[tensorDimIndexes[i]];
+    }
+
+    int i = dimensionNums.length - 1;
+    while (i > 0 && tensorDimIndexes[i - 1] < tensorDimIndexes[i]) {
+      i--;
+    }
+    numSortedDims = Math.max(i, 0);
+    order = computeOrder();
+  }
+
+  private static int[] sortedCopy(int[] newDimensions) {
+    int[] sortedDims = ArrayUtils.copyOf(newDimensions, newDimensions.length);
+    Arrays.sort(sortedDims);
+    for (int i = 1; i < sortedDims.length; i++) {
+      Preconditions.checkArgument(sortedDims[i - 1] != sortedDims[i],
+          "Duplicate dimension in relabeling: %s", Ints.asList(newDimensions));
+    }
+    return sortedDims;
+  }
+
+  private static int[] permuteSizes(int[] sizes, int[] newDimensions) {
+    Preconditions.checkArgument(sizes.length == newDimensions.length);
+    int[] sortedDims = sortedCopy(newDimensions);
+    int[] newSizes = new int[sizes.length];
+    for (int i = 0; i < sortedDims.length; i++) {
+      newSizes[i] = sizes[Ints.indexOf(newDimensions, sortedDims[i])];
+    }
+    return newSizes;
+  }
+
+  /**
+   * Gets the tensor whose keys and values are viewed by this.
+   *
+   * @return
+   */
+  public SparseTensor getTensor() {
+    return tensor;
+  }
+
+  /**
+   * Copies this view into a {@code SparseTensor}. The keys of the
+   * copy are produced in order, so no sorting is required.
+   *
+   * @return
+   */
+  public SparseTensor toSparseTensor() {
+    int[] order = getOrder();
+    long[] tensorKeyNums = tensor.keyNums;
+    double[] tensorValues = tensor.values;
+    long[] keyNums = new long[order.length];
+    double[] values = new double[order.length];
+    for (int i = 0; i < order.length; i++) {
+      keyNums[i] = permuteKeyNum(tensorKeyNums[order[i]]);
+      values[i] = tensorValues[order[i]];
+    }
+    return new SparseTensor(getDimensionNumbers(), getDimensionSizes(), keyNums, values);
+  }
+
+  /**
+   * Gets the index in the underlying tensor of each key of this view,
+   * in the order of the keys of this view.
+   *
+   * @return
+   */
+  int[] getOrder() {
+    return order;
+  }
+
+  private int[] computeOrder() {
+    int size = tensor.size();
+    if (numSortedDims == 0) {
+      // The dimensions are not permuted.
+      return ArrayUtils.range(0, size);
+    }
+
+    // Keys with the same values for the sorted dimensions are in the
+    // same relative order in tensor and this, so a stable sort on
+    // these dimensions suffices.
+    long sortedKeyOffset = indexOffsets[numSortedDims - 1];
+    long numSortedKeys = getMaxKeyNum() / sortedKeyOffset;
+    long[] tensorKeyNums = tensor.keyNums;
+    int[] result = new int[size];
+    if (numSortedKeys <= Math.max(2L * size, MIN_BUCKET_LIMIT)) {
+      // Counting sort.
+      int[] sortedKeys = new int[size];
+      int[] bucketStarts = new int[(int) numSortedKeys + 1];
+      for (int i = 0; i < size; i++) {
+        sortedKeys[i] = (int) (permuteKeyNum(tensorKeyNums[i]) / sortedKeyOffset);
+        bucketStarts[sortedKeys[i] + 1]++;
+      }
+      for (int i = 1; i < bucketStarts.length; i++) {
+        bucketStarts[i] += bucketStarts[i - 1];
+      }
+      for (int i = 0; i < size; i++) {
+        result[bucketStarts[sortedKeys[i]]++] = i;
+      }
+    } else {
+      long[] keyNums = new long[size];
+      for (int i = 0; i < size; i++) {
+        keyNums[i] = permuteKeyNum(tensorKeyNums[i]);
+        result[i] = i;
+      }
+      ArrayUtils.sortKeyValuePairs(keyNums, result, 0, size);
+    }
+    return result;
+  }
+
+  /**
+   * Maps a keyNum of the underlying tensor to a keyNum of this.
+   */
+  private long permuteKeyNum(long tensorKeyNum) {
+    int[] sizes = getDimensionSizes();
+    long keyNum = 0;
+    for (int i = 0; i < tensorDimOffsets.length; i++) {
+      long dimValue = (tensorKeyNum / tensorDimOffsets[i]) % sizes[i];
+      keyNum += dimValue * indexOffsets[i];
+    }
+    return keyNum;
+  }
+
+  /**
+   * Maps a keyNum of this to a keyNum of the underlying tensor.
+   */
+  private long unpermuteKeyNum(long keyNum) {
+    int[] sizes = getDimensionSizes();
+    long tensorKeyNum = 0;
+    for (int i = 0; i < tensorDimOffsets.length; i++) {
+      long dimValue = (keyNum / indexOffsets[i]) % sizes[i];
+      tensorKeyNum += dimValue * tensorDimOffsets[i];
+    }
+    return tensorKeyNum;
+  }
+
+  /**
+   * Returns {@code true} if the dimensions of {@code other} are the
+   * leading dimensions of this.
+   */
+  private boolean isLeftAligned(int[] otherDims) {
+    return otherDims.length <= numDimensions() &&
+        ArrayUtils.subarrayEquals(getDimensionNumbers(), otherDims, 0);
+  }
+
+  // ////////////////////////////////////////////////////////////////////
+  // Inherited from TensorBase
+  // ////////////////////////////////////////////////////////////////////
+
+  @Override
+  public int size() {
+    return tensor.size();
+  }
+
+  @Override
+  public double get(long keyNum) {
+    return tensor.get(unpermuteKeyNum(keyNum));
+  }
+
+  @Override
+  public double getByIndex(int index) {
+    if (index == -1) {
+      return 0.0;
+    }
+    return tensor.values[getOrder()[index]];
+  }
+
+  @Override
+  public double getLogByIndex(int index) {
+    return Math.log(getByIndex(index));
+  }
+
+  @Override
+  public long indexToKeyNum(int index) {
+    return permuteKeyNum(tensor.keyNums[getOrder()[index]]);
+  }
+
+  @Override
+  public int keyNumToIndex(long keyNum) {
+    int index = getNearestIndex(keyNum);
+    return (index < size() && indexToKeyNum(index) == keyNum) ? index : -1;
+  }
+
+  @Override
+  public int getNearestIndex(long keyNum) {
+    int startIndex = 0;
+    int endIndex = size();
+    while (startIndex < endIndex) {
+      int cmpIndex = (startIndex + endIndex) >>> 1;
+      if (indexToKeyNum(cmpIndex) < keyNum) {
+        startIndex = cmpIndex + 1;
+      } else {
+        endIndex = cmpIndex;
+      }
+    }
+    return startIndex;
+  }
+
+  @Override
+  public double[] getValues() {
+    int[] order = getOrder();
+    double[] values = new double[order.length];
+    for (int i = 0; i < order.length; i++) {
+      values[i] = tensor.values[order[i]];
+    }
+    return values;
+  }
+
+  @Override
+  public TensorHash toHash() {
+    // Lookups use the underlying tensor's binary search.
+    return this;
+  }
+
+  @Override
+  public Iterator<KeyValue> keyValueIterator() {
+    return new SparseKeyValueIterator(this, 0, size());
+  }
+
+  @Override
+  public Iterator<KeyValue> keyValuePrefixIterator(int[] keyPrefix) {
+    if (keyPrefix.length == 0) {
+      return keyValueIterator();
+    }
+
+    long startKeyNum = dimKeyPrefixToKeyNum(keyPrefix);
+    long endKeyNum = startKeyNum + indexOffsets[keyPrefix.length - 1];
+    return new SparseKeyValueIterator(this, getNearestIndex(startKeyNum),
+        getNearestIndex(endKeyNum));
+  }
+
+  @Override
+  public double getL2Norm() {
+    return tensor.getL2Norm();
+  }
+
+  @Override
+  public double getTrace() {
+    return tensor.getTrace();
+  }
+
+  @Override
+  public long[] getLargestValues(int n) {
+    long[] largest = tensor.getLargestValues(n);
+    for (int i = 0; i < largest.length; i++) {
+      largest[i] = permuteKeyNum(largest[i]);
+    }
+    return largest;
+  }
+
+  // ////////////////////////////////////////////////////////////////////
+  // Inherited from Tensor
+  // ////////////////////////////////////////////////////////////////////
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * If {@code dimensionNumbers} are the leading dimensions of this,
+   * only the keys in the slice are copied.
+   */
+  @Override
+  public SparseTensor slice(int[] dimensionNumbers, int[] keys) {
+    Preconditions.checkArgument(dimensionNumbers.length == keys.length);
+    if (dimensionNumbers.length == 0 || !isLeftAligned(dimensionNumbers)) {
+      return toSparseTensor().slice(dimensionNumbers, keys);
+    }
+
+    int[] dimensionNums = getDimensionNumbers();
+    int[] dimensionSizes = getDimensionSizes();
+    int numSliced = dimensionNumbers.length;
+    long startKeyNum = dimKeyPrefixToKeyNum(keys);
+    long sliceSize = indexOffsets[numSliced - 1];
+    int startIndex = getNearestIndex(startKeyNum);
+    int endIndex = getNearestIndex(startKeyNum + sliceSize);
+
+    int[] order = getOrder();
+    long[] keyNums = new long[endIndex - startIndex];
+    double[] values = new double[endIndex - startIndex];
+    for (int i = startIndex; i < endIndex; i++) {
+      keyNums[i - startIndex] = permuteKeyNum(tensor.keyNums[order[i]]) - startKeyNum;
+      values[i - startIndex] = tensor.values[order[i]];
+    }
+    return new SparseTensor(ArrayUtils.copyOfRange(dimensionNums, numSliced, dimensionNums.length),
+        ArrayUtils.copyOfRange(dimensionSizes, numSliced, dimensionSizes.length), keyNums, values);
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * If the dimensions of {@code other} are the leading dimensions of
+   * this, the product is computed by merging the keys of this with the
+   * keys of {@code other}.
+   */
+  @Override
+  public SparseTensor elementwiseProduct(Tensor other) {
+    int[] otherDims = other.getDimensionNumbers();
+    if (otherDims.length == 0 || !isLeftAligned(otherDims)) {
+      return toSparseTensor().elementwiseProduct(other);
+    }
+    Preconditions.checkArgument(Arrays.equals(other.getDimensionSizes(),
+        ArrayUtils.copyOf(getDimensionSizes(), otherDims.length)));
+
+    // keyNum / otherKeyNumDivisor is the corresponding keyNum of other.
+    long otherKeyNumDivisor = indexOffsets[otherDims.length - 1];
+    int[] order = getOrder();
+    long[] tensorKeyNums = tensor.keyNums;
+    double[] tensorValues = tensor.values;
+    long[] resultKeyNums = new long[order.length];
+    double[] resultValues = new double[order.length];
+    int numFilled = 0;
+
+    int otherIndex = 0;
+    int otherSize = other.size();
+    long otherKeyNum = otherSize > 0 ? other.indexToKeyNum(0) : -1;
+    for (int i = 0; i < order.length && otherIndex < otherSize; i++) {
+      long keyNum = permuteKeyNum(tensorKeyNums[order[i]]);
+      long targetKeyNum = keyNum / otherKeyNumDivisor;
+      while (otherKeyNum < targetKeyNum) {
+        otherIndex++;
+        if (otherIndex >= otherSize) {
+          break;
+        }
+        otherKeyNum = other.indexToKeyNum(otherIndex);
+      }
+
+      if (otherKeyNum == targetKeyNum) {
+        double otherValue = other.getByIndex(otherIndex);
+        if (otherValue != 0.0) {
+          resultKeyNums[numFilled] = keyNum;
+          resultValues[numFilled] = tensorValues[order[i]] * otherValue;
+          numFilled++;
+        }
+      }
+    }
+
+    return new SparseTensor(getDimensionNumbers(), getDimensionSizes(),
+        ArrayUtils.copyOf(resultKeyNums, numFilled), ArrayUtils.copyOf(resultValues, numFilled));
+  }
+
+  @Override
+  public Tensor innerProduct(Tensor other) {
+    return elementwiseProduct(other).sumOutDimensions(Ints.asList(other.getDimensionNumbers()));
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * The result is another view of the underlying tensor.
+   */
+  @Override
+  public Tensor relabelDimensions(int[] newDimensions) {
+    Preconditions.checkArgument(newDimensions.length == numDimensions());
+    int[] tensorNewDimensions = new int[newDimensions.length];
+    for (int i = 0; i < newDimensions.length; i++) {
+      tensorNewDimensions[tensorDimIndexes[i]] = newDimensions[i];
+    }
+
+    if (Ordering.natural().isOrdered(Ints.asList(tensorNewDimensions))) {
+      return tensor.relabelDimensions(tensorNewDimensions);
+    }
+    return new PermutedSparseTensor(tensor, tensorNewDimensions);
+  }
+
+  @Override
+  public Tensor relabelDimensions(Map<Integer, Integer> relabeling) {
+    int[] dimensionNums = getDimensionNumbers();
+    int[] newDimensions = new int[dimensionNums.length];
+    for (int i = 0; i < dimensionNums.length; i++) {
+      Preconditions.checkArgument(relabeling.containsKey(dimensionNums[i]),
+          "Dimension %s not in relabeling %s", dimensionNums[i], relabeling);
+      newDimensions[i] = relabeling.get(dimensionNums[i]);
+    }
+    return relabelDimensions(newDimensions);
+  }
+
+  @Override
+  public Tensor retainKeys(Tensor indicatorTensor) {
+    return toSparseTensor().retainKeys(indicatorTensor);
+  }
+
+  @Override
+  public Tensor findKeysLargerThan(double thresholdValue) {
+    return toSparseTensor().findKeysLargerThan(thresholdValue);
+  }
+
+  @Override
+  public Tensor matrixInnerProduct(Tensor other) {
+    return toSparseTensor().matrixInnerProduct(other);
+  }
+
+  @Override
+  public Tensor outerProduct(Tensor other) {
+    return toSparseTensor().outerProduct(other);
+  }
+
+  @Override
+  public Tensor elementwiseAddition(Tensor other) {
+    return toSparseTensor().elementwiseAddition(other);
+  }
+
+  @Override
+  public Tensor elementwiseAddition(double value) {
+    return toSparseTensor().elementwiseAddition(value);
+  }
+
+  @Override
+  public Tensor elementwiseMaximum(Tensor other) {
+    return toSparseTensor().elementwiseMaximum(other);
+  }
+
+  @Override
+  public Tensor elementwiseInverse() {
+    return toSparseTensor().elementwiseInverse();
+  }
+
+  @Override
+  public Tensor elementwiseSqrt() {
+    return toSparseTensor().elementwiseSqrt();
+  }
+
+  @Override
+  public Tensor elementwiseLog() {
+    return toSparseTensor().elementwiseLog();
+  }
+
+  @Override
+  public Tensor elementwiseLogSparse() {
+    return toSparseTensor().elementwiseLogSparse();
+  }
+
+  @Override
+  public Tensor elementwiseExp() {
+    return toSparseTensor().elementwiseExp();
+  }
+
+  @Override
+  public Tensor elementwiseExpSparse() {
+    return toSparseTensor().elementwiseExpSparse();
+  }
+
+  @Override
+  public Tensor elementwiseTanh() {
+    return toSparseTensor().elementwiseTanh();
+  }
+
+  @Override
+  public Tensor elementwiseAbs() {
+    return toSparseTensor().elementwiseAbs();
+  }
+
+  @Override
+  public Tensor elementwiseLaplaceSigmoid(double smoothness) {
+    return toSparseTensor().elementwiseLaplaceSigmoid(smoothness);
+  }
+
+  @Override
+  public Tensor softThreshold(double threshold) {
+    return toSparseTensor().softThreshold(threshold);
+  }
+
+  @Override
+  public Tensor getEntriesLargerThan(double threshold) {
+    return toSparseTensor().getEntriesLargerThan(threshold);
+  }
+
+  @Override
+  public Tensor sumOutDimensions(Collection<Integer> dimensionsToEliminate) {
+    return toSparseTensor().sumOutDimensions(dimensionsToEliminate);
+  }
+
+  @Override
+  public Tensor maxOutDimensions(Collection<Integer> dimensionsToEliminate) {
+    return toSparseTensor().maxOutDimensions(dimensionsToEliminate);
+  }
+
+  @Override
+  public Tensor maxOutDimensions(Collection<Integer> dimensionsToEliminate,
+      Backpointers backpointers) {
+    return toSparseTensor().maxOutDimensions(dimensionsToEliminate, backpointers);
+  }
+
+  @Override
+  public Tensor replaceValues(double[] newValues) {
+    return toSparseTensor().replaceValues(newValues);
+  }
+
+  @Override
+  public String toString() {
+    return toSparseTensor().toString();
+  }
+}
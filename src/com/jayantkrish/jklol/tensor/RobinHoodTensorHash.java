@@ -0,0 +1,225 @@
+package com.jayantkrish.jklol.tensor;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Compact hash table representation for storing the key/value pairs
+ * of a sparse tensor. Keys are stored using open addressing with
+ * linear probing, and collisions are resolved by Robin Hood hashing,
+ * which keeps the longest probe sequence short. Each key is stored
+ * next to its value, so a lookup typically reads a single cache line.
+ * <p>
+ * The table contains between 4/3 and 8/3 slots per key, which is
+ * much smaller than {@link SparseTensorHash} for large tensors.
+ *
+ * @author jayantk
+ */
+public class RobinHoodTensorHash implements TensorHash {
+  private static final long serialVersionUID = 1L;
+
+  static final long EMPTY_KEY = -1;
+
+  // Slot i stores its key at index 2 * i and the raw bits of its
+  // value at index 2 * i + 1.
+  private final long[] table;
+  private final int mask;
+  // The maximum distance of any key from its hash slot.
+  private final int maxProbeDistance;
+
+  private RobinHoodTensorHash(long[] table, int maxProbeDistance) {
+    this.table = Preconditions.checkNotNull(table);
+    int numSlots = table.length / 2;
+    Preconditions.checkArgument(Integer.bitCount(numSlots) == 1);
+    this.mask = numSlots - 1;
+    this.maxProbeDistance = maxProbeDistance;
+  }
+
+  public static RobinHoodTensorHash fromTensor(SparseTensor tensor) {
+    return fromKeyValues(tensor.getKeyNums(), tensor.getValues(), tensor.size());
+  }
+
+  /**
+   * Creates a hash table containing the first {@code numKeys} pairs
+   * of {@code keys} and {@code values}. The keys must be distinct
+   * and nonnegative.
+   *
+   * @param keys
+   * @param values
+   * @param numKeys
+   * @return
+   */
+  public static RobinHoodTensorHash fromKeyValues(long[] keys, double[] values, int numKeys) {
+    Preconditions.checkArgument(numKeys <= keys.length && numKeys <= values.length);
+    long[] valueBits = new long[numKeys];
+    for (int i = 0; i < numKeys; i++) {
+      valueBits[i] = Double.doubleToRawLongBits(values[i]);
+    }
+    long[] table = buildTable(keys, valueBits, numKeys);
+    return new RobinHoodTensorHash(table, getMaxProbeDistance(table));
+  }
+
+  /**
+   * Inserts the first {@code numKeys} keys into a table, where each
+   * key is accompanied by the corresponding element of
+   * {@code payloads}. Slot {@code i} of the returned table stores its
+   * key at index {@code 2 * i} and its payload at index
+   * {@code 2 * i + 1}. Empty slots have the key -1.
+   *
+   * @param keys
+   * @param payloads
+   * @param numKeys
+   * @return
+   */
+  static long[] buildTable(long[] keys, long[] payloads, int numKeys) {
+    // Use the smallest power of two that keeps the load factor
+    // at or below 3/4.
+    int numSlots = 1;
+    while (((long) numSlots) * 3 < ((long) numKeys) * 4) {
+      numSlots <<= 1;
+    }
+    int mask = numSlots - 1;
+
+    long[] table = new long[numSlots * 2];
+    for (int i = 0; i < numSlots; i++) {
+      table[2 * i] = EMPTY_KEY;
+    }
+
+    for (int i = 0; i < numKeys; i++) {
+      Preconditions.checkArgument(keys[i] >= 0, "Keys must be nonnegative: %s", keys[i]);
+      long key = keys[i];
+      long payload = payloads[i];
+      int index = slot(key, mask);
+      int distance = 0;
+      while (true) {
+        long slotKey = table[2 * index];
+        if (slotKey == EMPTY_KEY) {
+          table[2 * index] = key;
+          table[(2 * index) + 1] = payload;
+          break;
+        }
+
+        // If the resident key is closer to its hash slot than the key
+        // being inserted, the inserted key takes its place and the
+        // resident key continues probing.
+        int slotDistance = (index - slot(slotKey, mask)) & mask;
+        if (slotDistance < distance) {
+          long slotPayload = table[(2 * index) + 1];
+          table[2 * index] = key;
+          table[(2 * index) + 1] = payload;
+          key = slotKey;
+          payload = slotPayload;
+          distance = slotDistance;
+        }
+
+        index = (index + 1) & mask;
+        distance++;
+      }
+    }
+    return table;
+  }
+
+  /**
+   * Gets the maximum distance of any key in {@code table} from
+   * its hash slot.
+   *
+   * @param table
+   * @return
+   */
+  static int getMaxProbeDistance(long[] table) {
+    int mask = (table.length / 2) - 1;
+    int maxProbeDistance = 0;
+    for (int i = 0; i <= mask; i++) {
+      long key = table[2 * i];
+      if (key != EMPTY_KEY) {
+        maxProbeDistance = Math.max(maxProbeDistance, (i - slot(key, mask)) & mask);
+      }
+    }
+    return maxProbeDistance;
+  }
+
+  @Override
+  public double get(long key) {
+    int index = slot(key, mask);
+    for (int distance = 0; distance <= maxProbeDistance; distance++) {
+      long slotKey = table[2 * index];
+      if (slotKey == key) {
+        return Double.longBitsToDouble(table[(2 * index) + 1]);
+      } else if (slotKey == EMPTY_KEY) {
+        break;
+      }
+      index = (index + 1) & mask;
+    }
+
+    // This is a sparse tensor, so keys not in the tensor
+    // have value 0
+    return 0.0;
+  }
+
+  /**
+   * Gets the number of slots in this hash table. Each slot
+   * occupies 16 bytes.
+   *
+   * @return
+   */
+  public int getNumSlots() {
+    return mask + 1;
+  }
+
+  /**
+   * Gets the maximum number of slots that must be probed, beyond
+   * the first, to find a key in this table.
+   *
+   * @return
+   */
+  public int getMaxProbeDistance() {
+    return maxProbeDistance;
+  }
+
+  /**
+   * Gets a copy of this table whose values are stored with reduced
+   * precision.
+   *
+   * @param encoding
+   * @return
+   */
+  public CompactTensorHash toCompactHash(CompactValues.Encoding encoding) {
+    long[] keys = new long[getNumSlots()];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = table[2 * i];
+    }
+    return new CompactTensorHash(keys, CompactValues.encode(getSlotValues(), encoding),
+        maxProbeDistance);
+  }
+
+  /**
+   * Gets the value stored in each slot of this table. Empty slots
+   * have the value 0.
+   *
+   * @return
+   */
+  double[] getSlotValues() {
+    double[] values = new double[getNumSlots()];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = Double.longBitsToDouble(table[(2 * i) + 1]);
+    }
+    return values;
+  }
+
+  static final int slot(long key, int mask) {
+    // The finalization step of MurmurHash3, which mixes all bits
+    // of the key into the low-order bits.
+    long h = key;
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return ((int) h) & mask;
+  }
+
+  @Override
+  public String toString() {
+    return "RobinHoodTensorHash(" + getNumSlots() + " slots, max probe distance "
+        + maxProbeDistance + ")";
+  }
+}
@@ -8,7 +8,10 @@ import com.jayantkrish.jklol.tensor.TensorBase.KeyValue;
 
 /**
  * An {@code Iterator} for efficiently accessing keys and values of
- * {@link SparseTensor}s.
+ * {@link SparseTensor}s. Tensors that do not store their keys and
+ * values in arrays are iterated using
+ * {@link TensorBase#indexToKeyNum(int)} and
+ * {@link TensorBase#getByIndex(int)}.
  * 
  * @author jayantk
  */
@@ -16,6 +19,7 @@ public class SparseKeyValueIterator implements Iterator<KeyValue> {
 
   private int curIndex;
   private int finalIndex;
+  // null if keys and values are read from tensor.
   private final long[] keyInts;
   private final double[] values;
   private final TensorBase tensor;
@@ -44,6 +48,26 @@ public class SparseKeyValueIterator implements Iterator<KeyValue> {
     this.keyValue = new KeyValue(new int[tensor.getDimensionNumbers().length], 0.0);
   }
 
+  /**
+   * Iterates over the keys of {@code tensor} with indexes from
+   * {@code initialIndex} (inclusive) to {@code finalIndex} (not
+   * inclusive).
+   * 
+   * @param tensor
+   * @param initialIndex
+   * @param finalIndex
+   */
+  public SparseKeyValueIterator(TensorBase tensor, int initialIndex, int finalIndex) {
+    Preconditions.checkArgument(finalIndex <= tensor.size());
+    this.keyInts = null;
+    this.values = null;
+    this.curIndex = initialIndex;
+    this.finalIndex = finalIndex;
+    this.tensor = tensor;
+
+    this.keyValue = new KeyValue(new int[tensor.getDimensionNumbers().length], 0.0);
+  }
+
   @Override
   public boolean hasNext() {
     return curIndex < finalIndex;
@@ -55,8 +79,13 @@ public class SparseKeyValueIterator implements Iterator<KeyValue> {
       throw new NoSuchElementException();
     }
     // This call mutates the key field of {@code keyValue}.
-    tensor.keyNumToDimKey(keyInts[curIndex], keyValue.getKey());
-    keyValue.setValue(values[curIndex]);
+    if (keyInts != null) {
+      tensor.keyNumToDimKey(keyInts[curIndex], keyValue.getKey());
+      keyValue.setValue(values[curIndex]);
+    } else {
+      tensor.keyNumToDimKey(tensor.indexToKeyNum(curIndex), keyValue.getKey());
+      keyValue.setValue(tensor.getByIndex(curIndex));
+    }
     curIndex++;
     return keyValue;
   }
@@ -18,6 +18,15 @@ public class SparseLogSpaceTensorAdapter extends AbstractTensor {
     this.logWeights = Preconditions.checkNotNull(logWeights);
   }
   
+  /**
+   * Gets the tensor containing the logarithms of this tensor's values.
+   * 
+   * @return
+   */
+  public Tensor getLogWeights() {
+    return logWeights;
+  }
+
   @Override
   public Tensor slice(int[] dimensionNumbers, int[] keys) {
     throw new UnsupportedOperationException("Not implemented.");
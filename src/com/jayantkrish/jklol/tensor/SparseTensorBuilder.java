@@ -358,6 +358,13 @@ public class SparseTensorBuilder extends AbstractTensorBase implements TensorBui
     }
   }
 
+  @Override
+  public void reset() {
+    outcomes.clear();
+    nextIndex = 0;
+    outcomeIndexes.clear();
+  }
+
   /**
    * Constructs and returns a {@code SparseTensor} containing all of the
    * key/value pairs added to {@code this}.
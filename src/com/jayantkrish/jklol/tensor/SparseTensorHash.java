@@ -8,7 +8,8 @@ import com.google.common.primitives.Ints;
 /**
  * Hash table representation for storing key/value pairs
  * of a sparse tensor. This representation facilitates fast
- * random access.
+ * random access, but may be many times larger than the tensor.
+ * {@link RobinHoodTensorHash} is a more compact alternative.
  * 
  * @author jayantk
  *
@@ -80,6 +81,16 @@ public class SparseTensorHash implements TensorHash {
     // have value 0
     return 0.0;
   }
+
+  /**
+   * Gets the number of slots in this hash table, including empty
+   * slots. Each slot occupies 16 bytes.
+   *
+   * @return
+   */
+  public int getNumSlots() {
+    return keys.length;
+  }
   
   private static final int hash(long key, int numBins) {
     int h = (int) ((key >> 32) ^ key);
@@ -108,6 +108,22 @@ public interface TensorBuilder extends TensorBase, Serializable {
    */
   void exp();
 
+  /**
+   * Sets every value in {@code this} to 0, retaining any allocated
+   * storage so that the builder can be reused for another tensor with
+   * the same dimensions (see {@link TensorBuilderPool}). Tensors
+   * previously returned by {@link #build()} are not affected.
+   */
+  void reset();
+
+  /**
+   * Creates a {@code Tensor} from the keys and values stored in this
+   * builder. The keys and values are copied, so mutating or
+   * {@link #reset()}ing this builder does not affect the returned
+   * tensor.
+   * 
+   * @return
+   */
   Tensor build();
 
   /**
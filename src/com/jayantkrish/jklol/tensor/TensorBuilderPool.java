@@ -0,0 +1,130 @@
+package com.jayantkrish.jklol.tensor;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+/**
+ * Per-thread pools of reusable {@link TensorBuilder}s, which avoid
+ * allocating new storage for temporary builders (e.g., feature vectors
+ * or accumulated messages) in inner loops. A builder is obtained with
+ * {@link #getDenseBuilder} or {@link #getSparseBuilder}, used to build a
+ * tensor, then returned with {@link #release(TensorBuilder)}. Released
+ * builders are {@link TensorBuilder#reset()} and returned by later calls
+ * with the same dimensions on the same thread.
+ * <p>
+ * Tensors built from a pooled builder must be constructed with
+ * {@link TensorBuilder#build()}, which copies the builder's values.
+ * {@code DenseTensorBuilder}s whose values were handed off to a tensor
+ * by {@link TensorBuilder#buildNoCopy()} are discarded on release,
+ * rather than pooled. A builder must not be used after it is released.
+ *
+ * @author jayantk
+ */
+public final class TensorBuilderPool {
+
+  // Maximum number of builders of each type retained by each thread.
+  private static final int MAX_POOLED_BUILDERS = 16;
+  // Dense builders with more values than this are not pooled, so that
+  // idle threads do not retain large arrays.
+  private static final int MAX_POOLED_DENSE_VALUES = 1 << 20;
+
+  private static final ThreadLocal<List<DenseTensorBuilder>> denseBuilders =
+      new ThreadLocal<List<DenseTensorBuilder>>() {
+    @Override
+    protected List<DenseTensorBuilder> initialValue() {
+      return Lists.newArrayList();
+    }
+  };
+
+  private static final ThreadLocal<List<AppendOnlySparseTensorBuilder>> sparseBuilders =
+      new ThreadLocal<List<AppendOnlySparseTensorBuilder>>() {
+    @Override
+    protected List<AppendOnlySparseTensorBuilder> initialValue() {
+      return Lists.newArrayList();
+    }
+  };
+
+  private TensorBuilderPool() {
+    // Prevent instantiation.
+  }
+
+  /**
+   * Gets a {@code DenseTensorBuilder} whose values are all 0, reusing
+   * a previously released builder with the same dimensions if possible.
+   *
+   * @param dimensionNums
+   * @param dimensionSizes
+   * @return
+   */
+  public static DenseTensorBuilder getDenseBuilder(int[] dimensionNums, int[] dimensionSizes) {
+    DenseTensorBuilder builder = removeMatching(denseBuilders.get(), dimensionNums,
+        dimensionSizes);
+    return builder != null ? builder : new DenseTensorBuilder(dimensionNums, dimensionSizes);
+  }
+
+  /**
+   * Gets an empty {@code AppendOnlySparseTensorBuilder}, reusing a
+   * previously released builder with the same dimensions if possible.
+   *
+   * @param dimensionNums
+   * @param dimensionSizes
+   * @return
+   */
+  public static AppendOnlySparseTensorBuilder getSparseBuilder(int[] dimensionNums,
+      int[] dimensionSizes) {
+    AppendOnlySparseTensorBuilder builder = removeMatching(sparseBuilders.get(), dimensionNums,
+        dimensionSizes);
+    return builder != null ? builder
+        : new AppendOnlySparseTensorBuilder(dimensionNums, dimensionSizes);
+  }
+
+  /**
+   * Returns {@code builder} to the current thread's pool. Builders of
+   * other types, and builders which cannot be reused, are ignored.
+   *
+   * @param builder
+   */
+  public static void release(TensorBuilder builder) {
+    Preconditions.checkNotNull(builder);
+    if (builder instanceof DenseTensorBuilder) {
+      DenseTensorBuilder denseBuilder = (DenseTensorBuilder) builder;
+      if (!denseBuilder.hasSharedValues() && denseBuilder.values.length <= MAX_POOLED_DENSE_VALUES) {
+        add(denseBuilders.get(), denseBuilder);
+      }
+    } else if (builder instanceof AppendOnlySparseTensorBuilder) {
+      add(sparseBuilders.get(), (AppendOnlySparseTensorBuilder) builder);
+    }
+  }
+
+  private static <T extends TensorBuilder> void add(List<T> pool, T builder) {
+    if (pool.size() >= MAX_POOLED_BUILDERS) {
+      return;
+    }
+    for (int i = 0; i < pool.size(); i++) {
+      if (pool.get(i) == builder) {
+        // Released twice.
+        return;
+      }
+    }
+    builder.reset();
+    pool.add(builder);
+  }
+
+  private static <T extends TensorBuilder> T removeMatching(List<T> pool, int[] dimensionNums,
+      int[] dimensionSizes) {
+    // Search from the end, so that the most recently released
+    // builder (whose storage is most likely cached) is reused.
+    for (int i = pool.size() - 1; i >= 0; i--) {
+      T builder = pool.get(i);
+      if (Arrays.equals(builder.getDimensionNumbers(), dimensionNums)
+          && Arrays.equals(builder.getDimensionSizes(), dimensionSizes)) {
+        pool.remove(i);
+        return builder;
+      }
+    }
+    return null;
+  }
+}
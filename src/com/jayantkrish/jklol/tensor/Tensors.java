@@ -20,4 +20,41 @@ public class Tensors {
     }
     return result;
   }
+
+  /**
+   * Gets an upper bound on the value of every key in {@code tensor},
+   * including keys that are not explicitly stored by a sparse tensor.
+   * The bound is exact except for products of tensors
+   * ({@link FactoredTensor}), whose bound is the product of each
+   * factor's bound and assumes that their values are nonnegative.
+   * 
+   * @param tensor
+   * @return
+   */
+  public static double getMaxValueUpperBound(Tensor tensor) {
+    if (tensor instanceof FactoredTensor) {
+      double bound = 1.0;
+      for (Tensor factor : ((FactoredTensor) tensor).getTensors()) {
+        bound *= getMaxValueUpperBound(factor);
+      }
+      return bound;
+    } else if (tensor instanceof SparseLogSpaceTensorAdapter) {
+      return Math.exp(getMaxValueUpperBound(
+          ((SparseLogSpaceTensorAdapter) tensor).getLogWeights()));
+    } else if (tensor instanceof LogSpaceTensorAdapter) {
+      return Math.exp(getMaxValueUpperBound(
+          ((LogSpaceTensorAdapter) tensor).getLogWeights()));
+    }
+
+    double maxValue = Double.NEGATIVE_INFINITY;
+    int size = tensor.size();
+    for (int i = 0; i < size; i++) {
+      maxValue = Math.max(maxValue, tensor.getByIndex(i));
+    }
+    if (size < tensor.getMaxKeyNum()) {
+      // Keys that are not stored have value 0.
+      maxValue = Math.max(maxValue, 0.0);
+    }
+    return maxValue;
+  }
 }
@@ -1,5 +1,7 @@
 package com.jayantkrish.jklol.training;
 
+import java.util.Queue;
+
 import com.google.common.base.Preconditions;
 import com.jayantkrish.jklol.inference.MarginalCalculator.ZeroProbabilityError;
 import com.jayantkrish.jklol.models.parametric.SufficientStatistics;
@@ -7,6 +9,15 @@ import com.jayantkrish.jklol.parallel.Reducer;
 
 /**
  * Reducer for accumulating gradients from multiple examples.
+ * Accumulated gradients track their modified entries (see
+ * {@link SufficientStatistics#trackModifiedEntries()}), so combining
+ * the gradients of different batches costs time proportional to the
+ * number of parameters touched by the batches.
+ * <p>
+ * Optionally, the gradients of combined batches can be returned to a
+ * pool, from which {@link #getInitialValue()} takes gradients before
+ * allocating new ones. Sharing a pool across the reducers of many
+ * iterations avoids allocating full-size gradients for every batch.
  * 
  * @author jayantk
  */
@@ -18,18 +29,46 @@ public class GradientReducer<M, E> implements Reducer<E, GradientEvaluation> {
 
   private final LogFunction log;
 
+  // Zeroed gradients which can be reused. May be null.
+  private final Queue<SufficientStatistics> gradientPool;
+
   public GradientReducer(M instantiatedModel, SufficientStatistics instantiatedModelParameters,
       GradientOracle<M, ? super E> oracle, LogFunction log) {
+    this(instantiatedModel, instantiatedModelParameters, oracle, log, null);
+  }
+
+  /**
+   * Creates a reducer which reuses the gradients in
+   * {@code gradientPool}, and returns the gradients of combined batches
+   * to it. {@code gradientPool} must be thread-safe, and must only
+   * contain zeroed gradients initialized by {@code oracle}.
+   *
+   * @param instantiatedModel
+   * @param instantiatedModelParameters
+   * @param oracle
+   * @param log
+   * @param gradientPool
+   */
+  public GradientReducer(M instantiatedModel, SufficientStatistics instantiatedModelParameters,
+      GradientOracle<M, ? super E> oracle, LogFunction log,
+      Queue<SufficientStatistics> gradientPool) {
     this.instantiatedModel = Preconditions.checkNotNull(instantiatedModel);
     this.instantiatedModelParameters = Preconditions.checkNotNull(instantiatedModelParameters);
     this.oracle = Preconditions.checkNotNull(oracle);
     this.log = log;
+    this.gradientPool = gradientPool;
   }
 
   @Override
   public GradientEvaluation getInitialValue() {
     log.startTimer("mr_gradient_initialize");
-    SufficientStatistics gradient = oracle.initializeGradient();
+    SufficientStatistics gradient = (gradientPool != null) ? gradientPool.poll() : null;
+    if (gradient == null) {
+      gradient = oracle.initializeGradient();
+      // Gradients are typically sparse, and tracking their nonzero
+      // entries makes combining them proportional to their sparsity.
+      gradient.trackModifiedEntries();
+    }
     log.stopTimer("mr_gradient_initialize");
     return new GradientEvaluation(gradient, 0.0, 0);
   }
@@ -55,6 +94,13 @@ public class GradientReducer<M, E> implements Reducer<E, GradientEvaluation> {
   @Override
   public GradientEvaluation combine(GradientEvaluation other, GradientEvaluation accumulated) {
     accumulated.increment(other);
+    if (gradientPool != null) {
+      // other is not used after it is combined. Zeroing a tracked
+      // gradient takes time proportional to its modified entries.
+      SufficientStatistics gradient = other.getGradient();
+      gradient.zeroOut();
+      gradientPool.offer(gradient);
+    }
     return accumulated;
   }
 }
\ No newline at end of file
@@ -0,0 +1,254 @@
+package com.jayantkrish.jklol.training;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.jayantkrish.jklol.inference.MarginalCalculator.ZeroProbabilityError;
+import com.jayantkrish.jklol.models.parametric.SufficientStatistics;
+import com.jayantkrish.jklol.training.StochasticGradientTrainer.AdagradL2Regularizer;
+import com.jayantkrish.jklol.training.StochasticGradientTrainer.L1Regularizer;
+import com.jayantkrish.jklol.training.StochasticGradientTrainer.LazyL2Regularizer;
+import com.jayantkrish.jklol.training.StochasticGradientTrainer.Regularizer;
+import com.jayantkrish.jklol.training.StochasticGradientTrainer.StochasticL2Regularizer;
+
+/**
+ * An asynchronous, lock-free implementation of stochastic gradient
+ * ascent. Several worker threads each repeatedly compute the gradient
+ * of a small batch of examples and apply it directly to a shared
+ * parameter vector, without synchronizing with the other workers. This
+ * approach is efficient when the gradients of different examples are
+ * sparse and rarely touch the same parameters, as in many NLP models.
+ * See:
+ * <p>
+ * Hogwild!: A Lock-Free Approach to Parallelizing Stochastic Gradient
+ * Descent. Feng Niu, Benjamin Recht, Christopher Re and Stephen J. Wright.
+ * NIPS 2011.
+ * <p>
+ * Because updates are unsynchronized, concurrent updates to the same
+ * parameter may occasionally be lost, and results are not deterministic.
+ * Regularization and step sizes have the same semantics as in
+ * {@link StochasticGradientTrainer}, where each worker's batch counts as
+ * one iteration. Parameter averaging is not supported.
+ *
+ * @author jayantk
+ */
+public class HogwildStochasticGradientTrainer implements GradientOptimizer {
+
+  private final long numIterations;
+  private final int batchSize;
+  private final int numThreads;
+  private final LogFunction log;
+
+  private final double stepSize;
+  private final boolean decayStepSize;
+  private final boolean adaGrad;
+  private final Regularizer regularizer;
+
+  // Gradients are clipped to at most maxGradientNorm
+  private final double maxGradientNorm;
+
+  /**
+   * Creates a trainer that performs {@code numIterations} gradient updates
+   * on batches of {@code batchSize} examples, using {@code numThreads}
+   * concurrent worker threads.
+   *
+   * @param numIterations
+   * @param batchSize
+   * @param numThreads
+   * @param stepSize
+   * @param decayStepSize
+   * @param adaGrad
+   * @param maxGradientNorm
+   * @param regularizer
+   * @param log
+   */
+  public HogwildStochasticGradientTrainer(long numIterations, int batchSize, int numThreads,
+      double stepSize, boolean decayStepSize, boolean adaGrad, double maxGradientNorm,
+      Regularizer regularizer, LogFunction log) {
+    Preconditions.checkArgument(numThreads > 0);
+    Preconditions.checkArgument(batchSize > 0);
+    this.numIterations = numIterations;
+    this.batchSize = batchSize;
+    this.numThreads = numThreads;
+    this.log = (log != null) ? log : new NullLogFunction();
+
+    this.stepSize = stepSize;
+    this.decayStepSize = decayStepSize;
+    this.adaGrad = adaGrad;
+    this.maxGradientNorm = maxGradientNorm;
+    this.regularizer = Preconditions.checkNotNull(regularizer);
+    // Lazy regularization stores a scale factor with the parameters,
+    // which cannot be updated concurrently with the parameter values.
+    Preconditions.checkArgument(!(regularizer instanceof LazyL2Regularizer),
+        "Lazy regularizers are not supported by HogwildStochasticGradientTrainer");
+  }
+
+  public static HogwildStochasticGradientTrainer createWithStochasticL2Regularization(
+      long numIterations, int batchSize, int numThreads, double stepSize, boolean decayStepSize,
+      double maxGradientNorm, double l2Penalty, double regularizationFrequency, LogFunction log) {
+    return new HogwildStochasticGradientTrainer(numIterations, batchSize, numThreads, stepSize,
+        decayStepSize, false, maxGradientNorm,
+        new StochasticL2Regularizer(l2Penalty, regularizationFrequency), log);
+  }
+
+  public static HogwildStochasticGradientTrainer createAdagrad(long numIterations,
+      int batchSize, int numThreads, double stepSize, boolean decayStepSize,
+      double maxGradientNorm, double l2Penalty, double regularizationFrequency, LogFunction log) {
+    return new HogwildStochasticGradientTrainer(numIterations, batchSize, numThreads, stepSize,
+        decayStepSize, true, maxGradientNorm,
+        new AdagradL2Regularizer(l2Penalty, regularizationFrequency), log);
+  }
+
+  public static HogwildStochasticGradientTrainer createWithL1Regularization(long numIterations,
+      int batchSize, int numThreads, double stepSize, boolean decayStepSize,
+      double maxGradientNorm, double l1Penalty, LogFunction log) {
+    return new HogwildStochasticGradientTrainer(numIterations, batchSize, numThreads, stepSize,
+        decayStepSize, false, maxGradientNorm, new L1Regularizer(l1Penalty), log);
+  }
+
+  @Override
+  public <M, E, T extends E> SufficientStatistics train(GradientOracle<M, E> oracle,
+      SufficientStatistics initialParameters, Iterable<T> trainingData) {
+    List<T> trainingDataList = Lists.newArrayList(trainingData);
+    int numWorkers = Math.min(numThreads, trainingDataList.size());
+    if (numWorkers == 0) {
+      return initialParameters;
+    }
+
+    // Workers update the parameters in place, which requires a dense
+    // (mutable) representation.
+    initialParameters.makeDense();
+
+    SufficientStatistics gradientSumSquares = null;
+    if (adaGrad) {
+      gradientSumSquares = oracle.initializeGradient();
+      gradientSumSquares.makeDense();
+    }
+
+    AtomicLong nextIteration = new AtomicLong(0);
+    AtomicInteger totalSearchErrors = new AtomicInteger(0);
+    List<HogwildWorker<M, E, T>> workers = Lists.newArrayList();
+    for (int i = 0; i < numWorkers; i++) {
+      // Each worker streams over a disjoint, strided subset of the
+      // training examples.
+      List<T> workerData = Lists.newArrayList();
+      for (int j = i; j < trainingDataList.size(); j += numWorkers) {
+        workerData.add(trainingDataList.get(j));
+      }
+      workers.add(new HogwildWorker<M, E, T>(oracle, initialParameters, gradientSumSquares,
+          workerData, nextIteration, totalSearchErrors));
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(numWorkers);
+    try {
+      List<Future<Void>> results = executor.invokeAll(workers);
+      for (Future<Void> result : results) {
+        result.get();
+      }
+    } catch (InterruptedException e) {
+      e.printStackTrace();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      e.printStackTrace();
+      e.getCause().printStackTrace();
+      throw new RuntimeException(e);
+    } finally {
+      executor.shutdownNow();
+    }
+
+    return initialParameters;
+  }
+
+  /**
+   * A single worker thread, which repeatedly claims an iteration number,
+   * computes the gradient of its next batch of examples, then updates the
+   * shared parameters.
+   *
+   * @author jayantk
+   */
+  private class HogwildWorker<M, E, T extends E> implements Callable<Void> {
+    private final GradientOracle<M, E> oracle;
+    private final SufficientStatistics parameters;
+    private final SufficientStatistics gradientSumSquares;
+    private final Iterator<T> examples;
+
+    private final AtomicLong nextIteration;
+    private final AtomicInteger totalSearchErrors;
+
+    public HogwildWorker(GradientOracle<M, E> oracle, SufficientStatistics parameters,
+        SufficientStatistics gradientSumSquares, List<T> examples, AtomicLong nextIteration,
+        AtomicInteger totalSearchErrors) {
+      this.oracle = oracle;
+      this.parameters = parameters;
+      this.gradientSumSquares = gradientSumSquares;
+      this.examples = Iterators.cycle(examples);
+      this.nextIteration = nextIteration;
+      this.totalSearchErrors = totalSearchErrors;
+    }
+
+    @Override
+    public Void call() {
+      // The gradient is reused across iterations. Tracking its modified
+      // entries makes zeroing and applying it proportional to its sparsity.
+      SufficientStatistics gradient = oracle.initializeGradient();
+      gradient.trackModifiedEntries();
+
+      long i;
+      while ((i = nextIteration.getAndIncrement()) < numIterations) {
+        log.startTimer("instantiate_model");
+        M currentModel = oracle.instantiateModel(parameters);
+        log.stopTimer("instantiate_model");
+
+        log.startTimer("compute_gradient");
+        double objectiveValue = 0.0;
+        int searchErrors = 0;
+        for (int j = 0; j < batchSize; j++) {
+          try {
+            objectiveValue += oracle.accumulateGradient(gradient, parameters, currentModel,
+                examples.next(), log);
+          } catch (ZeroProbabilityError e) {
+            // Ignore the example, leaving the gradient unchanged.
+            searchErrors++;
+          }
+        }
+        if (batchSize > 1) {
+          gradient.multiply(1.0 / batchSize);
+        }
+        log.stopTimer("compute_gradient");
+
+        log.startTimer("parameter_update");
+        double currentStepSize = decayStepSize ? (stepSize / Math.sqrt(i + 2)) : stepSize;
+        double gradientL2 = gradient.getL2Norm();
+        if (gradientL2 * currentStepSize > maxGradientNorm) {
+          gradient.multiply(maxGradientNorm / (gradientL2 * currentStepSize));
+          gradientL2 = maxGradientNorm / currentStepSize;
+        }
+        regularizer.apply(gradient, parameters, gradientSumSquares, currentStepSize);
+        log.stopTimer("parameter_update");
+
+        int searchErrorsSoFar = totalSearchErrors.addAndGet(searchErrors);
+        synchronized (log) {
+          log.notifyIterationStart(i);
+          log.logStatistic(i, "search errors", searchErrorsSoFar);
+          log.logStatistic(i, "gradient l2 norm", gradientL2);
+          log.logStatistic(i, "step size", currentStepSize);
+          log.logStatistic(i, "objective value", objectiveValue / batchSize);
+          log.notifyIterationEnd(i);
+        }
+
+        gradient.zeroOut();
+      }
+      return null;
+    }
+  }
+}
@@ -47,6 +47,9 @@ public class StochasticAverageGradientOptimizer implements GradientOptimizer {
     int trainingDataSize = trainingDataList.size();
     SufficientStatistics[] trainingDataGradients = new SufficientStatistics[trainingDataSize]; 
     SufficientStatistics stepDirection = oracle.initializeGradient();
+    // Reused to evaluate the objective at each Lipschitz point.
+    SufficientStatistics lipschitzGradient = oracle.initializeGradient();
+    lipschitzGradient.trackModifiedEntries();
     double lipschitzEstimate = 1.0;
     double lipschitzShrinkageFactor = Math.pow(2, -1.0 / trainingDataSize);
     for (int i = 0; i < numIterations; i++) {
@@ -72,7 +75,8 @@ public class StochasticAverageGradientOptimizer implements GradientOptimizer {
       // Lipschitz constant if necessary.
       SufficientStatistics lipschitzPoint = initialParameters.duplicate();
       lipschitzPoint.increment(currentGradient, -1.0 / lipschitzEstimate);
-      double lipschitzPointObjectiveValue = oracle.accumulateGradient(oracle.initializeGradient(),
+      lipschitzGradient.zeroOut();
+      double lipschitzPointObjectiveValue = oracle.accumulateGradient(lipschitzGradient,
           lipschitzPoint, oracle.instantiateModel(lipschitzPoint),
           trainingDataList.get(exampleIndex), log);
       double gradientSquaredNorm = currentGradient.getL2Norm();
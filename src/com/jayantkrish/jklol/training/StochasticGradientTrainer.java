@@ -2,6 +2,8 @@ package com.jayantkrish.jklol.training;
 
 import java.util.Iterator;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Iterators;
@@ -16,6 +18,16 @@ import com.jayantkrish.jklol.util.Pseudorandom;
 /**
  * An implementation of stochastic (sub)gradient ascent that can optimize any
  * function given by a {@link GradientOracle}.
+ * <p>
+ * If {@code returnAveragedParameters} is true, the trainer returns the
+ * average of the parameters over all iterations. When the regularizer
+ * scales the parameters and takes a gradient step (see
+ * {@link Regularizer#isScaledGradientStep}), the average is computed
+ * from the nonzero entries of each gradient. This is the case for
+ * unregularized training and for the L2 regularizers other than
+ * Adagrad. With all other regularizers, the parameters are averaged
+ * over every entry on each iteration, which takes time proportional to
+ * the number of parameters.
  * 
  * @author jayantk
  */
@@ -40,6 +52,10 @@ public class StochasticGradientTrainer implements GradientOptimizer {
   // forget history faster.
   private static final double MOVING_AVG_DISCOUNT = 0.9;
 
+  // Sparse parameter averaging restarts its sums when the product of
+  // the regularization scales falls below this value.
+  private static final double MIN_AVERAGING_SCALE_PRODUCT = 1e-3;
+
   /**
    * Unregularized stochastic gradient descent.
    * 
@@ -124,6 +140,18 @@ public class StochasticGradientTrainer implements GradientOptimizer {
         returnAveragedParameters, false, maxGradientNorm, new L1Regularizer(l1Penalty), log);
   }
 
+  /**
+   * Creates a trainer that applies L2 regularization lazily, that is,
+   * only to the parameters with a nonzero gradient on each iteration.
+   * See {@link LazyL2Regularizer}.
+   */
+  public static StochasticGradientTrainer createWithLazyL2Regularization(long numIterations,
+      int batchSize, double stepSize, boolean decayStepSize, boolean returnAveragedParameters,
+      double maxGradientNorm, double l2Penalty, LogFunction log) {
+    return new StochasticGradientTrainer(numIterations, batchSize, stepSize, decayStepSize,
+        returnAveragedParameters, false, maxGradientNorm, new LazyL2Regularizer(l2Penalty), log);
+  }
+
   @Override
   public <M, E, T extends E> SufficientStatistics train(GradientOracle<M, E> oracle,
       SufficientStatistics initialParameters, Iterable<T> trainingData) {
@@ -136,12 +164,24 @@ public class StochasticGradientTrainer implements GradientOptimizer {
     MapReduceExecutor executor = MapReduceConfiguration.getMapReduceExecutor();
 
     SufficientStatistics averagedParameters = null;
+    SufficientStatistics weightedUpdateSum = null;
+    boolean sparseAveraging = returnAveragedParameters && regularizer.isScaledGradientStep();
     if (returnAveragedParameters) {
       // Compute the average of the parameter values from each iteration  
       // by tracking the sum of the parameters, then dividing.
       averagedParameters = oracle.initializeGradient();
       averagedParameters.increment(initialParameters, 1.0);
     }
+    // If each update multiplies the parameters by a scalar and takes a
+    // gradient step, the sum of the parameters can be reconstructed from
+    // the current parameters, the product and sum of products of the
+    // scalars, and a weighted sum of the gradients. This avoids a pass
+    // over all parameters on every iteration (see addParameterSum).
+    double scaleProduct = 1.0;
+    double scaleProductSum = 0.0;
+    if (sparseAveraging) {
+      weightedUpdateSum = oracle.initializeGradient();
+    }
     
     SufficientStatistics gradientSumSquares = null;
     if (adaGrad) {
@@ -150,6 +190,9 @@ public class StochasticGradientTrainer implements GradientOptimizer {
 
     double gradientL2 = 0.0;
     GradientEvaluation gradientAccumulator = null;
+    // The gradients of each batch's map-reduce partitions are reused
+    // across iterations.
+    Queue<SufficientStatistics> gradientPool = new ConcurrentLinkedQueue<SufficientStatistics>();
     // This is an attempt at estimating how much the parameters are still
     // changing.
     double exponentiallyWeightedUpdateNorm = 0.0;
@@ -174,7 +217,7 @@ public class StochasticGradientTrainer implements GradientOptimizer {
       log.startTimer("compute_gradient_(serial)");
       Mapper<T, T> mapper = Mappers.<T>identity();
       GradientReducer<M, T> reducer = new GradientReducer<M, T>(currentModel, initialParameters,
-          oracle, log);
+          oracle, log, gradientPool);
       gradientAccumulator = executor.mapReduce(batchData, mapper, reducer, gradientAccumulator);
 
       totalSearchErrors += gradientAccumulator.getSearchErrors();
@@ -195,7 +238,24 @@ public class StochasticGradientTrainer implements GradientOptimizer {
         gradientL2 = maxGradientNorm / currentStepSize;
       }
       
-      regularizer.apply(gradient, initialParameters, gradientSumSquares, currentStepSize);
+      double scale = regularizer.apply(gradient, initialParameters, gradientSumSquares,
+          currentStepSize);
+      if (sparseAveraging) {
+        Preconditions.checkState(scale != 0.0 && !Double.isNaN(scale),
+            "Parameter averaging requires a nonzero regularization scale, got: %s", scale);
+        scaleProduct *= scale;
+        weightedUpdateSum.increment(gradient, currentStepSize * scaleProductSum / scaleProduct);
+        scaleProductSum += scaleProduct;
+
+        if (Math.abs(scaleProduct) < MIN_AVERAGING_SCALE_PRODUCT) {
+          log.startTimer("average_parameters");
+          addParameterSum(averagedParameters, initialParameters, weightedUpdateSum,
+              scaleProduct, scaleProductSum, numIterations);
+          scaleProduct = 1.0;
+          scaleProductSum = 0.0;
+          log.stopTimer("average_parameters");
+        }
+      }
 
       // System.out.println(initialParameters);
       log.stopTimer("parameter_update");
@@ -209,7 +269,7 @@ public class StochasticGradientTrainer implements GradientOptimizer {
       exponentiallyWeightedDenom = 1 + (MOVING_AVG_DISCOUNT * exponentiallyWeightedDenom);
       log.stopTimer("compute_statistics");
 
-      if (returnAveragedParameters) {
+      if (returnAveragedParameters && !sparseAveraging) {
         log.startTimer("average_parameters");
         averagedParameters.increment(initialParameters, 1.0 / numIterations);
         log.stopTimer("average_parameters");
@@ -228,6 +288,13 @@ public class StochasticGradientTrainer implements GradientOptimizer {
       log.notifyIterationEnd(i);
     }
 
+    if (sparseAveraging && scaleProductSum != 0.0) {
+      log.startTimer("average_parameters");
+      addParameterSum(averagedParameters, initialParameters, weightedUpdateSum,
+          scaleProduct, scaleProductSum, numIterations);
+      log.stopTimer("average_parameters");
+    }
+
     if (returnAveragedParameters) {
       return averagedParameters;
     } else {
@@ -235,6 +302,30 @@ public class StochasticGradientTrainer implements GradientOptimizer {
     }
   }
 
+  /**
+   * Increments {@code averagedParameters} by {@code (1 / numIterations)}
+   * times the sum of the parameters over the iterations since the last
+   * call, then zeros out {@code weightedUpdateSum}.
+   * <p>
+   * Let the last call be after iteration 0, and let iteration t update
+   * the parameters by {@code w_t = c_t w_{t-1} + a_t g_t}. Let
+   * {@code P_t = c_1 * ... * c_t}, {@code S_t = P_1 + ... + P_t} and
+   * {@code U_T = sum_{t=1}^T (a_t S_{t-1} / P_t) g_t}. Then
+   * {@code w_1 + ... + w_T = (S_T / P_T) w_T - U_T}.
+   * {@code scaleProduct}, {@code scaleProductSum} and
+   * {@code weightedUpdateSum} are {@code P_T}, {@code S_T} and
+   * {@code U_T}, respectively. The caller should restart these sums
+   * before {@code P_t} gets small, as the weights {@code S_{t-1} / P_t}
+   * grow as {@code 1 / P_t}.
+   */
+  private static void addParameterSum(SufficientStatistics averagedParameters,
+      SufficientStatistics currentParameters, SufficientStatistics weightedUpdateSum,
+      double scaleProduct, double scaleProductSum, long numIterations) {
+    averagedParameters.increment(currentParameters, scaleProductSum / (scaleProduct * numIterations));
+    averagedParameters.increment(weightedUpdateSum, -1.0 / numIterations);
+    weightedUpdateSum.zeroOut();
+  }
+
   private <S> List<S> getBatch(Iterator<S> trainingData, int batchSize) {
     List<S> batchData = Lists.newArrayListWithCapacity(batchSize);
     for (int i = 0; i < batchSize && trainingData.hasNext(); i++) {
@@ -259,10 +350,24 @@ public class StochasticGradientTrainer implements GradientOptimizer {
      * @param currentParameters
      * @param gradientSumSquares
      * @param currentStepSize
-     * @return
+     * @return the scalar {@code c} of the update, if
+     * {@link #isScaledGradientStep} is true. Otherwise,
+     * {@code Double.NaN}.
      */
-    public void apply(SufficientStatistics gradient, SufficientStatistics currentParameters,
+    public double apply(SufficientStatistics gradient, SufficientStatistics currentParameters,
         SufficientStatistics gradientSumSquares, double currentStepSize);
+
+    /**
+     * Returns {@code true} if every call to {@link #apply} sets
+     * {@code currentParameters} to
+     * {@code c * currentParameters + currentStepSize * gradient} for a
+     * scalar {@code c}, without mutating {@code gradient}. The trainer
+     * uses this to average parameters using only the nonzero entries of
+     * each gradient.
+     * 
+     * @return
+     */
+    public boolean isScaledGradientStep();
   }
 
   /**
@@ -285,16 +390,24 @@ public class StochasticGradientTrainer implements GradientOptimizer {
     }
 
     @Override
-    public void apply(SufficientStatistics gradient, SufficientStatistics currentParameters,
+    public double apply(SufficientStatistics gradient, SufficientStatistics currentParameters,
         SufficientStatistics gradientSumSquares, double currentStepSize) {
       Preconditions.checkArgument(gradientSumSquares == null);
       double rand = Pseudorandom.get().nextDouble();
+      double scale = 1.0;
       if (rand < frequency && l2Penalty != 0.0) {
         // Objective value calculation:
         // objectiveValue -= l2Penalty * currentParameters.getL2Norm() / (2.0 * frequency);
-        currentParameters.multiply(1.0 - (currentStepSize * l2Penalty) / frequency);
+        scale = 1.0 - (currentStepSize * l2Penalty) / frequency;
+        currentParameters.multiply(scale);
       } 
       currentParameters.increment(gradient, currentStepSize);
+      return scale;
+    }
+
+    @Override
+    public boolean isScaledGradientStep() {
+      return true;
     }
   }
 
@@ -316,7 +429,7 @@ public class StochasticGradientTrainer implements GradientOptimizer {
     }
 
     @Override
-    public void apply(SufficientStatistics gradient, SufficientStatistics currentParameters,
+    public double apply(SufficientStatistics gradient, SufficientStatistics currentParameters,
         SufficientStatistics gradientSumSquares, double currentStepSize) {
       Preconditions.checkNotNull(gradientSumSquares);
       double rand = Pseudorandom.get().nextDouble();
@@ -330,6 +443,12 @@ public class StochasticGradientTrainer implements GradientOptimizer {
       }
 
       currentParameters.incrementAdagrad(gradient, gradientSumSquares, currentStepSize);
+      return Double.NaN;
+    }
+
+    @Override
+    public boolean isScaledGradientStep() {
+      return false;
     }
   }
 
@@ -352,11 +471,61 @@ public class StochasticGradientTrainer implements GradientOptimizer {
     }
 
     @Override
-    public void apply(SufficientStatistics gradient, SufficientStatistics currentParameters,
+    public double apply(SufficientStatistics gradient, SufficientStatistics currentParameters,
         SufficientStatistics gradientSumSquares, double currentStepSize) {
       Preconditions.checkArgument(gradientSumSquares == null);
       currentParameters.increment(gradient, currentStepSize);
       currentParameters.softThreshold(currentStepSize * l1Penalty);
+      return l1Penalty == 0.0 ? 1.0 : Double.NaN;
+    }
+
+    @Override
+    public boolean isScaledGradientStep() {
+      return l1Penalty == 0.0;
+    }
+  }
+
+  /**
+   * An L2 regularization penalty that is applied lazily. Each iteration
+   * of L2 regularization multiplies every parameter by
+   * {@code (1 - stepSize * l2Penalty)}. This regularizer performs the
+   * same update as {@code StochasticL2Regularizer} with frequency 1.0,
+   * but multiplies the parameters using
+   * {@link SufficientStatistics#rescale}, which defers the
+   * multiplication to a scale factor of the parameters when they are
+   * stored densely. Each iteration therefore takes time proportional to
+   * the number of nonzero gradient entries rather than the number of
+   * parameters, and the parameters are identical to those of the eager
+   * update (up to numerical error).
+   *    
+   * @author jayantk
+   */
+  public static class LazyL2Regularizer implements Regularizer {
+    private final double l2Penalty;
+
+    public LazyL2Regularizer(double l2Penalty) {
+      Preconditions.checkArgument(l2Penalty >= 0.0);
+      this.l2Penalty = l2Penalty;
+    }
+
+    @Override
+    public double apply(SufficientStatistics gradient, SufficientStatistics currentParameters,
+        SufficientStatistics gradientSumSquares, double currentStepSize) {
+      Preconditions.checkArgument(gradientSumSquares == null);
+      double scale = 1.0;
+      if (l2Penalty != 0.0) {
+        scale = 1.0 - (currentStepSize * l2Penalty);
+        Preconditions.checkState(scale > 0.0,
+            "Lazy L2 regularization requires stepSize * l2Penalty < 1.0");
+        currentParameters.rescale(scale);
+      }
+      currentParameters.increment(gradient, currentStepSize);
+      return scale;
+    }
+
+    @Override
+    public boolean isScaledGradientStep() {
+      return true;
     }
   }
 }
@@ -197,6 +197,56 @@ public class ArrayUtils {
     sortKeyValuePairs(keys, values, pivotInd + 1, endInd);
   }
 
+  /**
+   * Sorts a portion of the given key/value pairs by key. This method
+   * sorts the section of {@code keys} from {@code startInd}
+   * (inclusive) to {@code endInd} (not inclusive), simultaneously
+   * swapping the corresponding entries of {@code values}.
+   * 
+   * @param keys
+   * @param values
+   * @param startInd
+   * @param endInd
+   */
+  public static final void sortKeyValuePairs(long[] keys, int[] values,
+      int startInd, int endInd) {
+    // Base case.
+    if (endInd - startInd <= 1) {
+      return;
+    }
+
+    // Choose pivot.
+    int pivotInd = (int) (Math.random() * (endInd - startInd)) + startInd;
+
+    // Perform swaps to partition array around the pivot.
+    swap(keys, values, startInd, pivotInd);
+    pivotInd = startInd;
+
+    for (int i = startInd + 1; i < endInd; i++) {
+      if (keys[i] < keys[pivotInd]) {
+        swap(keys, values, pivotInd, pivotInd + 1);
+        if (i != pivotInd + 1) {
+          swap(keys, values, pivotInd, i);
+        }
+        pivotInd++;
+      }
+    }
+
+    // Recursively sort the subcomponents of the arrays.
+    sortKeyValuePairs(keys, values, startInd, pivotInd);
+    sortKeyValuePairs(keys, values, pivotInd + 1, endInd);
+  }
+
+  private static final void swap(long[] keys, int[] values, int i, int j) {
+    long keySwap = keys[i];
+    keys[i] = keys[j];
+    keys[j] = keySwap;
+
+    int swapValue = values[i];
+    values[i] = values[j];
+    values[j] = swapValue;
+  }
+
   /**
    * Swaps the keys and values at {@code i} with those at {@code j}
    * 
@@ -0,0 +1,141 @@
+package com.jayantkrish.jklol.ccg;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.jayantkrish.jklol.ccg.CcgBatchParser.BatchParseResult;
+import com.jayantkrish.jklol.ccg.CcgBatchParser.ParseCallback;
+import com.jayantkrish.jklol.ccg.CcgBatchParser.ParseLatencies;
+import com.jayantkrish.jklol.models.parametric.SufficientStatistics;
+import com.jayantkrish.jklol.nlpannotation.AnnotatedSentence;
+
+public class CcgBatchParserTest extends TestCase {
+
+  private static final String[] lexicon = {
+    "big,N{0},,0 big",
+    "big,(N{1}/N{1}){0},,0 big,big 1 1",
+    "dog,N{0},,0 dog",
+    "dog,(N{1}/N{1}){0},,0 dog,dog 1 1",
+    "park,N{0},,0 park",
+    "with,((N{1}\\N{1}){0}/N{2}){0},,0 with,with 1 1,with 2 2",
+    "in,((N{1}\\N{1}){0}/N{2}){0},,0 in,in 1 1,in 2 2",
+  };
+
+  private static final String[] unknownLexicon = {
+    "NN,N{0},,0 unk-nn",
+  };
+
+  private static final String[] ruleArray = {"FOO{0} FOO{0}"};
+
+  private static final String[] words = {"big", "dog", "with", "big", "park", "in", "dog"};
+
+  private CcgParser parser;
+  private List<AnnotatedSentence> sentences;
+
+  public void setUp() {
+    Set<String> posTags = Sets.newHashSet(ParametricCcgParser.DEFAULT_POS_TAG, "NN");
+    ParametricCcgParser family = ParametricCcgParser.parseFromLexicon(Arrays.asList(lexicon),
+        Arrays.asList(unknownLexicon), Arrays.asList(ruleArray),
+        new DefaultCcgFeatureFactory(false, false), posTags, false, null, false);
+    SufficientStatistics parameters = family.getNewSufficientStatistics();
+    parameters.perturb(1.0);
+    parser = family.getModelFromParameters(parameters);
+
+    // Lengths vary so that charts are both reused and resized.
+    sentences = Lists.newArrayList();
+    int[] lengths = {3, 7, 2, 12, 5, 12, 1, 9, 4, 7};
+    for (int length : lengths) {
+      List<String> sentenceWords = Lists.newArrayList();
+      for (int i = 0; i < length; i++) {
+        sentenceWords.add(words[(i + length) % words.length]);
+      }
+      sentences.add(new AnnotatedSentence(sentenceWords,
+          Collections.nCopies(length, ParametricCcgParser.DEFAULT_POS_TAG)));
+    }
+  }
+
+  public void testBeamSearchSingleThread() {
+    runTest(CcgBatchParser.create(parser, 10, 1));
+  }
+
+  public void testBeamSearchMultipleThreads() {
+    runTest(CcgBatchParser.create(parser, 10, 3));
+  }
+
+  public void testBeamSearchUnpackedChart() {
+    runTest(new CcgBatchParser(parser, null, 10, -1, Integer.MAX_VALUE, 3, false));
+  }
+
+  public void testBeamSearchCallback() {
+    final List<List<CcgParse>> parses = Lists.newArrayList(
+        Collections.<List<CcgParse>>nCopies(sentences.size(), null));
+    ParseLatencies latencies = CcgBatchParser.create(parser, 10, 3).beamSearch(sentences,
+        new ParseCallback() {
+          @Override
+          public void parsed(int index, AnnotatedSentence sentence, List<CcgParse> sentenceParses) {
+            synchronized (parses) {
+              assertSame(sentences.get(index), sentence);
+              assertNull(parses.get(index));
+              parses.set(index, sentenceParses);
+            }
+          }
+        });
+    assertEquals(sentences.size(), latencies.getNumSentences());
+    assertParsesEqual(parses);
+  }
+
+  public void testBeamSearchReuse() {
+    CcgBatchParser batchParser = CcgBatchParser.create(parser, 10, 2);
+    runTest(batchParser);
+    Collections.reverse(sentences);
+    runTest(batchParser);
+  }
+
+  public void testLatencyPercentiles() {
+    BatchParseResult result = CcgBatchParser.create(parser, 10, 2).beamSearch(sentences);
+    assertEquals(sentences.size(), result.getNumSentences());
+
+    double max = 0.0;
+    for (int i = 0; i < result.getNumSentences(); i++) {
+      max = Math.max(max, result.getLatencyMillis(i));
+    }
+    assertEquals(max, result.getLatencyPercentileMillis(100));
+    assertTrue(result.getLatencyPercentileMillis(50) <= result.getLatencyPercentileMillis(90));
+    assertTrue(result.getLatencyPercentileMillis(90) <= max);
+  }
+
+  public void testEmptyBatch() {
+    BatchParseResult result = CcgBatchParser.create(parser, 10, 2).beamSearch(
+        Collections.<AnnotatedSentence>emptyList());
+    assertEquals(0, result.getNumSentences());
+    assertEquals(0.0, result.getLatencyPercentileMillis(50));
+  }
+
+  private void runTest(CcgBatchParser batchParser) {
+    BatchParseResult result = batchParser.beamSearch(sentences);
+    assertParsesEqual(result.getParses());
+  }
+
+  private void assertParsesEqual(List<List<CcgParse>> actual) {
+    assertEquals(sentences.size(), actual.size());
+
+    int numParsed = 0;
+    for (int i = 0; i < sentences.size(); i++) {
+      List<CcgParse> expected = parser.beamSearch(sentences.get(i), 10);
+      numParsed += expected.size() > 0 ? 1 : 0;
+      assertEquals(expected.size(), actual.get(i).size());
+      for (int j = 0; j < expected.size(); j++) {
+        assertEquals(expected.get(j).getSubtreeProbability(),
+            actual.get(i).get(j).getSubtreeProbability(), 1e-10);
+        assertEquals(expected.get(j).getAllDependencies(), actual.get(i).get(j).getAllDependencies());
+      }
+    }
+    assertTrue(numParsed > 0);
+  }
+}
@@ -19,6 +19,10 @@ import com.google.common.collect.Sets;
 import com.google.common.io.ByteStreams;
 import com.google.common.primitives.Doubles;
 import com.google.common.primitives.Ints;
+import com.jayantkrish.jklol.ccg.chart.CcgAStarChart;
+import com.jayantkrish.jklol.ccg.chart.CcgExactHashTableChart;
+import com.jayantkrish.jklol.ccg.chart.CcgPackedBeamSearchChart;
+import com.jayantkrish.jklol.ccg.chart.CcgSpanCache;
 import com.jayantkrish.jklol.ccg.chart.ChartCost;
 import com.jayantkrish.jklol.ccg.chart.ChartEntry;
 import com.jayantkrish.jklol.ccg.lambda.ExpressionParser;
@@ -254,6 +258,199 @@ public class CcgParserTest extends TestCase {
     assertEquals(2, eatDeps.size());
   }
   
+  public void testBeamSearchParallel() {
+    AnnotatedSentence sentence = new AnnotatedSentence(
+        Arrays.asList("people", "that", "quickly", "eat", "berries", "in", "houses"),
+        Collections.nCopies(7, DEFAULT_POS));
+    List<CcgParse> expected = parser.beamSearch(sentence, 100, null, new NullLogFunction(), -1,
+        Integer.MAX_VALUE, 1);
+    for (int numThreads = 2; numThreads <= 4; numThreads++) {
+      List<CcgParse> actual = parser.beamSearch(sentence, 100, null, new NullLogFunction(), -1,
+          Integer.MAX_VALUE, numThreads);
+      assertEquals(expected.size(), actual.size());
+      for (int i = 0; i < expected.size(); i++) {
+        assertEquals(expected.get(i).getSubtreeProbability(), actual.get(i).getSubtreeProbability(), 1e-10);
+        assertEquals(expected.get(i).getAllDependencies(), actual.get(i).getAllDependencies());
+      }
+    }
+  }
+
+  public void testBeamSearchPackedChart() {
+    List<AnnotatedSentence> sentences = Lists.newArrayList();
+    sentences.add(new AnnotatedSentence(
+        Arrays.asList("people", "that", "quickly", "eat", "berries", "in", "houses"),
+        Collections.nCopies(7, DEFAULT_POS)));
+    sentences.add(new AnnotatedSentence(Arrays.asList("i", "quickly", "eat", "berries"),
+        Collections.nCopies(4, DEFAULT_POS)));
+
+    for (int beamSize : new int[] {2, 5, 100}) {
+      // The packed chart is reused for both sentences.
+      CcgPackedBeamSearchChart chart = new CcgPackedBeamSearchChart(sentences.get(0),
+          Integer.MAX_VALUE, beamSize);
+      for (AnnotatedSentence sentence : sentences) {
+        List<CcgParse> expected = parser.beamSearch(sentence, beamSize, null,
+            new NullLogFunction(), -1, Integer.MAX_VALUE, 1);
+        for (int numThreads = 1; numThreads <= 2; numThreads++) {
+          List<CcgParse> actual = parser.beamSearch(chart, sentence, null,
+              new NullLogFunction(), -1, numThreads);
+          assertEquals(expected.size(), actual.size());
+          for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getSubtreeProbability(), actual.get(i).getSubtreeProbability(), 1e-10);
+            assertEquals(expected.get(i).getSyntacticCategory(), actual.get(i).getSyntacticCategory());
+            assertEquals(expected.get(i).getAllDependencies(), actual.get(i).getAllDependencies());
+          }
+        }
+      }
+    }
+  }
+
+  public void testBeamSearchPackedChartWordSkip() {
+    List<String> words = Arrays.asList("green", "green", "green", "i");
+    AnnotatedSentence sentence = new AnnotatedSentence(words,
+        Collections.nCopies(words.size(), DEFAULT_POS));
+
+    List<CcgParse> expected = parserWordSkip.beamSearch(sentence, 30, null,
+        new NullLogFunction(), -1, Integer.MAX_VALUE, 1);
+    CcgPackedBeamSearchChart chart = new CcgPackedBeamSearchChart(sentence, Integer.MAX_VALUE, 30);
+    List<CcgParse> actual = parserWordSkip.beamSearch(chart, sentence, null,
+        new NullLogFunction(), -1, 1);
+    assertEquals(11, actual.size());
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.get(i).getSubtreeProbability(), actual.get(i).getSubtreeProbability(), 1e-10);
+      assertEquals(expected.get(i).getAllDependencies(), actual.get(i).getAllDependencies());
+    }
+  }
+
+  public void testSpanCache() {
+    List<AnnotatedSentence> sentences = Lists.newArrayList();
+    for (List<String> words : Arrays.asList(
+        Arrays.asList("people", "that", "quickly", "eat", "berries", "in", "houses"),
+        Arrays.asList("people", "that", "quickly", "eat", "berries"),
+        Arrays.asList("people", "that", "quickly", "eat", "tasty", "berries"),
+        Arrays.asList("people", "that", "quickly", "eat", "berries", "in", "houses"))) {
+      sentences.add(new AnnotatedSentence(words, Collections.nCopies(words.size(), DEFAULT_POS)));
+    }
+
+    List<List<CcgParse>> expected = Lists.newArrayList();
+    List<CcgParse> expectedExact = Lists.newArrayList();
+    for (AnnotatedSentence sentence : sentences) {
+      expected.add(parser.beamSearch(sentence, 10));
+      expectedExact.add(parser.parse(sentence));
+    }
+
+    CcgSpanCache cache = new CcgSpanCache(1000);
+    parser.setSpanCache(cache);
+    for (int numThreads = 1; numThreads <= 2; numThreads++) {
+      for (int i = 0; i < sentences.size(); i++) {
+        List<CcgParse> actual = parser.beamSearch(sentences.get(i), 10, null,
+            new NullLogFunction(), -1, Integer.MAX_VALUE, numThreads);
+        assertEquals(expected.get(i).size(), actual.size());
+        for (int j = 0; j < actual.size(); j++) {
+          assertEquals(expected.get(i).get(j).getSubtreeProbability(),
+              actual.get(j).getSubtreeProbability(), 1e-10);
+          assertEquals(expected.get(i).get(j).getAllDependencies(),
+              actual.get(j).getAllDependencies());
+        }
+
+        CcgParse actualExact = parser.parse(sentences.get(i));
+        assertEquals(expectedExact.get(i).getSubtreeProbability(),
+            actualExact.getSubtreeProbability(), 1e-10);
+        assertEquals(expectedExact.get(i).getAllDependencies(),
+            actualExact.getAllDependencies());
+      }
+    }
+
+    // Each chart type computes the 21 spans of the first sentence.
+    // The other sentences reuse its spans over "people that quickly
+    // eat (berries)", so only the 9 spans of the third sentence that
+    // include "tasty" or its last "berries" are computed. Parsing the
+    // sentences again only uses cached spans.
+    assertEquals(2 * (21 + 10 + 15 + 21) * 2, cache.getNumHits() + cache.getNumMisses());
+    assertEquals(2 * (21 + 9), cache.getNumMisses());
+    assertEquals(0, cache.getNumEvictions());
+    assertEquals(0, cache.getNumInvalidations());
+
+    // Parsers created from this parser share the cache, but not its
+    // spans.
+    CcgParser newParser = parser.replaceSyntaxDistribution(parser.getSyntaxDistribution());
+    assertSame(cache, newParser.getSpanCache());
+    long numMisses = cache.getNumMisses();
+    newParser.beamSearch(sentences.get(0), 10);
+    assertEquals(1, cache.getNumInvalidations());
+    assertEquals(numMisses + 21, cache.getNumMisses());
+    assertEquals(21, cache.size());
+  }
+
+  public void testSpanCacheEviction() {
+    AnnotatedSentence sentence = new AnnotatedSentence(
+        Arrays.asList("people", "that", "quickly", "eat", "berries", "in", "houses"),
+        Collections.nCopies(7, DEFAULT_POS));
+    List<CcgParse> expected = parser.beamSearch(sentence, 10);
+
+    CcgSpanCache cache = new CcgSpanCache(5);
+    parser.setSpanCache(cache);
+    for (int i = 0; i < 2; i++) {
+      List<CcgParse> actual = parser.beamSearch(sentence, 10);
+      assertEquals(expected.size(), actual.size());
+      for (int j = 0; j < actual.size(); j++) {
+        assertEquals(expected.get(j).getSubtreeProbability(),
+            actual.get(j).getSubtreeProbability(), 1e-10);
+      }
+    }
+    // Spans are used in the order they are cached, so the small
+    // cache evicts every span before it is used again.
+    assertEquals(5, cache.size());
+    assertEquals(0, cache.getNumHits());
+    assertEquals(2 * 21 - 5, cache.getNumEvictions());
+  }
+
+  public void testBeamSearchParallelMaxChartSize() {
+    AnnotatedSentence sentence = new AnnotatedSentence(
+        Arrays.asList("people", "that", "quickly", "eat", "berries", "in", "houses"),
+        Collections.nCopies(7, DEFAULT_POS));
+    assertEquals(0, parser.beamSearch(sentence, 100, null, new NullLogFunction(), -1, 1, 4).size());
+  }
+
+  public void testAStarParse() {
+    List<List<String>> sentences = Lists.newArrayList();
+    sentences.add(Arrays.asList("I", "quickly", "eat", "amazingly", "tasty", "berries"));
+    sentences.add(Arrays.asList("people", "that", "quickly", "eat", "berries", "in", "houses"));
+    sentences.add(Arrays.asList("i", "eat", "berries", "in", "houses"));
+    sentences.add(Arrays.asList("green", "people"));
+    sentences.add(Arrays.asList("berries"));
+
+    CcgAStarInference inference = CcgAStarInference.getDefault();
+    for (List<String> words : sentences) {
+      CcgParse expected = parse(parser, words);
+      CcgParse actual = inference.getBestParse(parser, new AnnotatedSentence(words,
+          Collections.nCopies(words.size(), DEFAULT_POS)), null, new NullLogFunction());
+
+      if (expected == null) {
+        assertNull(actual);
+      } else {
+        assertEquals(expected.getSubtreeProbability(), actual.getSubtreeProbability(), 1e-10);
+        assertEquals(expected.getSyntacticCategory(), actual.getSyntacticCategory());
+        assertEquals(Sets.newHashSet(expected.getAllDependencies()),
+            Sets.newHashSet(actual.getAllDependencies()));
+      }
+    }
+  }
+
+  public void testAStarParseExploresFewerEntries() {
+    List<String> words = Arrays.asList("people", "that", "quickly", "eat", "berries", "in", "houses");
+    AnnotatedSentence sentence = new AnnotatedSentence(words,
+        Collections.nCopies(words.size(), DEFAULT_POS));
+
+    CcgAStarChart chart = new CcgAStarChart(sentence, Integer.MAX_VALUE);
+    assertTrue(CcgAStarInference.getDefault().search(parser, chart, sentence, null, null));
+
+    CcgExactHashTableChart exactChart = new CcgExactHashTableChart(sentence, Integer.MAX_VALUE);
+    parser.parseCommon(exactChart, sentence, null, null, -1, 1);
+    assertTrue(chart.getTotalNumChartEntries() <= exactChart.getTotalNumChartEntries());
+    assertTrue(chart.getNumAgendaItemsRemoved() < exactChart.getTotalNumChartEntries());
+  }
+
   public void testExactParse() {
     CcgParse parse = parse(parser, Arrays.asList("I", "quickly", "eat", "amazingly", "tasty", "berries"));
 
@@ -0,0 +1,109 @@
+package com.jayantkrish.jklol.inference;
+
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import com.google.common.collect.Sets;
+import com.jayantkrish.jklol.models.Factor;
+import com.jayantkrish.jklol.models.FactorGraph;
+import com.jayantkrish.jklol.tensor.Tensor;
+import com.jayantkrish.jklol.util.Pseudorandom;
+
+/**
+ * Tests for {@link ChromaticGibbsSampler}.
+ *
+ * @author jayantk
+ */
+public class ChromaticGibbsSamplerTest extends TestCase {
+
+  private static final double TOLERANCE = 0.05;
+
+  // Like GibbsSampler, this sampler is not ergodic on factor graphs
+  // with 0 probability assignments, so testBasicUnconditional() is not
+  // run.
+
+  public void testNonTreeStructuredMarginals() {
+    InferenceTestCases.testNonCliqueTreeUnconditional().runTest(
+        new ChromaticGibbsSampler(1000, 1000, 1), TOLERANCE);
+  }
+
+  public void testTriangleMarginals() {
+    InferenceTestCases.testTriangleFactorGraphMarginals().runTest(
+        new ChromaticGibbsSampler(1000, 1000, 1), TOLERANCE);
+  }
+
+  public void testMultipleChains() {
+    InferenceTestCases.testNonCliqueTreeUnconditional().runTest(
+        new ChromaticGibbsSampler(100, 300, 1, 4, 2), TOLERANCE);
+  }
+
+  public void testColors() {
+    FactorGraph chain = InferenceTestCases.randomForest(1, 300, 2);
+    int[][] colors = ChromaticGibbsSampler.getColors(chain);
+    assertEquals(2, colors.length);
+    assertValidColoring(chain, colors);
+
+    FactorGraph triangle = InferenceTestCases.triangleFactorGraph();
+    colors = ChromaticGibbsSampler.getColors(triangle);
+    assertValidColoring(triangle, colors);
+  }
+
+  public void testParallelColors() {
+    // Each color of the chain contains enough variables to be
+    // resampled in several parallel chunks.
+    FactorGraph chain = InferenceTestCases.randomForest(1, 300, 2);
+    MarginalSet expected = new JunctionTree().computeMarginals(chain);
+    MarginalSet actual = new ChromaticGibbsSampler(100, 5000, 1, 1, 4).computeMarginals(chain);
+
+    for (int varNum : chain.getVariables().getVariableNumsArray()) {
+      Tensor expectedWeights = expected.getMarginal(varNum).coerceToDiscrete().getWeights();
+      Tensor actualWeights = actual.getMarginal(varNum).coerceToDiscrete().getWeights();
+      double expectedTotal = expectedWeights.sumOutDimensions(
+          expectedWeights.getDimensionNumbers()).getByDimKey();
+      for (int j = 0; j < 2; j++) {
+        assertEquals(expectedWeights.getByDimKey(j) / expectedTotal,
+            actualWeights.getByDimKey(j), TOLERANCE);
+      }
+    }
+  }
+
+  public void testSamplesIndependentOfThreads() {
+    // Identical samples produce identical marginals.
+    FactorGraph chain = InferenceTestCases.randomForest(1, 300, 2);
+    for (int numChains : new int[] { 1, 2 }) {
+      Pseudorandom.get().setSeed(0L);
+      MarginalSet expected = new ChromaticGibbsSampler(10, 50, 1, numChains, 1)
+          .computeMarginals(chain);
+      Pseudorandom.get().setSeed(0L);
+      MarginalSet actual = new ChromaticGibbsSampler(10, 50, 1, numChains, 4)
+          .computeMarginals(chain);
+
+      for (int varNum : chain.getVariables().getVariableNumsArray()) {
+        Tensor expectedWeights = expected.getMarginal(varNum).coerceToDiscrete().getWeights();
+        Tensor actualWeights = actual.getMarginal(varNum).coerceToDiscrete().getWeights();
+        for (int j = 0; j < 2; j++) {
+          assertEquals(expectedWeights.getByDimKey(j), actualWeights.getByDimKey(j));
+        }
+      }
+    }
+  }
+
+  private static void assertValidColoring(FactorGraph factorGraph, int[][] colors) {
+    int numVars = factorGraph.getVariables().size();
+    int[] varNums = factorGraph.getVariables().getVariableNumsArray();
+    Set<Integer> coloredVarNums = Sets.newHashSet();
+    for (int[] color : colors) {
+      Set<Integer> colorVarNums = Sets.newHashSet();
+      for (int var : color) {
+        assertTrue(coloredVarNums.add(varNums[var]));
+        colorVarNums.add(varNums[var]);
+      }
+      for (Factor factor : factorGraph.getFactors()) {
+        assertTrue(Sets.intersection(colorVarNums,
+            Sets.newHashSet(factor.getVars().getVariableNums())).size() <= 1);
+      }
+    }
+    assertEquals(numVars, coloredVarNums.size());
+  }
+}
@@ -6,9 +6,11 @@ import java.util.Iterator;
 import com.jayantkrish.jklol.models.DiscreteVariable;
 import com.jayantkrish.jklol.models.FactorGraph;
 import com.jayantkrish.jklol.models.InferenceHint;
+import com.jayantkrish.jklol.models.TableFactor;
 import com.jayantkrish.jklol.models.TableFactorBuilder;
 import com.jayantkrish.jklol.models.Variable;
 import com.jayantkrish.jklol.models.VariableNumMap;
+import com.jayantkrish.jklol.tensor.DenseTensor;
 import com.jayantkrish.jklol.tensor.SparseTensorBuilder;
 import com.jayantkrish.jklol.util.AllAssignmentIterator;
 import com.jayantkrish.jklol.util.Assignment;
@@ -345,6 +347,33 @@ public class InferenceTestCases {
     return testCase;
   }
 
+  /**
+   * Creates a factor graph containing {@code numChains} disconnected
+   * chains of {@code chainLength} variables with random pairwise
+   * factors. Each variable has {@code numValues} values.
+   * 
+   * @param numChains
+   * @param chainLength
+   * @param numValues
+   * @return
+   */
+  public static FactorGraph randomForest(int numChains, int chainLength, int numValues) {
+    DiscreteVariable var = DiscreteVariable.sequence("values", numValues);
+    FactorGraph fg = new FactorGraph();
+    for (int i = 0; i < numChains; i++) {
+      for (int j = 0; j < chainLength; j++) {
+        fg = fg.addVariable("Var" + i + "_" + j, var);
+        if (j > 0) {
+          VariableNumMap vars = fg.getVariables().getVariablesByName(
+              "Var" + i + "_" + (j - 1), "Var" + i + "_" + j);
+          fg = fg.addFactor("Factor" + i + "_" + j, new TableFactor(vars, DenseTensor.random(
+              vars.getVariableNumsArray(), vars.getVariableSizes(), 1.0, 0.2)));
+        }
+      }
+    }
+    return fg;
+  }
+
   private static TableFactorBuilder softAndFactor(VariableNumMap inputs, VariableNumMap output,
       double violationLogWeight) {
     TableFactorBuilder tf = new TableFactorBuilder(inputs.union(output),
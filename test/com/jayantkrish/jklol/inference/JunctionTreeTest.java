@@ -1,11 +1,22 @@
 package com.jayantkrish.jklol.inference;
 
 import java.util.Arrays;
+import java.util.List;
 
 import junit.framework.TestCase;
 
+import com.google.common.collect.Lists;
 import com.google.common.primitives.Ints;
+import com.jayantkrish.jklol.models.DiscreteFactor;
+import com.jayantkrish.jklol.models.DiscreteVariable;
+import com.jayantkrish.jklol.models.Factor;
 import com.jayantkrish.jklol.models.FactorGraph;
+import com.jayantkrish.jklol.models.TableFactor;
+import com.jayantkrish.jklol.models.TableFactorBuilder;
+import com.jayantkrish.jklol.models.VariableNumMap;
+import com.jayantkrish.jklol.tensor.DenseTensor;
+import com.jayantkrish.jklol.tensor.SparseTensorBuilder;
+import com.jayantkrish.jklol.tensor.Tensor;
 import com.jayantkrish.jklol.util.Assignment;
 
 /**
@@ -56,5 +67,194 @@ public class JunctionTreeTest extends TestCase {
 	public void testTriangleMaxMarginals() {
 	  InferenceTestCases.testTriangleFactorGraphMaxMarginals().runTest(new JunctionTree(), 0.0);
 	}
-}
 
+	public void testCachedPlans() {
+	  // The second iteration reuses the clique tree plans cached
+	  // during the first.
+	  JunctionTree jt = new JunctionTree();
+	  for (int i = 0; i < 2; i++) {
+	    InferenceTestCases.testBasicUnconditional().runTest(jt, TOLERANCE);
+	    InferenceTestCases.testNonCliqueTreeUnconditional().runTest(jt, TOLERANCE);
+	    InferenceTestCases.testTriangleFactorGraphMarginals().runTest(jt, TOLERANCE);
+	    InferenceTestCases.testBasicConditional().runTest(jt, 0.0);
+	    InferenceTestCases.testBasicMaxMarginals().runTest(jt, 0.0);
+	    InferenceTestCases.testConditionalMaxMarginals().runTest(jt, 0.0);
+	    InferenceTestCases.testTriangleFactorGraphMaxMarginals().runTest(jt, 0.0);
+	  }
+	}
+
+	public void testParallelMessagePassing() {
+	  FactorGraph forest = InferenceTestCases.randomForest(8, 4, 3);
+	  JunctionTree sequential = new JunctionTree();
+	  JunctionTree parallel = new JunctionTree(false, null, true, 4);
+
+	  MarginalSet expected = sequential.computeMarginals(forest);
+	  MaxMarginalSet expectedMax = sequential.computeMaxMarginals(forest);
+	  // The sequential junction tree recorded the message schedule,
+	  // so every call passes messages in parallel.
+	  for (int i = 0; i < 3; i++) {
+	    MarginalSet actual = parallel.computeMarginals(forest);
+	    assertEquals(expected.getLogPartitionFunction(), actual.getLogPartitionFunction());
+	    for (int varNum : forest.getVariables().getVariableNumsArray()) {
+	      Tensor expectedWeights = expected.getMarginal(varNum).coerceToDiscrete().getWeights();
+	      Tensor actualWeights = actual.getMarginal(varNum).coerceToDiscrete().getWeights();
+	      assertEquals(expectedWeights.size(), actualWeights.size());
+	      for (int j = 0; j < expectedWeights.size(); j++) {
+	        assertEquals(expectedWeights.indexToKeyNum(j), actualWeights.indexToKeyNum(j));
+	        assertEquals(expectedWeights.getByIndex(j), actualWeights.getByIndex(j));
+	      }
+	    }
+
+	    MaxMarginalSet actualMax = parallel.computeMaxMarginals(forest);
+	    assertEquals(expectedMax.getNthBestAssignment(0), actualMax.getNthBestAssignment(0));
+	  }
+	}
+
+	public void testSharedPlans() {
+	  FactorGraph forest = InferenceTestCases.randomForest(6, 3, 3);
+	  MarginalSet expected = new JunctionTree().computeMarginals(forest);
+
+	  // Plans cached by one junction tree are reused by the others.
+	  CliqueTreePlan plan = JunctionTree.getCachedPlan(forest.getMinimalFactors());
+	  assertNotNull(plan);
+	  assertTrue(plan.hasMessageSchedule());
+	  MarginalSet actual = new JunctionTree(false, null, true, 4).computeMarginals(forest);
+	  assertSame(plan, JunctionTree.getCachedPlan(forest.getMinimalFactors()));
+	  assertEquals(expected.getLogPartitionFunction(), actual.getLogPartitionFunction());
+	}
+
+	public void testUncachedPlans() {
+	  JunctionTree jt = new JunctionTree(false, null, false);
+	  InferenceTestCases.testBasicUnconditional().runTest(jt, TOLERANCE);
+	  InferenceTestCases.testNonCliqueTreeUnconditional().runTest(jt, TOLERANCE);
+	  InferenceTestCases.testBasicMaxMarginals().runTest(jt, 0.0);
+	}
+
+	public void testLogSpace() {
+	  JunctionTree jt = new JunctionTree(false, null, true, 1, true);
+	  // The second iteration replays the recorded message schedule.
+	  for (int i = 0; i < 2; i++) {
+	    InferenceTestCases.testBasicUnconditional().runTest(jt, TOLERANCE);
+	    InferenceTestCases.testNonCliqueTreeUnconditional().runTest(jt, TOLERANCE);
+	    InferenceTestCases.testTriangleFactorGraphMarginals().runTest(jt, TOLERANCE);
+	    InferenceTestCases.testBasicConditional().runTest(jt, TOLERANCE);
+	    // Log-space max-marginals are scaled, so only the best
+	    // assignments are comparable.
+	    InferenceTestCases.testBasicMaxMarginals().runAssignmentTest(jt);
+	    InferenceTestCases.testConditionalMaxMarginals().runAssignmentTest(jt);
+	    InferenceTestCases.testTriangleFactorGraphMaxMarginals().runAssignmentTest(jt);
+	  }
+	}
+
+	public void testLogSpaceLargeWeights() {
+	  // The weights of this graph overflow doubles when they are
+	  // multiplied together.
+	  FactorGraph forest = InferenceTestCases.randomForest(1, 300, 3);
+	  List<Factor> scaledFactors = Lists.newArrayList();
+	  for (Factor factor : forest.getFactors()) {
+	    scaledFactors.add(factor.product(1e10));
+	  }
+	  FactorGraph scaled = FactorGraph.createFromFactors(scaledFactors);
+
+	  MarginalSet expected = new JunctionTree(false, null, true, 1, true).computeMarginals(forest);
+	  MarginalSet actual = new JunctionTree(false, null, true, 1, true).computeMarginals(scaled);
+	  assertEquals(expected.getLogPartitionFunction() + (299 * Math.log(1e10)),
+	      actual.getLogPartitionFunction(), 1e-6);
+	  for (int varNum : forest.getVariables().getVariableNumsArray()) {
+	    Tensor expectedWeights = expected.getMarginal(varNum).coerceToDiscrete().getWeights();
+	    Tensor actualWeights = actual.getMarginal(varNum).coerceToDiscrete().getWeights();
+	    for (int j = 0; j < expectedWeights.size(); j++) {
+	      assertEquals(expectedWeights.getByIndex(j), actualWeights.getByIndex(j), TOLERANCE);
+	    }
+	  }
+
+	  // Without log space, the partition function is infinite.
+	  assertEquals(Double.POSITIVE_INFINITY,
+	      new JunctionTree().computeMarginals(scaled).getLogPartitionFunction());
+	}
+
+	public void testLogSpaceParallel() {
+	  FactorGraph forest = InferenceTestCases.randomForest(8, 4, 3);
+	  MarginalSet expected = new JunctionTree().computeMarginals(forest);
+	  MaxMarginalSet expectedMax = new JunctionTree().computeMaxMarginals(forest);
+	  JunctionTree jt = new JunctionTree(false, null, true, 4, true);
+	  for (int i = 0; i < 3; i++) {
+	    assertEquals(expectedMax.getNthBestAssignment(0),
+	        jt.computeMaxMarginals(forest).getNthBestAssignment(0));
+
+	    MarginalSet actual = jt.computeMarginals(forest);
+	    assertEquals(expected.getLogPartitionFunction(), actual.getLogPartitionFunction(), TOLERANCE);
+	    for (int varNum : forest.getVariables().getVariableNumsArray()) {
+	      Tensor expectedWeights = expected.getMarginal(varNum).coerceToDiscrete().getWeights();
+	      Tensor actualWeights = actual.getMarginal(varNum).coerceToDiscrete().getWeights();
+	      for (int j = 0; j < expectedWeights.size(); j++) {
+	        assertEquals(expectedWeights.getByIndex(j), actualWeights.getByIndex(j), TOLERANCE);
+	      }
+	    }
+	  }
+	}
+
+	public void testLogSpaceHighDegree() {
+	  // Every leaf factor is adjacent to the factor over the hub
+	  // variables, which sends many messages at once.
+	  DiscreteVariable var = DiscreteVariable.sequence("values", 3);
+	  FactorGraph star = new FactorGraph();
+	  star = star.addVariable("Hub0", var).addVariable("Hub1", var);
+	  VariableNumMap hubVars = star.getVariables().getVariablesByName("Hub0", "Hub1");
+	  star = star.addFactor("HubFactor", new TableFactor(hubVars, DenseTensor.random(
+	      hubVars.getVariableNumsArray(), hubVars.getVariableSizes(), 1.0, 0.2)));
+	  for (int i = 0; i < 7; i++) {
+	    star = star.addVariable("Leaf" + i, var);
+	    VariableNumMap vars = star.getVariables().getVariablesByName("Hub" + (i % 2), "Leaf" + i);
+	    star = star.addFactor("Factor" + i, new TableFactor(vars, DenseTensor.random(
+	        vars.getVariableNumsArray(), vars.getVariableSizes(), 1.0, 0.2)));
+	  }
+
+	  MarginalSet expected = new JunctionTree().computeMarginals(star);
+	  JunctionTree jt = new JunctionTree(false, null, false, 1, true);
+	  MarginalSet actual = jt.computeMarginals(star);
+	  assertEquals(expected.getLogPartitionFunction(), actual.getLogPartitionFunction(), TOLERANCE);
+	  for (int varNum : star.getVariables().getVariableNumsArray()) {
+	    Tensor expectedWeights = expected.getMarginal(varNum).coerceToDiscrete().getWeights();
+	    Tensor actualWeights = actual.getMarginal(varNum).coerceToDiscrete().getWeights();
+	    for (int j = 0; j < expectedWeights.size(); j++) {
+	      assertEquals(expectedWeights.getByIndex(j), actualWeights.getByIndex(j), TOLERANCE);
+	    }
+	  }
+	}
+
+	public void testLogSpaceSparse() {
+	  // The factors are sparse, so the messages between them are sparse
+	  // and most of their keys have weight 0.
+	  DiscreteVariable var = DiscreteVariable.sequence("values", 6);
+	  FactorGraph chain = new FactorGraph();
+	  for (int i = 0; i < 5; i++) {
+	    chain = chain.addVariable("Var" + i, var);
+	    if (i > 1) {
+	      VariableNumMap vars = chain.getVariables().getVariablesByName(
+	          "Var" + (i - 2), "Var" + (i - 1), "Var" + i);
+	      TableFactorBuilder builder = new TableFactorBuilder(vars,
+	          SparseTensorBuilder.getFactory());
+	      for (int j = 0; j < 6; j++) {
+	        for (int k = 0; k < 4; k++) {
+	          int second = (j + (k / 2)) % 6;
+	          builder.setWeight(1.0 + ((i + j + k) % 3), j, second, (second + (k % 2)) % 6);
+	        }
+	      }
+	      chain = chain.addFactor("Factor" + i, builder.build());
+	    }
+	  }
+
+	  MarginalSet expected = new JunctionTree().computeMarginals(chain);
+	  MarginalSet actual = new JunctionTree(false, null, true, 1, true).computeMarginals(chain);
+	  assertEquals(expected.getLogPartitionFunction(), actual.getLogPartitionFunction(), TOLERANCE);
+	  for (int varNum : chain.getVariables().getVariableNumsArray()) {
+	    DiscreteFactor expectedMarginal = expected.getMarginal(varNum).coerceToDiscrete();
+	    DiscreteFactor actualMarginal = actual.getMarginal(varNum).coerceToDiscrete();
+	    for (int j = 0; j < 6; j++) {
+	      assertEquals(expectedMarginal.getUnnormalizedProbability(j),
+	          actualMarginal.getUnnormalizedProbability(j), TOLERANCE);
+	    }
+	  }
+	}
+}
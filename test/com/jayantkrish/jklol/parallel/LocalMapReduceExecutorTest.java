@@ -12,12 +12,16 @@ import com.jayantkrish.jklol.parallel.Reducer.SimpleReducer;
 public class LocalMapReduceExecutorTest extends TestCase {
 
   private LocalMapReduceExecutor executor;
+  private LocalMapReduceExecutor persistentExecutor;
+  private LocalMapReduceExecutor shardedExecutor;
   private List<Double> shortItems;
   private List<Double> longItems;
 
   @Override
   public void setUp() {
     executor = new LocalMapReduceExecutor(3, 2);
+    persistentExecutor = LocalMapReduceExecutor.createPersistent(3, 2);
+    shardedExecutor = LocalMapReduceExecutor.createSharded(3);
     // Has fewer than the number of batches;
     shortItems = Doubles.asList(new double[] { 0.6, 2.2, 3.3, 3.9 });
     // Has more than the number of batches;
@@ -33,6 +37,52 @@ public class LocalMapReduceExecutorTest extends TestCase {
     assertEquals(45, value);
   }
 
+  @Override
+  public void tearDown() {
+    persistentExecutor.shutdown();
+    shardedExecutor.shutdown();
+  }
+
+  public void testMapReduceSharded() {
+    int value = shardedExecutor.mapReduce(shortItems, new RoundMapper(), new SumReducer());
+    assertEquals(10, value);
+    value = shardedExecutor.mapReduce(longItems, new RoundMapper(), new SumReducer());
+    assertEquals(45, value);
+  }
+
+  public void testFilterSharded() {
+    Predicate<Double> predicate = new Predicate<Double>() {
+      @Override
+      public boolean apply(Double value) {
+        return value > 3; 
+      }
+    };
+
+    // The tree reduction must preserve the order of items.
+    List<Double> result = shardedExecutor.filter(longItems, predicate);
+    assertEquals(Doubles.asList(3.3, 3.9, 5.1, 6.1, 7.2, 8.3, 9.4), result);
+  }
+
+  public void testMapReducePersistent() {
+    // Repeatedly use the same pool.
+    for (int i = 0; i < 10; i++) {
+      int value = persistentExecutor.mapReduce(shortItems, new RoundMapper(), new SumReducer());
+      assertEquals(10, value);
+      value = persistentExecutor.mapReduce(longItems, new RoundMapper(), new SumReducer());
+      assertEquals(45, value);
+    }
+  }
+
+  public void testMapPersistentAfterShutdown() {
+    List<Integer> result = persistentExecutor.map(shortItems, new RoundMapper());
+    assertEquals(Ints.asList(1, 2, 3, 4), result);
+
+    // The executor remains usable after shutdown.
+    persistentExecutor.shutdown();
+    result = persistentExecutor.map(longItems, new RoundMapper());
+    assertEquals(Ints.asList(1, 2, 3, 4, 5, 6, 7, 8, 9), result);
+  }
+
   public void testMap() {
     List<Integer> result = executor.map(shortItems, new RoundMapper());
     assertEquals(Ints.asList(1, 2, 3, 4), result);
@@ -0,0 +1,198 @@
+package com.jayantkrish.jklol.sequence;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import com.google.common.base.Function;
+import com.google.common.base.Functions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.jayantkrish.jklol.evaluation.Example;
+import com.jayantkrish.jklol.models.DiscreteVariable;
+import com.jayantkrish.jklol.models.dynamic.DynamicAssignment;
+import com.jayantkrish.jklol.models.parametric.ParametricFactorGraph;
+import com.jayantkrish.jklol.preprocessing.DictionaryFeatureVectorGenerator;
+import com.jayantkrish.jklol.preprocessing.FeatureGenerator;
+import com.jayantkrish.jklol.preprocessing.FeatureVectorGenerator;
+import com.jayantkrish.jklol.tensor.DenseTensorBuilder;
+import com.jayantkrish.jklol.training.GradientOptimizer;
+import com.jayantkrish.jklol.training.Lbfgs;
+import com.jayantkrish.jklol.training.NullLogFunction;
+
+/**
+ * Tests that {@link FactorGraphSequenceTagger} produces the same
+ * predictions using linear-chain inference as using inference on the
+ * instantiated factor graph.
+ *
+ * @author jayantk
+ */
+public class FactorGraphSequenceTaggerTest extends TestCase {
+
+  private final String[][] trainingInputs = {{"the", "man"}, {"the", "big", "man"},
+      {"man", "the", "man"}};
+  private final String[][] trainingLabels = {{"DT", "NN"}, {"DT", "JJ", "NN"},
+      {"VB", "DT", "NN"}};
+  private final String[][] testInputs = {{"the", "man"}, {"the", "big", "man"},
+      {"big", "the", "man", "man"}, {"man"}, {"the", "the", "big", "big", "man"}};
+
+  private static final String START_INPUT = "START";
+  private static final String START_LABEL = "START_POS";
+
+  private List<TaggedSequence<String, String>> trainingSequences;
+  private FeatureVectorGenerator<LocalContext<String>> featureGen;
+  private Set<String> labels;
+  private GradientOptimizer optimizer;
+
+  public void setUp() {
+    trainingSequences = Lists.newArrayList();
+    labels = Sets.newTreeSet();
+    labels.add(START_LABEL);
+    for (int i = 0; i < trainingInputs.length; i++) {
+      trainingSequences.add(new ListTaggedSequence<String, String>(
+          Arrays.asList(trainingInputs[i]), Arrays.asList(trainingLabels[i])));
+      labels.addAll(Arrays.asList(trainingLabels[i]));
+    }
+    featureGen = DictionaryFeatureVectorGenerator.createFromData(
+        TaggerUtils.extractContextsFromData(trainingSequences), new WordFeatureGenerator(), true);
+    optimizer = new Lbfgs(20, 10, 0.0001, new NullLogFunction());
+  }
+
+  public void testCrf() {
+    ParametricFactorGraph family = TaggerUtils.buildFeaturizedSequenceModel(labels,
+        featureGen.getFeatureDictionary(), false, false);
+    runTaggerTest(train(family, TaggerUtils.getDefaultInputGenerator(), null, null), true);
+  }
+
+  public void testCrfWithStart() {
+    ParametricFactorGraph family = TaggerUtils.buildFeaturizedSequenceModel(labels,
+        featureGen.getFeatureDictionary(), false, false);
+    runTaggerTest(train(family, TaggerUtils.getDefaultInputGenerator(), START_INPUT, START_LABEL),
+        true);
+  }
+
+  public void testMemm() {
+    ParametricFactorGraph family = TaggerUtils.buildFeaturizedSequenceModel(labels,
+        featureGen.getFeatureDictionary(), false, true);
+    runTaggerTest(train(family, TaggerUtils.getDefaultInputGenerator(), START_INPUT, START_LABEL),
+        true);
+  }
+
+  public void testLabelRestrictions() {
+    // "the" may only be labeled DT.
+    DiscreteVariable inputType = new DiscreteVariable("inputs",
+        Arrays.asList(START_INPUT, "the", "big", "man"));
+    DiscreteVariable labelType = new DiscreteVariable("labels", labels);
+    DenseTensorBuilder restrictions = new DenseTensorBuilder(new int[] {0, 1},
+        new int[] {inputType.numValues(), labelType.numValues()}, 1.0);
+    for (int i = 0; i < labelType.numValues(); i++) {
+      if (!labelType.getValue(i).equals("DT")) {
+        restrictions.put(new int[] {inputType.getValueIndex("the"), i}, 0.0);
+      }
+    }
+
+    ParametricFactorGraph family = TaggerUtils.buildFeaturizedSequenceModel(inputType, labelType,
+        featureGen.getFeatureDictionary(), restrictions.build(), false, false);
+    FactorGraphSequenceTagger<String, String> tagger = train(family, new ItemInputGenerator(),
+        START_INPUT, START_LABEL);
+    // Max-marginals of the factor graph are not computed correctly for
+    // some inputs where the restrictions remove labels, so only the
+    // marginals are compared.
+    runTaggerTest(tagger, false);
+
+    TaggedSequence<String, String> tagged = tagger.tag(Arrays.asList("the", "the", "the"));
+    assertEquals(Arrays.asList("DT", "DT", "DT"), tagged.getLabels());
+  }
+
+  public void testKBest() {
+    ParametricFactorGraph family = TaggerUtils.buildFeaturizedSequenceModel(labels,
+        featureGen.getFeatureDictionary(), false, false);
+    FactorGraphSequenceTagger<String, String> tagger = train(family,
+        TaggerUtils.getDefaultInputGenerator(), START_INPUT, START_LABEL);
+
+    List<String> items = Arrays.asList("the", "big", "man");
+    List<TaggedSequence<String, String>> best = tagger.tagKBest(items, 5);
+    assertEquals(5, best.size());
+    assertEquals(tagger.tag(items).getLabels(), best.get(0).getLabels());
+    for (int i = 0; i < best.size(); i++) {
+      assertEquals(3, best.get(i).getLabels().size());
+      for (int j = 0; j < i; j++) {
+        assertFalse(best.get(i).getLabels().equals(best.get(j).getLabels()));
+      }
+    }
+  }
+
+  private FactorGraphSequenceTagger<String, String> train(ParametricFactorGraph family,
+      Function<? super LocalContext<String>, ? extends Object> inputGen, String startInput,
+      String startLabel) {
+    List<Example<DynamicAssignment, DynamicAssignment>> examples = TaggerUtils.reformatTrainingData(
+        trainingSequences, featureGen, inputGen, family.getVariables(), startInput, startLabel);
+    return TaggerUtils.trainSequenceModel(family, examples, String.class, featureGen, inputGen,
+        startInput, startLabel, optimizer, false);
+  }
+
+  private void runTaggerTest(FactorGraphSequenceTagger<String, String> tagger,
+      boolean compareBestLabels) {
+    for (int i = 0; i < testInputs.length; i++) {
+      List<String> items = Arrays.asList(testInputs[i]);
+      if (compareBestLabels) {
+        assertEquals(tagger.tagWithFactorGraph(items).getLabels(), tagger.tag(items).getLabels());
+      }
+
+      for (double threshold : new double[] {0.0, 0.01, 0.5, 1.0}) {
+        MultitaggedSequence<String, String> expected = tagger.multitagWithFactorGraph(items, threshold);
+        MultitaggedSequence<String, String> actual = tagger.multitag(items, threshold);
+        assertEquals(expected.getLabels().size(), actual.getLabels().size());
+        if (threshold == 0.0) {
+          assertNormalized(expected);
+          assertNormalized(actual);
+        }
+        for (int j = 0; j < expected.getLabels().size(); j++) {
+          assertEquals(Sets.newHashSet(expected.getLabels().get(j)),
+              Sets.newHashSet(actual.getLabels().get(j)));
+          assertEquals(expected.getLabels().get(j).get(0), actual.getLabels().get(j).get(0));
+
+          List<Double> expectedProbs = expected.getLabelProbabilities().get(j);
+          List<Double> actualProbs = actual.getLabelProbabilities().get(j);
+          assertEquals(expectedProbs.size(), actualProbs.size());
+          for (int k = 0; k < expectedProbs.size(); k++) {
+            assertEquals(expectedProbs.get(k), actualProbs.get(k), 1e-6);
+          }
+        }
+      }
+    }
+  }
+
+  private static void assertNormalized(MultitaggedSequence<String, String> sequence) {
+    for (List<Double> probs : sequence.getLabelProbabilities()) {
+      double sum = 0.0;
+      for (double prob : probs) {
+        sum += prob;
+      }
+      assertEquals(1.0, sum, 1e-6);
+    }
+  }
+
+  private static class WordFeatureGenerator implements FeatureGenerator<LocalContext<String>, String> {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public Map<String, Double> generateFeatures(LocalContext<String> item) {
+      Map<String, Double> map = Maps.newHashMap();
+      map.put("word=" + item.getItem(), 1.0);
+      map.put("prev=" + item.getItem(-1, Functions.constant("<S>")), 1.0);
+      return map;
+    }
+  }
+
+  private static class ItemInputGenerator implements Function<LocalContext<String>, String> {
+    @Override
+    public String apply(LocalContext<String> context) {
+      return context.getItem();
+    }
+  }
+}
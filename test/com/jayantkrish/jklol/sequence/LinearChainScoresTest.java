@@ -0,0 +1,148 @@
+package com.jayantkrish.jklol.sequence;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link LinearChainScores}, which compare the
+ * results of inference to brute-force enumeration of all label
+ * sequences.
+ *
+ * @author jayantk
+ */
+public class LinearChainScoresTest extends TestCase {
+
+  private static final int NUM_LABELS = 3;
+  private static final int LENGTH = 5;
+
+  LinearChainScores scores, constrainedScores;
+
+  public void setUp() {
+    Random random = new Random(0);
+    double[][] unary = new double[LENGTH][NUM_LABELS];
+    double[][] transitions = new double[LENGTH][];
+    double[][] constrainedUnary = new double[LENGTH][];
+    double[] sharedTransitions = new double[NUM_LABELS * NUM_LABELS];
+    for (int i = 0; i < sharedTransitions.length; i++) {
+      sharedTransitions[i] = random.nextGaussian();
+    }
+    for (int i = 0; i < LENGTH; i++) {
+      for (int j = 0; j < NUM_LABELS; j++) {
+        unary[i][j] = random.nextGaussian();
+      }
+      if (i > 0) {
+        transitions[i] = (i % 2 == 0) ? sharedTransitions : randomScores(random);
+      }
+      constrainedUnary[i] = Arrays.copyOf(unary[i], NUM_LABELS);
+    }
+    scores = new LinearChainScores(NUM_LABELS, unary, transitions);
+
+    // Label 0 is not allowed after label 1, and position 2
+    // cannot be label 2.
+    double[][] constrainedTransitions = new double[LENGTH][];
+    for (int i = 1; i < LENGTH; i++) {
+      constrainedTransitions[i] = Arrays.copyOf(transitions[i], transitions[i].length);
+      constrainedTransitions[i][1 * NUM_LABELS + 0] = Double.NEGATIVE_INFINITY;
+    }
+    constrainedUnary[2][2] = Double.NEGATIVE_INFINITY;
+    constrainedScores = new LinearChainScores(NUM_LABELS, constrainedUnary, constrainedTransitions);
+  }
+
+  public void testBestLabels() {
+    runBestLabelsTest(scores);
+    runBestLabelsTest(constrainedScores);
+  }
+
+  public void testKBest() {
+    runKBestTest(scores, 10);
+    runKBestTest(constrainedScores, 10);
+    // Requesting more sequences than exist returns all of them.
+    runKBestTest(scores, 1000);
+    assertEquals(243, scores.getBestLabels(1000).length);
+  }
+
+  public void testMarginals() {
+    runMarginalsTest(scores);
+    runMarginalsTest(constrainedScores);
+  }
+
+  public void testEmpty() {
+    LinearChainScores empty = new LinearChainScores(NUM_LABELS, new double[0][], new double[0][]);
+    assertEquals(0, empty.getBestLabels().length);
+    assertEquals(0, empty.getMarginals().length);
+  }
+
+  private void runBestLabelsTest(LinearChainScores chain) {
+    int[][] sequences = enumerateSequences();
+    double bestScore = Double.NEGATIVE_INFINITY;
+    for (int[] sequence : sequences) {
+      bestScore = Math.max(bestScore, chain.getLogScore(sequence));
+    }
+    assertEquals(bestScore, chain.getLogScore(chain.getBestLabels()), 1e-10);
+    assertTrue(Arrays.equals(chain.getBestLabels(), chain.getBestLabels(1)[0]));
+  }
+
+  private void runKBestTest(LinearChainScores chain, int k) {
+    int[][] sequences = enumerateSequences();
+    double[] sequenceScores = new double[sequences.length];
+    int numPossible = 0;
+    for (int i = 0; i < sequences.length; i++) {
+      sequenceScores[i] = chain.getLogScore(sequences[i]);
+      if (sequenceScores[i] != Double.NEGATIVE_INFINITY) {
+        numPossible++;
+      }
+    }
+    Arrays.sort(sequenceScores);
+
+    int[][] best = chain.getBestLabels(k);
+    assertEquals(Math.min(k, numPossible), best.length);
+    for (int i = 0; i < best.length; i++) {
+      assertEquals(sequenceScores[sequenceScores.length - 1 - i], chain.getLogScore(best[i]), 1e-10);
+      for (int j = 0; j < i; j++) {
+        assertFalse(Arrays.equals(best[i], best[j]));
+      }
+    }
+  }
+
+  private void runMarginalsTest(LinearChainScores chain) {
+    double[][] expected = new double[LENGTH][NUM_LABELS];
+    double partitionFunction = 0.0;
+    for (int[] sequence : enumerateSequences()) {
+      double prob = Math.exp(chain.getLogScore(sequence));
+      partitionFunction += prob;
+      for (int i = 0; i < LENGTH; i++) {
+        expected[i][sequence[i]] += prob;
+      }
+    }
+
+    double[][] actual = chain.getMarginals();
+    for (int i = 0; i < LENGTH; i++) {
+      for (int j = 0; j < NUM_LABELS; j++) {
+        assertEquals(expected[i][j] / partitionFunction, actual[i][j], 1e-10);
+      }
+    }
+  }
+
+  private static int[][] enumerateSequences() {
+    int numSequences = (int) Math.pow(NUM_LABELS, LENGTH);
+    int[][] sequences = new int[numSequences][LENGTH];
+    for (int i = 0; i < numSequences; i++) {
+      int remaining = i;
+      for (int j = 0; j < LENGTH; j++) {
+        sequences[i][j] = remaining % NUM_LABELS;
+        remaining /= NUM_LABELS;
+      }
+    }
+    return sequences;
+  }
+
+  private static double[] randomScores(Random random) {
+    double[] values = new double[NUM_LABELS * NUM_LABELS];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = random.nextGaussian();
+    }
+    return values;
+  }
+}
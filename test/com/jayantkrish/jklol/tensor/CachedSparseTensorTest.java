@@ -1,8 +1,98 @@
 package com.jayantkrish.jklol.tensor;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Base64;
+
 public class CachedSparseTensorTest extends TensorTest {
 
+  // A CachedSparseTensor with dimensions {0, 2} of sizes {2, 3} and
+  // values [0, 1] = 2.0, [1, 0] = 3.0, [1, 2] = 5.0, serialized by
+  // the version of this class that cached every permutation in a
+  // HashMap.
+  private static final String BASELINE_SERIALIZED_TENSOR =
+      "rO0ABXNyAC9jb20uamF5YW50a3Jpc2guamtsb2wudGVuc29yLkNhY2hlZFNwYXJzZVRlbnNvcm+Q"
+      + "YE5YGu1KAgABTAALdGVuc29yQ2FjaGV0AA9MamF2YS91dGlsL01hcDt4cgApY29tLmpheWFudGty"
+      + "aXNoLmprbG9sLnRlbnNvci5TcGFyc2VUZW5zb3I+e4f9+2Ug4QIAAlsAB2tleU51bXN0AAJbSlsA"
+      + "BnZhbHVlc3QAAltEeHIAK2NvbS5qYXlhbnRrcmlzaC5qa2xvbC50ZW5zb3IuQWJzdHJhY3RUZW5z"
+      + "b3LjMhZVV5SIyAIAAHhyAC9jb20uamF5YW50a3Jpc2guamtsb2wudGVuc29yLkFic3RyYWN0VGVu"
+      + "c29yQmFzZQN9/D/Esi+AAgADWwAKZGltZW5zaW9uc3QAAltJWwAMaW5kZXhPZmZzZXRzcQB+AANb"
+      + "AAVzaXplc3EAfgAHeHB1cgACW0lNumAmduqypQIAAHhwAAAAAgAAAAAAAAACdXIAAltKeCAEtRKx"
+      + "dZMCAAB4cAAAAAIAAAAAAAAAAwAAAAAAAAABdXEAfgAJAAAAAgAAAAIAAAADdXEAfgALAAAAAwAA"
+      + "AAAAAAABAAAAAAAAAAMAAAAAAAAABXVyAAJbRD6mjBSrY1oeAgAAeHAAAAADQAAAAAAAAABACAAA"
+      + "AAAAAEAUAAAAAAAAc3IAEWphdmEudXRpbC5IYXNoTWFwBQfawcMWYNEDAAJGAApsb2FkRmFjdG9y"
+      + "SQAJdGhyZXNob2xkeHA/QAAAAAAAA3cIAAAABAAAAAJzcgAwY29tLmdvb2dsZS5jb21tb24ucHJp"
+      + "bWl0aXZlcy5JbnRzJEludEFycmF5QXNMaXN0AAAAAAAAAAACAANJAANlbmRJAAVzdGFydFsABWFy"
+      + "cmF5cQB+AAd4cAAAAAIAAAAAdXEAfgAJAAAAAgAAAAEAAAAAc3EAfgACdXEAfgAJAAAAAgAAAAAA"
+      + "AAABdXEAfgALAAAAAgAAAAAAAAACAAAAAAAAAAF1cQB+AAkAAAACAAAAAwAAAAJ1cQB+AAsAAAAD"
+      + "AAAAAAAAAAEAAAAAAAAAAgAAAAAAAAAFdXEAfgAPAAAAA0AIAAAAAAAAQAAAAAAAAABAFAAAAAAA"
+      + "AHNxAH4AEwAAAAIAAAAAdXEAfgAJAAAAAgAAAAAAAAABc3EAfgACdXEAfgAJAAAAAgAAAAAAAAAB"
+      + "dXEAfgALAAAAAgAAAAAAAAADAAAAAAAAAAF1cQB+AAkAAAACAAAAAgAAAANxAH4ADnEAfgAQeA==";
+
   public CachedSparseTensorTest() {
     super(CachedSparseTensor.getFactory());
   }
+
+  public void testDeserializeBaseline() throws Exception {
+    Object object = deserialize(Base64.getDecoder().decode(BASELINE_SERIALIZED_TENSOR));
+    assertTrue(object instanceof CachedSparseTensor);
+    checkDeserializedTensor((CachedSparseTensor) object);
+  }
+
+  public void testSerializationRoundTrip() throws Exception {
+    CachedSparseTensor tensor = getExpectedTensor();
+    // Populate the permutation cache before serializing.
+    tensor.relabelDimensions(new int[] {2, 0});
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream(bytes);
+    out.writeObject(tensor);
+    out.close();
+    checkDeserializedTensor((CachedSparseTensor) deserialize(bytes.toByteArray()));
+  }
+
+  public void testRelabelSharesArrays() {
+    CachedSparseTensor tensor = getExpectedTensor();
+
+    // Relabelings that preserve the order of the dimensions share
+    // the arrays of the tensor.
+    SparseTensor sameOrder = tensor.relabelDimensions(new int[] {3, 5});
+    assertSame(tensor.getKeyNums(), sameOrder.getKeyNums());
+    assertSame(tensor.getValues(), sameOrder.getValues());
+
+    // Other relabelings share the arrays of a cached copy.
+    SparseTensor reordered = tensor.relabelDimensions(new int[] {2, 0});
+    SparseTensor reorderedAgain = tensor.relabelDimensions(new int[] {4, 1});
+    assertSame(reordered.getKeyNums(), reorderedAgain.getKeyNums());
+    assertSame(reordered.getValues(), reorderedAgain.getValues());
+    assertEquals(5.0, reordered.getByDimKey(2, 1));
+    assertEquals(5.0, reorderedAgain.getByDimKey(2, 1));
+  }
+
+  private static CachedSparseTensor getExpectedTensor() {
+    SparseTensorBuilder builder = new SparseTensorBuilder(new int[] {0, 2}, new int[] {2, 3});
+    builder.put(new int[] {0, 1}, 2.0);
+    builder.put(new int[] {1, 0}, 3.0);
+    builder.put(new int[] {1, 2}, 5.0);
+    return CachedSparseTensor.cacheAllPermutations(builder.build());
+  }
+
+  private static void checkDeserializedTensor(CachedSparseTensor tensor) {
+    CachedSparseTensor expected = getExpectedTensor();
+    assertEquals(expected, tensor);
+    assertEquals(expected.relabelDimensions(new int[] {2, 0}),
+        tensor.relabelDimensions(new int[] {2, 0}));
+    assertEquals(expected.slice(new int[] {2}, new int[] {0}),
+        tensor.slice(new int[] {2}, new int[] {0}));
+  }
+
+  private static Object deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+    ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+    Object object = in.readObject();
+    in.close();
+    return object;
+  }
 }
@@ -0,0 +1,123 @@
+package com.jayantkrish.jklol.tensor;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import junit.framework.TestCase;
+
+import com.google.common.collect.Lists;
+import com.jayantkrish.jklol.tensor.CompactValues.Encoding;
+import com.jayantkrish.jklol.tensor.TensorBase.KeyValue;
+
+/**
+ * Unit tests for {@link CompactSparseTensor} and
+ * {@link CompactDenseTensor}.
+ *
+ * @author jayantk
+ */
+public class CompactTensorTest extends TestCase {
+
+  SparseTensor sparse, vector, matrix;
+  DenseTensor dense;
+
+  public void setUp() {
+    SparseTensorBuilder builder = new SparseTensorBuilder(new int[] {1, 3, 4},
+        new int[] {5, 6, 7});
+    for (int i = 0; i < 5 * 6 * 7; i += 3) {
+      builder.put(new int[] {i / 42, (i / 7) % 6, i % 7}, i + 0.5);
+    }
+    sparse = builder.build();
+
+    builder = new SparseTensorBuilder(new int[] {1}, new int[] {5});
+    builder.put(new int[] {1}, 2.0);
+    builder.put(new int[] {3}, 0.5);
+    vector = builder.build();
+
+    builder = new SparseTensorBuilder(new int[] {1, 3}, new int[] {5, 6});
+    builder.put(new int[] {0, 2}, 2.0);
+    builder.put(new int[] {4, 5}, -1.0);
+    matrix = builder.build();
+
+    double[] values = new double[5 * 6];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = i % 4;
+    }
+    dense = new DenseTensor(new int[] {2, 3}, new int[] {5, 6}, values);
+  }
+
+  public void testFromTensor() {
+    assertTrue(CompactTensor.fromTensor(sparse, Encoding.FLOAT32) instanceof CompactSparseTensor);
+    assertTrue(CompactTensor.fromTensor(dense, Encoding.FLOAT32) instanceof CompactDenseTensor);
+    assertEquals(sparse, CompactTensor.fromTensor(sparse, Encoding.FLOAT32).toDoubleTensor());
+    assertEquals(dense, CompactTensor.fromTensor(dense, Encoding.FLOAT32).toDoubleTensor());
+  }
+
+  public void testGet() {
+    for (Tensor tensor : Lists.<Tensor>newArrayList(sparse, dense)) {
+      for (Encoding encoding : Encoding.values()) {
+        CompactTensor compact = CompactTensor.fromTensor(tensor, encoding);
+        assertEquals(tensor.size(), compact.size());
+        assertTrue(Arrays.equals(tensor.getDimensionNumbers(), compact.getDimensionNumbers()));
+        for (long i = 0; i < tensor.getMaxKeyNum(); i++) {
+          assertEquals(tensor.get(i), compact.get(i), 0.02 * (1 + Math.abs(tensor.get(i))));
+          assertEquals(tensor.keyNumToIndex(i), compact.keyNumToIndex(i));
+          assertEquals(tensor.getNearestIndex(i), compact.getNearestIndex(i));
+          assertEquals(compact.get(i), compact.toHash().get(i));
+        }
+      }
+    }
+  }
+
+  public void testKeyValueIterator() {
+    for (Tensor tensor : Lists.<Tensor>newArrayList(sparse, dense)) {
+      CompactTensor compact = CompactTensor.fromTensor(tensor, Encoding.FLOAT32);
+      runIteratorTest(tensor.keyValueIterator(), compact.keyValueIterator());
+      runIteratorTest(tensor.keyValuePrefixIterator(new int[] {2}),
+          compact.keyValuePrefixIterator(new int[] {2}));
+      runIteratorTest(tensor.keyValuePrefixIterator(new int[] {4, 5}),
+          compact.keyValuePrefixIterator(new int[] {4, 5}));
+    }
+  }
+
+  private void runIteratorTest(Iterator<KeyValue> expected, Iterator<KeyValue> actual) {
+    while (expected.hasNext()) {
+      assertTrue(actual.hasNext());
+      KeyValue expectedKeyValue = expected.next();
+      KeyValue actualKeyValue = actual.next();
+      assertTrue(Arrays.equals(expectedKeyValue.getKey(), actualKeyValue.getKey()));
+      assertEquals(expectedKeyValue.getValue(), actualKeyValue.getValue());
+    }
+    assertFalse(actual.hasNext());
+  }
+
+  public void testInnerProduct() {
+    CompactTensor compact = CompactTensor.fromTensor(sparse, Encoding.FLOAT32);
+    assertEquals(sparse.innerProduct(vector), compact.innerProduct(vector));
+    assertEquals(sparse.innerProduct(matrix), compact.innerProduct(matrix));
+    assertEquals(sparse.innerProduct(sparse).getByDimKey(),
+        compact.innerProduct(sparse).getByDimKey());
+  }
+
+  public void testDecodedOperations() {
+    CompactTensor compact = CompactTensor.fromTensor(sparse, Encoding.FLOAT32);
+    assertEquals(sparse.elementwiseProduct(matrix), compact.elementwiseProduct(matrix));
+    assertEquals(sparse.sumOutDimensions(Arrays.asList(3)),
+        compact.sumOutDimensions(Arrays.asList(3)));
+    assertEquals(sparse.getL2Norm(), compact.getL2Norm(), 1e-10);
+    assertEquals(sparse.getTrace(), compact.getTrace(), 1e-10);
+  }
+
+  public void testDecodedTensorCached() {
+    for (Tensor tensor : Lists.<Tensor>newArrayList(sparse, dense)) {
+      CompactTensor compact = CompactTensor.fromTensor(tensor, Encoding.FLOAT32);
+      Tensor decoded = compact.getDecodedTensor();
+      assertEquals(tensor, decoded);
+      assertSame(decoded, compact.getDecodedTensor());
+
+      // The cache is not serialized.
+      CompactTensor copy = CompactTensor.compactObject(compact, Encoding.FLOAT32, null);
+      assertEquals(tensor, copy.getDecodedTensor());
+      assertEquals(tensor.elementwiseProduct(tensor), copy.elementwiseProduct(tensor));
+    }
+  }
+}
@@ -0,0 +1,160 @@
+package com.jayantkrish.jklol.tensor;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.google.common.collect.Lists;
+import com.jayantkrish.jklol.models.DiscreteVariable;
+import com.jayantkrish.jklol.models.TableFactor;
+import com.jayantkrish.jklol.models.VariableNumMap;
+import com.jayantkrish.jklol.tensor.CompactTensor.CompactionStatistics;
+import com.jayantkrish.jklol.tensor.CompactValues.Encoding;
+
+/**
+ * Unit tests for {@link CompactValues} and the conversion of tensors
+ * to {@link CompactTensor}s.
+ *
+ * @author jayantk
+ */
+public class CompactValuesTest extends TestCase {
+
+  double[] probabilities, weights, constant;
+  SparseTensor sparse;
+  DenseTensor dense;
+
+  public void setUp() {
+    Random random = new Random(0);
+    probabilities = new double[1000];
+    weights = new double[1000];
+    for (int i = 0; i < probabilities.length; i++) {
+      // Probabilities span several orders of magnitude and include 0.
+      probabilities[i] = (i % 10 == 0) ? 0.0 : Math.exp(-20 * random.nextDouble());
+      weights[i] = (random.nextDouble() * 10) - 5;
+    }
+    constant = new double[] {3.0, 3.0, 3.0};
+
+    SparseTensorBuilder builder = new SparseTensorBuilder(new int[] {0, 2},
+        new int[] {100, 100});
+    for (int i = 0; i < weights.length; i++) {
+      builder.put(new int[] {(i * 7) % 100, i % 100}, weights[i]);
+    }
+    sparse = builder.build();
+    dense = new DenseTensor(new int[] {1, 3}, new int[] {100, 10}, probabilities);
+  }
+
+  public void testFloat32() {
+    CompactValues values = CompactValues.encode(weights, Encoding.FLOAT32);
+    assertEquals(Encoding.FLOAT32, values.getEncoding());
+    assertEquals(weights.length * 4, values.getNumBytes());
+    for (int i = 0; i < weights.length; i++) {
+      assertEquals((float) weights[i], (float) values.get(i));
+    }
+  }
+
+  public void testQuantizedLinear() {
+    runQuantizedLinearTest(Encoding.QUANTIZED16);
+    runQuantizedLinearTest(Encoding.QUANTIZED8);
+  }
+
+  private void runQuantizedLinearTest(Encoding encoding) {
+    CompactValues values = CompactValues.encode(weights, encoding);
+    assertEquals(weights.length * encoding.getNumBits() / 8, values.getNumBytes());
+    // weights range over 10 units, split into 2^numBits - 2 steps
+    // (code 0 represents 0.0).
+    double maxError = 5.0 / ((1 << encoding.getNumBits()) - 2);
+    for (int i = 0; i < weights.length; i++) {
+      assertEquals(weights[i], values.get(i), maxError);
+    }
+  }
+
+  public void testQuantizedLog() {
+    runQuantizedLogTest(Encoding.QUANTIZED16, 0.001);
+    runQuantizedLogTest(Encoding.QUANTIZED8, 0.05);
+  }
+
+  private void runQuantizedLogTest(Encoding encoding, double maxRelativeError) {
+    CompactValues values = CompactValues.encode(probabilities, encoding);
+    for (int i = 0; i < probabilities.length; i++) {
+      if (probabilities[i] == 0.0) {
+        assertEquals(0.0, values.get(i));
+      } else {
+        assertEquals(probabilities[i], values.get(i), probabilities[i] * maxRelativeError);
+      }
+    }
+  }
+
+  public void testQuantizedConstant() {
+    for (Encoding encoding : Encoding.values()) {
+      CompactValues values = CompactValues.encode(constant, encoding);
+      assertTrue(Arrays.equals(constant, values.toArray()));
+      assertEquals(0, CompactValues.encode(new double[0], encoding).size());
+    }
+  }
+
+  public void testSelect() {
+    for (Encoding encoding : Encoding.values()) {
+      CompactValues values = CompactValues.encode(weights, encoding);
+      CompactValues selected = values.select(new int[] {5, -1, 0, 5});
+      assertEquals(4, selected.size());
+      assertEquals(values.get(5), selected.get(0));
+      assertEquals(0.0, selected.get(1));
+      assertEquals(values.get(0), selected.get(2));
+      assertEquals(values.get(5), selected.get(3));
+    }
+  }
+
+  public void testCompactTensorHash() {
+    for (Encoding encoding : Encoding.values()) {
+      CompactSparseTensor tensor = CompactSparseTensor.fromTensor(sparse, encoding);
+      TensorHash hash = tensor.toHash();
+      for (long i = 0; i < sparse.getMaxKeyNum(); i++) {
+        assertEquals(tensor.get(i), hash.get(i));
+      }
+
+      // Compacting a hash table of the original tensor produces the
+      // same values.
+      TensorHash compactHash = RobinHoodTensorHash.fromTensor(sparse).toCompactHash(encoding);
+      for (long i = 0; i < sparse.getMaxKeyNum(); i++) {
+        assertEquals(tensor.get(i), compactHash.get(i));
+      }
+    }
+  }
+
+  public void testCompactObject() {
+    DiscreteVariable var = new DiscreteVariable("var", Arrays.asList("a", "b", "c"));
+    VariableNumMap vars = new VariableNumMap(Arrays.asList(5), Arrays.asList("v"),
+        Arrays.asList(var));
+    TableFactor factor = new TableFactor(vars, new DenseTensor(new int[] {5}, new int[] {3},
+        new double[] {0.25, 0.5, 1.0}));
+
+    List<Object> model = Lists.<Object>newArrayList(sparse, dense, factor,
+        RobinHoodTensorHash.fromTensor(sparse));
+    CompactionStatistics stats = new CompactionStatistics();
+    List<Object> compact = CompactTensor.compactObject(model, Encoding.QUANTIZED16, stats);
+
+    assertEquals(4, stats.getNumTensors());
+    assertEquals(sparse.size() + dense.size() + 3
+        + ((RobinHoodTensorHash) model.get(3)).getNumSlots(), stats.getNumValues());
+    assertEquals(stats.getNumValues() * 8, stats.getOriginalBytes());
+    assertEquals(stats.getNumValues() * 2, stats.getCompactBytes());
+    assertTrue(stats.getMaxAbsoluteError() > 0.0);
+    assertTrue(stats.getMaxAbsoluteError() < 0.001);
+
+    assertTrue(compact.get(0) instanceof CompactSparseTensor);
+    assertTrue(compact.get(1) instanceof CompactDenseTensor);
+    assertTrue(compact.get(3) instanceof CompactTensorHash);
+    Tensor compactSparse = (Tensor) compact.get(0);
+    for (long i = 0; i < sparse.getMaxKeyNum(); i++) {
+      assertEquals(sparse.get(i), compactSparse.get(i), 0.001);
+      assertEquals(sparse.get(i), ((TensorHash) compact.get(3)).get(i), 0.001);
+    }
+
+    TableFactor compactFactor = (TableFactor) compact.get(2);
+    assertTrue(compactFactor.getWeights() instanceof CompactDenseTensor);
+    assertEquals(factor.getUnnormalizedProbability("b"),
+        compactFactor.getUnnormalizedProbability("b"), 0.001);
+  }
+}
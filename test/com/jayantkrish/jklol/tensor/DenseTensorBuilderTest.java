@@ -1,9 +1,9 @@
 package com.jayantkrish.jklol.tensor;
 
 /**
- * Unit tests for {@link DenseTensorBuilder}. Actual test cases are in the
+ * Unit tests for {@link DenseTensorBuilder}. Most test cases are in the
  * superclass, {@link TensorBuilderTest}.
- * 
+ *
  * @author jayantk
  */
 public class DenseTensorBuilderTest extends TensorBuilderTest {
@@ -11,4 +11,48 @@ public class DenseTensorBuilderTest extends TensorBuilderTest {
   public DenseTensorBuilderTest() {
     super(DenseTensorBuilder.getFactory());
   }
+
+  public void testRescaleMatchesMultiply() {
+    DenseTensorBuilder rescaled = (DenseTensorBuilder) builder.getCopy();
+    DenseTensorBuilder multiplied = (DenseTensorBuilder) builder.getCopy();
+    DenseTensorBuilder other = (DenseTensorBuilder) builder.getCopy();
+    other.rescale(3.0);
+
+    for (int i = 0; i < 20; i++) {
+      rescaled.rescale(0.5);
+      multiplied.multiply(0.5);
+      rescaled.incrementEntry(1.0, 1, 2, 0);
+      multiplied.incrementEntry(1.0, 1, 2, 0);
+      rescaled.incrementWithMultiplier(other, 0.25);
+      multiplied.incrementWithMultiplier(other, 0.25);
+      assertEquals(multiplied.getByDimKey(0, 1, 2), rescaled.getByDimKey(0, 1, 2), 1e-10);
+    }
+
+    assertEquals(multiplied.getL2Norm(), rescaled.getL2Norm(), 1e-10);
+    assertEquals(multiplied.getTrace(), rescaled.getTrace(), 1e-10);
+    assertEquals(multiplied.innerProduct(other), rescaled.innerProduct(other), 1e-10);
+    assertValuesEqual(multiplied.build().getValues(), rescaled.build().getValues());
+    assertValuesEqual(multiplied.buildNoCopy().getValues(), rescaled.buildNoCopy().getValues());
+  }
+
+  public void testRescaleExtremeScales() {
+    DenseTensorBuilder rescaled = (DenseTensorBuilder) builder.getCopy();
+    double expected = rescaled.getByDimKey(1, 2, 0);
+    for (int i = 0; i < 1000; i++) {
+      rescaled.rescale(0.5);
+      expected *= 0.5;
+    }
+    assertEquals(expected, rescaled.getByDimKey(1, 2, 0));
+    rescaled.rescale(0.0);
+    assertEquals(0.0, rescaled.getL2Norm());
+    rescaled.incrementEntry(1.0, 1, 2, 0);
+    assertEquals(1.0, rescaled.getByDimKey(1, 2, 0));
+  }
+
+  private static void assertValuesEqual(double[] expected, double[] actual) {
+    assertEquals(expected.length, actual.length);
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(expected[i], actual[i], 1e-10);
+    }
+  }
 }
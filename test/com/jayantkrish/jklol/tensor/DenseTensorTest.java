@@ -27,4 +27,45 @@ public class DenseTensorTest extends TensorTest {
     }
     assertEquals(6, keyCount);
   }
+
+  public void testMatrixInnerProductKernels() {
+    // Sizes are chosen so that the products are tiled, have leftover
+    // rows, and are computed in parallel.
+    DenseTensor matrix = DenseTensor.random(new int[] {0, 1}, new int[] {203, 301}, 0.0, 1.0);
+    DenseTensor other = DenseTensor.random(new int[] {1, 2}, new int[] {301, 517}, 0.0, 1.0);
+    assertMatrixInnerProductEquals(matrix, other);
+
+    // Prefix and suffix dimensions around the aligned dimension.
+    DenseTensor tensor = DenseTensor.random(new int[] {0, 2, 5}, new int[] {3, 7, 5}, 0.0, 1.0);
+    assertMatrixInnerProductEquals(tensor,
+        DenseTensor.random(new int[] {2, 3}, new int[] {7, 4}, 0.0, 1.0));
+    assertMatrixInnerProductEquals(tensor,
+        DenseTensor.random(new int[] {0, 1}, new int[] {3, 9}, 0.0, 1.0));
+  }
+
+  public void testInnerProductKernels() {
+    DenseTensor matrix = DenseTensor.random(new int[] {0, 1}, new int[] {4099, 1031}, 0.0, 1.0);
+    DenseTensor rightVector = DenseTensor.random(new int[] {1}, new int[] {1031}, 0.0, 1.0);
+    DenseTensor leftVector = DenseTensor.random(new int[] {0}, new int[] {4099}, 0.0, 1.0);
+
+    double[] rightExpected = new double[4099];
+    double[] leftExpected = new double[1031];
+    for (int i = 0; i < 4099; i++) {
+      for (int j = 0; j < 1031; j++) {
+        rightExpected[i] += matrix.getByDimKey(i, j) * rightVector.getByDimKey(j);
+        leftExpected[j] += matrix.getByDimKey(i, j) * leftVector.getByDimKey(i);
+      }
+    }
+
+    assertEquals(new DenseTensor(new int[] {0}, new int[] {4099}, rightExpected),
+        matrix.innerProduct(rightVector));
+    assertEquals(new DenseTensor(new int[] {1}, new int[] {1031}, leftExpected),
+        matrix.innerProduct(leftVector));
+  }
+
+  private void assertMatrixInnerProductEquals(DenseTensor first, DenseTensor second) {
+    Tensor expected = AbstractTensor.innerProduct(first, second, DenseTensorBuilder.getFactory());
+    Tensor actual = first.matrixInnerProduct(second);
+    assertEquals(expected, actual);
+  }
 }
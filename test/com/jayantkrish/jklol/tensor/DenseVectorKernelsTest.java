@@ -0,0 +1,189 @@
+package com.jayantkrish.jklol.tensor;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link DenseVectorKernels}. The kernels returned by
+ * {@link DenseVectorKernels#getInstance()} are compared against the
+ * scalar kernels; they are only vectorized if the JVM is started with
+ * {@code --add-modules jdk.incubator.vector}.
+ *
+ * @author jayantk
+ */
+public class DenseVectorKernelsTest extends TestCase {
+
+  // Lengths which are not multiples of any vector length, so that
+  // the tail loops are exercised.
+  private static final int[] LENGTHS = {0, 1, 7, 8, 13, 64, 1027};
+  // Maximum error of the vectorized exp, log and tanh, in ulps.
+  private static final double MAX_ULPS = 2.0;
+
+  DenseVectorKernels kernels, scalar;
+  double[] x, y, positive, special;
+
+  public void setUp() {
+    kernels = DenseVectorKernels.getInstance();
+    scalar = DenseVectorKernels.getScalarKernels();
+
+    Random random = new Random(0);
+    x = new double[1027];
+    y = new double[1027];
+    positive = new double[1027];
+    for (int i = 0; i < x.length; i++) {
+      x[i] = random.nextGaussian() * 5;
+      y[i] = random.nextGaussian();
+      positive[i] = Math.exp(random.nextGaussian() * 10);
+    }
+    x[3] = 0.0;
+    x[10] = -0.0;
+    special = new double[] {0.0, -0.0, Double.NaN, Double.POSITIVE_INFINITY,
+        Double.NEGATIVE_INFINITY, 1000, -1000, Double.MIN_VALUE, 1.0, -1.0, 1e-300, 42.0};
+  }
+
+  public void testScalarMatchesMath() {
+    double[] result = new double[x.length];
+    scalar.exp(x, result, x.length);
+    for (int i = 0; i < x.length; i++) {
+      assertEquals(Math.exp(x[i]), result[i]);
+    }
+    scalar.tanh(x, result, x.length);
+    for (int i = 0; i < x.length; i++) {
+      assertEquals(Math.tanh(x[i]), result[i]);
+    }
+    scalar.log(positive, result, x.length);
+    for (int i = 0; i < x.length; i++) {
+      assertEquals(Math.log(positive[i]), result[i]);
+    }
+  }
+
+  public void testDot() {
+    for (int length : LENGTHS) {
+      double expected = 0.0;
+      for (int i = 0; i < length; i++) {
+        expected += x[i] * y[i];
+      }
+      assertEquals(expected, scalar.dot(x, y, length), 1e-10);
+      // The partial sums make the results identical.
+      assertEquals(scalar.dot(x, y, length), kernels.dot(x, y, length));
+    }
+  }
+
+  public void testAxpy() {
+    for (int length : LENGTHS) {
+      double[] expected = Arrays.copyOf(y, y.length);
+      double[] actual = Arrays.copyOf(y, y.length);
+      scalar.axpy(x, 0.3, expected, length);
+      kernels.axpy(x, 0.3, actual, length);
+      assertTrue(Arrays.equals(expected, actual));
+      if (length > 0) {
+        assertEquals(y[0] + (x[0] * 0.3), expected[0]);
+      }
+      if (length < y.length) {
+        assertEquals(y[length], expected[length]);
+      }
+    }
+  }
+
+  public void testAddSquares() {
+    for (int length : LENGTHS) {
+      double[] expected = Arrays.copyOf(y, y.length);
+      double[] actual = Arrays.copyOf(y, y.length);
+      scalar.addSquares(x, 0.7, expected, length);
+      kernels.addSquares(x, 0.7, actual, length);
+      assertTrue(Arrays.equals(expected, actual));
+    }
+  }
+
+  public void testAdd() {
+    for (int length : LENGTHS) {
+      double[] expected = Arrays.copyOf(y, y.length);
+      double[] actual = Arrays.copyOf(y, y.length);
+      scalar.add(-2.5, expected, length);
+      kernels.add(-2.5, actual, length);
+      assertTrue(Arrays.equals(expected, actual));
+    }
+  }
+
+  public void testExp() {
+    double[] expected = new double[x.length];
+    double[] actual = new double[x.length];
+    scalar.exp(x, expected, x.length);
+    kernels.exp(x, actual, x.length);
+    assertWithinUlps(expected, actual);
+
+    expected = new double[special.length];
+    actual = new double[special.length];
+    scalar.exp(special, expected, special.length);
+    kernels.exp(special, actual, special.length);
+    assertWithinUlps(expected, actual);
+  }
+
+  public void testLog() {
+    double[] expected = new double[x.length];
+    double[] actual = new double[x.length];
+    scalar.log(positive, expected, x.length);
+    kernels.log(positive, actual, x.length);
+    assertWithinUlps(expected, actual);
+
+    expected = new double[special.length];
+    actual = new double[special.length];
+    scalar.log(special, expected, special.length);
+    kernels.log(special, actual, special.length);
+    assertWithinUlps(expected, actual);
+  }
+
+  public void testTanh() {
+    double[] expected = new double[x.length];
+    double[] actual = new double[x.length];
+    scalar.tanh(x, expected, x.length);
+    kernels.tanh(x, actual, x.length);
+    assertWithinUlps(expected, actual);
+
+    expected = new double[special.length];
+    actual = new double[special.length];
+    scalar.tanh(special, expected, special.length);
+    kernels.tanh(special, actual, special.length);
+    assertWithinUlps(expected, actual);
+  }
+
+  public void testLaplaceSigmoid() {
+    double[] expected = new double[x.length];
+    double[] actual = new double[x.length];
+    scalar.laplaceSigmoid(x, expected, 0.5, x.length);
+    kernels.laplaceSigmoid(x, actual, 0.5, x.length);
+    assertWithinUlps(expected, actual);
+    assertEquals(0.0, actual[3]);
+
+    expected = new double[special.length];
+    actual = new double[special.length];
+    scalar.laplaceSigmoid(special, expected, 2.0, special.length);
+    kernels.laplaceSigmoid(special, actual, 2.0, special.length);
+    assertWithinUlps(expected, actual);
+  }
+
+  public void testDenseTensorOperations() {
+    DenseTensor tensor = new DenseTensor(new int[] {0, 1}, new int[] {13, 79}, x);
+    DenseTensor other = new DenseTensor(new int[] {0, 1}, new int[] {13, 79}, y);
+    assertEquals(scalar.dot(x, y, x.length), tensor.innerProduct(other).getByDimKey());
+
+    Tensor exp = tensor.elementwiseExp();
+    Tensor sigmoid = tensor.elementwiseLaplaceSigmoid(0.5);
+    for (int i = 0; i < x.length; i++) {
+      assertEquals(Math.exp(x[i]), exp.getByIndex(i), Math.ulp(Math.exp(x[i])) * MAX_ULPS);
+      assertEquals(Math.signum(x[i]), Math.signum(sigmoid.getByIndex(i)), 0.0);
+    }
+  }
+
+  private static void assertWithinUlps(double[] expected, double[] actual) {
+    for (int i = 0; i < expected.length; i++) {
+      if (Double.isNaN(expected[i]) || Double.isInfinite(expected[i])) {
+        assertEquals(expected[i], actual[i]);
+      } else {
+        assertEquals(expected[i], actual[i], Math.ulp(expected[i]) * MAX_ULPS);
+      }
+    }
+  }
+}
@@ -0,0 +1,159 @@
+package com.jayantkrish.jklol.tensor;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.google.common.collect.Maps;
+import com.google.common.primitives.Ints;
+
+/**
+ * Unit tests for {@link FactoredTensor}. Each operation is compared
+ * against the same operation on the materialized tensor.
+ *
+ * @author jayantk
+ */
+public class FactoredTensorTest extends TestCase {
+
+  // Dimensions 1 (size 4), 3 (size 3), 5 (size 5), 7 (size 2).
+  private static final int[] DIMS = {1, 3, 5, 7};
+  private static final int[] SIZES = {4, 3, 5, 2};
+
+  FactoredTensor factored, signed;
+  Tensor full, fullSigned;
+
+  Tensor t13, t35, t5, other35, other7;
+
+  public void setUp() {
+    Random random = new Random(0);
+    t13 = DenseTensor.random(new int[] {1, 3}, new int[] {4, 3}, 1.0, 0.3).elementwiseAbs();
+    t35 = sparseTable(new int[] {3, 5}, new int[] {3, 5}, random);
+    t5 = DenseTensor.random(new int[] {5}, new int[] {5}, 1.0, 0.3).elementwiseAbs();
+    // Dimension 7 is not contained in any factor.
+    factored = new FactoredTensor(DIMS, SIZES, new Tensor[] {t13, t35, t5});
+    full = factored.materialize();
+
+    signed = new FactoredTensor(DIMS, SIZES, new Tensor[] {
+        DenseTensor.random(new int[] {1, 3}, new int[] {4, 3}, 0.0, 1.0), t35});
+    fullSigned = signed.materialize();
+
+    other35 = sparseTable(new int[] {3, 5}, new int[] {3, 5}, random);
+    other7 = DenseTensor.random(new int[] {7}, new int[] {2}, 1.0, 1.0);
+  }
+
+  private static Tensor sparseTable(int[] dims, int[] sizes, Random random) {
+    SparseTensorBuilder builder = new SparseTensorBuilder(dims, sizes);
+    int[] key = new int[dims.length];
+    for (int i = 0; i < 8; i++) {
+      for (int j = 0; j < key.length; j++) {
+        key[j] = random.nextInt(sizes[j]);
+      }
+      builder.put(key, random.nextDouble() + 0.5);
+    }
+    return builder.build();
+  }
+
+  public void testMaterialize() {
+    assertTrue(Arrays.equals(DIMS, full.getDimensionNumbers()));
+    for (long i = 0; i < factored.getMaxKeyNum(); i++) {
+      int[] key = factored.keyNumToDimKey(i);
+      double expected = t13.getByDimKey(key[0], key[1]) * t35.getByDimKey(key[1], key[2])
+          * t5.getByDimKey(key[2]);
+      assertEquals(expected, factored.get(i), 1e-10);
+      assertEquals(expected, full.get(i), 1e-10);
+    }
+  }
+
+  public void testSumOutDimensions() {
+    int[][] toEliminate = {{}, {1}, {3}, {5}, {7}, {1, 3}, {3, 5}, {1, 5, 7}, {1, 3, 5, 7}};
+    for (int[] dims : toEliminate) {
+      assertTensorEquals(full.sumOutDimensions(Ints.asList(dims)),
+          factored.sumOutDimensions(Ints.asList(dims)));
+    }
+  }
+
+  public void testSumOutDimensionsFactored() {
+    // Summing out a dimension contained in a single factor leaves the
+    // product factored.
+    Tensor result = factored.sumOutDimensions(Ints.asList(1));
+    assertTrue(result instanceof FactoredTensor);
+    assertEquals(3, ((FactoredTensor) result).getTensors().length);
+  }
+
+  public void testMaxOutDimensions() {
+    int[][] toEliminate = {{1}, {3}, {7}, {3, 5}, {1, 3, 5, 7}};
+    for (int[] dims : toEliminate) {
+      assertTensorEquals(full.maxOutDimensions(Ints.asList(dims)),
+          factored.maxOutDimensions(Ints.asList(dims)));
+      assertTensorEquals(fullSigned.maxOutDimensions(Ints.asList(dims)),
+          signed.maxOutDimensions(Ints.asList(dims)));
+    }
+  }
+
+  public void testElementwiseProduct() {
+    Tensor result = factored.elementwiseProduct(other35);
+    assertTrue(result instanceof FactoredTensor);
+    assertTensorEquals(full.elementwiseProduct(other35), result);
+    assertTensorEquals(full.elementwiseProduct(3.0), factored.elementwiseProduct(3.0));
+  }
+
+  public void testInnerProduct() {
+    assertTensorEquals(full.innerProduct(other35), factored.innerProduct(other35));
+    assertTensorEquals(full.innerProduct(other7), factored.innerProduct(other7));
+  }
+
+  public void testMatrixInnerProduct() {
+    Tensor other = DenseTensor.random(new int[] {5, 6}, new int[] {5, 3}, 1.0, 1.0);
+    assertTensorEquals(full.matrixInnerProduct(other), factored.matrixInnerProduct(other));
+  }
+
+  public void testOuterProduct() {
+    Tensor other = DenseTensor.random(new int[] {2, 8}, new int[] {3, 2}, 1.0, 1.0);
+    assertTensorEquals(full.outerProduct(other), factored.outerProduct(other));
+  }
+
+  public void testSlice() {
+    int[][] sliceDims = {{1}, {3}, {7}, {3, 5}, {1, 7}};
+    for (int[] dims : sliceDims) {
+      int[] key = new int[dims.length];
+      Arrays.fill(key, 1);
+      assertTensorEquals(full.slice(dims, key), factored.slice(dims, key));
+    }
+  }
+
+  public void testRelabelDimensions() {
+    int[] newDims = {6, 2, 4, 0};
+    assertTensorEquals(full.relabelDimensions(newDims), factored.relabelDimensions(newDims));
+
+    Map<Integer, Integer> relabeling = Maps.newHashMap();
+    relabeling.put(1, 10);
+    relabeling.put(3, 8);
+    relabeling.put(5, 6);
+    relabeling.put(7, 9);
+    assertTensorEquals(full.relabelDimensions(relabeling),
+        factored.relabelDimensions(relabeling));
+  }
+
+  public void testElementwiseOperations() {
+    assertTensorEquals(full.elementwiseInverse(), factored.elementwiseInverse());
+    assertTensorEquals(fullSigned.elementwiseAbs(), signed.elementwiseAbs());
+    assertTensorEquals(full.elementwiseAddition(2.0), factored.elementwiseAddition(2.0));
+    assertTensorEquals(full.elementwiseSqrt(), factored.elementwiseSqrt());
+  }
+
+  public void testNorms() {
+    assertEquals(full.getL2Norm(), factored.getL2Norm(), 1e-10);
+    assertEquals(full.getTrace(), factored.getTrace(), 1e-10);
+    assertEquals(fullSigned.getL2Norm(), signed.getL2Norm(), 1e-10);
+  }
+
+  private static void assertTensorEquals(Tensor expected, Tensor actual) {
+    assertTrue(Arrays.equals(expected.getDimensionNumbers(), actual.getDimensionNumbers()));
+    assertTrue(Arrays.equals(expected.getDimensionSizes(), actual.getDimensionSizes()));
+    for (long i = 0; i < expected.getMaxKeyNum(); i++) {
+      assertEquals(expected.get(i), actual.get(i), 1e-10);
+    }
+  }
+}
@@ -0,0 +1,135 @@
+package com.jayantkrish.jklol.tensor;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link LogSpaceKernels}. The fused kernels are
+ * compared against multiplying the tensors and then summing or
+ * maximizing out dimensions.
+ *
+ * @author jayantk
+ */
+public class LogSpaceKernelsTest extends TestCase {
+
+  private static final double TOLERANCE = 1e-10;
+
+  DenseTensor dense, left, right;
+  SparseTensor sparse;
+
+  public void setUp() {
+    dense = DenseTensor.random(new int[] {0, 2, 5}, new int[] {3, 4, 5}, 0.0, 1.0)
+        .elementwiseExp();
+    left = DenseTensor.random(new int[] {0, 2}, new int[] {3, 4}, 0.0, 1.0).elementwiseExp();
+    right = DenseTensor.random(new int[] {5}, new int[] {5}, 0.0, 1.0).elementwiseExp();
+
+    Random random = new Random(0);
+    long[] keyNums = new long[20];
+    double[] values = new double[20];
+    for (int i = 0; i < keyNums.length; i++) {
+      keyNums[i] = i * 3 + random.nextInt(3);
+      values[i] = random.nextDouble() + 0.1;
+    }
+    // Include an explicit zero, which has log value -infinity.
+    values[7] = 0.0;
+    sparse = SparseTensor.fromUnorderedKeyValues(new int[] {0, 2, 5}, new int[] {3, 4, 5},
+        keyNums, values);
+  }
+
+  public void testAddLogFactor() {
+    double[] logValues = LogSpaceKernels.getLogValues(sparse);
+    LogSpaceKernels.addLogFactor(sparse, logValues, left.elementwiseLog());
+    Tensor expected = sparse.elementwiseProduct(left);
+    for (int i = 0; i < logValues.length; i++) {
+      assertEquals(expected.getByIndex(i), Math.exp(logValues[i]), TOLERANCE);
+    }
+  }
+
+  public void testSumProductDense() {
+    runProductTest(dense, false);
+  }
+
+  public void testMaxProductDense() {
+    runProductTest(dense, true);
+  }
+
+  public void testSumProductSparse() {
+    runProductTest(sparse, false);
+  }
+
+  public void testMaxProductSparse() {
+    runProductTest(sparse, true);
+  }
+
+  public void testKeepNoDimensions() {
+    Tensor result = LogSpaceKernels.logSumProductOutDimensions(dense,
+        LogSpaceKernels.getLogValues(dense), null, new DenseTensor[0], new int[0], false);
+    assertEquals(0, result.numDimensions());
+    assertEquals(Math.log(dense.sumOutDimensions(0, 2, 5).getByIndex(0)),
+        result.getByIndex(0), TOLERANCE);
+  }
+
+  public void testSparseResult() {
+    // The kept dimensions have more keys than sparse.
+    double[] logValues = LogSpaceKernels.getLogValues(sparse);
+    Tensor actual = LogSpaceKernels.logSumProductOutDimensions(sparse, logValues, null,
+        new DenseTensor[] {left.elementwiseLog()}, new int[] {0, 2, 5}, false);
+    assertTrue(actual instanceof SparseTensor);
+    assertEquals(sparse.size(), actual.size());
+
+    Tensor expected = sparse.elementwiseProduct(left);
+    for (int i = 0; i < 3; i++) {
+      for (int j = 0; j < 4; j++) {
+        for (int k = 0; k < 5; k++) {
+          int index = actual.keyNumToIndex(actual.dimKeyToKeyNum(new int[] {i, j, k}));
+          double actualValue = (index == -1) ? 0.0 : Math.exp(actual.getByIndex(index));
+          assertEquals(expected.getByDimKey(i, j, k), actualValue, TOLERANCE);
+        }
+      }
+    }
+  }
+
+  public void testSparseLogFactors() {
+    // Keys missing from a sparse log factor have weight 0.
+    Tensor sparseMessage = LogSpaceKernels.logSumProductOutDimensions(sparse,
+        LogSpaceKernels.getLogValues(sparse), null, new DenseTensor[0], new int[] {0, 2, 5},
+        false);
+    assertTrue(sparseMessage instanceof SparseTensor);
+    Tensor sparseWeights = ((SparseTensor) sparseMessage).elementwiseExpSparse();
+
+    double[] logValues = LogSpaceKernels.getLogValues(dense);
+    LogSpaceKernels.addLogFactor(dense, logValues, sparseMessage);
+    Tensor expected = dense.elementwiseProduct(sparseWeights);
+    for (int i = 0; i < logValues.length; i++) {
+      assertEquals(expected.getByIndex(i), Math.exp(logValues[i]), TOLERANCE);
+    }
+
+    Tensor actual = LogSpaceKernels.logSumProductOutDimensions(dense,
+        LogSpaceKernels.getLogValues(dense), null, new Tensor[] {sparseMessage},
+        new int[] {2}, false);
+    Tensor expectedSum = expected.sumOutDimensions(new int[] {0, 5});
+    for (int i = 0; i < 4; i++) {
+      assertEquals(expectedSum.getByDimKey(i), Math.exp(actual.getByDimKey(i)), TOLERANCE);
+    }
+  }
+
+  private void runProductTest(Tensor base, boolean useMax) {
+    double[] logValues = LogSpaceKernels.getLogValues(base);
+    double[] otherLogValues = LogSpaceKernels.getLogValues(base);
+    DenseTensor[] logFactors = new DenseTensor[] {left.elementwiseLog(), right.elementwiseLog()};
+    Tensor actual = LogSpaceKernels.logSumProductOutDimensions(base, logValues,
+        otherLogValues, logFactors, new int[] {2}, useMax);
+
+    Tensor product = base.elementwiseProduct(base).elementwiseProduct(left)
+        .elementwiseProduct(right);
+    Tensor expected = useMax ? product.maxOutDimensions(new int[] {0, 5})
+        : product.sumOutDimensions(new int[] {0, 5});
+
+    assertEquals(1, actual.numDimensions());
+    assertEquals(2, actual.getDimensionNumbers()[0]);
+    for (int i = 0; i < 4; i++) {
+      assertEquals(expected.getByDimKey(i), Math.exp(actual.getByDimKey(i)), TOLERANCE);
+    }
+  }
+}
@@ -0,0 +1,154 @@
+package com.jayantkrish.jklol.tensor;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.google.common.collect.Lists;
+import com.jayantkrish.jklol.tensor.TensorBase.KeyValue;
+import com.jayantkrish.jklol.util.IoUtils;
+
+/**
+ * Unit tests for {@link MappedSparseTensor}.
+ *
+ * @author jayantk
+ */
+public class MappedSparseTensorTest extends TestCase {
+
+  SparseTensor tensor, empty;
+  File tensorFile, emptyFile;
+
+  public void setUp() throws IOException {
+    SparseTensorBuilder builder = new SparseTensorBuilder(new int[] {1, 3, 4},
+        new int[] {5, 6, 7});
+    for (int i = 0; i < 5 * 6 * 7; i += 3) {
+      builder.put(new int[] {i / 42, (i / 7) % 6, i % 7}, i + 0.5);
+    }
+    tensor = builder.build();
+    empty = SparseTensor.empty(new int[] {0}, new int[] {10});
+
+    tensorFile = File.createTempFile("tensor", ".bin");
+    emptyFile = File.createTempFile("empty", ".bin");
+    MappedSparseTensor.writeToFile(tensor, tensorFile.getPath());
+    MappedSparseTensor.writeToFile(empty, emptyFile.getPath());
+  }
+
+  public void tearDown() {
+    tensorFile.delete();
+    emptyFile.delete();
+  }
+
+  public void testGet() {
+    runGetTest(MappedSparseTensor.fromFile(tensorFile.getPath()));
+    // Use small chunks so that the tensor spans several mappings.
+    runGetTest(MappedSparseTensor.fromFile(tensorFile.getPath(), 3));
+  }
+
+  private void runGetTest(MappedSparseTensor mapped) {
+    assertEquals(tensor.size(), mapped.size());
+    assertTrue(Arrays.equals(tensor.getDimensionNumbers(), mapped.getDimensionNumbers()));
+    assertTrue(Arrays.equals(tensor.getDimensionSizes(), mapped.getDimensionSizes()));
+    for (long i = 0; i < tensor.getMaxKeyNum(); i++) {
+      assertEquals(tensor.get(i), mapped.get(i));
+      assertEquals(tensor.keyNumToIndex(i), mapped.keyNumToIndex(i));
+      assertEquals(tensor.getNearestIndex(i), mapped.getNearestIndex(i));
+    }
+    assertEquals(tensor.getL2Norm(), mapped.getL2Norm(), 1e-10);
+    assertEquals(tensor, mapped.toSparseTensor());
+  }
+
+  public void testGetEmpty() {
+    MappedSparseTensor mapped = MappedSparseTensor.fromFile(emptyFile.getPath());
+    assertEquals(0, mapped.size());
+    assertEquals(0.0, mapped.get(3));
+    assertFalse(mapped.keyValueIterator().hasNext());
+  }
+
+  public void testKeyValueIterator() {
+    MappedSparseTensor mapped = MappedSparseTensor.fromFile(tensorFile.getPath(), 4);
+    assertEquals(toList(tensor.keyValueIterator()), toList(mapped.keyValueIterator()));
+    assertEquals(toList(tensor.keyValuePrefixIterator(new int[] {2})),
+        toList(mapped.keyValuePrefixIterator(new int[] {2})));
+    assertEquals(toList(tensor.keyValuePrefixIterator(new int[] {3, 1})),
+        toList(mapped.keyValuePrefixIterator(new int[] {3, 1})));
+  }
+
+  public void testSlice() {
+    MappedSparseTensor mapped = MappedSparseTensor.fromFile(tensorFile.getPath());
+    assertEquals(tensor.slice(new int[] {1}, new int[] {3}),
+        mapped.slice(new int[] {1}, new int[] {3}));
+    assertEquals(tensor.slice(new int[] {1, 3}, new int[] {0, 5}),
+        mapped.slice(new int[] {1, 3}, new int[] {0, 5}));
+    assertEquals(tensor.slice(new int[] {3}, new int[] {2}),
+        mapped.slice(new int[] {3}, new int[] {2}));
+  }
+
+  public void testOperations() {
+    MappedSparseTensor mapped = MappedSparseTensor.fromFile(tensorFile.getPath());
+    assertEquals(tensor.elementwiseProduct(tensor), mapped.elementwiseProduct(tensor));
+    assertEquals(tensor.sumOutDimensions(3), mapped.sumOutDimensions(3));
+  }
+
+  public void testOperationsOnBuffer() {
+    MappedSparseTensor mapped = MappedSparseTensor.fromFile(tensorFile.getPath(), 3);
+    SparseTensorBuilder builder = new SparseTensorBuilder(new int[] {1, 3, 4},
+        new int[] {5, 6, 7});
+    builder.put(new int[] {0, 0, 0}, 2.0);
+    builder.put(new int[] {0, 0, 1}, 3.0);
+    builder.put(new int[] {4, 5, 6}, -1.0);
+    SparseTensor small = builder.build();
+    DenseTensor dense = DenseTensor.random(new int[] {1, 3, 4}, new int[] {5, 6, 7}, 0.0, 1.0);
+
+    assertEquals(tensor.elementwiseProduct(small), mapped.elementwiseProduct(small));
+    assertEquals(tensor.elementwiseProduct(dense), mapped.elementwiseProduct(dense));
+    assertEquals(tensor.innerProduct(small).getByDimKey(),
+        mapped.innerProduct(small).getByDimKey(), 1e-10);
+    assertEquals(tensor.innerProduct(dense).getByDimKey(),
+        mapped.innerProduct(dense).getByDimKey(), 1e-10);
+    assertTrue(Arrays.equals(tensor.getLargestValues(5), mapped.getLargestValues(5)));
+
+    // Relabelings which preserve the order of the dimensions read
+    // the same file.
+    Tensor relabeled = mapped.relabelDimensions(new int[] {2, 5, 9});
+    assertTrue(relabeled instanceof MappedSparseTensor);
+    assertEquals(tensor.relabelDimensions(new int[] {2, 5, 9}),
+        ((MappedSparseTensor) relabeled).toSparseTensor());
+    assertEquals(tensor.relabelDimensions(new int[] {9, 5, 2}),
+        mapped.relabelDimensions(new int[] {9, 5, 2}));
+  }
+
+  public void testSerialization() throws IOException {
+    MappedSparseTensor mapped = MappedSparseTensor.fromFile(tensorFile.getPath());
+    File serializedFile = File.createTempFile("serialized", ".ser");
+    try {
+      IoUtils.serializeObjectToFile(mapped, serializedFile.getPath());
+      // Only the file name is serialized.
+      assertTrue(serializedFile.length() < 1000);
+
+      MappedSparseTensor deserialized = IoUtils.readSerializedObject(serializedFile.getPath(),
+          MappedSparseTensor.class);
+      assertEquals(mapped.getFilename(), deserialized.getFilename());
+      assertEquals(tensor, deserialized.toSparseTensor());
+
+      Tensor relabeled = mapped.relabelDimensions(new int[] {2, 5, 9});
+      IoUtils.serializeObjectToFile(relabeled, serializedFile.getPath());
+      deserialized = IoUtils.readSerializedObject(serializedFile.getPath(),
+          MappedSparseTensor.class);
+      assertEquals(tensor.relabelDimensions(new int[] {2, 5, 9}), deserialized.toSparseTensor());
+    } finally {
+      serializedFile.delete();
+    }
+  }
+
+  private static List<String> toList(Iterator<KeyValue> iter) {
+    List<String> keyValues = Lists.newArrayList();
+    while (iter.hasNext()) {
+      keyValues.add(iter.next().toString());
+    }
+    return keyValues;
+  }
+}
@@ -0,0 +1,132 @@
+package com.jayantkrish.jklol.tensor;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.google.common.primitives.Ints;
+
+/**
+ * Unit tests for {@link ParallelReductions}. Reductions computed in
+ * parallel must be identical to the sequential reductions.
+ *
+ * @author jayantk
+ */
+public class ParallelReductionsTest extends TestCase {
+
+  private static final int[] DIMS = {1, 3, 5};
+  private static final int[] SIZES = {7, 11, 13};
+  private static final int[][] TO_ELIMINATE = {{}, {1}, {3}, {5}, {1, 3}, {1, 5}, {3, 5},
+      {1, 3, 5}, {2}};
+
+  long originalThreshold;
+  SparseTensor sparse, negativeSparse;
+  DenseTensor dense, negativeDense;
+
+  public void setUp() {
+    originalThreshold = ParallelReductions.getParallelThreshold();
+
+    Random random = new Random(0);
+    SparseTensorBuilder builder = new SparseTensorBuilder(DIMS, SIZES);
+    SparseTensorBuilder negativeBuilder = new SparseTensorBuilder(DIMS, SIZES);
+    for (int i = 0; i < 400; i++) {
+      int[] key = {random.nextInt(SIZES[0]), random.nextInt(SIZES[1]), random.nextInt(SIZES[2])};
+      builder.put(key, random.nextDouble());
+      // Some of the values cancel out when summed.
+      negativeBuilder.put(key, random.nextBoolean() ? -1.0 : random.nextGaussian());
+    }
+    sparse = builder.build();
+    negativeSparse = negativeBuilder.build();
+
+    dense = DenseTensor.random(DIMS, SIZES, 1.0, 1.0);
+    negativeDense = DenseTensor.random(DIMS, SIZES, -1.0, 1.0);
+  }
+
+  public void tearDown() {
+    ParallelReductions.setParallelThreshold(originalThreshold);
+  }
+
+  public void testSparseReductions() {
+    runReductionTest(sparse);
+    runReductionTest(negativeSparse);
+  }
+
+  public void testDenseReductions() {
+    runReductionTest(dense);
+    runReductionTest(negativeDense);
+  }
+
+  public void testSum() {
+    double[] values = new double[(1 << 18) + 17];
+    Random random = new Random(1);
+    for (int i = 0; i < values.length; i++) {
+      values[i] = random.nextDouble();
+    }
+
+    ParallelReductions.setParallelThreshold(Long.MAX_VALUE);
+    double expected = ParallelReductions.sum(values, values.length);
+    ParallelReductions.setParallelThreshold(0);
+    double actual = ParallelReductions.sum(values, values.length);
+    assertEquals(expected, actual, 1e-8);
+    // The result does not depend on the scheduling of the blocks.
+    for (int i = 0; i < 5; i++) {
+      assertEquals(actual, ParallelReductions.sum(values, values.length));
+    }
+    assertEquals(expected - values[values.length - 1],
+        ParallelReductions.sum(values, values.length - 1), 1e-8);
+  }
+
+  public void testPartitionStarts() {
+    for (int size : new int[] {0, 1, 5, 100}) {
+      assertEquals(0, ParallelReductions.getPartitionStart(0, 4, size));
+      assertEquals(size, ParallelReductions.getPartitionStart(4, 4, size));
+      for (int i = 0; i < 4; i++) {
+        assertTrue(ParallelReductions.getPartitionStart(i, 4, size)
+            <= ParallelReductions.getPartitionStart(i + 1, 4, size));
+      }
+    }
+  }
+
+  private void runReductionTest(Tensor tensor) {
+    for (int[] dims : TO_ELIMINATE) {
+      List<Integer> toEliminate = Ints.asList(dims);
+
+      ParallelReductions.setParallelThreshold(Long.MAX_VALUE);
+      Tensor expectedSum = tensor.sumOutDimensions(toEliminate);
+      Tensor expectedMax = tensor.maxOutDimensions(toEliminate);
+      Backpointers expectedBackpointers = new Backpointers();
+      tensor.maxOutDimensions(toEliminate, expectedBackpointers);
+
+      ParallelReductions.setParallelThreshold(0);
+      Tensor actualSum = tensor.sumOutDimensions(toEliminate);
+      Tensor actualMax = tensor.maxOutDimensions(toEliminate);
+      Backpointers actualBackpointers = new Backpointers();
+      Tensor actualBackpointerMax = tensor.maxOutDimensions(toEliminate, actualBackpointers);
+
+      if (dims.length == DIMS.length) {
+        // Summing out all dimensions adds the values in a different
+        // order.
+        assertEquals(expectedSum.getByDimKey(), actualSum.getByDimKey(), 1e-10);
+      } else {
+        assertTensorEquals(expectedSum, actualSum);
+      }
+      assertTensorEquals(expectedMax, actualMax);
+      assertTensorEquals(expectedMax, actualBackpointerMax);
+      assertTrue(Arrays.equals(expectedBackpointers.getNewKeyNums(),
+          actualBackpointers.getNewKeyNums()));
+      assertTrue(Arrays.equals(expectedBackpointers.getOldKeyNums(),
+          actualBackpointers.getOldKeyNums()));
+    }
+  }
+
+  private static void assertTensorEquals(Tensor expected, Tensor actual) {
+    assertTrue(Arrays.equals(expected.getDimensionNumbers(), actual.getDimensionNumbers()));
+    assertTrue(Arrays.equals(expected.getDimensionSizes(), actual.getDimensionSizes()));
+    assertTrue(Arrays.equals(expected.getValues(), actual.getValues()));
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.indexToKeyNum(i), actual.indexToKeyNum(i));
+    }
+  }
+}
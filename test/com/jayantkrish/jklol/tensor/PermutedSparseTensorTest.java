@@ -0,0 +1,176 @@
+package com.jayantkrish.jklol.tensor;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.jayantkrish.jklol.tensor.TensorBase.KeyValue;
+
+/**
+ * Unit tests for {@link PermutedSparseTensor} and the merge-join
+ * products of {@link SparseTensor}s whose dimensions are not aligned.
+ *
+ * @author jayantk
+ */
+public class PermutedSparseTensorTest extends TestCase {
+
+  SparseTensor table;
+  Random random;
+
+  private static final int[][] PERMUTATIONS = {
+    {1, 3, 5}, {1, 5, 3}, {3, 1, 5}, {3, 5, 1}, {5, 1, 3}, {5, 3, 1}};
+
+  public void setUp() {
+    random = new Random(0);
+    table = randomTable(new int[] {1, 3, 5}, new int[] {5, 7, 4}, 80, random);
+  }
+
+  /**
+   * Gets random tensors over the dimensions {1, 3}, {3} and {1, 5}
+   * whose dimension sizes agree with {@code tensor}.
+   */
+  private static List<SparseTensor> randomSubsetTables(Tensor tensor, Random random) {
+    int[] sizes = tensor.getDimensionSizes();
+    return Arrays.asList(
+        randomTable(new int[] {1, 3}, new int[] {sizes[0], sizes[1]}, 20, random),
+        randomTable(new int[] {3}, new int[] {sizes[1]}, 5, random),
+        randomTable(new int[] {1, 5}, new int[] {sizes[0], sizes[2]}, 12, random));
+  }
+
+  private static SparseTensor randomTable(int[] dims, int[] sizes, int numKeys,
+      Random random) {
+    SparseTensorBuilder builder = new SparseTensorBuilder(dims, sizes);
+    int[] key = new int[dims.length];
+    for (int i = 0; i < numKeys; i++) {
+      for (int j = 0; j < key.length; j++) {
+        key[j] = random.nextInt(sizes[j]);
+      }
+      builder.put(key, random.nextDouble() + 1.0);
+    }
+    return builder.build();
+  }
+
+  public void testToSparseTensor() {
+    for (int[] permutation : PERMUTATIONS) {
+      PermutedSparseTensor view = new PermutedSparseTensor(table, permutation);
+      SparseTensor expected = table.relabelDimensions(permutation);
+      assertTensorEquals(expected, view.toSparseTensor());
+      assertTensorEquals(expected, view);
+      SparseTensor empty = SparseTensor.empty(table.getDimensionNumbers(),
+          table.getDimensionSizes());
+      assertEquals(0, new PermutedSparseTensor(empty, permutation).toSparseTensor().size());
+    }
+  }
+
+  public void testGet() {
+    for (int[] permutation : PERMUTATIONS) {
+      PermutedSparseTensor view = new PermutedSparseTensor(table, permutation);
+      SparseTensor expected = table.relabelDimensions(permutation);
+      for (long i = 0; i < expected.getMaxKeyNum(); i++) {
+        assertEquals(expected.get(i), view.get(i));
+        assertEquals(expected.keyNumToIndex(i), view.keyNumToIndex(i));
+      }
+    }
+  }
+
+  public void testKeyValueIterator() {
+    for (int[] permutation : PERMUTATIONS) {
+      PermutedSparseTensor view = new PermutedSparseTensor(table, permutation);
+      SparseTensor expected = table.relabelDimensions(permutation);
+      for (int i = 0; i < view.getDimensionSizes()[0]; i++) {
+        Iterator<KeyValue> expectedIter = expected.keyValuePrefixIterator(new int[] {i});
+        Iterator<KeyValue> actualIter = view.keyValuePrefixIterator(new int[] {i});
+        while (expectedIter.hasNext()) {
+          assertTrue(actualIter.hasNext());
+          KeyValue expectedKeyValue = expectedIter.next();
+          KeyValue actualKeyValue = actualIter.next();
+          assertTrue(Arrays.equals(expectedKeyValue.getKey(), actualKeyValue.getKey()));
+          assertEquals(expectedKeyValue.getValue(), actualKeyValue.getValue());
+        }
+        assertFalse(actualIter.hasNext());
+      }
+    }
+  }
+
+  public void testSlice() {
+    for (int[] permutation : PERMUTATIONS) {
+      PermutedSparseTensor view = new PermutedSparseTensor(table, permutation);
+      SparseTensor expected = table.relabelDimensions(permutation);
+      int[] sliceDims = view.getDimensionNumbers();
+      for (int i = 0; i < view.getDimensionSizes()[0]; i++) {
+        int[] dims = new int[] {sliceDims[0]};
+        assertTensorEquals(expected.slice(dims, new int[] {i}), view.slice(dims, new int[] {i}));
+      }
+    }
+  }
+
+  public void testRelabelDimensions() {
+    for (int[] permutation : PERMUTATIONS) {
+      PermutedSparseTensor view = new PermutedSparseTensor(table, permutation);
+      for (int[] relabeling : PERMUTATIONS) {
+        assertTensorEquals(table.relabelDimensions(permutation).relabelDimensions(relabeling),
+            view.relabelDimensions(relabeling));
+      }
+    }
+  }
+
+  public void testElementwiseProduct() {
+    for (int[] permutation : PERMUTATIONS) {
+      SparseTensor permuted = table.relabelDimensions(permutation);
+      PermutedSparseTensor view = new PermutedSparseTensor(table, permutation);
+      SparseTensor empty = SparseTensor.empty(permuted.getDimensionNumbers(),
+          permuted.getDimensionSizes());
+      for (SparseTensor other : randomSubsetTables(permuted, random)) {
+        SparseTensor expected = naiveProduct(permuted, other);
+        assertTensorEquals(expected, permuted.elementwiseProduct(other));
+        assertTensorEquals(expected, view.elementwiseProduct(other));
+        assertEquals(0, empty.elementwiseProduct(other).size());
+      }
+    }
+  }
+
+  public void testCachedElementwiseProduct() {
+    CachedSparseTensor cached = CachedSparseTensor.cacheAllPermutations(table);
+    for (SparseTensor other : randomSubsetTables(table, random)) {
+      assertTensorEquals(naiveProduct(table, other), cached.elementwiseProduct(other));
+      assertTensorEquals(table.innerProduct(other), cached.innerProduct(other));
+    }
+  }
+
+  /**
+   * Computes the elementwise product of {@code big} and {@code small}
+   * by looking up each key of {@code big} in {@code small}.
+   */
+  private static SparseTensor naiveProduct(SparseTensor big, SparseTensor small) {
+    int[] bigDims = big.getDimensionNumbers();
+    int[] smallDims = small.getDimensionNumbers();
+    int[] smallKey = new int[smallDims.length];
+    SparseTensorBuilder builder = new SparseTensorBuilder(bigDims, big.getDimensionSizes());
+    Iterator<KeyValue> iter = big.keyValueIterator();
+    while (iter.hasNext()) {
+      KeyValue keyValue = iter.next();
+      int[] key = keyValue.getKey();
+      for (int i = 0; i < smallDims.length; i++) {
+        smallKey[i] = key[Arrays.binarySearch(bigDims, smallDims[i])];
+      }
+      double value = keyValue.getValue() * small.getByDimKey(smallKey);
+      if (value != 0.0) {
+        builder.put(key, value);
+      }
+    }
+    return builder.build();
+  }
+
+  private static void assertTensorEquals(Tensor expected, Tensor actual) {
+    assertTrue(Arrays.equals(expected.getDimensionNumbers(), actual.getDimensionNumbers()));
+    assertTrue(Arrays.equals(expected.getDimensionSizes(), actual.getDimensionSizes()));
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.indexToKeyNum(i), actual.indexToKeyNum(i));
+      assertEquals(expected.getByIndex(i), actual.getByIndex(i), 1e-10);
+    }
+  }
+}
@@ -0,0 +1,62 @@
+package com.jayantkrish.jklol.tensor;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link RobinHoodTensorHash}.
+ *
+ * @author jayantk
+ */
+public class RobinHoodTensorHashTest extends TestCase {
+
+  SparseTensor empty, consecutive, scattered;
+
+  public void setUp() {
+    empty = SparseTensor.empty(new int[] {0, 1}, new int[] {10, 10});
+
+    SparseTensorBuilder builder = new SparseTensorBuilder(new int[] {0}, new int[] {100000});
+    for (int i = 0; i < 50000; i++) {
+      builder.put(new int[] {i}, i + 1);
+    }
+    consecutive = builder.build();
+
+    Random random = new Random(0);
+    builder = new SparseTensorBuilder(new int[] {0, 1, 2}, new int[] {100000, 10000, 1000});
+    for (int i = 0; i < 100000; i++) {
+      builder.put(new int[] {random.nextInt(100000), random.nextInt(10000), random.nextInt(1000)},
+          random.nextDouble());
+    }
+    scattered = builder.build();
+  }
+
+  public void testGetEmpty() {
+    RobinHoodTensorHash hash = RobinHoodTensorHash.fromTensor(empty);
+    assertEquals(0.0, hash.get(0));
+    assertEquals(0.0, hash.get(55));
+  }
+
+  public void testGetConsecutive() {
+    RobinHoodTensorHash hash = RobinHoodTensorHash.fromTensor(consecutive);
+    for (int i = 0; i < 100000; i++) {
+      assertEquals(consecutive.get(i), hash.get(i));
+    }
+  }
+
+  public void testGetScattered() {
+    RobinHoodTensorHash hash = RobinHoodTensorHash.fromTensor(scattered);
+    long[] keyNums = scattered.getKeyNums();
+    for (int i = 0; i < keyNums.length; i++) {
+      assertEquals(scattered.getValues()[i], hash.get(keyNums[i]));
+      assertEquals(scattered.get(keyNums[i] + 1), hash.get(keyNums[i] + 1));
+    }
+  }
+
+  public void testSize() {
+    RobinHoodTensorHash hash = RobinHoodTensorHash.fromTensor(scattered);
+    assertTrue(hash.getNumSlots() * 3 >= scattered.size() * 4);
+    assertTrue(hash.getNumSlots() * 3 < scattered.size() * 8);
+    assertTrue(hash.getNumSlots() < SparseTensorHash.fromTensor(scattered).getNumSlots());
+  }
+}
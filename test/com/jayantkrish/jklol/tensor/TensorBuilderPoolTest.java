@@ -0,0 +1,155 @@
+package com.jayantkrish.jklol.tensor;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link TensorBuilderPool} and the reusable
+ * {@link AppendOnlySparseTensorBuilder}.
+ *
+ * @author jayantk
+ */
+public class TensorBuilderPoolTest extends TestCase {
+
+  private static final int[] DIMS = {0, 2};
+  private static final int[] SIZES = {3, 4};
+
+  public void testDenseBuilderReused() {
+    DenseTensorBuilder builder = TensorBuilderPool.getDenseBuilder(DIMS, SIZES);
+    builder.put(new int[] {1, 2}, 3.0);
+    Tensor tensor = builder.build();
+    TensorBuilderPool.release(builder);
+
+    DenseTensorBuilder reused = TensorBuilderPool.getDenseBuilder(DIMS, SIZES);
+    assertSame(builder, reused);
+    assertEquals(0.0, reused.getByDimKey(1, 2));
+    assertEquals(3.0, tensor.getByDimKey(1, 2));
+
+    // A builder is never returned twice.
+    assertNotSame(reused, TensorBuilderPool.getDenseBuilder(DIMS, SIZES));
+    TensorBuilderPool.release(reused);
+    TensorBuilderPool.release(reused);
+    assertSame(reused, TensorBuilderPool.getDenseBuilder(DIMS, SIZES));
+    assertNotSame(reused, TensorBuilderPool.getDenseBuilder(DIMS, SIZES));
+  }
+
+  public void testDenseBuilderDimensions() {
+    DenseTensorBuilder builder = TensorBuilderPool.getDenseBuilder(DIMS, SIZES);
+    TensorBuilderPool.release(builder);
+    DenseTensorBuilder other = TensorBuilderPool.getDenseBuilder(DIMS, new int[] {3, 5});
+    assertNotSame(builder, other);
+    assertTrue(Arrays.equals(new int[] {3, 5}, other.getDimensionSizes()));
+    assertSame(builder, TensorBuilderPool.getDenseBuilder(DIMS, SIZES));
+  }
+
+  public void testSharedDenseBuilderNotReused() {
+    DenseTensorBuilder builder = TensorBuilderPool.getDenseBuilder(DIMS, SIZES);
+    builder.put(new int[] {1, 2}, 3.0);
+    Tensor tensor = builder.buildNoCopy();
+    TensorBuilderPool.release(builder);
+
+    assertNotSame(builder, TensorBuilderPool.getDenseBuilder(DIMS, SIZES));
+    assertEquals(3.0, tensor.getByDimKey(1, 2));
+  }
+
+  public void testDenseBuilderResetAfterBuildNoCopy() {
+    DenseTensorBuilder builder = TensorBuilderPool.getDenseBuilder(DIMS, SIZES);
+    builder.put(new int[] {1, 2}, 3.0);
+    Tensor tensor = builder.buildNoCopy();
+    assertTrue(builder.hasSharedValues());
+
+    // Resetting the builder would modify the shared values.
+    try {
+      builder.reset();
+      fail("Expected IllegalStateException");
+    } catch (IllegalStateException e) {
+      // Expected.
+    }
+    assertEquals(3.0, tensor.getByDimKey(1, 2));
+
+    // The pool discards the builder rather than resetting it.
+    TensorBuilderPool.release(builder);
+    DenseTensorBuilder other = TensorBuilderPool.getDenseBuilder(DIMS, SIZES);
+    assertNotSame(builder, other);
+    assertEquals(0.0, other.getByDimKey(1, 2));
+    assertEquals(3.0, tensor.getByDimKey(1, 2));
+  }
+
+  public void testTrackingDenseBuilderReset() {
+    DenseTensorBuilder builder = TensorBuilderPool.getDenseBuilder(DIMS, SIZES);
+    builder.trackModifiedEntries();
+    builder.put(new int[] {2, 3}, -1.0);
+    TensorBuilderPool.release(builder);
+
+    DenseTensorBuilder reused = TensorBuilderPool.getDenseBuilder(DIMS, SIZES);
+    assertSame(builder, reused);
+    assertEquals(0.0, reused.getByDimKey(2, 3));
+    assertEquals(0, reused.getModifiedIndexes().length);
+  }
+
+  public void testSparseBuilderReused() {
+    AppendOnlySparseTensorBuilder builder = TensorBuilderPool.getSparseBuilder(DIMS, SIZES);
+    builder.put(new int[] {2, 1}, 1.0);
+    Tensor tensor = builder.build();
+    TensorBuilderPool.release(builder);
+
+    AppendOnlySparseTensorBuilder reused = TensorBuilderPool.getSparseBuilder(DIMS, SIZES);
+    assertSame(builder, reused);
+    assertEquals(0, reused.size());
+    reused.put(new int[] {0, 3}, 2.0);
+    Tensor other = reused.build();
+    assertEquals(1, other.size());
+    assertEquals(2.0, other.getByDimKey(0, 3));
+    assertEquals(1.0, tensor.getByDimKey(2, 1));
+    assertEquals(1, tensor.size());
+  }
+
+  public void testAppendOnlyBuild() {
+    AppendOnlySparseTensorBuilder builder = new AppendOnlySparseTensorBuilder(DIMS, SIZES);
+    builder.put(new int[] {2, 1}, 1.0);
+    builder.incrementEntry(2.0, 0, 3);
+    builder.incrementEntryByKeyNum(3.0, 9);
+    builder.incrementEntry(-2.0, 0, 3);
+    builder.put(new int[] {1, 0}, 4.0);
+
+    SparseTensorBuilder expected = new SparseTensorBuilder(DIMS, SIZES);
+    expected.put(new int[] {2, 1}, 4.0);
+    expected.put(new int[] {1, 0}, 4.0);
+    assertSparseEquals(expected.build(), builder.build());
+
+    // Building again, after adding more keys, includes all keys.
+    builder.incrementEntry(1.0, 0, 0);
+    expected.put(new int[] {0, 0}, 1.0);
+    assertSparseEquals(expected.build(), builder.build());
+  }
+
+  public void testAppendOnlyBuildNoCopy() {
+    AppendOnlySparseTensorBuilder builder = new AppendOnlySparseTensorBuilder(
+        new int[] {0}, new int[] {16});
+    for (int i = 0; i < 16; i++) {
+      builder.putByKeyNum(15 - i, i + 1.0);
+    }
+    // The builder's arrays are exactly full, so they are shared.
+    SparseTensor tensor = builder.buildNoCopy();
+    assertEquals(16, tensor.size());
+    assertEquals(16.0, tensor.get(0));
+    assertEquals(1.0, tensor.get(15));
+
+    // Modifying the builder copies the shared arrays.
+    builder.putByKeyNum(0, 5.0);
+    assertEquals(21.0, builder.build().get(0));
+    assertEquals(16.0, tensor.get(0));
+    builder.reset();
+    builder.putByKeyNum(3, 1.0);
+    builder.putByKeyNum(5, 0.0);
+    assertEquals(1, builder.buildNoCopy().size());
+    assertEquals(16, tensor.size());
+    assertEquals(13.0, tensor.get(3));
+  }
+
+  private static void assertSparseEquals(SparseTensor expected, SparseTensor actual) {
+    assertTrue(Arrays.equals(expected.getKeyNums(), actual.getKeyNums()));
+    assertTrue(Arrays.equals(expected.getValues(), actual.getValues()));
+  }
+}
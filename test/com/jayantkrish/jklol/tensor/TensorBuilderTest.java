@@ -260,6 +260,24 @@ public abstract class TensorBuilderTest extends TestCase {
     assertEquals(2.0, tensor.getByDimKey(KEY2));
   }
   
+  public void testReset() {
+    Tensor tensor = builder.build();
+    builder.reset();
+    assertEquals(0.0, builder.getByDimKey(KEY1));
+    assertEquals(0.0, builder.getByDimKey(KEY2));
+    assertEquals(0.0, builder.getL2Norm(), 0.0001);
+
+    builder.put(KEY3, 5.0);
+    assertEquals(5.0, builder.getByDimKey(KEY3));
+    assertEquals(5.0, builder.build().getByDimKey(KEY3));
+    assertEquals(0.0, builder.build().getByDimKey(KEY1));
+
+    // Previously built tensors are not affected.
+    assertEquals(1.0, tensor.getByDimKey(KEY1));
+    assertEquals(2.0, tensor.getByDimKey(KEY2));
+    assertEquals(0.0, tensor.getByDimKey(KEY3));
+  }
+
   public void testGetL2Norm() {
     assertEquals(Math.sqrt(5.0), builder.getL2Norm(), 0.0001); 
   }
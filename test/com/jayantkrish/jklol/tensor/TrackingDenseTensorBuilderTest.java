@@ -0,0 +1,61 @@
+package com.jayantkrish.jklol.tensor;
+
+import java.util.Arrays;
+
+/**
+ * Unit tests for {@link DenseTensorBuilder}s that track their modified
+ * entries. The generic builder test cases are inherited from
+ * {@link TensorBuilderTest}.
+ * 
+ * @author jayantk
+ */
+public class TrackingDenseTensorBuilderTest extends TensorBuilderTest {
+
+  public TrackingDenseTensorBuilderTest() {
+    super(new TensorFactory() {
+      @Override
+      public TensorBuilder getBuilder(int[] dimNums, int[] dimSizes) {
+        DenseTensorBuilder builder = new DenseTensorBuilder(dimNums, dimSizes);
+        builder.trackModifiedEntries();
+        return builder;
+      }
+    });
+  }
+
+  public void testSparseIncrement() {
+    DenseTensorBuilder first = new DenseTensorBuilder(new int[] {0}, new int[] {1000});
+    first.trackModifiedEntries();
+    DenseTensorBuilder second = new DenseTensorBuilder(new int[] {0}, new int[] {1000});
+    second.trackModifiedEntries();
+
+    first.incrementEntry(1.0, 3);
+    second.incrementEntry(2.0, 3);
+    second.incrementEntry(5.0, 999);
+
+    first.increment(second);
+    assertEquals(3.0, first.getByDimKey(3));
+    assertEquals(5.0, first.getByDimKey(999));
+    assertEquals(Math.sqrt(34.0), first.getL2Norm(), 1e-10);
+
+    int[] modified = first.getModifiedIndexes();
+    assertTrue(Arrays.binarySearch(modified, 3) >= 0);
+    assertTrue(Arrays.binarySearch(modified, 999) >= 0);
+    assertTrue(modified.length < 1000);
+  }
+
+  public void testSparseZeroOut() {
+    DenseTensorBuilder tracked = new DenseTensorBuilder(new int[] {0}, new int[] {1000});
+    tracked.put(new int[] {10}, 4.0);
+    tracked.trackModifiedEntries();
+    tracked.incrementEntry(1.0, 500);
+
+    tracked.multiply(0.0);
+    assertEquals(0.0, tracked.getByDimKey(10));
+    assertEquals(0.0, tracked.getByDimKey(500));
+    assertEquals(0, tracked.getModifiedIndexes().length);
+
+    tracked.incrementEntry(2.0, 700);
+    assertEquals(2.0, tracked.getL2Norm());
+    assertEquals(2.0, tracked.getCopy().getL2Norm());
+  }
+}
@@ -3,6 +3,7 @@ package com.jayantkrish.jklol.training;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
 import junit.framework.TestCase;
@@ -20,6 +21,7 @@ import com.jayantkrish.jklol.models.parametric.ParametricFactorGraphBuilder;
 import com.jayantkrish.jklol.models.parametric.SufficientStatistics;
 import com.jayantkrish.jklol.models.parametric.TensorSufficientStatistics;
 import com.jayantkrish.jklol.tensor.TensorBase;
+import com.jayantkrish.jklol.training.StochasticGradientTrainer.Regularizer;
 import com.jayantkrish.jklol.util.Assignment;
 
 public class StochasticGradientTrainerTest extends TestCase {
@@ -125,6 +127,226 @@ public class StochasticGradientTrainerTest extends TestCase {
 	      Double.MAX_VALUE, 0.1, new DefaultLogFunction()));
 	}
 
+	public void testTrainUnregularizedAveraged() {
+	  runTest(new StochasticGradientTrainer(100, 3, 1.0, true, true, Double.MAX_VALUE,
+	      new DefaultLogFunction()));
+	}
+
+	public void testSparseAveragingMatchesDenseAveraging() {
+	  Regularizer unregularized = new StochasticGradientTrainer.StochasticL2Regularizer(0.0, 0.0);
+	  assertSameParameters(new StochasticGradientTrainer(100, 3, 0.1, true, true, false,
+	      Double.MAX_VALUE, denseAveraging(unregularized), new NullLogFunction()),
+	      new StochasticGradientTrainer(100, 3, 0.1, true, true, false, Double.MAX_VALUE,
+	          unregularized, new NullLogFunction()));
+	}
+
+	public void testL2SparseAveragingMatchesDenseAveraging() {
+	  Regularizer l2 = new StochasticGradientTrainer.StochasticL2Regularizer(1.0, 1.0);
+	  assertSameParameters(new StochasticGradientTrainer(100, 3, 0.1, true, true, false,
+	      Double.MAX_VALUE, denseAveraging(l2), new NullLogFunction()),
+	      new StochasticGradientTrainer(100, 3, 0.1, true, true, false, Double.MAX_VALUE,
+	          l2, new NullLogFunction()));
+	}
+
+	public void testLazyL2SparseAveragingMatchesDenseAveraging() {
+	  Regularizer lazyL2 = new StochasticGradientTrainer.LazyL2Regularizer(0.5);
+	  assertSameParameters(new StochasticGradientTrainer(200, 2, 0.1, true, true, false,
+	      Double.MAX_VALUE, denseAveraging(lazyL2), new NullLogFunction()),
+	      new StochasticGradientTrainer(200, 2, 0.1, true, true, false, Double.MAX_VALUE,
+	          lazyL2, new NullLogFunction()), new SparseQuadraticOracle(true), 1e-6);
+	}
+
+	public void testSparseAveragingStrongRegularization() {
+	  // Each iteration halves the parameters, so sparse averaging
+	  // repeatedly restarts its sums.
+	  Regularizer l2 = new StochasticGradientTrainer.StochasticL2Regularizer(5.0, 1.0);
+	  assertSameParameters(new StochasticGradientTrainer(200, 2, 0.1, false, true, false,
+	      Double.MAX_VALUE, denseAveraging(l2), new NullLogFunction()),
+	      new StochasticGradientTrainer(200, 2, 0.1, false, true, false, Double.MAX_VALUE,
+	          l2, new NullLogFunction()), new SparseQuadraticOracle(true), 1e-6);
+	}
+
+	public void testSparseAveragingConfigurations() {
+	  // Sparse averaging is only used when every update scales the
+	  // parameters and takes a gradient step.
+	  assertTrue(new StochasticGradientTrainer.StochasticL2Regularizer(0.0, 1.0).isScaledGradientStep());
+	  assertTrue(new StochasticGradientTrainer.StochasticL2Regularizer(1.0, 0.1).isScaledGradientStep());
+	  assertTrue(new StochasticGradientTrainer.L1Regularizer(0.0).isScaledGradientStep());
+	  assertFalse(new StochasticGradientTrainer.L1Regularizer(0.1).isScaledGradientStep());
+	  assertFalse(new StochasticGradientTrainer.AdagradL2Regularizer(0.0, 1.0).isScaledGradientStep());
+	  assertTrue(new StochasticGradientTrainer.LazyL2Regularizer(1.0).isScaledGradientStep());
+	}
+
+	/**
+	 * Wraps {@code regularizer} to disable sparse averaging.
+	 */
+	private static Regularizer denseAveraging(final Regularizer regularizer) {
+	  return new Regularizer() {
+	    @Override
+	    public double apply(SufficientStatistics gradient, SufficientStatistics currentParameters,
+	        SufficientStatistics gradientSumSquares, double currentStepSize) {
+	      return regularizer.apply(gradient, currentParameters, gradientSumSquares, currentStepSize);
+	    }
+
+	    @Override
+	    public boolean isScaledGradientStep() {
+	      return false;
+	    }
+	  };
+	}
+
+	public void testTrainLazyL2() {
+	  runTest(StochasticGradientTrainer.createWithLazyL2Regularization(100, 3, 0.01, true, false,
+	      Double.MAX_VALUE, 1, new DefaultLogFunction()));
+	}
+
+	public void testTrainLazyL2Averaged() {
+	  runTest(StochasticGradientTrainer.createWithLazyL2Regularization(100, 3, 0.01, true, true,
+	      Double.MAX_VALUE, 1, new DefaultLogFunction()));
+	}
+
+	public void testLazyL2MatchesL2() {
+	  assertSameParameters(StochasticGradientTrainer.createWithL2Regularization(100, 3, 0.1, true,
+	      false, Double.MAX_VALUE, 1, new NullLogFunction()),
+	      StochasticGradientTrainer.createWithLazyL2Regularization(100, 3, 0.1, true, false,
+	          Double.MAX_VALUE, 1, new NullLogFunction()));
+	}
+
+	public void testLazyL2MatchesL2SparseGradients() {
+	  assertSameParameters(StochasticGradientTrainer.createWithL2Regularization(200, 2, 0.1, true,
+	      false, Double.MAX_VALUE, 0.5, new NullLogFunction()),
+	      StochasticGradientTrainer.createWithLazyL2Regularization(200, 2, 0.1, true, false,
+	          Double.MAX_VALUE, 0.5, new NullLogFunction()), new SparseQuadraticOracle(false), 1e-6);
+	}
+
+	public void testLazyL2AveragedMatchesL2SparseGradients() {
+	  assertSameParameters(StochasticGradientTrainer.createWithL2Regularization(200, 2, 0.1, true,
+	      true, Double.MAX_VALUE, 0.5, new NullLogFunction()),
+	      StochasticGradientTrainer.createWithLazyL2Regularization(200, 2, 0.1, true, true,
+	          Double.MAX_VALUE, 0.5, new NullLogFunction()), new SparseQuadraticOracle(true), 1e-6);
+	}
+
+	public void testLazyL2MatchesL2ParameterDependentGradients() {
+	  // The gradient depends on parameters that the gradient does not
+	  // update, which must be read with their regularization applied.
+	  assertSameParameters(StochasticGradientTrainer.createWithL2Regularization(200, 2, 0.1, true,
+	      false, Double.MAX_VALUE, 0.5, new NullLogFunction()),
+	      StochasticGradientTrainer.createWithLazyL2Regularization(200, 2, 0.1, true, false,
+	          Double.MAX_VALUE, 0.5, new NullLogFunction()), new SparseQuadraticOracle(true), 1e-6);
+	}
+
+	public void testLazyL2Retrain() {
+	  GradientOptimizer trainer = StochasticGradientTrainer.createWithLazyL2Regularization(200, 2,
+	      0.1, true, false, Double.MAX_VALUE, 0.5, new NullLogFunction());
+	  assertSameParameters(trainer, trainer, new SparseQuadraticOracle(false), 1e-10);
+	}
+
+	public void testHogwildUnregularized() {
+	  runTest(new HogwildStochasticGradientTrainer(100, 3, 3, 1.0, true, false, Double.MAX_VALUE,
+	      new StochasticGradientTrainer.StochasticL2Regularizer(0.0, 0.0), new DefaultLogFunction()));
+	}
+
+	public void testHogwildStochasticL2() {
+	  runTest(HogwildStochasticGradientTrainer.createWithStochasticL2Regularization(100, 3, 3, 0.01,
+	      true, Double.MAX_VALUE, 1, 0.1, new DefaultLogFunction()));
+	}
+
+	public void testHogwildAdagradL2() {
+	  runTest(HogwildStochasticGradientTrainer.createAdagrad(100, 3, 3, 0.01, true, Double.MAX_VALUE,
+	      1, 1, new DefaultLogFunction()));
+	}
+
+	public void testHogwildL1() {
+	  runTest(HogwildStochasticGradientTrainer.createWithL1Regularization(100, 3, 3, 0.01, true,
+	      Double.MAX_VALUE, 0.1, new DefaultLogFunction()));
+	}
+
+	private void assertSameParameters(GradientOptimizer expectedTrainer, GradientOptimizer actualTrainer) {
+	  LoglikelihoodOracle oracle = new LoglikelihoodOracle(logLinearModel, new JunctionTree());
+	  SufficientStatistics expected = expectedTrainer.train(oracle, oracle.initializeGradient(), trainingData);
+	  SufficientStatistics actual = actualTrainer.train(oracle, oracle.initializeGradient(), trainingData);
+
+	  SufficientStatistics difference = expected.duplicate();
+	  difference.increment(actual, -1.0);
+	  assertTrue(expected.getL2Norm() > 0.0);
+	  assertEquals(0.0, difference.getL2Norm(), 1e-6);
+	}
+
+	/**
+	 * Asserts that the trainers produce the same parameters for
+	 * {@code oracle}, up to a relative L2 error of {@code tolerance}.
+	 */
+	private void assertSameParameters(GradientOptimizer expectedTrainer,
+	    GradientOptimizer actualTrainer, SparseQuadraticOracle oracle, double tolerance) {
+	  List<int[]> examples = oracle.getExamples();
+	  SufficientStatistics expected = expectedTrainer.train(oracle, oracle.initializeGradient(), examples);
+	  SufficientStatistics actual = actualTrainer.train(oracle, oracle.initializeGradient(), examples);
+
+	  SufficientStatistics difference = expected.duplicate();
+	  difference.increment(actual, -1.0);
+	  assertTrue(expected.getL2Norm() > 0.0);
+	  assertEquals(0.0, difference.getL2Norm() / expected.getL2Norm(), tolerance);
+	}
+
+	/**
+	 * The objective {@code -0.5 * sum_j (target[j] - w[j])^2} over the
+	 * features of each example, where each example contains a few of
+	 * many features. Each gradient is therefore nonzero only for a few
+	 * parameters. If {@code useParameters} is false, the gradient is
+	 * {@code target[j]}, independent of the parameters.
+	 */
+	private static class SparseQuadraticOracle implements GradientOracle<SufficientStatistics, int[]> {
+	  private static final int NUM_FEATURES = 500;
+	  private static final int FEATURES_PER_EXAMPLE = 5;
+
+	  private final boolean useParameters;
+	  private final VariableNumMap featureVar;
+
+	  public SparseQuadraticOracle(boolean useParameters) {
+	    this.useParameters = useParameters;
+	    this.featureVar = VariableNumMap.singleton(0, "features",
+	        DiscreteVariable.sequence("features", NUM_FEATURES));
+	  }
+
+	  public List<int[]> getExamples() {
+	    Random random = new Random(0);
+	    List<int[]> examples = Lists.newArrayList();
+	    for (int i = 0; i < 50; i++) {
+	      int[] features = new int[FEATURES_PER_EXAMPLE];
+	      for (int j = 0; j < features.length; j++) {
+	        features[j] = random.nextInt(NUM_FEATURES);
+	      }
+	      examples.add(features);
+	    }
+	    return examples;
+	  }
+
+	  @Override
+	  public SufficientStatistics initializeGradient() {
+	    return TensorSufficientStatistics.createDense(featureVar);
+	  }
+
+	  @Override
+	  public SufficientStatistics instantiateModel(SufficientStatistics parameters) {
+	    return parameters;
+	  }
+
+	  @Override
+	  public double accumulateGradient(SufficientStatistics gradient,
+	      SufficientStatistics currentParameters, SufficientStatistics instantiatedModel,
+	      int[] example, LogFunction log) {
+	    TensorBase weights = ((TensorSufficientStatistics) instantiatedModel).get();
+	    double objective = 0.0;
+	    for (int feature : example) {
+	      double target = (feature % 7) - 3.0;
+	      double residual = target - (useParameters ? weights.getByDimKey(feature) : 0.0);
+	      ((TensorSufficientStatistics) gradient).incrementFeatureByIndex(residual, feature);
+	      objective -= 0.5 * residual * residual;
+	    }
+	    return objective;
+	  }
+	}
+
 	private void runTest(GradientOptimizer trainer) {
 	  		// These assignments should have positive weight for clique 1
 		Set<Assignment> clique1PositiveAssignments = new HashSet<Assignment>();
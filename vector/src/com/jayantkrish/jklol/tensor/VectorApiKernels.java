@@ -0,0 +1,178 @@
+package com.jayantkrish.jklol.tensor;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Implementation of {@link DenseVectorKernels} using the JDK's
+ * incubating Vector API, which compiles to the widest SIMD
+ * instructions supported by the CPU (e.g., AVX-512). This class
+ * requires JDK 16 or later and
+ * {@code --add-modules jdk.incubator.vector}, both to compile and to
+ * run. It is loaded by {@link DenseVectorKernels#getInstance()} when
+ * available.
+ *
+ * @author jayantk
+ */
+public class VectorApiKernels extends DenseVectorKernels {
+
+  private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+  private static final int LANES = SPECIES.length();
+  private static final int NUM_ACCUMULATORS = DOT_PARTIAL_SUMS / LANES;
+
+  public VectorApiKernels() {
+    // The dot product accumulates DOT_PARTIAL_SUMS partial sums in
+    // at most 4 vectors.
+    if (LANES > DOT_PARTIAL_SUMS || DOT_PARTIAL_SUMS % LANES != 0 || NUM_ACCUMULATORS > 4) {
+      throw new UnsupportedOperationException("Unsupported vector length: " + LANES);
+    }
+  }
+
+  @Override
+  public String getName() {
+    return "vector" + SPECIES.vectorBitSize();
+  }
+
+  @Override
+  public void exp(double[] x, double[] result, int length) {
+    unary(VectorOperators.EXP, x, result, length);
+    for (int i = SPECIES.loopBound(length); i < length; i++) {
+      result[i] = Math.exp(x[i]);
+    }
+  }
+
+  @Override
+  public void log(double[] x, double[] result, int length) {
+    unary(VectorOperators.LOG, x, result, length);
+    for (int i = SPECIES.loopBound(length); i < length; i++) {
+      result[i] = Math.log(x[i]);
+    }
+  }
+
+  @Override
+  public void tanh(double[] x, double[] result, int length) {
+    unary(VectorOperators.TANH, x, result, length);
+    for (int i = SPECIES.loopBound(length); i < length; i++) {
+      result[i] = Math.tanh(x[i]);
+    }
+  }
+
+  private static void unary(VectorOperators.Unary op, double[] x, double[] result, int length) {
+    int bound = SPECIES.loopBound(length);
+    for (int i = 0; i < bound; i += LANES) {
+      DoubleVector.fromArray(SPECIES, x, i).lanewise(op).intoArray(result, i);
+    }
+  }
+
+  @Override
+  public void laplaceSigmoid(double[] x, double[] result, double smoothness, int length) {
+    // For positive values, 1 - exp(-s * v). For negative values,
+    // -1 + exp(s * v) = -(1 - exp(-s * |v|)). Zero (and NaN) map to 0.
+    int bound = SPECIES.loopBound(length);
+    double negativeSmoothness = -1 * smoothness;
+    for (int i = 0; i < bound; i += LANES) {
+      DoubleVector value = DoubleVector.fromArray(SPECIES, x, i);
+      VectorMask<Double> positive = value.compare(VectorOperators.GT, 0.0);
+      VectorMask<Double> negative = value.compare(VectorOperators.LT, 0.0);
+      DoubleVector exponent = value.mul(negativeSmoothness).blend(value.mul(smoothness), negative);
+      DoubleVector magnitude = DoubleVector.broadcast(SPECIES, 1.0)
+          .sub(exponent.lanewise(VectorOperators.EXP));
+      DoubleVector zero = DoubleVector.zero(SPECIES);
+      zero.blend(magnitude, positive).blend(magnitude.neg(), negative).intoArray(result, i);
+    }
+
+    for (int i = bound; i < length; i++) {
+      double value = x[i];
+      if (value > 0) {
+        result[i] = 1 - Math.exp(-1 * smoothness * value);
+      } else if (value < 0) {
+        result[i] = -1 + Math.exp(smoothness * value);
+      } else {
+        result[i] = 0;
+      }
+    }
+  }
+
+  @Override
+  public double dot(double[] x, double[] y, int length) {
+    // DOT_PARTIAL_SUMS / LANES is 1, 2 or 4. The accumulators are
+    // locals (rather than an array) so they stay in registers; the
+    // branches on NUM_ACCUMULATORS are eliminated by the JIT.
+    int blockEnd = length - (length % DOT_PARTIAL_SUMS);
+    DoubleVector sum0 = DoubleVector.zero(SPECIES);
+    DoubleVector sum1 = sum0, sum2 = sum0, sum3 = sum0;
+    for (int i = 0; i < blockEnd; i += DOT_PARTIAL_SUMS) {
+      // Multiply then add, rather than a fused multiply-add, to
+      // round identically to the scalar kernels.
+      sum0 = sum0.add(DoubleVector.fromArray(SPECIES, x, i)
+          .mul(DoubleVector.fromArray(SPECIES, y, i)));
+      if (NUM_ACCUMULATORS > 1) {
+        sum1 = sum1.add(DoubleVector.fromArray(SPECIES, x, i + LANES)
+            .mul(DoubleVector.fromArray(SPECIES, y, i + LANES)));
+      }
+      if (NUM_ACCUMULATORS > 2) {
+        sum2 = sum2.add(DoubleVector.fromArray(SPECIES, x, i + 2 * LANES)
+            .mul(DoubleVector.fromArray(SPECIES, y, i + 2 * LANES)));
+        sum3 = sum3.add(DoubleVector.fromArray(SPECIES, x, i + 3 * LANES)
+            .mul(DoubleVector.fromArray(SPECIES, y, i + 3 * LANES)));
+      }
+    }
+
+    double[] partialSums = new double[DOT_PARTIAL_SUMS];
+    sum0.intoArray(partialSums, 0);
+    if (NUM_ACCUMULATORS > 1) {
+      sum1.intoArray(partialSums, LANES);
+    }
+    if (NUM_ACCUMULATORS > 2) {
+      sum2.intoArray(partialSums, 2 * LANES);
+      sum3.intoArray(partialSums, 3 * LANES);
+    }
+    double sum = partialSums[0];
+    for (int j = 1; j < DOT_PARTIAL_SUMS; j++) {
+      sum += partialSums[j];
+    }
+    for (int i = blockEnd; i < length; i++) {
+      sum += x[i] * y[i];
+    }
+    return sum;
+  }
+
+  @Override
+  public void axpy(double[] x, double multiplier, double[] y, int length) {
+    int bound = SPECIES.loopBound(length);
+    for (int i = 0; i < bound; i += LANES) {
+      DoubleVector.fromArray(SPECIES, x, i).mul(multiplier)
+          .add(DoubleVector.fromArray(SPECIES, y, i)).intoArray(y, i);
+    }
+    for (int i = bound; i < length; i++) {
+      y[i] += x[i] * multiplier;
+    }
+  }
+
+  @Override
+  public void addSquares(double[] x, double multiplier, double[] y, int length) {
+    int bound = SPECIES.loopBound(length);
+    for (int i = 0; i < bound; i += LANES) {
+      DoubleVector value = DoubleVector.fromArray(SPECIES, x, i);
+      value.mul(value).mul(multiplier).add(DoubleVector.fromArray(SPECIES, y, i))
+          .intoArray(y, i);
+    }
+    for (int i = bound; i < length; i++) {
+      double value = x[i];
+      y[i] += value * value * multiplier;
+    }
+  }
+
+  @Override
+  public void add(double value, double[] y, int length) {
+    int bound = SPECIES.loopBound(length);
+    for (int i = 0; i < bound; i += LANES) {
+      DoubleVector.fromArray(SPECIES, y, i).add(value).intoArray(y, i);
+    }
+    for (int i = bound; i < length; i++) {
+      y[i] += value;
+    }
+  }
+}